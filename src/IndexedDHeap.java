@@ -0,0 +1,176 @@
+import java.util.Arrays;
+
+/**
+ * This class implements an indexed d-ary min heap of node indexes ordered by a double key (the tentative distance).
+ * Every node index appears in the heap at most once and the heap keeps the position of each index,
+ * so lowering the key of a queued node (decrease-key) moves the existing entry instead of inserting a duplicate.
+ * The heap never holds more entries than there are reached nodes, and all its storage is primitive arrays.
+ * A higher arity makes the heap shallower (cheaper decrease-key) at the cost of more comparisons per poll,
+ * which pays off on dense graphs where decrease-key dominates.
+ * The heap also counts its operations so the amount of heap work can be measured.
+ *
+ * @author shmuel.lavian
+ */
+final class IndexedDHeap {
+    private final int _d;
+    private double[] _keys = new double[16];
+    private int[] _items = new int[16];
+    private int[] _pos = new int[0];
+    private int _size;
+    long _inserts;
+    long _decreases;
+    long _polls;
+
+    /**
+     * Creates a new empty heap of the received arity.
+     *
+     * @param d - The number of children per heap node, at least 2
+     */
+    IndexedDHeap(int d) {
+        if (d < 2) throw new IllegalArgumentException("heap arity must be at least 2: " + d);
+        this._d = d;
+    }
+
+    /**
+     * Returns the arity of this heap.
+     *
+     * @return INT - The number of children per heap node
+     */
+    int arity() {
+        return this._d;
+    }
+
+    /**
+     * Makes room for node indexes in the range [0, bound).
+     *
+     * @param bound - The index bound
+     */
+    void ensureCapacity(int bound) {
+        if (this._pos.length >= bound) return;
+        int old = this._pos.length;
+        this._pos = Arrays.copyOf(this._pos, Math.max(bound, old+(old>>1)));
+        Arrays.fill(this._pos, old, this._pos.length, -1);
+    }
+
+    /**
+     * Checks if the heap is empty.
+     *
+     * @return True if there are no queued nodes
+     */
+    boolean isEmpty() {
+        return this._size == 0;
+    }
+
+    /**
+     * Returns the number of queued nodes.
+     *
+     * @return INT - The heap size
+     */
+    int size() {
+        return this._size;
+    }
+
+    /**
+     * Returns the smallest key in the heap.
+     *
+     * @return double - The minimal key, infinity if the heap is empty
+     */
+    double minKey() {
+        return this._size == 0 ? Double.POSITIVE_INFINITY : this._keys[0];
+    }
+
+    /**
+     * Queues the node with the received key, or lowers its key if it is already queued with a larger one.
+     *
+     * @param item - The node index
+     * @param key - The node key
+     */
+    void insertOrDecrease(int item, double key) {
+        int pos = this._pos[item];
+        if (pos == -1) {
+            if (this._size == this._keys.length) {
+                this._keys = Arrays.copyOf(this._keys, this._size*2);
+                this._items = Arrays.copyOf(this._items, this._size*2);
+            }
+            pos = this._size++;
+            this._inserts++;
+        }
+        else {
+            if (this._keys[pos] <= key) return;
+            this._decreases++;
+        }
+        this.siftUp(pos, item, key);
+    }
+
+    /**
+     * Removes and returns the node with the smallest key.
+     *
+     * @return INT - The node index, -1 if the heap is empty
+     */
+    int poll() {
+        if (this._size == 0) return -1;
+        this._polls++;
+        int result = this._items[0];
+        this._pos[result] = -1;
+        int last = --this._size;
+        if (last > 0) this.siftDown(0, this._items[last], this._keys[last]);
+        return result;
+    }
+
+    /**
+     * Removes all the queued nodes. Runs in O(size) time.
+     */
+    void clear() {
+        for (int i=0; i<this._size; i++) {
+            this._pos[this._items[i]] = -1;
+        }
+        this._size = 0;
+    }
+
+    /**
+     * Resets the operation counters.
+     */
+    void resetCounters() {
+        this._inserts = 0;
+        this._decreases = 0;
+        this._polls = 0;
+    }
+
+    /**
+     * Moves the received entry up from pos until its parent's key is not larger.
+     */
+    private void siftUp(int pos, int item, double key) {
+        while (pos > 0) {
+            int up = (pos-1)/this._d;
+            if (this._keys[up] <= key) break;
+            this.place(pos, this._items[up], this._keys[up]);
+            pos = up;
+        }
+        this.place(pos, item, key);
+    }
+
+    /**
+     * Moves the received entry down from pos until all its children's keys are not smaller.
+     */
+    private void siftDown(int pos, int item, double key) {
+        while (true) {
+            int first = pos*this._d+1;
+            if (first >= this._size) break;
+            int last = Math.min(first+this._d, this._size);
+            int min = first;
+            for (int c=first+1; c<last; c++) {
+                if (this._keys[c] < this._keys[min]) min = c;
+            }
+            if (this._keys[min] >= key) break;
+            this.place(pos, this._items[min], this._keys[min]);
+            pos = min;
+        }
+        this.place(pos, item, key);
+    }
+
+    private void place(int pos, int item, double key) {
+        this._items[pos] = item;
+        this._keys[pos] = key;
+        this._pos[item] = pos;
+    }
+}
@@ -0,0 +1,204 @@
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * This class implements a primitive int->int hash map based on open addressing with linear probing.
+ * It is used by the compact graph implementations as the node key -> node index lookup table
+ * and avoids the Integer boxing and the per-entry objects a HashMap<Integer,Integer> costs.
+ * Values are expected to be non negative (node indexes), -1 is returned for a missing key.
+ * Removal uses backward shift deletion so no tombstones are left behind.
+ *
+ * @author shmuel.lavian
+ */
+public class IntIntHashMap implements Serializable {
+    private static final long serialVersionUID = -3405196375627413818L;
+    private static final int EMPTY = -1;
+    private int[] _keys;
+    private int[] _vals;
+    private int _size;
+    private int _mask;
+
+    /**
+     * The default IntIntHashMap constructor. Creates a new map with a small initial capacity.
+     */
+    public IntIntHashMap() {
+        this(16);
+    }
+
+    /**
+     * Creates a new map pre-sized for the expected number of entries.
+     *
+     * @param expected - The number of entries expected to be stored in the map
+     */
+    public IntIntHashMap(int expected) {
+        int cap = tableSize(expected);
+        this._keys = new int[cap];
+        this._vals = new int[cap];
+        Arrays.fill(this._vals, EMPTY);
+        this._mask = cap-1;
+        this._size = 0;
+    }
+
+    /**
+     * Returns the value mapped to the received key.
+     *
+     * @param key - The key to look for
+     * @return INT - The mapped value, -1 if the key is not in the map
+     */
+    public int get(int key) {
+        int i = mix(key) & this._mask;
+        while (this._vals[i] != EMPTY) {
+            if (this._keys[i] == key) return this._vals[i];
+            i = (i+1) & this._mask;
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Checks if the received key is mapped in this map.
+     *
+     * @param key - The key to look for
+     * @return True if the key exists, False otherwise
+     */
+    public boolean containsKey(int key) {
+        return this.get(key) != EMPTY;
+    }
+
+    /**
+     * Maps the received key to the received value, overriding any previous mapping.
+     *
+     * @param key - The key to be set
+     * @param val - The non negative value to be mapped to the key
+     */
+    public void put(int key, int val) {
+        if (val < 0) throw new IllegalArgumentException("IntIntHashMap values must be non negative: " + val);
+        int i = mix(key) & this._mask;
+        while (this._vals[i] != EMPTY) {
+            if (this._keys[i] == key) {
+                this._vals[i] = val;
+                return;
+            }
+            i = (i+1) & this._mask;
+        }
+        this._keys[i] = key;
+        this._vals[i] = val;
+        this._size++;
+        if (this._size*4 >= this._keys.length*3) this.rehash(this._keys.length*2);
+    }
+
+    /**
+     * Removes the mapping of the received key.
+     *
+     * @param key - The key to be removed
+     * @return INT - The value that was mapped to the key, -1 if none
+     */
+    public int remove(int key) {
+        int i = mix(key) & this._mask;
+        while (this._vals[i] != EMPTY) {
+            if (this._keys[i] == key) {
+                int result = this._vals[i];
+                this.shiftBack(i);
+                this._size--;
+                return result;
+            }
+            i = (i+1) & this._mask;
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Returns an independent copy of this map with the same table capacity.
+     *
+     * @return IntIntHashMap - The new map
+     */
+    public IntIntHashMap copy() {
+        IntIntHashMap result = new IntIntHashMap(4);
+        result._keys = this._keys.clone();
+        result._vals = this._vals.clone();
+        result._mask = this._mask;
+        result._size = this._size;
+        return result;
+    }
+
+    /**
+     * Returns the number of mappings in this map.
+     *
+     * @return INT - The map size
+     */
+    public int size() {
+        return this._size;
+    }
+
+    /**
+     * Returns the approximate number of bytes used by the internal arrays of this map.
+     *
+     * @return long - The estimated heap footprint in bytes
+     */
+    public long estimatedBytes() {
+        return 16+2*(16+4L*this._keys.length);
+    }
+
+    /**
+     * Closes the gap left in slot i by moving back the entries of the probe chain that follow it.
+     *
+     * @param i - The freed slot
+     */
+    private void shiftBack(int i) {
+        int gap = i;
+        int j = (i+1) & this._mask;
+        while (this._vals[j] != EMPTY) {
+            int home = mix(this._keys[j]) & this._mask;
+            if (((j-home) & this._mask) >= ((j-gap) & this._mask)) {
+                this._keys[gap] = this._keys[j];
+                this._vals[gap] = this._vals[j];
+                gap = j;
+            }
+            j = (j+1) & this._mask;
+        }
+        this._vals[gap] = EMPTY;
+    }
+
+    /**
+     * Moves all the entries into a new table of the received capacity.
+     *
+     * @param cap - The new table capacity, must be a power of two
+     */
+    private void rehash(int cap) {
+        int[] old_k = this._keys;
+        int[] old_v = this._vals;
+        this._keys = new int[cap];
+        this._vals = new int[cap];
+        Arrays.fill(this._vals, EMPTY);
+        this._mask = cap-1;
+        for (int i=0; i<old_k.length; i++) {
+            if (old_v[i] == EMPTY) continue;
+            int j = mix(old_k[i]) & this._mask;
+            while (this._vals[j] != EMPTY) j = (j+1) & this._mask;
+            this._keys[j] = old_k[i];
+            this._vals[j] = old_v[i];
+        }
+    }
+
+    /**
+     * Returns the power of two table capacity that holds the expected entries under the load factor.
+     *
+     * @param expected - The expected number of entries
+     * @return INT - The table capacity
+     */
+    private static int tableSize(int expected) {
+        long needed = Math.max(4L, (long) Math.ceil(Math.max(expected, 1)/0.75)+1);
+        int cap = Integer.highestOneBit((int) Math.min(needed, 1<<30));
+        return cap < needed ? cap<<1 : cap;
+    }
+
+    /**
+     * Scrambles the bits of the key (a golden ratio multiply and one xor-shift) so sequential keys spread over the table.
+     *
+     * @param key - The key to hash
+     * @return INT - The mixed hash
+     */
+    private static int mix(int key) {
+        int h = key*0x9E3779B9;
+        return h ^ (h>>>16);
+    }
+}
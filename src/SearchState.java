@@ -0,0 +1,246 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * This class holds the per query state of a single shortest path search over an indexed_graph:
+ * the tentative distance, the parent and the settled flag of every node, and the search priority queue.
+ * The queue is an IndexedDHeap with true decrease-key, so every node is queued at most once.
+ * All the state lives in primitive arrays indexed by the node index, and every array entry is stamped with
+ * the epoch (query number) that wrote it. Starting a new query only increments the epoch, so nothing is
+ * cleared between queries and a query costs only the nodes it actually touches.
+ * States are pooled per thread (acquire/release), so concurrent queries never share a state
+ * and the graph nodes' tags and metadata are never written by the algorithms.
+ *
+ * @author shmuel.lavian
+ */
+final class SearchState implements edge_visitor {
+    static final int DEFAULT_ARITY = 4;
+    private static final ThreadLocal<ArrayDeque<SearchState>> POOL = ThreadLocal.withInitial(ArrayDeque::new);
+    private double[] _dist = new double[0];
+    private int[] _parent = new int[0];
+    private int[] _seen = new int[0];
+    private int[] _done = new int[0];
+    private int _epoch = 0;
+    private IndexedDHeap _heap = new IndexedDHeap(DEFAULT_ARITY);
+    private int _cur;
+    private double _cur_dist;
+
+    /**
+     * Takes a state from the calling thread's pool (or creates one) and starts a new query on it.
+     *
+     * @param bound - The index bound of the searched graph
+     * @return SearchState - A state ready for a new query
+     */
+    static SearchState acquire(int bound) {
+        return acquire(bound, DEFAULT_ARITY);
+    }
+
+    /**
+     * Takes a state from the calling thread's pool (or creates one) whose queue has the received arity
+     * and starts a new query on it.
+     *
+     * @param bound - The index bound of the searched graph
+     * @param arity - The arity of the queue's d-ary heap
+     * @return SearchState - A state ready for a new query
+     */
+    static SearchState acquire(int bound, int arity) {
+        SearchState result = POOL.get().poll();
+        if (result == null) result = new SearchState();
+        if (result._heap.arity() != arity) result._heap = new IndexedDHeap(arity);
+        result.begin(bound);
+        return result;
+    }
+
+    /**
+     * Returns a state to the calling thread's pool.
+     *
+     * @param st - The state to be reused by later queries
+     */
+    static void release(SearchState st) {
+        POOL.get().push(st);
+    }
+
+    /**
+     * Starts a new query: grows the arrays to the index bound if needed and advances the epoch.
+     *
+     * @param bound - The index bound of the searched graph
+     */
+    void begin(int bound) {
+        if (this._dist.length < bound) {
+            int cap = Math.max(bound, this._dist.length+(this._dist.length>>1));
+            this._dist = Arrays.copyOf(this._dist, cap);
+            this._parent = Arrays.copyOf(this._parent, cap);
+            this._seen = Arrays.copyOf(this._seen, cap);
+            this._done = Arrays.copyOf(this._done, cap);
+        }
+        this._heap.ensureCapacity(bound);
+        this._heap.clear();
+        if (++this._epoch == Integer.MAX_VALUE) {
+            Arrays.fill(this._seen, 0);
+            Arrays.fill(this._done, 0);
+            this._epoch = 1;
+        }
+    }
+
+    /**
+     * Returns the tentative distance of the node, infinity if the query did not reach it yet.
+     *
+     * @param i - The node index
+     * @return double - The distance from the source
+     */
+    double dist(int i) {
+        return this._seen[i] == this._epoch ? this._dist[i] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Returns the parent of the node on its current shortest path, -1 for the source.
+     *
+     * @param i - The node index
+     * @return INT - The parent node index
+     */
+    int parent(int i) {
+        return this._parent[i];
+    }
+
+    /**
+     * Checks if the node was reached by the current query.
+     *
+     * @param i - The node index
+     * @return True if the node has a tentative distance
+     */
+    boolean reached(int i) {
+        return this._seen[i] == this._epoch;
+    }
+
+    /**
+     * Checks if the node's distance is final in the current query.
+     *
+     * @param i - The node index
+     * @return True if the node was settled
+     */
+    boolean settled(int i) {
+        return this._done[i] == this._epoch;
+    }
+
+    /**
+     * Sets the source of the query.
+     *
+     * @param src - The source node index
+     */
+    void start(int src) {
+        this.update(src, 0, -1);
+    }
+
+    /**
+     * Lowers the tentative distance of the node if the received distance is shorter.
+     *
+     * @param i - The node index
+     * @param d - The new distance
+     * @param parent - The node the new distance goes through
+     * @return True if the distance was improved
+     */
+    boolean update(int i, double d, int parent) {
+        return this.update(i, d, parent, d);
+    }
+
+    /**
+     * Lowers the tentative distance of the node if the received distance is shorter, and queues the node
+     * by a priority other than its distance (the distance plus a heuristic estimate for A*).
+     *
+     * @param i - The node index
+     * @param d - The new distance
+     * @param parent - The node the new distance goes through
+     * @param key - The queue priority of the node
+     * @return True if the distance was improved
+     */
+    boolean update(int i, double d, int parent, double key) {
+        if (this._done[i] == this._epoch) return false;
+        if (this._seen[i] == this._epoch && this._dist[i] <= d) return false;
+        this._seen[i] = this._epoch;
+        this._dist[i] = d;
+        this._parent[i] = parent;
+        this._heap.insertOrDecrease(i, key);
+        return true;
+    }
+
+    /**
+     * Lowers the distance of the node like update(), but also of a settled node, which is then unsettled and
+     * queued again. Used by A* whose heuristic may be admissible without being consistent.
+     *
+     * @param i - The node index
+     * @param d - The new distance
+     * @param parent - The node the new distance goes through
+     * @param key - The queue priority of the node
+     * @return True if the distance was improved
+     */
+    boolean reopen(int i, double d, int parent, double key) {
+        if (this._done[i] == this._epoch) {
+            if (this._dist[i] <= d) return false;
+            this._done[i] = 0;
+        }
+        return this.update(i, d, parent, key);
+    }
+
+    /**
+     * Returns the smallest tentative distance waiting in the queue without removing it.
+     *
+     * @return double - The smallest queued distance, infinity if the queue is empty
+     */
+    double peek() {
+        return this._heap.minKey();
+    }
+
+    /**
+     * Removes the unsettled node with the smallest tentative distance from the queue and settles it.
+     *
+     * @return INT - The settled node index, -1 if the queue is empty
+     */
+    int poll() {
+        int result = this._heap.poll();
+        if (result != -1) this._done[result] = this._epoch;
+        return result;
+    }
+
+    /**
+     * Returns the queue of this state, used for measuring the heap work.
+     *
+     * @return IndexedDHeap - The search queue
+     */
+    IndexedDHeap heap() {
+        return this._heap;
+    }
+
+    /**
+     * Relaxes all the edges of the settled node u.
+     *
+     * @param g - The searched graph
+     * @param u - The settled node index
+     */
+    void relax(indexed_graph g, int u) {
+        this._cur = u;
+        this._cur_dist = this._dist[u];
+        g.forEachNeighborIndex(u, this);
+    }
+
+    /**
+     * Receives a single edge of the relaxed node.
+     */
+    @Override
+    public void visit(int ni, double w) {
+        this.update(ni, this._cur_dist+w, this._cur);
+    }
+
+    /**
+     * Returns the node indexes of the path from the source to the received node, source first.
+     *
+     * @param dest - A reached node index
+     * @return int[] - The path node indexes
+     */
+    int[] path(int dest) {
+        int len = 0;
+        for (int i=dest; i != -1; i=this._parent[i]) len++;
+        int[] result = new int[len];
+        for (int i=dest; i != -1; i=this._parent[i]) result[--len] = i;
+        return result;
+    }
+}
@@ -1,17 +1,31 @@
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This class implements the weighted_graph_algorithms interface that represents algorithms to run on a
  * weighted_graph object. This class implements a few main methods including a deep copy method,
- * isConnected to check graph connectivity (implemented via BFS algorithm), shortest path and
+ * isConnected to check graph connectivity (implemented via a parallel union-find), shortest path and
  * shortest length method between two nodes (implemented via Dijkstra's algorithm)
- * and file save and load method via serialization.
+ * and file save and load method via a compact binary format (see WGraph_IO).
  *
  * @author shmuel.lavian
  */
 public class WGraph_Algo implements weighted_graph_algorithms {
+    /** The suffix of the landmark tables file saved next to the graph file by save() */
+    public static final String LANDMARKS_SUFFIX = ".lmk";
+    /** The seed of the random landmark choices of prepareLandmarks(), fixed so the same graph gets the same tables */
+    static final long LANDMARK_SEED = 1;
     weighted_graph _g = new WGraph_DS();
+    private volatile Frozen _frozen;
+    private int _heap_arity = SearchState.DEFAULT_ARITY;
+    private SearchMode _mode = SearchMode.DIJKSTRA;
+    private distance_heuristic _heuristic;
+    private WGraph_Landmarks _landmarks;
+    private int _landmark_count;
+    private WGraph_Landmarks.Strategy _landmark_strategy;
+    private WGraph_CH _ch;
+    private boolean _ch_prepared;
 
 
     /**
@@ -22,6 +36,12 @@ public class WGraph_Algo implements weighted_graph_algorithms {
     @Override
     public void init(weighted_graph g) {
         this._g = g;
+        this._landmarks = null;
+        this._landmark_count = 0;
+        this._landmark_strategy = null;
+        this._ch = null;
+        this._ch_prepared = false;
+        this._frozen = null;
     }
 
     /**
@@ -36,11 +56,14 @@ public class WGraph_Algo implements weighted_graph_algorithms {
 
     /**
      * Computes a deep copy of the received graph.
+     * A WGraph_DS is copied directly from its adjacency by WGraph_DS.deepCopy(), any other graph
+     * is copied into a new WGraph_DS node by node and edge by edge.
      *
      * @return returned_g - the copied graph
      */
     @Override
     public weighted_graph copy() {
+        if (this._g instanceof WGraph_DS) return ((WGraph_DS) this._g).deepCopy();
         weighted_graph result = new WGraph_DS();
         if (this._g.nodeSize() == 0) return result;
         for (node_info n : this._g.getV()) {
@@ -48,50 +71,59 @@ public class WGraph_Algo implements weighted_graph_algorithms {
         }
         if (this._g.edgeSize() == 0) return result;
         for (node_info n : this._g.getV()) {
-            for (node_info inner : this._g.getV(n.getKey())) {
-                result.connect(n.getKey(),inner.getKey(),this._g.getEdge(n.getKey(),inner.getKey()));
-            }
+            int key = n.getKey();
+            this._g.forEachNeighbor(key, (ni, w) -> {
+                if (key < ni) result.connect(key, ni, w);
+            });
         }
         return result;
     }
 
+    /**
+     * Returns a copy of the received graph which shares the storage of the graph until either of them changes,
+     * see WGraph_DS.copyOnWrite(). Graphs other than WGraph_DS are copied with copy().
+     *
+     * @return weighted_graph - the copied graph
+     */
+    public weighted_graph copyOnWrite() {
+        if (this._g instanceof WGraph_DS) return ((WGraph_DS) this._g).copyOnWrite();
+        return this.copy();
+    }
+
     /**
      * Returns true if graph is connected which means there is a path between each and every two nodes on the graph.
-     * We use a basic BFS algorithm to mark each and every connected node on the graph.
-     * This method uses a LinkedList as a queue for the next node (add() and poll() both O(1)).
-     * A HashSet for the visited nodes (efficient contains() method O(1)).
-     * After scanning we true if the amount of the visited nodes == the number of the nodes in the graph
+     * A WGraph_DS keeps its components up to date as it changes, so it answers directly (see WGraph_DS.isConnected()).
+     * Any other graph is checked with connectedComponents(): it is connected if all of its nodes are in a single component.
      *
      * @return True if the graph is connected false otherwise
      */
     @Override
     public boolean isConnected() {
-        if (this._g.nodeSize() <= 1 || this._g == null) return true;
-        Queue<node_info> queue = new LinkedList<>();
-        HashSet<node_info> visited = new HashSet<>();
-        node_info tmp_n = this._g.getV().iterator().next();
-        queue.add(tmp_n);
-        visited.add(tmp_n);
-        while (!queue.isEmpty()) {
-            tmp_n=queue.poll();
-            for (node_info node : this._g.getV(tmp_n.getKey())) {
-                if (!visited.contains(node)) {
-                    visited.add(node);
-                    queue.add(node);
-                }
-                if (visited.size() == this._g.nodeSize()) return true;
-            }
-            if (visited.size() == this._g.nodeSize()) return true;
-        }
-        return visited.size() == this._g.nodeSize();
+        if (this._g == null || this._g.nodeSize() <= 1) return true;
+        if (this._g instanceof WGraph_DS) return ((WGraph_DS) this._g).isConnected();
+        return this.connectedComponents().count() == 1;
+    }
+
+    /**
+     * Finds the connected components of the graph: a component id for every node and the size of every component.
+     * The components are computed by a parallel union-find over the graph's edges (see WGraph_Components),
+     * the graph must not be changed while this method runs.
+     *
+     * @return WGraph_Components - The components of the graph
+     */
+    public WGraph_Components connectedComponents() {
+        return WGraph_Components.compute(this.indexed());
     }
 
     /**
      * Returns the length of the shortest path between two nodes based on Dijkstra's Algorithm
-     * We scan the graph using a PriorityQueue which compares based on the minimal node tag double
-     * This way we can tag each node we reach with the shortest length from the last visited node to it.
-     * This works by enqueuing the node with the smallest tag (path length) from the queue and checking it's neighbors
-     * After we finish the graph scan and only if we reached the destination we return the destination nodes tag.
+     * We scan the graph using a priority queue of the minimal tentative distance, an indexed d-ary heap
+     * with decrease-key (see setHeapArity()) so each node is queued at most once.
+     * This works by settling the node with the smallest distance from the queue and relaxing the edges to it's neighbors.
+     * All the search state (distance, parent and settled flag per node) lives in a pooled SearchState of
+     * primitive arrays indexed by the node index. The state is epoch stamped so nothing is reset between
+     * queries, a query only pays for the nodes it touches, concurrent queries do not interfere and the
+     * nodes tags and metadata are left untouched.
      *
      * @param src  - start node
      * @param dest - end (target) node
@@ -99,43 +131,28 @@ public class WGraph_Algo implements weighted_graph_algorithms {
      */
     @Override
     public double shortestPathDist(int src, int dest) {
-        if (this._g.nodeSize()<=1 || this._g.getNode(src)==null || this._g.getNode(dest)==null) return -1;
-        if (src == dest) return 0.0;
-        PriorityQueue<node_info> pq = new PriorityQueue<>();
-        double result;
-        node_info cur = this._g.getNode(src);
-        pq.add(cur);
-        cur.setTag(0);
-        while (!pq.isEmpty()) {
-            cur = pq.poll();
-            if (!Objects.equals(cur.getInfo(), "y")) {
-                cur.setInfo("y");
-                if (cur.getKey() == dest) break;
-                for (node_info n : this._g.getV(cur.getKey())) {
-                    if (n.getTag() == -1) {
-                        n.setTag(Double.MAX_VALUE);
-                    }
-                    double tmp_tag = cur.getTag()+this._g.getEdge(cur.getKey(),n.getKey());
-                    if (tmp_tag < n.getTag()) {
-                        n.setTag(tmp_tag);
-                        pq.add(n);
-                    }
-                }
-            }
-        }
-        cur = this._g.getNode(dest);
-        result = cur.getTag();
-        if (!Objects.equals(cur.getInfo(), "y")) return -1;
-        this.reset();
-        return result;
+        return this.shortestPathDist(src, dest, this._mode);
+    }
+
+    /**
+     * Returns the length of the shortest path between two nodes using the received search mode
+     * instead of this instance's default mode (see setSearchMode()).
+     *
+     * @param src  - start node
+     * @param dest - end (target) node
+     * @param mode - The search algorithm to use
+     * @return double which represents the shortest path from src to dest, -1 otherwise
+     */
+    public double shortestPathDist(int src, int dest, SearchMode mode) {
+        Route r = this.route(src, dest, mode, this._heuristic, false);
+        return r == null ? -1 : r._dist;
     }
 
     /**
      * returns an ordered List of node_info objects representing the shortest path between src to dest.
-     * In here we use the same mechanism and algorithm used in the shortestPathDist() method
-     * But the main difference is we store each nodes parent (depends on the the scanning direction of the graph)
-     * and after we finished the scan, if we reached the destination, we build the path List by getting each nodes
-     * parent node from the parents Map.
+     * In here we use the same search used in the shortestPathDist() method
+     * and after we finished the scan, if we reached the destination, we build the path List by following each nodes
+     * parent index stored in the search state.
      *
      * @param src  - start node
      * @param dest - end (target) node
@@ -143,46 +160,528 @@ public class WGraph_Algo implements weighted_graph_algorithms {
      */
     @Override
     public List<node_info> shortestPath(int src, int dest) {
-        if (this._g.nodeSize()<=1 || this._g.getNode(src)==null || this._g.getNode(dest)==null) return null;
+        return this.shortestPath(src, dest, this._mode);
+    }
+
+    /**
+     * Returns the shortest path between two nodes using the received search mode
+     * instead of this instance's default mode (see setSearchMode()).
+     *
+     * @param src  - start node
+     * @param dest - end (target) node
+     * @param mode - The search algorithm to use
+     * @return ordered List of node_info objects containing the shortest path from src to dest ,null otherwise
+     */
+    public List<node_info> shortestPath(int src, int dest, SearchMode mode) {
+        return this.toNodes(this.route(src, dest, mode, this._heuristic, true), src, dest);
+    }
+
+    /**
+     * Returns the length of the shortest path between two nodes using A* search guided by the received heuristic.
+     * The result is exact as long as the heuristic is admissible and consistent,
+     * see WGraph_Coordinates for the built-in geometric heuristics.
+     *
+     * @param src  - start node
+     * @param dest - end (target) node
+     * @param h - The lower bound estimate of the remaining distance to dest
+     * @return double which represents the shortest path from src to dest, -1 otherwise
+     */
+    public double shortestPathDist(int src, int dest, distance_heuristic h) {
+        Route r = this.route(src, dest, SearchMode.ASTAR, h, false);
+        return r == null ? -1 : r._dist;
+    }
+
+    /**
+     * Returns the shortest path between two nodes using A* search guided by the received heuristic.
+     *
+     * @param src  - start node
+     * @param dest - end (target) node
+     * @param h - The lower bound estimate of the remaining distance to dest
+     * @return ordered List of node_info objects containing the shortest path from src to dest ,null otherwise
+     */
+    public List<node_info> shortestPath(int src, int dest, distance_heuristic h) {
+        return this.toNodes(this.route(src, dest, SearchMode.ASTAR, h, true), src, dest);
+    }
+
+    /**
+     * Returns the shortest path tree of the received source: the distance from src to every node and the parent
+     * of every node on its shortest path, in primitive arrays indexed by the node index (see WGraph_PathTree).
+     * A single search replaces a shortestPathDist() query per node. Large graphs are searched in parallel by
+     * Delta-stepping on the common ForkJoinPool, smaller ones by a sequential Dijkstra.
+     *
+     * @param src - The source node
+     * @return WGraph_PathTree - The tree, null if src is not in the graph
+     */
+    public WGraph_PathTree shortestPathTree(int src) {
+        return WGraph_PathTree.compute(this.indexed(), src);
+    }
+
+    /**
+     * Returns the shortest path distance from every source to every target as a flat row major table: the distance
+     * from sources[i] to targets[j] is at i * targets.length + j, -1 if there is no path or a node does not exist.
+     * With a valid contraction hierarchy (or in SearchMode.CH after prepareHierarchy()) the table is computed by
+     * the bucket algorithm over the hierarchy, otherwise by one to many Dijkstra searches which stop once all their
+     * targets are settled. Either way the searches run in parallel on the common ForkJoinPool (see WGraph_DistanceMatrix).
+     *
+     * @param sources - The source node keys, the rows of the table
+     * @param targets - The target node keys, the columns of the table
+     * @return double[] - The table of sources.length * targets.length distances
+     * @throws IllegalArgumentException if the table has more than WGraph_DistanceMatrix.MAX_PAIRS entries
+     */
+    public double[] distanceMatrix(int[] sources, int[] targets) {
+        WGraph_CH ch = this._mode == SearchMode.CH ? this.hierarchy() : this.getHierarchy();
+        if (ch != null) return WGraph_DistanceMatrix.compute(ch, sources, targets, ForkJoinPool.commonPool());
+        return WGraph_DistanceMatrix.compute(this.indexed(), sources, targets);
+    }
+
+    /**
+     * Returns the shortest path distances between all the pairs of nodes in a flat n x n matrix (see WGraph_AllPairs),
+     * computed by a Dijkstra search from every node on sparse graphs and by a blocked Floyd-Warshall on dense ones,
+     * in parallel on the common ForkJoinPool. Replaces a shortestPathDist() query per pair on graphs of up to a few
+     * tens of thousands of nodes.
+     *
+     * @return WGraph_AllPairs - The distance matrix of the graph
+     */
+    public WGraph_AllPairs allPairs() {
+        return WGraph_AllPairs.compute(this._g);
+    }
+
+    /**
+     * Returns the shortest path distances between all the pairs of nodes computed with the received method,
+     * in a double[] or (halving the memory) a float[] matrix.
+     *
+     * @param method - The algorithm, AUTO to choose by the density of the graph
+     * @param precision - The type of the matrix entries
+     * @return WGraph_AllPairs - The distance matrix of the graph
+     */
+    public WGraph_AllPairs allPairs(WGraph_AllPairs.Method method, WGraph_AllPairs.Precision precision) {
+        return WGraph_AllPairs.compute(this._g, method, precision, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Converts the path of a query result into the List of the underlying graph's node_info objects.
+     *
+     * @param r - The query result, may be null
+     * @param src - The source node key
+     * @param dest - The target node key
+     * @return ordered List of node_info objects, null if there is no path
+     */
+    private List<node_info> toNodes(Route r, int src, int dest) {
+        if (r == null) return null;
         if (src == dest) return new ArrayList<>();
-        PriorityQueue<node_info> pq = new PriorityQueue<>();
-        HashMap<node_info,node_info> parent = new HashMap<>();
-        List<node_info> result = new ArrayList<>();
-        node_info cur = this._g.getNode(src);
-        pq.add(cur);
-        cur.setTag(0);
-        while (!pq.isEmpty()) {
-            cur = pq.poll();
-            if (!Objects.equals(cur.getInfo(),"y")) {
-                cur.setInfo("y");
-                if (cur.getKey() == dest) break;
-                for (node_info n : this._g.getV(cur.getKey())) {
-                    if (n.getTag() == -1) {
-                        n.setTag(Double.MAX_VALUE);
-                    }
-                    double tmp_tag = cur.getTag()+this._g.getEdge(cur.getKey(),n.getKey());
-                    if (tmp_tag < n.getTag()) {
-                        n.setTag(tmp_tag);
-                        parent.put(n,cur);
-                        pq.add(n);
-                    }
+        List<node_info> result = new ArrayList<>(r._path.length);
+        for (int i : r._path) {
+            result.add(this._g.getNode(r._g.keyAt(i)));
+        }
+        return result;
+    }
+
+    /**
+     * Sets the arity of the d-ary heap used as the priority queue by the shortest path methods.
+     * The default is 4, higher values suit dense graphs where most heap operations are decrease-key.
+     *
+     * @param d - The number of children per heap node, at least 2
+     */
+    public void setHeapArity(int d) {
+        if (d < 2) throw new IllegalArgumentException("heap arity must be at least 2: " + d);
+        this._heap_arity = d;
+    }
+
+    /**
+     * Sets the search algorithm used by shortestPathDist(src,dest) and shortestPath(src,dest).
+     * The default is SearchMode.DIJKSTRA.
+     *
+     * @param mode - The default search mode of this instance
+     */
+    public void setSearchMode(SearchMode mode) {
+        if (mode == null) throw new IllegalArgumentException("search mode must not be null");
+        this._mode = mode;
+    }
+
+    /**
+     * Returns the search algorithm used by shortestPathDist(src,dest) and shortestPath(src,dest).
+     *
+     * @return SearchMode - The default search mode of this instance
+     */
+    public SearchMode getSearchMode() {
+        return this._mode;
+    }
+
+    /**
+     * Sets the heuristic used by the SearchMode.ASTAR mode of this instance.
+     * Without a heuristic ASTAR runs as plain Dijkstra.
+     *
+     * @param h - The default heuristic, null for none
+     */
+    public void setHeuristic(distance_heuristic h) {
+        this._heuristic = h;
+    }
+
+    /**
+     * Preprocesses the graph for SearchMode.ALT: chooses k landmarks with the received strategy and computes
+     * the shortest distances from each of them to every node (see WGraph_Landmarks).
+     * The tables are only valid while the graph's mode count does not change, after a change the next ALT query
+     * computes them again with the same k and strategy.
+     *
+     * @param k - The number of landmarks, at least 1
+     * @param strategy - The landmark selection strategy
+     * @return WGraph_Landmarks - The computed tables, also usable as a heuristic on their own
+     */
+    public WGraph_Landmarks prepareLandmarks(int k, WGraph_Landmarks.Strategy strategy) {
+        WGraph_Landmarks result = WGraph_Landmarks.compute(this._g, k, strategy, LANDMARK_SEED);
+        this._landmark_count = k;
+        this._landmark_strategy = strategy;
+        this._landmarks = result;
+        return result;
+    }
+
+    /**
+     * Returns the landmark tables of the graph if they are still valid (the graph did not change since they
+     * were computed or loaded).
+     *
+     * @return WGraph_Landmarks - The landmark tables, null if there are none or the graph changed
+     */
+    public WGraph_Landmarks getLandmarks() {
+        WGraph_Landmarks result = this._landmarks;
+        if (result != null && !result.isValidFor(this._g)) {
+            this._landmarks = null;
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the landmark heuristic for SearchMode.ALT, recomputing stale tables with the last prepared
+     * parameters.
+     *
+     * @return WGraph_Landmarks - The valid landmark tables, null if prepareLandmarks() was never called
+     */
+    private WGraph_Landmarks landmarks() {
+        WGraph_Landmarks result = this.getLandmarks();
+        if (result == null && this._landmark_count > 0) {
+            result = this.prepareLandmarks(this._landmark_count, this._landmark_strategy);
+        }
+        return result;
+    }
+
+    /**
+     * Preprocesses the graph for SearchMode.CH: builds its contraction hierarchy (see WGraph_CH).
+     * Intended for static graphs, the hierarchy is only valid while the graph's mode count does not change,
+     * after a change the next CH query builds it again.
+     *
+     * @return WGraph_CH - The built hierarchy, its report() describes the preprocessing cost
+     */
+    public WGraph_CH prepareHierarchy() {
+        WGraph_CH result = WGraph_CH.build(this.indexed());
+        this._ch_prepared = true;
+        this._ch = result;
+        return result;
+    }
+
+    /**
+     * Returns the contraction hierarchy of the graph if it is still valid (the graph did not change since it was built).
+     *
+     * @return WGraph_CH - The hierarchy, null if there is none or the graph changed
+     */
+    public WGraph_CH getHierarchy() {
+        WGraph_CH result = this._ch;
+        if (result != null && !result.isValidFor(this._g)) {
+            this._ch = null;
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the hierarchy for SearchMode.CH, rebuilding a stale one if prepareHierarchy() was called before.
+     *
+     * @return WGraph_CH - The valid hierarchy, null if prepareHierarchy() was never called
+     */
+    private WGraph_CH hierarchy() {
+        WGraph_CH result = this.getHierarchy();
+        if (result == null && this._ch_prepared) result = this.prepareHierarchy();
+        return result;
+    }
+
+    /**
+     * Runs a single point to point query with the received search mode.
+     * All the search states are taken from the per thread pool and returned to it before this method returns.
+     *
+     * @param src - The source node key
+     * @param dest - The target node key
+     * @param mode - The search algorithm to use
+     * @param h - The heuristic for SearchMode.ASTAR, may be null
+     * @param with_path - True if the path node indexes should be extracted as well
+     * @return Route - The distance (and path) found, null if the nodes do not exist or are not connected
+     */
+    private Route route(int src, int dest, SearchMode mode, distance_heuristic h, boolean with_path) {
+        if (mode == null) throw new IllegalArgumentException("search mode must not be null");
+        if (this._g.nodeSize()<=1) return null;
+        WGraph_CH ch = mode == SearchMode.CH ? this.hierarchy() : null;
+        indexed_graph g = ch != null ? ch.graph() : this.indexed();
+        int s = g.indexOf(src);
+        int t = g.indexOf(dest);
+        if (s == -1 || t == -1) return null;
+        if (s == t) return new Route(g, 0, new int[]{s});
+        if (ch != null) return ch.route(s, t, with_path);
+        SearchState fwd = SearchState.acquire(g.indexBound(), this._heap_arity);
+        try {
+            if (mode == SearchMode.BIDIRECTIONAL) {
+                SearchState bwd = SearchState.acquire(g.indexBound(), this._heap_arity);
+                try {
+                    return bidirectional(g, s, t, fwd, bwd, with_path);
+                } finally {
+                    SearchState.release(bwd);
                 }
             }
+            distance_heuristic goal = mode == SearchMode.ALT ? this.landmarks() : mode == SearchMode.ASTAR ? h : null;
+            boolean found = goal != null ? astar(g, s, t, goal, fwd) : dijkstra(g, s, t, fwd);
+            if (!found) return null;
+            return new Route(g, fwd.dist(t), with_path ? fwd.path(t) : null);
+        } finally {
+            SearchState.release(fwd);
         }
-        cur = this._g.getNode(dest);
-        if (!Objects.equals(cur.getInfo(), "y")) return null;
-        result.add(0,cur);
-        while (cur.getKey() != src) {
-            result.add(0,parent.get(cur));
-            cur = parent.get(cur);
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from src until dest is settled.
+     *
+     * @param g - The searched graph
+     * @param src - The source node index
+     * @param dest - The target node index
+     * @param st - A fresh search state
+     * @return True if dest was reached, its distance and path are then held by st
+     */
+    static boolean dijkstra(indexed_graph g, int src, int dest, SearchState st) {
+        st.start(src);
+        int u;
+        while ((u = st.poll()) != -1) {
+            if (u == dest) return true;
+            st.relax(g, u);
         }
-        this.reset();
+        return false;
+    }
+
+    /**
+     * Runs A* search from src until dest is settled: Dijkstra's algorithm where the queue is ordered by the
+     * distance from src plus the heuristic estimate of the distance left to dest, so the search is pulled
+     * towards the target and settles far fewer nodes. With a consistent heuristic a settled node is final.
+     * A heuristic which is only admissible (such as coordinates missing for some nodes, estimated as 0)
+     * may later give a settled node a shorter distance, the node is then reopened and queued again,
+     * so the distance found for dest is still the shortest.
+     *
+     * @param g - The searched graph
+     * @param src - The source node index
+     * @param dest - The target node index
+     * @param h - The heuristic, receives node keys
+     * @param st - A fresh search state
+     * @return True if dest was reached, its distance and path are then held by st
+     */
+    static boolean astar(indexed_graph g, int src, int dest, distance_heuristic h, SearchState st) {
+        AStar relax = new AStar(g, st, h, g.keyAt(dest));
+        st.start(src);
+        int u;
+        while ((u = st.poll()) != -1) {
+            if (u == dest) return true;
+            relax._cur = u;
+            relax._cur_dist = st.dist(u);
+            g.forEachNeighborIndex(u, relax);
+        }
+        return false;
+    }
+
+    /**
+     * This internal class relaxes edges for A* search, queuing each improved node by its distance plus its estimate,
+     * settled nodes included.
+     */
+    private static final class AStar implements edge_visitor {
+        private final indexed_graph _g;
+        private final SearchState _st;
+        private final distance_heuristic _h;
+        private final int _target;
+        private int _cur;
+        private double _cur_dist;
+
+        private AStar(indexed_graph g, SearchState st, distance_heuristic h, int target) {
+            this._g = g;
+            this._st = st;
+            this._h = h;
+            this._target = target;
+        }
+
+        @Override
+        public void visit(int ni, double w) {
+            double d = this._cur_dist+w;
+            if (d >= this._st.dist(ni)) return;
+            this._st.reopen(ni, d, this._cur, d+this._h.estimate(this._g.keyAt(ni), this._target));
+        }
+    }
+
+    /**
+     * Runs a bidirectional Dijkstra search: a forward search from src and a backward search from dest
+     * (the graph is undirected so both scan the same edges). Each step settles a node on the side whose
+     * queue has the smaller minimum, and every node reached by both sides is a candidate meeting point.
+     * The search stops once the two queue minimums add up to at least the best candidate found,
+     * no shorter path can exist at that point. Each side settles roughly the nodes within half the distance.
+     *
+     * @param g - The searched graph
+     * @param src - The source node index
+     * @param dest - The target node index
+     * @param fwd - A fresh search state for the forward search
+     * @param bwd - A fresh search state for the backward search
+     * @param with_path - True if the path node indexes should be extracted as well
+     * @return Route - The distance (and path) found, null if dest is not reachable
+     */
+    static Route bidirectional(indexed_graph g, int src, int dest, SearchState fwd, SearchState bwd, boolean with_path) {
+        Meeting meet = new Meeting();
+        fwd.start(src);
+        bwd.start(dest);
+        while (true) {
+            double top_f = fwd.peek();
+            double top_b = bwd.peek();
+            if (top_f == Double.POSITIVE_INFINITY || top_b == Double.POSITIVE_INFINITY) break;
+            if (top_f+top_b >= meet._best) break;
+            if (top_f <= top_b) meet.expand(g, fwd, bwd);
+            else meet.expand(g, bwd, fwd);
+        }
+        if (meet._node == -1) return null;
+        int[] path = null;
+        if (with_path) {
+            int[] head = fwd.path(meet._node);
+            int[] tail = bwd.path(meet._node);
+            path = Arrays.copyOf(head, head.length+tail.length-1);
+            for (int i=0; i<tail.length-1; i++) {
+                path[head.length+i] = tail[tail.length-2-i];
+            }
+        }
+        return new Route(g, meet._best, path);
+    }
+
+    /**
+     * This internal class relaxes edges for one side of a bidirectional search and keeps the best
+     * meeting point: the node reached by both sides with the smallest sum of the two distances.
+     */
+    private static final class Meeting implements edge_visitor {
+        private SearchState _side;
+        private SearchState _other;
+        private int _cur;
+        private double _cur_dist;
+        private double _best = Double.POSITIVE_INFINITY;
+        private int _node = -1;
+
+        /**
+         * Settles the next node of the received side and relaxes its edges.
+         *
+         * @param g - The searched graph
+         * @param side - The side to advance
+         * @param other - The opposite side
+         */
+        private void expand(indexed_graph g, SearchState side, SearchState other) {
+            this._side = side;
+            this._other = other;
+            this._cur = side.poll();
+            this._cur_dist = side.dist(this._cur);
+            this.meet(this._cur, this._cur_dist);
+            g.forEachNeighborIndex(this._cur, this);
+        }
+
+        @Override
+        public void visit(int ni, double w) {
+            double d = this._cur_dist+w;
+            if (this._side.update(ni, d, this._cur)) this.meet(ni, d);
+        }
+
+        /**
+         * Records the node as the meeting point if it was reached by the other side through a shorter total.
+         */
+        private void meet(int i, double d) {
+            if (!this._other.reached(i)) return;
+            double total = d+this._other.dist(i);
+            if (total < this._best) {
+                this._best = total;
+                this._node = i;
+            }
+        }
+    }
+
+    /**
+     * The result of a single point to point query: the graph it ran on, the distance and optionally the
+     * path node indexes from the source to the target.
+     */
+    static final class Route {
+        final indexed_graph _g;
+        final double _dist;
+        final int[] _path;
+
+        Route(indexed_graph g, double dist, int[] path) {
+            this._g = g;
+            this._dist = dist;
+            this._path = path;
+        }
+    }
+
+    /**
+     * The point to point search algorithms supported by shortestPathDist() and shortestPath().
+     */
+    public enum SearchMode {
+        /** Plain Dijkstra from the source until the target is settled */
+        DIJKSTRA,
+        /** Dijkstra from both ends at once, meeting in the middle */
+        BIDIRECTIONAL,
+        /** A* search guided by the heuristic set with setHeuristic() (plain Dijkstra without one) */
+        ASTAR,
+        /** A* search guided by the landmarks of prepareLandmarks() (plain Dijkstra without them) */
+        ALT,
+        /** Bidirectional upward search over the contraction hierarchy of prepareHierarchy() (plain Dijkstra without it) */
+        CH
+    }
+
+    /**
+     * Returns the underlying graph as an indexed_graph. Graphs that do not implement indexed_graph
+     * are compiled into a WGraph_CSR snapshot which is cached until the graph's mode count changes.
+     *
+     * @return indexed_graph - The graph to run the index based algorithms on
+     */
+    indexed_graph indexed() {
+        weighted_graph g = this._g;
+        if (g instanceof indexed_graph) return (indexed_graph) g;
+        Frozen f = this._frozen;
+        if (f == null || f._src != g || f._csr.getMC() != g.getMC()) {
+            f = new Frozen(g, WGraph_CSR.freeze(g));
+            this._frozen = f;
+        }
+        return f._csr;
+    }
+
+    /**
+     * A WGraph_CSR snapshot of a graph that does not implement indexed_graph, and the graph it was taken from.
+     */
+    private static final class Frozen {
+        private final weighted_graph _src;
+        private final WGraph_CSR _csr;
+
+        private Frozen(weighted_graph src, WGraph_CSR csr) {
+            this._src = src;
+            this._csr = csr;
+        }
+    }
+
+    /**
+     * Compiles the underlying graph into a read only WGraph_CSR snapshot and makes the snapshot
+     * the graph this class works on. Intended for graphs that are built once and then queried many times.
+     *
+     * @return WGraph_CSR - The compiled snapshot
+     */
+    public WGraph_CSR freeze() {
+        WGraph_CSR result = WGraph_CSR.freeze(this._g);
+        this._g = result;
         return result;
     }
 
     /**
      * Saves this weighted (undirected) graph to the given
-     * file name
+     * file name in the binary format of WGraph_IO, replacing the file if it exists.
+     * Valid landmark tables (see prepareLandmarks()) are saved next to it in file + LANDMARKS_SUFFIX.
      *
      * @param file - the file name (may include a relative path).
      * @return true - iff the file was successfully saved
@@ -191,14 +690,28 @@ public class WGraph_Algo implements weighted_graph_algorithms {
     public boolean save(String file) {
         boolean flag = false;
         try {
-            FileOutputStream f = new FileOutputStream (file, true);
-            ObjectOutputStream  graph = new ObjectOutputStream (f);
-            graph.writeObject(this._g);
-            f.close();
-            graph.close();
+            WGraph_IO.write(this._g, file);
+            this.saveLandmarks(file);
+            flag = true;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return flag;
+    }
+
+    /**
+     * Saves this graph to the given file name in the CSR layout of WGraph_Mapped, replacing the file if it exists.
+     * load() maps such a file instead of reading it, so the graph is queryable right away and read only.
+     *
+     * @param file - the file name (may include a relative path).
+     * @return true - iff the file was successfully saved
+     */
+    public boolean saveMapped(String file) {
+        boolean flag = false;
+        try {
+            WGraph_Mapped.write(this._g, file);
+            this.saveLandmarks(file);
             flag = true;
-        } catch (FileNotFoundException e) {
-            System.out.println("File not found");
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -207,6 +720,10 @@ public class WGraph_Algo implements weighted_graph_algorithms {
 
     /**
      * Loads a graph from a file to this graph_algo. Overrides the underlying graph.
+     * Reads the binary format of WGraph_IO as well as files saved with Java serialization by earlier versions.
+     * A file written by saveMapped() is memory mapped as a read only WGraph_Mapped.
+     * Landmark tables saved next to the file are loaded as well if they match the loaded graph's mode count,
+     * they are not recomputed once the graph changes unless prepareLandmarks() is called on the loaded graph.
      *
      * @param file - file name or path
      * @return true - if the graph was successfully loaded. Changes the underlying graph
@@ -215,25 +732,60 @@ public class WGraph_Algo implements weighted_graph_algorithms {
     public boolean load(String file) {
         boolean flag = false;
         try {
-            FileInputStream fi = new FileInputStream(file);
-            ObjectInputStream gr = new ObjectInputStream(fi);
-            this._g = (weighted_graph) gr.readObject();
-            fi.close();
-            gr.close();
+            this._g = WGraph_IO.read(file);
+            this._ch = null;
+            this._ch_prepared = false;
+            this._frozen = null;
+            this.loadLandmarks(file);
             flag = true;
-        } catch (IOException | ClassNotFoundException e) {
+        } catch (IOException e) {
             e.printStackTrace();
         }
         return flag;
     }
 
     /**
-     * Used to reset the tags and metadata of each node after finishing
-     * BFS and Dijkstra's algorithms
+     * Saves the valid landmark tables next to the graph file (file + LANDMARKS_SUFFIX).
+     * A tables file left from an earlier save is deleted if there are no valid tables,
+     * so it can never be loaded together with a different graph.
+     *
+     * @param file - the graph file name
+     * @throws IOException if the tables could not be written
+     */
+    private void saveLandmarks(String file) throws IOException {
+        WGraph_Landmarks lmk = this.getLandmarks();
+        if (lmk != null) lmk.save(file + LANDMARKS_SUFFIX);
+        else new File(file + LANDMARKS_SUFFIX).delete();
+    }
+
+    /**
+     * Loads the landmark tables saved next to the graph file, if there are any and they match the loaded graph.
+     * The tables are only an optimization, a missing or unreadable tables file leaves the graph without them.
+     *
+     * @param file - the graph file name
+     */
+    private void loadLandmarks(String file) {
+        this._landmarks = null;
+        this._landmark_count = 0;
+        this._landmark_strategy = null;
+        File lmk = new File(file + LANDMARKS_SUFFIX);
+        if (!lmk.isFile()) return;
+        try {
+            WGraph_Landmarks result = WGraph_Landmarks.load(lmk.getPath());
+            if (result.isValidFor(this._g)) this._landmarks = result;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Used to reset the tags and metadata of each node to their initial values.
+     * The algorithms in this class no longer mark the nodes, this method is kept for
+     * code that uses the tags and metadata for its own marking.
      */
     public void reset() {
         for (node_info n : this._g.getV()) {
-            if (n.getTag() != 0 || n.getInfo() != null) {
+            if (n.getTag() != -1 || n.getInfo() != null) {
                 n.setTag(-1);
                 n.setInfo(null);
             }
@@ -243,7 +795,8 @@ public class WGraph_Algo implements weighted_graph_algorithms {
     /**
      * This method overrides the equals method from Object interface.
      * It is used for graph comparing. Used vastly in testing and debugging.
-     * It uses the toString method which is override as well for this project.
+     * It compares the graph of this object with the received WGraph_DS: a WGraph_DS graph uses its own equals(),
+     * any other graph is compared node by node and edge by edge, both without building any String.
      *
      * For more information and for the full doc:
      * https://docs.oracle.com/javase/7/docs/api/java/lang/Object.html
@@ -253,8 +806,19 @@ public class WGraph_Algo implements weighted_graph_algorithms {
      */
     @Override
     public boolean equals(Object obj) {
-        weighted_graph g_obj = (WGraph_DS) obj;
-        if (_g.edgeSize() != g_obj.edgeSize() || _g.nodeSize() != g_obj.nodeSize()) return false;
-        return Objects.equals(_g.toString(), g_obj.toString());
+        if (!(obj instanceof WGraph_DS)) return false;
+        if (_g instanceof WGraph_DS) return _g.equals(obj);
+        return WGraph_DS.sameGraph(_g, (WGraph_DS) obj);
+    }
+
+    /**
+     * Returns a hash code consistent with equals(), the fingerprint of the graph of this object.
+     *
+     * @return INT - The hash code
+     */
+    @Override
+    public int hashCode() {
+        if (_g instanceof WGraph_DS) return _g.hashCode();
+        return Long.hashCode(WGraph_DS.fingerprintOf(_g));
     }
 }
@@ -0,0 +1,441 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class holds the all pairs shortest path distances of a graph in a flat row major n x n matrix, n being the
+ * number of nodes: the nodes get the rows 0..n-1 in node index order (see rowOf() and keyOf()) and the distance from
+ * the node of row i to the node of row j is at i * n + j, infinity when there is no path.
+ * The matrix is computed in one of two ways:
+ * 1 - FLOYD_WARSHALL: a blocked Floyd-Warshall over tiles of TILE x TILE entries. Round b first closes the diagonal
+ *     tile (b,b) over its own nodes, then every tile of row b and column b over the nodes of tile b, and then every
+ *     other tile (i,j) from the tiles (i,b) and (b,j). The tiles of the last two phases do not depend on each other,
+ *     so they run in parallel on a ForkJoinPool, and an update only touches three tiles which stay in the cache,
+ *     where the plain algorithm streams the whole matrix through it for every k. O(n^3) time whatever the edges
+ * 2 - DIJKSTRA: a complete Dijkstra search from every node over a pooled SearchState and a WGraph_CSR snapshot of
+ *     the graph, the searches in parallel on the pool, O(n * (e + n log n)) time which is far less on sparse graphs
+ * Method.AUTO picks DIJKSTRA for sparse graphs (see choose()) and FLOYD_WARSHALL for dense ones.
+ * Precision.FLOAT keeps the matrix in a float[], halving its memory, and rounds the distances to the nearest float
+ * (Floyd-Warshall then also adds them up in float precision).
+ * The matrix takes n^2 entries, so it suits graphs of up to a few tens of thousands of nodes (at most MAX_NODES).
+ * The result is a snapshot, it keeps the mode count of the graph it was computed on (see isValidFor()).
+ *
+ * @author shmuel.lavian
+ */
+public class WGraph_AllPairs {
+    /** The side of a Floyd-Warshall tile, a tile of doubles takes 32KB */
+    static final int TILE = 64;
+    /** The largest number of nodes whose matrix fits in a single array */
+    static final int MAX_NODES = 46340;
+    /** AUTO runs Dijkstra when SPARSE * (e + n) * log2(n) < n^2, an edge relaxation costs about SPARSE tile updates */
+    static final int SPARSE = 4;
+    private final indexed_graph _g;
+    private final int[] _row;
+    private final int[] _index;
+    private final double[] _dist;
+    private final float[] _fdist;
+    private final Method _method;
+    private final int _mc;
+    private final int _nodes;
+
+    /**
+     * The algorithm computing the matrix.
+     */
+    public enum Method {
+        /** DIJKSTRA for sparse graphs and FLOYD_WARSHALL for dense ones */
+        AUTO,
+        /** Blocked Floyd-Warshall over tiles of the matrix */
+        FLOYD_WARSHALL,
+        /** A complete Dijkstra search from every node */
+        DIJKSTRA
+    }
+
+    /**
+     * The type of the matrix entries.
+     */
+    public enum Precision {
+        /** A double[] matrix, 8 bytes per entry */
+        DOUBLE,
+        /** A float[] matrix, 4 bytes per entry */
+        FLOAT
+    }
+
+    /**
+     * Creates a result over an already computed matrix, used by compute().
+     */
+    private WGraph_AllPairs(indexed_graph g, int[] row, int[] index, double[] dist, float[] fdist, Method method,
+                            int mc, int nodes) {
+        this._g = g;
+        this._row = row;
+        this._index = index;
+        this._dist = dist;
+        this._fdist = fdist;
+        this._method = method;
+        this._mc = mc;
+        this._nodes = nodes;
+    }
+
+    /**
+     * Computes the double precision all pairs distances of the received graph, choosing the method by its density,
+     * using the common ForkJoinPool.
+     * The graph is compiled into a WGraph_CSR snapshot first (unless it is one), its O(n + e) cost is small next to
+     * the matrix and the searches run several times faster over its arrays.
+     *
+     * @param graph - The graph to search
+     * @return WGraph_AllPairs - The distances of the graph
+     * @throws IllegalArgumentException if the graph has more than MAX_NODES nodes
+     */
+    public static WGraph_AllPairs compute(weighted_graph graph) {
+        return compute(graph, Method.AUTO, Precision.DOUBLE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes the all pairs distances of the received graph with the received method and precision
+     * using the received pool.
+     *
+     * @param graph - The graph to search
+     * @param method - The algorithm, AUTO to choose by the density of the graph
+     * @param precision - The type of the matrix entries
+     * @param pool - The pool running the tiles or the searches
+     * @return WGraph_AllPairs - The distances of the graph
+     * @throws IllegalArgumentException if the graph has more than MAX_NODES nodes
+     */
+    public static WGraph_AllPairs compute(weighted_graph graph, Method method, Precision precision, ForkJoinPool pool) {
+        WGraph_CSR g = WGraph_CSR.freeze(graph);
+        int n = g.nodeSize();
+        if (n > MAX_NODES) {
+            throw new IllegalArgumentException("too many nodes for an all pairs matrix: " + n + " > " + MAX_NODES);
+        }
+        int bound = g.indexBound();
+        int[] row = new int[bound];
+        int[] index = new int[n];
+        int rows = 0;
+        for (int i=0; i<bound; i++) {
+            if (g.hasIndex(i)) {
+                index[rows] = i;
+                row[i] = rows++;
+            } else row[i] = -1;
+        }
+        if (method == Method.AUTO) method = choose(n, g.edgeSize());
+        double[] dist = precision == Precision.DOUBLE ? new double[n*n] : null;
+        float[] fdist = precision == Precision.FLOAT ? new float[n*n] : null;
+        if (method == Method.DIJKSTRA) {
+            if (n > 0) pool.invoke(new Searches(g, row, index, dist, fdist, 0, n));
+        } else {
+            if (dist != null) Arrays.fill(dist, Double.POSITIVE_INFINITY);
+            else Arrays.fill(fdist, Float.POSITIVE_INFINITY);
+            Edges edges = new Edges(row, dist, fdist);
+            for (int r=0; r<n; r++) {
+                edges._offset = r*n;
+                if (dist != null) dist[r*n+r] = 0;
+                else fdist[r*n+r] = 0;
+                g.forEachNeighborIndex(index[r], edges);
+            }
+            floydWarshall(dist, fdist, n, pool);
+        }
+        return new WGraph_AllPairs(g, row, index, dist, fdist, method, graph.getMC(), graph.nodeSize());
+    }
+
+    /**
+     * Chooses the method for a graph: a Dijkstra search from every node costs about n * (e + n) * log2(n),
+     * Floyd-Warshall n^3 much cheaper steps, so Dijkstra wins unless the graph is dense.
+     *
+     * @param n - The number of nodes
+     * @param e - The number of edges
+     * @return Method - DIJKSTRA or FLOYD_WARSHALL
+     */
+    static Method choose(int n, long e) {
+        double log = Math.max(1, Math.log(n) / Math.log(2));
+        return SPARSE*(e+n)*log < (double) n*n ? Method.DIJKSTRA : Method.FLOYD_WARSHALL;
+    }
+
+    /**
+     * Runs the blocked Floyd-Warshall rounds over the matrix, which holds the edge weights.
+     */
+    private static void floydWarshall(double[] dist, float[] fdist, int n, ForkJoinPool pool) {
+        int tiles = (n+TILE-1) / TILE;
+        for (int b=0; b<tiles; b++) {
+            update(dist, fdist, n, b, b, b);
+            if (tiles == 1) break;
+            pool.invoke(new Tiles(dist, fdist, n, tiles, b, false, 0, 2*tiles));
+            pool.invoke(new Tiles(dist, fdist, n, tiles, b, true, 0, tiles*tiles));
+        }
+    }
+
+    /**
+     * Lowers the entries of tile (ti,tj) through the nodes of tile tk, k in the outer loop so the tile may be
+     * one of the two it reads.
+     */
+    private static void update(double[] dist, float[] fdist, int n, int ti, int tj, int tk) {
+        int i0 = ti*TILE, i1 = Math.min(i0+TILE, n);
+        int j0 = tj*TILE, j1 = Math.min(j0+TILE, n);
+        int k0 = tk*TILE, k1 = Math.min(k0+TILE, n);
+        if (dist == null) {
+            update(fdist, n, i0, i1, j0, j1, k0, k1);
+            return;
+        }
+        for (int k=k0; k<k1; k++) {
+            int kn = k*n;
+            for (int i=i0; i<i1; i++) {
+                int in = i*n;
+                double dik = dist[in+k];
+                if (dik == Double.POSITIVE_INFINITY) continue;
+                for (int j=j0; j<j1; j++) {
+                    double via = dik+dist[kn+j];
+                    if (via < dist[in+j]) dist[in+j] = via;
+                }
+            }
+        }
+    }
+
+    /**
+     * The float version of update(), over the row and column ranges of the three tiles.
+     */
+    private static void update(float[] fdist, int n, int i0, int i1, int j0, int j1, int k0, int k1) {
+        for (int k=k0; k<k1; k++) {
+            int kn = k*n;
+            for (int i=i0; i<i1; i++) {
+                int in = i*n;
+                float dik = fdist[in+k];
+                if (dik == Float.POSITIVE_INFINITY) continue;
+                for (int j=j0; j<j1; j++) {
+                    float via = dik+fdist[kn+j];
+                    if (via < fdist[in+j]) fdist[in+j] = via;
+                }
+            }
+        }
+    }
+
+    /**
+     * This internal task updates a range of the tiles of a phase of round b, splitting the range in two until it
+     * is a single tile. The tiles of phase 2 (row and column b) are numbered 0..2*tiles-1, the tiles of phase 3
+     * (all the others) 0..tiles^2-1 in row major order, the tiles which do not belong to the phase are skipped.
+     */
+    private static final class Tiles extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final double[] _dist;
+        private final float[] _fdist;
+        private final int _n;
+        private final int _tiles;
+        private final int _b;
+        private final boolean _rest;
+        private final int _from;
+        private final int _to;
+
+        private Tiles(double[] dist, float[] fdist, int n, int tiles, int b, boolean rest, int from, int to) {
+            this._dist = dist;
+            this._fdist = fdist;
+            this._n = n;
+            this._tiles = tiles;
+            this._b = b;
+            this._rest = rest;
+            this._from = from;
+            this._to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this._to-this._from > 1) {
+                int mid = (this._from+this._to) >>> 1;
+                invokeAll(new Tiles(this._dist, this._fdist, this._n, this._tiles, this._b, this._rest, this._from, mid),
+                        new Tiles(this._dist, this._fdist, this._n, this._tiles, this._b, this._rest, mid, this._to));
+                return;
+            }
+            int t = this._from;
+            if (this._rest) {
+                int ti = t / this._tiles, tj = t % this._tiles;
+                if (ti != this._b && tj != this._b) update(this._dist, this._fdist, this._n, ti, tj, this._b);
+            } else if (t < this._tiles) {
+                if (t != this._b) update(this._dist, this._fdist, this._n, this._b, t, this._b);
+            } else if (t-this._tiles != this._b) {
+                update(this._dist, this._fdist, this._n, t-this._tiles, this._b, this._b);
+            }
+        }
+    }
+
+    /**
+     * This internal visitor writes the weights of the edges of a node into its row of the matrix.
+     */
+    private static final class Edges implements edge_visitor {
+        private final int[] _row;
+        private final double[] _dist;
+        private final float[] _fdist;
+        private int _offset;
+
+        private Edges(int[] row, double[] dist, float[] fdist) {
+            this._row = row;
+            this._dist = dist;
+            this._fdist = fdist;
+        }
+
+        @Override
+        public void visit(int ni, double w) {
+            int p = this._offset+this._row[ni];
+            if (this._dist != null) this._dist[p] = Math.min(this._dist[p], w);
+            else this._fdist[p] = Math.min(this._fdist[p], (float) w);
+        }
+    }
+
+    /**
+     * This internal task runs the Dijkstra searches of a range of rows, splitting the range in two until
+     * it is a single row, since every row is a complete search.
+     */
+    private static final class Searches extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final indexed_graph _g;
+        private final int[] _row;
+        private final int[] _index;
+        private final double[] _dist;
+        private final float[] _fdist;
+        private final int _from;
+        private final int _to;
+
+        private Searches(indexed_graph g, int[] row, int[] index, double[] dist, float[] fdist, int from, int to) {
+            this._g = g;
+            this._row = row;
+            this._index = index;
+            this._dist = dist;
+            this._fdist = fdist;
+            this._from = from;
+            this._to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this._to-this._from > 1) {
+                int mid = (this._from+this._to) >>> 1;
+                invokeAll(new Searches(this._g, this._row, this._index, this._dist, this._fdist, this._from, mid),
+                        new Searches(this._g, this._row, this._index, this._dist, this._fdist, mid, this._to));
+                return;
+            }
+            int n = this._index.length;
+            int offset = this._from*n;
+            SearchState st = SearchState.acquire(this._g.indexBound());
+            try {
+                st.start(this._index[this._from]);
+                int u;
+                while ((u = st.poll()) != -1) {
+                    st.relax(this._g, u);
+                }
+                for (int r=0; r<n; r++) {
+                    int i = this._index[r];
+                    double d = st.reached(i) ? st.dist(i) : Double.POSITIVE_INFINITY;
+                    if (this._dist != null) this._dist[offset+r] = d;
+                    else this._fdist[offset+r] = (float) d;
+                }
+            } finally {
+                SearchState.release(st);
+            }
+        }
+    }
+
+    /**
+     * Returns the length of the shortest path between two nodes.
+     *
+     * @param src - The source node ID
+     * @param dest - The target node ID
+     * @return double - The distance, -1 if a node does not exist or there is no path
+     */
+    public double dist(int src, int dest) {
+        int r = this.rowOf(src), c = this.rowOf(dest);
+        if (r == -1 || c == -1) return -1;
+        int p = r*this._index.length+c;
+        double d = this._dist != null ? this._dist[p] : this._fdist[p];
+        return d == Double.POSITIVE_INFINITY ? -1 : d;
+    }
+
+    /**
+     * Returns the row (and column) of a node in the matrix.
+     *
+     * @param key - The node ID
+     * @return INT - The row, -1 if the node was not in the graph
+     */
+    public int rowOf(int key) {
+        int i = this._g.indexOf(key);
+        return i < 0 || i >= this._row.length ? -1 : this._row[i];
+    }
+
+    /**
+     * Returns the key of the node of a row (and column) of the matrix.
+     *
+     * @param row - A row in the range [0, size())
+     * @return INT - The node ID
+     */
+    public int keyOf(int row) {
+        return this._g.keyAt(this._index[row]);
+    }
+
+    /**
+     * Returns the number of rows (and columns) of the matrix, the number of nodes of the graph.
+     *
+     * @return INT - The matrix side
+     */
+    public int size() {
+        return this._index.length;
+    }
+
+    /**
+     * Returns the double precision matrix, row major with infinity where there is no path.
+     *
+     * @return double[] - The matrix, not a copy, null in Precision.FLOAT
+     */
+    public double[] matrix() {
+        return this._dist;
+    }
+
+    /**
+     * Returns the single precision matrix, row major with infinity where there is no path.
+     *
+     * @return float[] - The matrix, not a copy, null in Precision.DOUBLE
+     */
+    public float[] floatMatrix() {
+        return this._fdist;
+    }
+
+    /**
+     * Returns the type of the matrix entries.
+     *
+     * @return Precision - DOUBLE or FLOAT
+     */
+    public Precision precision() {
+        return this._dist != null ? Precision.DOUBLE : Precision.FLOAT;
+    }
+
+    /**
+     * Returns the algorithm which computed the matrix, the one chosen for Method.AUTO.
+     *
+     * @return Method - FLOYD_WARSHALL or DIJKSTRA
+     */
+    public Method method() {
+        return this._method;
+    }
+
+    /**
+     * Returns the WGraph_CSR snapshot of the graph whose node indexes rowOf() uses.
+     *
+     * @return indexed_graph - The searched snapshot
+     */
+    public indexed_graph graph() {
+        return this._g;
+    }
+
+    /**
+     * Returns the mode count of the graph at the time the matrix was computed.
+     *
+     * @return INT - The graph's mode count
+     */
+    public int getMC() {
+        return this._mc;
+    }
+
+    /**
+     * Checks if the matrix still describes the received graph, any change to the graph after
+     * it was computed (a different mode count) invalidates it.
+     *
+     * @param g - The graph to check against
+     * @return True if the matrix is up to date for g
+     */
+    public boolean isValidFor(weighted_graph g) {
+        return g != null && g.getMC() == this._mc && g.nodeSize() == this._nodes;
+    }
+}
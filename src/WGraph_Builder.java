@@ -0,0 +1,290 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class builds large graphs in bulk. Instead of updating the graph's maps on every connect(), the builder
+ * maps every node key to a dense index with a primitive IntIntHashMap and appends every edge to three primitive
+ * arrays, both pre-sized from the expected node and edge counts. build() then compiles the buffered edges at once:
+ * 1 - A counting pass places both directions of every edge into per node rows, in insertion order
+ * 2 - The rows are sorted by the neighbor index and deduplicated in parallel on a ForkJoinPool,
+ *     the sort is stable so the last weight given to an edge wins
+ * 3 - The finished rows are installed into a new WGraph_DS (or a WGraph_CSR snapshot) in a single pass,
+ *     with every neighbor Map allocated at its final size
+ * The semantics follow WGraph_DS.connect(): self loops and negative weights are ignored and a repeated edge
+ * keeps the last weight. Unlike WGraph_DS, connect() adds the edge's nodes when they do not exist yet.
+ * The builder keeps its nodes and edges, so build() may be called again after adding more of them.
+ *
+ * @author shmuel.lavian
+ */
+public class WGraph_Builder {
+    /** The number of rows sorted by a single task */
+    static final int GRAIN = 1 << 12;
+    private final IntIntHashMap _index;
+    private int[] _keys;
+    private int _n;
+    private int[] _from;
+    private int[] _to;
+    private double[] _w;
+    private int _m;
+
+    /**
+     * Creates a new empty builder.
+     */
+    public WGraph_Builder() {
+        this(16, 16);
+    }
+
+    /**
+     * Creates a new empty builder pre-sized for the expected number of nodes and edges.
+     *
+     * @param expected_nodes - The number of nodes expected to be added
+     * @param expected_edges - The number of edges expected to be connected (repeated edges included)
+     */
+    public WGraph_Builder(int expected_nodes, long expected_edges) {
+        int n = Math.max(expected_nodes, 16);
+        int m = (int) Math.min(Math.max(expected_edges, 16), Integer.MAX_VALUE-8);
+        this._index = new IntIntHashMap(n);
+        this._keys = new int[n];
+        this._from = new int[m];
+        this._to = new int[m];
+        this._w = new double[m];
+    }
+
+    /**
+     * Adds a new node with the given key, does nothing if it already exists.
+     *
+     * @param key - The key of the new node
+     */
+    public void addNode(int key) {
+        this.index(key);
+    }
+
+    /**
+     * Buffers an edge between node1 and node2 with the given weight, adding the nodes if they do not exist.
+     * Self loops and negative weights are ignored, if the edge is given again the last weight wins.
+     *
+     * @param node1 - First node
+     * @param node2 - Second node
+     * @param w - Given weight to be set between them
+     */
+    public void connect(int node1, int node2, double w) {
+        if (node1 == node2 || w < 0) return;
+        int a = this.index(node1);
+        int b = this.index(node2);
+        if (this._m == this._from.length) {
+            if (this._m == Integer.MAX_VALUE-8) throw new IllegalStateException("too many buffered edges");
+            int cap = (int) Math.min(this._m*2L, Integer.MAX_VALUE-8);
+            this._from = Arrays.copyOf(this._from, cap);
+            this._to = Arrays.copyOf(this._to, cap);
+            this._w = Arrays.copyOf(this._w, cap);
+        }
+        this._from[this._m] = a;
+        this._to[this._m] = b;
+        this._w[this._m] = w;
+        this._m++;
+    }
+
+    /**
+     * Returns the number of nodes added so far.
+     *
+     * @return INT - The node count
+     */
+    public int nodeSize() {
+        return this._n;
+    }
+
+    /**
+     * Returns the number of buffered edges, repeated edges are counted every time they were given.
+     *
+     * @return INT - The buffered edge count
+     */
+    public int bufferedEdges() {
+        return this._m;
+    }
+
+    /**
+     * Compiles the buffered nodes and edges into a new WGraph_DS using the common ForkJoinPool.
+     * Runs in O(n + e log d) time, d being the maximal node degree.
+     *
+     * @return WGraph_DS - The new graph, its mode count is the number of nodes plus the number of edges
+     */
+    public WGraph_DS build() {
+        return this.build(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Compiles the buffered nodes and edges into a new WGraph_DS using the received pool.
+     *
+     * @param pool - The pool sorting the rows
+     * @return WGraph_DS - The new graph
+     */
+    WGraph_DS build(ForkJoinPool pool) {
+        Rows r = this.rows(pool);
+        return WGraph_DS.fromRows(this._keys, this._n, r._offsets, r._targets, r._weights);
+    }
+
+    /**
+     * Compiles the buffered nodes and edges into a new read only WGraph_CSR snapshot, skipping the WGraph_DS.
+     *
+     * @return WGraph_CSR - The new snapshot, its mode count is the number of nodes plus the number of edges
+     */
+    public WGraph_CSR buildCSR() {
+        Rows r = this.rows(ForkJoinPool.commonPool());
+        IntIntHashMap index = new IntIntHashMap(this._n);
+        for (int i=0; i<this._n; i++) {
+            index.put(this._keys[i], i);
+        }
+        double[] tags = new double[this._n];
+        Arrays.fill(tags, -1);
+        int edges = r._offsets[this._n]/2;
+        return new WGraph_CSR(index, Arrays.copyOf(this._keys, this._n), r._offsets, r._targets, r._weights,
+                tags, new String[this._n], this._n+edges);
+    }
+
+    /**
+     * Returns the dense index of a node, adding the node if it does not exist.
+     *
+     * @param key - The node ID
+     * @return INT - The node index
+     */
+    private int index(int key) {
+        int i = this._index.get(key);
+        if (i != -1) return i;
+        if (this._n == this._keys.length) this._keys = Arrays.copyOf(this._keys, this._n*2);
+        this._keys[this._n] = key;
+        this._index.put(key, this._n);
+        return this._n++;
+    }
+
+    /**
+     * Places both directions of every buffered edge into sorted and deduplicated rows.
+     *
+     * @param pool - The pool sorting the rows
+     * @return Rows - The compiled rows
+     */
+    private Rows rows(ForkJoinPool pool) {
+        int n = this._n;
+        if (2L*this._m > Integer.MAX_VALUE-8) throw new IllegalStateException("too many edges for a single graph");
+        int[] offsets = new int[n+1];
+        for (int e=0; e<this._m; e++) {
+            offsets[this._from[e]+1]++;
+            offsets[this._to[e]+1]++;
+        }
+        for (int i=0; i<n; i++) {
+            offsets[i+1] += offsets[i];
+        }
+        int[] pos = Arrays.copyOf(offsets, n);
+        int[] targets = new int[2*this._m];
+        double[] weights = new double[2*this._m];
+        for (int e=0; e<this._m; e++) {
+            int a = this._from[e];
+            int b = this._to[e];
+            targets[pos[a]] = b;
+            weights[pos[a]++] = this._w[e];
+            targets[pos[b]] = a;
+            weights[pos[b]++] = this._w[e];
+        }
+        int[] degrees = pos;
+        Dedup task = new Dedup(offsets, targets, weights, degrees, 0, n);
+        if (n > GRAIN) pool.invoke(task);
+        else task.compute();
+        int[] result = new int[n+1];
+        for (int i=0; i<n; i++) {
+            result[i+1] = result[i]+degrees[i];
+        }
+        if (result[n] == targets.length) return new Rows(offsets, targets, weights);
+        int[] t = new int[result[n]];
+        double[] w = new double[result[n]];
+        for (int i=0; i<n; i++) {
+            System.arraycopy(targets, offsets[i], t, result[i], degrees[i]);
+            System.arraycopy(weights, offsets[i], w, result[i], degrees[i]);
+        }
+        return new Rows(result, t, w);
+    }
+
+    /**
+     * The compiled rows of the graph.
+     */
+    private static final class Rows {
+        private final int[] _offsets;
+        private final int[] _targets;
+        private final double[] _weights;
+
+        private Rows(int[] offsets, int[] targets, double[] weights) {
+            this._offsets = offsets;
+            this._targets = targets;
+            this._weights = weights;
+        }
+    }
+
+    /**
+     * This internal task sorts a range of rows by the neighbor index and drops the repeated neighbors,
+     * keeping the last weight, splitting the range in two until it is at most GRAIN rows long.
+     * The deduplicated length of row i is written to degrees[i].
+     */
+    private static final class Dedup extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int[] _offsets;
+        private final int[] _targets;
+        private final double[] _weights;
+        private final int[] _degrees;
+        private final int _from;
+        private final int _to;
+
+        private Dedup(int[] offsets, int[] targets, double[] weights, int[] degrees, int from, int to) {
+            this._offsets = offsets;
+            this._targets = targets;
+            this._weights = weights;
+            this._degrees = degrees;
+            this._from = from;
+            this._to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this._to-this._from > GRAIN) {
+                int mid = (this._from+this._to) >>> 1;
+                invokeAll(new Dedup(this._offsets, this._targets, this._weights, this._degrees, this._from, mid),
+                        new Dedup(this._offsets, this._targets, this._weights, this._degrees, mid, this._to));
+                return;
+            }
+            long[] order = new long[16];
+            double[] w = new double[16];
+            for (int i=this._from; i<this._to; i++) {
+                int start = this._offsets[i];
+                int deg = this._offsets[i+1]-start;
+                this._degrees[i] = deg;
+                if (deg < 2 || this.increasing(start, deg)) continue;
+                if (deg > order.length) {
+                    order = new long[Math.max(deg, order.length*2)];
+                    w = new double[order.length];
+                }
+                for (int j=0; j<deg; j++) {
+                    order[j] = ((long) this._targets[start+j] << 32) | j;
+                    w[j] = this._weights[start+j];
+                }
+                Arrays.sort(order, 0, deg);
+                int size = 0;
+                for (int j=0; j<deg; j++) {
+                    int t = (int) (order[j] >>> 32);
+                    if (j+1 < deg && (int) (order[j+1] >>> 32) == t) continue;
+                    this._targets[start+size] = t;
+                    this._weights[start+size] = w[(int) order[j]];
+                    size++;
+                }
+                this._degrees[i] = size;
+            }
+        }
+
+        /**
+         * Checks if a row is already strictly increasing, so it has no repeated neighbors and needs no sort.
+         */
+        private boolean increasing(int start, int deg) {
+            for (int j=1; j<deg; j++) {
+                if (this._targets[start+j-1] >= this._targets[start+j]) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,559 @@
+import java.util.Arrays;
+
+/**
+ * This class implements a Contraction Hierarchy (CH) of a static weighted graph for very fast point to point queries.
+ * Preprocessing contracts the nodes one by one in order of importance: a contracted node is removed from the
+ * remaining graph, and for every pair of its neighbors whose shortest path runs through it a shortcut edge is added
+ * (unless a witness search finds another path that is not longer). The contraction order (the rank) is chosen by
+ * the edge difference (shortcuts added minus edges removed) plus the number of already contracted neighbors,
+ * kept up to date with lazy updates.
+ * Every edge, original or shortcut, is kept only at its lower ranked end, in a single upward CSR graph
+ * (offsets[], targets[], weights[]). The graph is undirected so the downward graph is the same edges read
+ * backwards, and the backward search of a query runs over the upward graph as well.
+ * A query is a bidirectional Dijkstra search where both sides only move to higher ranked nodes (nodes reached
+ * through a higher neighbor by a shorter distance are stalled), so it settles a few hundred nodes where Dijkstra
+ * settles a large part of the graph. Every shortcut remembers the node it bypasses (middles[]), so a path found
+ * over shortcuts is unpacked back into the original edges.
+ * The hierarchy keeps the mode count of the graph it was built from, any later change invalidates it (see isValidFor()).
+ *
+ * @author shmuel.lavian
+ */
+public class WGraph_CH {
+    /** The maximal number of nodes settled by a single witness search, a search cut short adds the shortcut */
+    static final int WITNESS_LIMIT = 100;
+    private final indexed_graph _g;
+    private final int[] _rank;
+    private final int[] _offsets;
+    private final int[] _targets;
+    private final double[] _weights;
+    private final int[] _middles;
+    private final int _shortcuts;
+    private final int _mc;
+    private final int _nodes;
+    private final long _millis;
+
+    /**
+     * Creates a hierarchy over an already compiled upward graph, used by build().
+     */
+    private WGraph_CH(indexed_graph g, int[] rank, int[] offsets, int[] targets, double[] weights, int[] middles,
+                      int shortcuts, int mc, int nodes, long millis) {
+        this._g = g;
+        this._rank = rank;
+        this._offsets = offsets;
+        this._targets = targets;
+        this._weights = weights;
+        this._middles = middles;
+        this._shortcuts = shortcuts;
+        this._mc = mc;
+        this._nodes = nodes;
+        this._millis = millis;
+    }
+
+    /**
+     * Builds the contraction hierarchy of the received graph.
+     * Graphs that do not implement indexed_graph are compiled into a WGraph_CSR snapshot first.
+     *
+     * @param graph - The graph to preprocess
+     * @return WGraph_CH - The hierarchy of the graph
+     */
+    public static WGraph_CH build(weighted_graph graph) {
+        long start = System.nanoTime();
+        indexed_graph g = graph instanceof indexed_graph ? (indexed_graph) graph : WGraph_CSR.freeze(graph);
+        int bound = g.indexBound();
+        Contractor c = new Contractor(g);
+        IndexedDHeap queue = new IndexedDHeap(SearchState.DEFAULT_ARITY);
+        queue.ensureCapacity(bound);
+        int[] rank = new int[bound];
+        Arrays.fill(rank, -1);
+        int[][] up_to = new int[bound][];
+        double[][] up_w = new double[bound][];
+        int[][] up_mid = new int[bound][];
+        int next = 0;
+        int shortcuts = 0;
+        try {
+            for (int v=0; v<bound; v++) {
+                if (g.hasIndex(v)) queue.insertOrDecrease(v, c.priority(v));
+            }
+            while (!queue.isEmpty()) {
+                int v = queue.poll();
+                double p = c.priority(v);
+                if (p > queue.minKey()) {
+                    queue.insertOrDecrease(v, p);
+                    continue;
+                }
+                rank[v] = next++;
+                int deg = c._deg[v];
+                up_to[v] = Arrays.copyOf(c._to[v], deg);
+                up_w[v] = Arrays.copyOf(c._w[v], deg);
+                up_mid[v] = Arrays.copyOf(c._mid[v], deg);
+                shortcuts += c.contract(v);
+            }
+        } finally {
+            SearchState.release(c._st);
+        }
+        int[] offsets = new int[bound+1];
+        for (int v=0; v<bound; v++) {
+            offsets[v+1] = offsets[v]+(up_to[v] == null ? 0 : up_to[v].length);
+        }
+        int[] targets = new int[offsets[bound]];
+        double[] weights = new double[offsets[bound]];
+        int[] middles = new int[offsets[bound]];
+        long[] order = new long[16];
+        for (int v=0; v<bound; v++) {
+            int deg = offsets[v+1]-offsets[v];
+            if (deg > order.length) order = new long[Math.max(deg, order.length*2)];
+            for (int j=0; j<deg; j++) {
+                order[j] = ((long) up_to[v][j] << 32) | j;
+            }
+            Arrays.sort(order, 0, deg);
+            for (int j=0; j<deg; j++) {
+                int e = (int) order[j];
+                targets[offsets[v]+j] = up_to[v][e];
+                weights[offsets[v]+j] = up_w[v][e];
+                middles[offsets[v]+j] = up_mid[v][e];
+            }
+            up_to[v] = null;
+            up_w[v] = null;
+            up_mid[v] = null;
+        }
+        return new WGraph_CH(g, rank, offsets, targets, weights, middles, shortcuts, graph.getMC(), graph.nodeSize(),
+                (System.nanoTime()-start)/1000000);
+    }
+
+    /**
+     * This internal class holds the remaining graph while the nodes are contracted.
+     * Each uncontracted node keeps growable arrays of its edges to the other uncontracted nodes, every edge
+     * with the node it bypasses (-1 for an original edge).
+     */
+    private static final class Contractor {
+        private final int[][] _to;
+        private final double[][] _w;
+        private final int[][] _mid;
+        private final int[] _deg;
+        private final int[] _deleted;
+        private final int[] _target;
+        private int _stamp;
+        private final SearchState _st;
+        private int[] _sc_from = new int[16];
+        private int[] _sc_to = new int[16];
+        private double[] _sc_w = new double[16];
+        private int _sc_size;
+        private int _sc_node = -1;
+
+        /**
+         * Copies the edges of the received graph into the growable arrays.
+         *
+         * @param g - The graph to contract
+         */
+        private Contractor(indexed_graph g) {
+            int bound = g.indexBound();
+            this._to = new int[bound][];
+            this._w = new double[bound][];
+            this._mid = new int[bound][];
+            this._deg = new int[bound];
+            this._deleted = new int[bound];
+            this._target = new int[bound];
+            for (int v=0; v<bound; v++) {
+                if (!g.hasIndex(v)) continue;
+                int[] deg = {0};
+                g.forEachNeighborIndex(v, (ni, w) -> deg[0]++);
+                int cap = Math.max(deg[0], 2);
+                this._to[v] = new int[cap];
+                this._w[v] = new double[cap];
+                this._mid[v] = new int[cap];
+                int node = v;
+                g.forEachNeighborIndex(v, (ni, w) -> {
+                    int e = this._deg[node]++;
+                    this._to[node][e] = ni;
+                    this._w[node][e] = w;
+                    this._mid[node][e] = -1;
+                });
+            }
+            this._st = SearchState.acquire(bound);
+        }
+
+        /**
+         * Returns the contraction priority of the node: the edge difference of contracting it now plus
+         * the number of its neighbors that were already contracted. Lower is contracted first.
+         *
+         * @param v - The node index
+         * @return double - The node's priority
+         */
+        private double priority(int v) {
+            return this.shortcuts(v)-this._deg[v]+this._deleted[v];
+        }
+
+        /**
+         * Finds the shortcuts contracting the node would need and leaves them in the _sc_ buffers,
+         * where contract() reuses them if it is called for the same node right after.
+         * For every neighbor u a witness search from u (that skips v) runs until it passes the longest path
+         * through v to a later neighbor or settles WITNESS_LIMIT nodes, every later neighbor not reached
+         * by a path shorter than the one through v needs a shortcut.
+         *
+         * @param v - The node index
+         * @return INT - The number of shortcuts needed
+         */
+        private int shortcuts(int v) {
+            this._sc_size = 0;
+            this._sc_node = v;
+            int deg = this._deg[v];
+            int[] to = this._to[v];
+            double[] w = this._w[v];
+            for (int i=0; i<deg-1; i++) {
+                int u = to[i];
+                double max = 0;
+                for (int j=i+1; j<deg; j++) {
+                    max = Math.max(max, w[i]+w[j]);
+                }
+                this.witness(u, v, max, to, i+1, deg);
+                for (int j=i+1; j<deg; j++) {
+                    double via = w[i]+w[j];
+                    if (this._st.dist(to[j]) > via) this.addShortcut(u, to[j], via);
+                }
+            }
+            return this._sc_size;
+        }
+
+        /**
+         * Runs a bounded Dijkstra search from u over the remaining graph without passing through v.
+         * The search also stops once all the received target nodes are settled.
+         *
+         * @param u - The source node index
+         * @param v - The node index being contracted
+         * @param max - The distance after which the search stops
+         * @param targets - The neighbors of v
+         * @param from - The first target position in targets
+         * @param to_pos - The position after the last target in targets
+         */
+        private void witness(int u, int v, double max, int[] targets, int from, int to_pos) {
+            SearchState st = this._st;
+            st.begin(this._deg.length);
+            st.start(u);
+            int settled = 0;
+            int left = to_pos-from;
+            this._stamp++;
+            for (int j=from; j<to_pos; j++) {
+                this._target[targets[j]] = this._stamp;
+            }
+            while (left > 0 && st.peek() <= max && settled < WITNESS_LIMIT) {
+                int x = st.poll();
+                if (this._target[x] == this._stamp) left--;
+                settled++;
+                double d = st.dist(x);
+                int[] to = this._to[x];
+                double[] w = this._w[x];
+                for (int e=0; e<this._deg[x]; e++) {
+                    if (to[e] != v) st.update(to[e], d+w[e], x);
+                }
+            }
+        }
+
+        private void addShortcut(int from, int to, double w) {
+            if (this._sc_size == this._sc_from.length) {
+                int cap = this._sc_size*2;
+                this._sc_from = Arrays.copyOf(this._sc_from, cap);
+                this._sc_to = Arrays.copyOf(this._sc_to, cap);
+                this._sc_w = Arrays.copyOf(this._sc_w, cap);
+            }
+            this._sc_from[this._sc_size] = from;
+            this._sc_to[this._sc_size] = to;
+            this._sc_w[this._sc_size] = w;
+            this._sc_size++;
+        }
+
+        /**
+         * Contracts the node: removes it from its neighbors' edges and adds the shortcuts between them.
+         *
+         * @param v - The node index
+         * @return INT - The number of shortcuts added
+         */
+        private int contract(int v) {
+            int count = this._sc_node == v ? this._sc_size : this.shortcuts(v);
+            for (int i=0; i<this._deg[v]; i++) {
+                int u = this._to[v][i];
+                this.removeEdge(u, v);
+                this._deleted[u]++;
+            }
+            for (int i=0; i<count; i++) {
+                this.putEdge(this._sc_from[i], this._sc_to[i], this._sc_w[i], v);
+                this.putEdge(this._sc_to[i], this._sc_from[i], this._sc_w[i], v);
+            }
+            this._sc_node = -1;
+            this._deg[v] = 0;
+            this._to[v] = null;
+            this._w[v] = null;
+            this._mid[v] = null;
+            return count;
+        }
+
+        private void removeEdge(int u, int v) {
+            int[] to = this._to[u];
+            int last = --this._deg[u];
+            for (int e=0; e<=last; e++) {
+                if (to[e] == v) {
+                    to[e] = to[last];
+                    this._w[u][e] = this._w[u][last];
+                    this._mid[u][e] = this._mid[u][last];
+                    return;
+                }
+            }
+            this._deg[u]++;
+        }
+
+        /**
+         * Adds the edge u->t, or lowers the weight of an existing one.
+         */
+        private void putEdge(int u, int t, double w, int mid) {
+            int deg = this._deg[u];
+            for (int e=0; e<deg; e++) {
+                if (this._to[u][e] == t) {
+                    if (w < this._w[u][e]) {
+                        this._w[u][e] = w;
+                        this._mid[u][e] = mid;
+                    }
+                    return;
+                }
+            }
+            if (deg == this._to[u].length) {
+                this._to[u] = Arrays.copyOf(this._to[u], deg*2);
+                this._w[u] = Arrays.copyOf(this._w[u], deg*2);
+                this._mid[u] = Arrays.copyOf(this._mid[u], deg*2);
+            }
+            this._to[u][deg] = t;
+            this._w[u][deg] = w;
+            this._mid[u][deg] = mid;
+            this._deg[u]++;
+        }
+    }
+
+    /**
+     * Returns the length of the shortest path between two nodes.
+     *
+     * @param src - start node key
+     * @param dest - end (target) node key
+     * @return double - The shortest path distance, -1 if there is no path or a node does not exist
+     */
+    public double shortestPathDist(int src, int dest) {
+        int s = this._g.indexOf(src);
+        int t = this._g.indexOf(dest);
+        if (s == -1 || t == -1) return -1;
+        WGraph_Algo.Route r = this.route(s, t, false);
+        return r == null ? -1 : r._dist;
+    }
+
+    /**
+     * Runs a single query: a bidirectional search from both ends over the upward graph, alternating the side
+     * with the smaller queue minimum. Every node settled by one side and reached by the other is a candidate
+     * meeting point, a side stops once its queue minimum is not smaller than the best candidate.
+     *
+     * @param s - The source node index
+     * @param t - The target node index
+     * @param with_path - True if the path should be unpacked into the original edges
+     * @return Route - The distance (and path node indexes) found, null if t is not reachable
+     */
+    WGraph_Algo.Route route(int s, int t, boolean with_path) {
+        if (s == t) return new WGraph_Algo.Route(this._g, 0, new int[]{s});
+        int bound = this._rank.length;
+        SearchState fwd = SearchState.acquire(bound);
+        SearchState bwd = SearchState.acquire(bound);
+        try {
+            fwd.start(s);
+            bwd.start(t);
+            double best = Double.POSITIVE_INFINITY;
+            int meet = -1;
+            while (true) {
+                double top_f = fwd.peek();
+                double top_b = bwd.peek();
+                if (top_f >= best) top_f = Double.POSITIVE_INFINITY;
+                if (top_b >= best) top_b = Double.POSITIVE_INFINITY;
+                if (top_f == Double.POSITIVE_INFINITY && top_b == Double.POSITIVE_INFINITY) break;
+                SearchState side = top_f <= top_b ? fwd : bwd;
+                SearchState other = side == fwd ? bwd : fwd;
+                int u = side.poll();
+                double d = side.dist(u);
+                if (other.reached(u) && d+other.dist(u) < best) {
+                    best = d+other.dist(u);
+                    meet = u;
+                }
+                if (this.stalled(side, u, d)) continue;
+                for (int p=this._offsets[u]; p<this._offsets[u+1]; p++) {
+                    side.update(this._targets[p], d+this._weights[p], u);
+                }
+            }
+            if (meet == -1) return null;
+            int[] path = null;
+            if (with_path) {
+                int[] head = fwd.path(meet);
+                int[] tail = bwd.path(meet);
+                int[] up = Arrays.copyOf(head, head.length+tail.length-1);
+                for (int i=0; i<tail.length-1; i++) {
+                    up[head.length+i] = tail[tail.length-2-i];
+                }
+                path = this.unpack(up);
+            }
+            return new WGraph_Algo.Route(this._g, best, path);
+        } finally {
+            SearchState.release(bwd);
+            SearchState.release(fwd);
+        }
+    }
+
+    /**
+     * Checks if a settled node can be stalled (stall-on-demand): if a higher ranked neighbor was reached with a
+     * distance that gives the node a shorter one, the node's distance is not a shortest one and its edges
+     * can only lead to paths that are not shortest either, so they are not relaxed.
+     *
+     * @param side - The search side that settled the node
+     * @param u - The settled node index
+     * @param d - The node's distance on that side
+     * @return True if the node's edges should not be relaxed
+     */
+    private boolean stalled(SearchState side, int u, double d) {
+        for (int p=this._offsets[u]; p<this._offsets[u+1]; p++) {
+            if (side.dist(this._targets[p])+this._weights[p] < d) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Runs a complete upward search from a single node (one side of a query, with no other side to meet) and
+     * reports every settled node that is not stalled with its distance. The shortest distance between two nodes
+     * is the minimum over the nodes reported by both their searches of the sum of the two distances,
+     * which is how WGraph_DistanceMatrix combines the searches of many sources and targets.
+     *
+     * @param s - The start node index
+     * @param settled - Receives the index and the upward distance of every node settled and not stalled
+     */
+    void upward(int s, edge_visitor settled) {
+        SearchState st = SearchState.acquire(this._rank.length);
+        try {
+            st.start(s);
+            int u;
+            while ((u = st.poll()) != -1) {
+                double d = st.dist(u);
+                if (this.stalled(st, u, d)) continue;
+                settled.visit(u, d);
+                for (int p=this._offsets[u]; p<this._offsets[u+1]; p++) {
+                    st.update(this._targets[p], d+this._weights[p], u);
+                }
+            }
+        } finally {
+            SearchState.release(st);
+        }
+    }
+
+    /**
+     * Replaces every shortcut of a path in the hierarchy by the two edges it bypasses, recursively,
+     * until the path only uses edges of the original graph.
+     *
+     * @param up - The path node indexes over the hierarchy edges
+     * @return int[] - The path node indexes over the original edges
+     */
+    private int[] unpack(int[] up) {
+        int[] result = new int[up.length*2];
+        int size = 0;
+        result[size++] = up[0];
+        int[] stack = new int[16];
+        for (int i=1; i<up.length; i++) {
+            int top = 0;
+            stack[top++] = up[i];
+            int from = up[i-1];
+            while (top > 0) {
+                int to = stack[top-1];
+                int mid = this._middles[this.edge(from, to)];
+                if (mid == -1) {
+                    if (size == result.length) result = Arrays.copyOf(result, size*2);
+                    result[size++] = to;
+                    from = to;
+                    top--;
+                }
+                else {
+                    if (top == stack.length) stack = Arrays.copyOf(stack, top*2);
+                    stack[top++] = mid;
+                }
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Returns the position of the edge between two nodes, stored in the row of the lower ranked one.
+     */
+    private int edge(int a, int b) {
+        if (this._rank[a] > this._rank[b]) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        return Arrays.binarySearch(this._targets, this._offsets[a], this._offsets[a+1], b);
+    }
+
+    /**
+     * Returns the indexed graph the hierarchy was built over, the query node indexes are its indexes.
+     *
+     * @return indexed_graph - The preprocessed graph
+     */
+    indexed_graph graph() {
+        return this._g;
+    }
+
+    /**
+     * Returns the contraction rank of a node, the nodes contracted first have the lowest ranks.
+     *
+     * @param key - The node ID
+     * @return INT - The node's rank, -1 if the node does not exist
+     */
+    public int rank(int key) {
+        int i = this._g.indexOf(key);
+        return i == -1 ? -1 : this._rank[i];
+    }
+
+    /**
+     * Returns the number of shortcut edges added by the preprocessing.
+     *
+     * @return INT - The number of shortcuts
+     */
+    public int shortcuts() {
+        return this._shortcuts;
+    }
+
+    /**
+     * Returns the mode count of the graph at the time the hierarchy was built.
+     *
+     * @return INT - The graph's mode count
+     */
+    public int getMC() {
+        return this._mc;
+    }
+
+    /**
+     * Checks if the hierarchy still describes the received graph, any change to the graph after
+     * the hierarchy was built (a different mode count) invalidates it.
+     *
+     * @param g - The graph to check against
+     * @return True if the hierarchy answers queries on g
+     */
+    public boolean isValidFor(weighted_graph g) {
+        return g != null && g.getMC() == this._mc && g.nodeSize() == this._nodes;
+    }
+
+    /**
+     * Returns the approximate heap footprint of the hierarchy's own arrays (not the graph it was built over).
+     *
+     * @return long - The estimated size in bytes
+     */
+    public long estimatedBytes() {
+        return 16L*5+4L*this._rank.length+4L*this._offsets.length+16L*this._targets.length;
+    }
+
+    /**
+     * Returns a short report of the preprocessing: node and edge counts, shortcuts, time and memory.
+     *
+     * @return String - The preprocessing report
+     */
+    public String report() {
+        return "Nodes: " + this._nodes + " || Edges: " + this._g.edgeSize() + " || Shortcuts: " + this._shortcuts +
+                " || Upward edges: " + this._targets.length + " || Preprocessing: " + this._millis + " ms" +
+                " || Memory: " + this.estimatedBytes()/1024 + " KB";
+    }
+}
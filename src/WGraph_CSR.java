@@ -0,0 +1,416 @@
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * This class implements an immutable Compressed Sparse Row (CSR) snapshot of a weighted graph.
+ * A snapshot is compiled once from any weighted_graph with freeze() and after that only supports reads,
+ * every structural change (addNode, connect, removeNode, removeEdge) throws UnsupportedOperationException.
+ * The layout:
+ * 1 - Every node key is remapped to a dense index 0..n-1 (keys[] and an IntIntHashMap for the way back)
+ * 2 - The neighbors of index i are targets[offsets[i]..offsets[i+1]) with the matching weights[] entries,
+ *     all the edges of the graph live in two contiguous arrays, each undirected edge appears in both rows
+ * 3 - Each row is sorted by the target index so a single edge is found by binary search
+ * Scanning a node's neighbors is a sequential walk over two arrays which makes BFS and Dijkstra
+ * much more cache friendly than walking a HashMap of HashMaps.
+ * The node metadata (info and tag) is copied from the source graph and stays writable.
+ *
+ * @author shmuel.lavian
+ */
+public class WGraph_CSR implements indexed_graph, Serializable {
+    private static final long serialVersionUID = 2879158064419208347L;
+    private final IntIntHashMap _index;
+    private final int[] _keys;
+    private final int[] _offsets;
+    private final int[] _targets;
+    private final double[] _weights;
+    private final double[] _tags;
+    private final String[] _infos;
+    private final int _mc;
+
+    /**
+     * This internal class implements the node_info interface as a view over a single index of the snapshot.
+     */
+    private class NodeView implements node_info, Serializable {
+        private static final long serialVersionUID = 6640307786744396862L;
+        private final int _i;
+
+        /**
+         * Creates a new view of the received index.
+         *
+         * @param i - The index of the node
+         */
+        private NodeView(int i) {
+            this._i = i;
+        }
+
+        @Override
+        public int getKey() {
+            return _keys[this._i];
+        }
+
+        @Override
+        public String getInfo() {
+            return _infos[this._i];
+        }
+
+        @Override
+        public void setInfo(String s) {
+            _infos[this._i] = s;
+        }
+
+        @Override
+        public double getTag() {
+            return _tags[this._i];
+        }
+
+        @Override
+        public void setTag(double t) {
+            _tags[this._i] = t;
+        }
+
+        /**
+         * Returns a string representation of the node in the same format as WGraph_DS nodes.
+         *
+         * @return a string representation the node.
+         */
+        @Override
+        public String toString() {
+            return "Node Key: " + this.getKey() + "\n" +
+                    "Node Tag: " + this.getTag() + "\n" +
+                    "Node MetaData: " + this.getInfo() + "\n";
+        }
+
+        /**
+         * Two views are equal if they point to the same node of the same snapshot.
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof NodeView)) return false;
+            NodeView n = (NodeView) obj;
+            return n._i == this._i && n.graph() == this.graph();
+        }
+
+        @Override
+        public int hashCode() {
+            return this.getKey();
+        }
+
+        private WGraph_CSR graph() {
+            return WGraph_CSR.this;
+        }
+    }
+
+    /**
+     * Creates a snapshot over already compiled CSR arrays, used by freeze() and WGraph_Builder.
+     * Every row of targets must be sorted.
+     */
+    WGraph_CSR(IntIntHashMap index, int[] keys, int[] offsets, int[] targets, double[] weights,
+                       double[] tags, String[] infos, int mc) {
+        this._index = index;
+        this._keys = keys;
+        this._offsets = offsets;
+        this._targets = targets;
+        this._weights = weights;
+        this._tags = tags;
+        this._infos = infos;
+        this._mc = mc;
+    }
+
+    /**
+     * Compiles the received graph into a new read only CSR snapshot.
+     * Runs in O(n + e log d) time, d being the maximal node degree.
+     * The snapshot keeps the source graph's node and edge count and its mode count at the time of the call.
+     *
+     * @param g - The graph to compile
+     * @return WGraph_CSR - The snapshot, g itself if it is already a WGraph_CSR
+     */
+    public static WGraph_CSR freeze(weighted_graph g) {
+        if (g instanceof WGraph_CSR) return (WGraph_CSR) g;
+        int n = g.nodeSize();
+        IntIntHashMap index = new IntIntHashMap(n);
+        int[] keys = new int[n];
+        double[] tags = new double[n];
+        String[] infos = new String[n];
+        int i = 0;
+        for (node_info node : g.getV()) {
+            keys[i] = node.getKey();
+            tags[i] = node.getTag();
+            infos[i] = node.getInfo();
+            index.put(keys[i], i);
+            i++;
+        }
+        int[] offsets = new int[n+1];
+        for (i=0; i<n; i++) {
+            int[] deg = {0};
+            g.forEachNeighbor(keys[i], (ni, w) -> deg[0]++);
+            offsets[i+1] = offsets[i]+deg[0];
+        }
+        int[] targets = new int[offsets[n]];
+        double[] weights = new double[offsets[n]];
+        long[] order = new long[16];
+        for (i=0; i<n; i++) {
+            int start = offsets[i];
+            int[] pos = {start};
+            g.forEachNeighbor(keys[i], (ni, w) -> {
+                targets[pos[0]] = index.get(ni);
+                weights[pos[0]] = w;
+                pos[0]++;
+            });
+            int deg = offsets[i+1]-start;
+            if (deg > order.length) order = new long[Math.max(deg, order.length*2)];
+            sortRow(targets, weights, start, deg, order);
+        }
+        return new WGraph_CSR(index, keys, offsets, targets, weights, tags, infos, g.getMC());
+    }
+
+    /**
+     * Sorts a single row of the adjacency arrays by the target index.
+     *
+     * @param targets - The targets array
+     * @param weights - The weights array
+     * @param start - The row start position
+     * @param deg - The row length
+     * @param order - A reusable buffer of at least deg entries
+     */
+    private static void sortRow(int[] targets, double[] weights, int start, int deg, long[] order) {
+        boolean sorted = true;
+        for (int j=1; j<deg && sorted; j++) {
+            sorted = targets[start+j-1] < targets[start+j];
+        }
+        if (sorted) return;
+        double[] w = Arrays.copyOfRange(weights, start, start+deg);
+        for (int j=0; j<deg; j++) {
+            order[j] = ((long) targets[start+j] << 32) | j;
+        }
+        Arrays.sort(order, 0, deg);
+        for (int j=0; j<deg; j++) {
+            targets[start+j] = (int) (order[j] >>> 32);
+            weights[start+j] = w[(int) order[j]];
+        }
+    }
+
+    @Override
+    public node_info getNode(int key) {
+        int i = this._index.get(key);
+        return i == -1 ? null : new NodeView(i);
+    }
+
+    /**
+     * Checks if the is an edge between two nodes. Each node by definition is connected to itself.
+     * Runs in O(log k) time by binary search over node1's row.
+     *
+     * @param node1 - first node id to check
+     * @param node2 - second node id to check
+     * @return True if and only if there is and edge. False in any other case
+     */
+    @Override
+    public boolean hasEdge(int node1, int node2) {
+        int i = this._index.get(node1);
+        if (i == -1) return false;
+        if (node1 == node2) return true;
+        int j = this._index.get(node2);
+        return j != -1 && this.find(i, j) >= 0;
+    }
+
+    /**
+     * Returns the weight value between two nodes in O(log k) time.
+     *
+     * @param node1 - First node
+     * @param node2 - Second node
+     * @return double - The value of the edge between the two node, -1 if the edge doesn't exist
+     */
+    @Override
+    public double getEdge(int node1, int node2) {
+        if (node1 == node2) return 0;
+        int i = this._index.get(node1);
+        int j = this._index.get(node2);
+        if (i == -1 || j == -1) return -1;
+        int p = this.find(i, j);
+        return p < 0 ? -1 : this._weights[p];
+    }
+
+    /**
+     * Not supported, a snapshot is read only.
+     */
+    @Override
+    public void addNode(int key) {
+        throw readOnly();
+    }
+
+    /**
+     * Not supported, a snapshot is read only.
+     */
+    @Override
+    public void connect(int node1, int node2, double w) {
+        throw readOnly();
+    }
+
+    /**
+     * Returns a collection view of all the nodes in the snapshot, in index order.
+     *
+     * @return Collection of node_info objects
+     */
+    @Override
+    public Collection<node_info> getV() {
+        return new AbstractCollection<node_info>() {
+            @Override
+            public Iterator<node_info> iterator() {
+                return new Iterator<node_info>() {
+                    private int _next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return this._next < _keys.length;
+                    }
+
+                    @Override
+                    public node_info next() {
+                        if (!this.hasNext()) throw new NoSuchElementException();
+                        return new NodeView(this._next++);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return _keys.length;
+            }
+        };
+    }
+
+    @Override
+    public Collection<node_info> getV(int node_id) {
+        int i = this._index.get(node_id);
+        if (i == -1) return new ArrayList<>();
+        ArrayList<node_info> result = new ArrayList<>(this._offsets[i+1]-this._offsets[i]);
+        for (int p=this._offsets[i]; p<this._offsets[i+1]; p++) {
+            result.add(new NodeView(this._targets[p]));
+        }
+        return result;
+    }
+
+    @Override
+    public void forEachNeighbor(int node_id, edge_visitor visitor) {
+        int i = this._index.get(node_id);
+        if (i == -1) return;
+        for (int p=this._offsets[i]; p<this._offsets[i+1]; p++) {
+            visitor.visit(this._keys[this._targets[p]], this._weights[p]);
+        }
+    }
+
+    /**
+     * Not supported, a snapshot is read only.
+     */
+    @Override
+    public node_info removeNode(int key) {
+        throw readOnly();
+    }
+
+    /**
+     * Not supported, a snapshot is read only.
+     */
+    @Override
+    public void removeEdge(int node1, int node2) {
+        throw readOnly();
+    }
+
+    @Override
+    public int nodeSize() {
+        return this._keys.length;
+    }
+
+    @Override
+    public int edgeSize() {
+        return this._targets.length/2;
+    }
+
+    /**
+     * Returns the mode count of the source graph at the time it was frozen, a snapshot never changes.
+     *
+     * @return INT - The source graph's mode count
+     */
+    @Override
+    public int getMC() {
+        return this._mc;
+    }
+
+    @Override
+    public int indexBound() {
+        return this._keys.length;
+    }
+
+    @Override
+    public int indexOf(int key) {
+        return this._index.get(key);
+    }
+
+    @Override
+    public int keyAt(int index) {
+        return this._keys[index];
+    }
+
+    @Override
+    public boolean hasIndex(int index) {
+        return index >= 0 && index < this._keys.length;
+    }
+
+    @Override
+    public void forEachNeighborIndex(int index, edge_visitor visitor) {
+        for (int p=this._offsets[index]; p<this._offsets[index+1]; p++) {
+            visitor.visit(this._targets[p], this._weights[p]);
+        }
+    }
+
+    /**
+     * Returns the degree of the node at the given index.
+     *
+     * @param index - The node index
+     * @return INT - The number of neighbors of the node
+     */
+    public int degreeAt(int index) {
+        return this._offsets[index+1]-this._offsets[index];
+    }
+
+    /**
+     * Returns a string representation of the snapshot in the same format as WGraph_DS.
+     *
+     * @return String - representation of the graph.
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append("Total Nodes: ").append(this.nodeSize()).append(" ||  Total edges: ").append(this.edgeSize());
+        result.append("\n");
+        long[] order = new long[16];
+        for (int i=0; i<this._keys.length; i++) {
+            int start = this._offsets[i];
+            int deg = this.degreeAt(i);
+            if (deg > order.length) order = new long[Math.max(deg, order.length*2)];
+            for (int j=0; j<deg; j++) {
+                order[j] = ((long) this._keys[this._targets[start+j]] << 32) | j;
+            }
+            Arrays.sort(order, 0, deg);
+            result.append("Node: ").append(this._keys[i]);
+            result.append(" | Ni Count: ").append(deg).append(" | NiKey->Weight: ");
+            for (int j=0; j<deg; j++) {
+                result.append((int) (order[j] >> 32)).append("->");
+                result.append(this._weights[start+(int) order[j]]).append(" | ");
+            }
+            result.append("\n");
+        }
+        return result.toString();
+    }
+
+    /**
+     * Binary searches the row of index i for the target index j.
+     *
+     * @return INT - The position of the edge in the targets/weights arrays, negative if there is no such edge
+     */
+    private int find(int i, int j) {
+        return Arrays.binarySearch(this._targets, this._offsets[i], this._offsets[i+1], j);
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("WGraph_CSR is a read only snapshot");
+    }
+}
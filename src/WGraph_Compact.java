@@ -0,0 +1,731 @@
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * This class implements the weighted_graph interface with a primitive, memory compact layout.
+ * It is an alternative backend to WGraph_DS for very large graphs, selected simply by constructing it
+ * instead of WGraph_DS. Both behave the same through the weighted_graph interface.
+ * The layout:
+ * 1 - An open addressing IntIntHashMap mapping each node key to a node slot (no Integer boxing)
+ * 2 - Per slot primitive arrays for the key, tag and metadata of the node
+ * 3 - Per slot int[] of neighbor slots and a parallel double[] of the edge weights (no boxed Doubles,
+ *     no HashMap entries per edge)
+ * Slots of removed nodes are recycled by later addNode calls.
+ * node_info objects are light views created on demand over the slot they point to.
+ * The slots are exposed to the algorithms as the node indexes of the indexed_graph interface.
+ *
+ * @author shmuel.lavian
+ */
+public class WGraph_Compact implements indexed_graph, Serializable {
+    private static final long serialVersionUID = -4283390265914011235L;
+    private static final int FREE = -1;
+    private IntIntHashMap _index;
+    private int[] _keys;
+    private int[] _deg;
+    private int[][] _ni;
+    private double[][] _w;
+    private double[] _tags;
+    private String[] _infos;
+    private int[] _free;
+    private int _free_size;
+    private int _slots;
+    private int _n_size;
+    private int _e_size;
+    private int _mc;
+
+    /**
+     * This internal class implements the node_info interface as a view over a single slot of the graph.
+     * The key, tag and metadata are stored in the graphs primitive arrays, so creating a view is cheap and
+     * two views of the same node are equal.
+     */
+    private class NodeView implements node_info, Serializable {
+        private static final long serialVersionUID = -2526851694307826150L;
+        private final int _slot;
+        private final int _key;
+
+        /**
+         * Creates a new view of the received slot.
+         *
+         * @param slot - The slot of the node
+         */
+        private NodeView(int slot) {
+            this._slot = slot;
+            this._key = _keys[slot];
+        }
+
+        /**
+         * Return the key (ID) associated with this node.
+         *
+         * @return INT - The key ID
+         */
+        @Override
+        public int getKey() {
+            return this._key;
+        }
+
+        /**
+         * return the remark (meta data) associated with this node.
+         *
+         * @return String - This nodes meta data
+         */
+        @Override
+        public String getInfo() {
+            return this.alive() ? _infos[this._slot] : null;
+        }
+
+        /**
+         * Allows changing the meta data associated with this node.
+         *
+         * @param s - The new nodes String meta data
+         */
+        @Override
+        public void setInfo(String s) {
+            if (this.alive()) _infos[this._slot] = s;
+        }
+
+        /**
+         * Returns the temporal data (aka distance, color, or state)
+         *
+         * @return double - The nodes tag values
+         */
+        @Override
+        public double getTag() {
+            return this.alive() ? _tags[this._slot] : -1;
+        }
+
+        /**
+         * Sets the nodes tag value.
+         *
+         * @param t - the new value of the nodes tag
+         */
+        @Override
+        public void setTag(double t) {
+            if (this.alive()) _tags[this._slot] = t;
+        }
+
+        /**
+         * Checks that the slot of this view still holds the same node (it was not removed and recycled).
+         *
+         * @return True if the node is still in the graph
+         */
+        private boolean alive() {
+            return _deg[this._slot] != FREE && _keys[this._slot] == this._key;
+        }
+
+        /**
+         * Returns a string representation of the node in the same format as WGraph_DS nodes.
+         *
+         * @return a string representation the node.
+         */
+        @Override
+        public String toString() {
+            return "Node Key: " + this._key + "\n" +
+                    "Node Tag: " + this.getTag() + "\n" +
+                    "Node MetaData: " + this.getInfo() + "\n";
+        }
+
+        /**
+         * Two views are equal if they point to the same node of the same graph.
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof NodeView)) return false;
+            NodeView n = (NodeView) obj;
+            return n._key == this._key && n.graph() == this.graph();
+        }
+
+        @Override
+        public int hashCode() {
+            return this._key;
+        }
+
+        /**
+         * Returns the graph this view belongs to.
+         *
+         * @return WGraph_Compact - The owning graph
+         */
+        private WGraph_Compact graph() {
+            return WGraph_Compact.this;
+        }
+    }
+
+    /**
+     * This internal class implements the node_info interface for a node which was removed from its graph:
+     * it keeps the key, metadata and tag the node had at the time of removal, like the detached
+     * nodes returned by WGraph_DS.removeNode().
+     */
+    static final class RemovedNode implements node_info {
+        private final int _key;
+        private String _info;
+        private double _tag;
+
+        RemovedNode(int key, String info, double tag) {
+            this._key = key;
+            this._info = info;
+            this._tag = tag;
+        }
+
+        @Override
+        public int getKey() {
+            return this._key;
+        }
+
+        @Override
+        public String getInfo() {
+            return this._info;
+        }
+
+        @Override
+        public void setInfo(String s) {
+            this._info = s;
+        }
+
+        @Override
+        public double getTag() {
+            return this._tag;
+        }
+
+        @Override
+        public void setTag(double t) {
+            this._tag = t;
+        }
+
+        /**
+         * Returns a string representation of the node in the same format as WGraph_DS nodes.
+         *
+         * @return a string representation the node.
+         */
+        @Override
+        public String toString() {
+            return "Node Key: " + this._key + "\n" +
+                    "Node Tag: " + this._tag + "\n" +
+                    "Node MetaData: " + this._info + "\n";
+        }
+    }
+
+    /**
+     * The default WGraph_Compact constructor. Creates a new empty graph.
+     */
+    public WGraph_Compact() {
+        this(16);
+    }
+
+    /**
+     * Creates a new empty graph pre-sized for the expected number of nodes.
+     *
+     * @param expected_nodes - The number of nodes expected to be added to the graph
+     */
+    public WGraph_Compact(int expected_nodes) {
+        int cap = Math.max(expected_nodes, 4);
+        this._index = new IntIntHashMap(cap);
+        this._keys = new int[cap];
+        this._deg = new int[cap];
+        this._ni = new int[cap][];
+        this._w = new double[cap][];
+        this._tags = new double[cap];
+        this._infos = new String[cap];
+        this._free = new int[4];
+        this._free_size = 0;
+        this._slots = 0;
+        this._n_size = 0;
+        this._e_size = 0;
+        this._mc = 0;
+    }
+
+    /**
+     * Returns a view of the node with the received key.
+     *
+     * @param key - the node_id
+     * @return node_info - The specified node, null if none
+     */
+    @Override
+    public node_info getNode(int key) {
+        int s = this._index.get(key);
+        if (s == FREE) return null;
+        return new NodeView(s);
+    }
+
+    /**
+     * Checks if the is an edge between two nodes. Each node by definition is connected to itself.
+     * Runs in O(k) time, k being the degree of node1.
+     *
+     * @param node1 - first node id to check
+     * @param node2 - second node id to check
+     * @return True if and only if there is and edge. False in any other case
+     */
+    @Override
+    public boolean hasEdge(int node1, int node2) {
+        int s1 = this._index.get(node1);
+        if (s1 == FREE) return false;
+        if (node1 == node2) return true;
+        int s2 = this._index.get(node2);
+        if (s2 == FREE) return false;
+        return this.find(s1, s2) != -1;
+    }
+
+    /**
+     * Returns the weight value between two nodes.
+     * Runs in O(k) time, k being the degree of node1.
+     *
+     * @param node1 - First node
+     * @param node2 - Second node
+     * @return double - The value of the edge between the two node, -1 if the edge doesn't exist
+     */
+    @Override
+    public double getEdge(int node1, int node2) {
+        if (node1 == node2) return 0;
+        int s1 = this._index.get(node1);
+        int s2 = this._index.get(node2);
+        if (s1 == FREE || s2 == FREE) return -1;
+        int i = this.find(s1, s2);
+        return i == -1 ? -1 : this._w[s1][i];
+    }
+
+    /**
+     * Adds a new node to the graph with the given key ID, reusing a free slot if there is one.
+     *
+     * @param key - The key of the new node to be added to the graph, if exists conducts no action
+     */
+    @Override
+    public void addNode(int key) {
+        if (this._index.containsKey(key)) return;
+        int s;
+        if (this._free_size > 0) s = this._free[--this._free_size];
+        else {
+            if (this._slots == this._keys.length) this.grow();
+            s = this._slots++;
+        }
+        this._keys[s] = key;
+        this._deg[s] = 0;
+        this._tags[s] = -1;
+        this._infos[s] = null;
+        this._index.put(key, s);
+        this._n_size++;
+        this._mc++;
+    }
+
+    /**
+     * Connects an edge between node1 and node2 with the given weight, or updates the weight of an existing edge.
+     * Same semantics as WGraph_DS: self loops and negative weights are ignored and an update with the same
+     * weight is not counted as a change.
+     *
+     * @param node1 - First node
+     * @param node2 - Second node
+     * @param w - Given weight to be set between them
+     */
+    @Override
+    public void connect(int node1, int node2, double w) {
+        if (this.setEdge(node1, node2, w, true)) this._mc++;
+    }
+
+    /**
+     * Connects a batch of edges as connect() would one by one, except that the mode count grows by one
+     * for the whole batch (if anything changed).
+     *
+     * @param node1 - The first node ID of every edge
+     * @param node2 - The second node ID of every edge
+     * @param w - The weight of every edge
+     * @return INT - The number of edges added or re-weighted
+     */
+    @Override
+    public int connectAll(int[] node1, int[] node2, double[] w) {
+        return this.applyAll(node1, node2, w, true);
+    }
+
+    /**
+     * Sets the weights of a batch of existing edges, missing edges are skipped and never created.
+     * The mode count grows by one for the whole batch (if anything changed).
+     *
+     * @param node1 - The first node ID of every edge
+     * @param node2 - The second node ID of every edge
+     * @param w - The new weight of every edge
+     * @return INT - The number of edges re-weighted
+     */
+    @Override
+    public int updateWeights(int[] node1, int[] node2, double[] w) {
+        return this.applyAll(node1, node2, w, false);
+    }
+
+    /**
+     * Removes a batch of edges, missing edges are skipped.
+     * The mode count grows by one for the whole batch (if anything changed).
+     *
+     * @param node1 - The first node ID of every edge
+     * @param node2 - The second node ID of every edge
+     * @return INT - The number of edges removed
+     */
+    @Override
+    public int removeEdges(int[] node1, int[] node2) {
+        weighted_graph.checkBatch(node1, node2, node1.length);
+        int removed = 0;
+        for (int i=0; i<node1.length; i++) {
+            if (this.unlink(node1[i], node2[i])) removed++;
+        }
+        if (removed > 0) this._mc++;
+        return removed;
+    }
+
+    /**
+     * Applies a batch of weight changes with a single mode count increment.
+     *
+     * @param node1 - The first node ID of every edge
+     * @param node2 - The second node ID of every edge
+     * @param w - The weight of every edge
+     * @param add - True if missing edges should be created
+     * @return INT - The number of edges added or re-weighted
+     */
+    private int applyAll(int[] node1, int[] node2, double[] w, boolean add) {
+        weighted_graph.checkBatch(node1, node2, w.length);
+        int changed = 0;
+        for (int i=0; i<node1.length; i++) {
+            if (w[i] >= 0 && this.setEdge(node1[i], node2[i], w[i], add)) changed++;
+        }
+        if (changed > 0) this._mc++;
+        return changed;
+    }
+
+    /**
+     * Adds or re-weights an edge without counting the change in the mode count.
+     *
+     * @param node1 - First node
+     * @param node2 - Second node
+     * @param w - The edge weight
+     * @param add - True if a missing edge should be created
+     * @return True if the edge was added or its weight changed
+     */
+    private boolean setEdge(int node1, int node2, double w, boolean add) {
+        if (node1 == node2 || w < 0) return false;
+        int s1 = this._index.get(node1);
+        int s2 = this._index.get(node2);
+        if (s1 == FREE || s2 == FREE) return false;
+        int i = this.find(s1, s2);
+        if (i == -1) {
+            if (!add) return false;
+            this.append(s1, s2, w);
+            this.append(s2, s1, w);
+            this._e_size++;
+            return true;
+        }
+        if (this._w[s1][i] == w) return false;
+        this._w[s1][i] = w;
+        this._w[s2][this.find(s2, s1)] = w;
+        return true;
+    }
+
+    /**
+     * Return a live collection view of all the nodes in the graph.
+     *
+     * @return Collection of node_info objects
+     */
+    @Override
+    public Collection<node_info> getV() {
+        return new AbstractCollection<node_info>() {
+            @Override
+            public Iterator<node_info> iterator() {
+                return new Iterator<node_info>() {
+                    private int _next = this.skip(0);
+
+                    private int skip(int s) {
+                        while (s < _slots && _deg[s] == FREE) s++;
+                        return s;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return this._next < _slots;
+                    }
+
+                    @Override
+                    public node_info next() {
+                        if (!this.hasNext()) throw new NoSuchElementException();
+                        node_info result = new NodeView(this._next);
+                        this._next = this.skip(this._next+1);
+                        return result;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return _n_size;
+            }
+        };
+    }
+
+    /**
+     * This method returns a Collection containing all the nodes connected to the given node ID.
+     * Runs in O(k) complexity, k being the degree of node_id.
+     *
+     * @param node_id - The received node to iterate on
+     * @return Collection of node_info objects containing this nodes connected neighbors
+     */
+    @Override
+    public Collection<node_info> getV(int node_id) {
+        int s = this._index.get(node_id);
+        if (s == FREE) return new ArrayList<>();
+        ArrayList<node_info> result = new ArrayList<>(this._deg[s]);
+        int[] ni = this._ni[s];
+        for (int i=0; i<this._deg[s]; i++) {
+            result.add(new NodeView(ni[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Passes each neighbor of the given node and the weight of the edge to it to the visitor,
+     * straight from the slots adjacency arrays.
+     *
+     * @param node_id - The received node to iterate on
+     * @param visitor - The visitor to receive each neighbor key and edge weight
+     */
+    @Override
+    public void forEachNeighbor(int node_id, edge_visitor visitor) {
+        int s = this._index.get(node_id);
+        if (s == FREE) return;
+        int[] ni = this._ni[s];
+        double[] w = this._w[s];
+        for (int i=0; i<this._deg[s]; i++) {
+            visitor.visit(this._keys[ni[i]], w[i]);
+        }
+    }
+
+    /**
+     * Delete the node (with the given ID) from the graph and removes all edges which starts or ends at this node.
+     *
+     * @param key - Node ID to be deleted
+     * @return node_info - of the deleted node with its metadata and tag, null if none exists
+     */
+    @Override
+    public node_info removeNode(int key) {
+        int s = this._index.get(key);
+        if (s == FREE) return null;
+        node_info result = new RemovedNode(key, this._infos[s], this._tags[s]);
+        int deg = this._deg[s];
+        int[] ni = this._ni[s];
+        for (int i=0; i<deg; i++) {
+            this.detach(ni[i], s);
+        }
+        this._e_size -= deg;
+        this._mc += deg+1;
+        this._index.remove(key);
+        this._deg[s] = FREE;
+        this._ni[s] = null;
+        this._w[s] = null;
+        this._infos[s] = null;
+        if (this._free_size == this._free.length) this._free = Arrays.copyOf(this._free, this._free_size*2);
+        this._free[this._free_size++] = s;
+        this._n_size--;
+        return result;
+    }
+
+    /**
+     * Removes an edge between two nodes in the graph, does nothing if there is no such edge.
+     *
+     * @param node1 - First node ID
+     * @param node2 - Second node ID
+     */
+    @Override
+    public void removeEdge(int node1, int node2) {
+        if (this.unlink(node1, node2)) this._mc++;
+    }
+
+    /**
+     * Removes an edge without counting the change in the mode count.
+     *
+     * @param node1 - First node ID
+     * @param node2 - Second node ID
+     * @return True if the edge existed and was removed
+     */
+    private boolean unlink(int node1, int node2) {
+        if (node1 == node2) return false;
+        int s1 = this._index.get(node1);
+        int s2 = this._index.get(node2);
+        if (s1 == FREE || s2 == FREE) return false;
+        if (!this.detach(s1, s2)) return false;
+        this.detach(s2, s1);
+        this._e_size--;
+        return true;
+    }
+
+    /**
+     * Returns the number of nodes in the graph.
+     *
+     * @return INT - number of nodes in the graph
+     */
+    @Override
+    public int nodeSize() {
+        return this._n_size;
+    }
+
+    /**
+     * Return the number of edges in the graph.
+     *
+     * @return INT - number of edges in the graph
+     */
+    @Override
+    public int edgeSize() {
+        return this._e_size;
+    }
+
+    /**
+     * Returns the Mode Count (inner changes counter) of the graph.
+     *
+     * @return INT - The graph's mode count
+     */
+    @Override
+    public int getMC() {
+        return this._mc;
+    }
+
+    /**
+     * Sets the mode count of a graph read from a file back to the mode count it was saved with,
+     * so tables computed on the saved graph (see WGraph_Landmarks) stay valid. Used by WGraph_IO.
+     *
+     * @param mc - The saved mode count
+     */
+    void restoreMC(int mc) {
+        this._mc = mc;
+    }
+
+    @Override
+    public int indexBound() {
+        return this._slots;
+    }
+
+    @Override
+    public int indexOf(int key) {
+        return this._index.get(key);
+    }
+
+    @Override
+    public int keyAt(int index) {
+        return this._keys[index];
+    }
+
+    @Override
+    public boolean hasIndex(int index) {
+        return index >= 0 && index < this._slots && this._deg[index] != FREE;
+    }
+
+    @Override
+    public void forEachNeighborIndex(int index, edge_visitor visitor) {
+        int[] ni = this._ni[index];
+        double[] w = this._w[index];
+        for (int i=0; i<this._deg[index]; i++) {
+            visitor.visit(ni[i], w[i]);
+        }
+    }
+
+    /**
+     * Returns the approximate number of heap bytes used by this graph, counting the index map,
+     * the per slot arrays and the neighbor arrays (including their unused capacity).
+     *
+     * @return long - The estimated heap footprint in bytes
+     */
+    public long estimatedBytes() {
+        long cap = this._keys.length;
+        long result = 64+this._index.estimatedBytes();
+        result += 4*(16+4*cap);
+        result += 2*(16+8*cap);
+        result += 16+4L*this._free.length;
+        for (int s=0; s<this._slots; s++) {
+            if (this._ni[s] != null) result += 32+12L*this._ni[s].length;
+        }
+        return result;
+    }
+
+    /**
+     * Returns a string representation of the graph in the same format as WGraph_DS.
+     *
+     * @return String - representation of the graph.
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append("Total Nodes: ").append(this._n_size).append(" ||  Total edges: ").append(this._e_size);
+        result.append("\n");
+        for (int s=0; s<this._slots; s++) {
+            if (this._deg[s] == FREE) continue;
+            int deg = this._deg[s];
+            long[] order = new long[deg];
+            for (int i=0; i<deg; i++) {
+                order[i] = ((long) this._keys[this._ni[s][i]] << 32) | i;
+            }
+            Arrays.sort(order);
+            result.append("Node: ").append(this._keys[s]);
+            result.append(" | Ni Count: ").append(deg).append(" | NiKey->Weight: ");
+            for (long o : order) {
+                result.append((int) (o >> 32)).append("->");
+                result.append(this._w[s][(int) o]).append(" | ");
+            }
+            result.append("\n");
+        }
+        return result.toString();
+    }
+
+    /**
+     * Returns the position of the neighbor slot in the adjacency arrays of the received slot.
+     *
+     * @param s - The slot to search in
+     * @param n - The neighbor slot to look for
+     * @return INT - The position, -1 if the slots are not connected
+     */
+    private int find(int s, int n) {
+        int[] ni = this._ni[s];
+        for (int i=0; i<this._deg[s]; i++) {
+            if (ni[i] == n) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Appends a one way edge s->n to the adjacency arrays of s, growing them if needed.
+     *
+     * @param s - The source slot
+     * @param n - The destination slot
+     * @param w - The edge weight
+     */
+    private void append(int s, int n, double w) {
+        int deg = this._deg[s];
+        if (this._ni[s] == null) {
+            this._ni[s] = new int[4];
+            this._w[s] = new double[4];
+        }
+        else if (deg == this._ni[s].length) {
+            this._ni[s] = Arrays.copyOf(this._ni[s], deg*2);
+            this._w[s] = Arrays.copyOf(this._w[s], deg*2);
+        }
+        this._ni[s][deg] = n;
+        this._w[s][deg] = w;
+        this._deg[s] = deg+1;
+    }
+
+    /**
+     * Removes the one way edge s->n by moving the last neighbor of s into its position.
+     *
+     * @param s - The source slot
+     * @param n - The destination slot
+     * @return True if the edge existed and was removed
+     */
+    private boolean detach(int s, int n) {
+        int i = this.find(s, n);
+        if (i == -1) return false;
+        int last = --this._deg[s];
+        this._ni[s][i] = this._ni[s][last];
+        this._w[s][i] = this._w[s][last];
+        return true;
+    }
+
+    /**
+     * Doubles the capacity of all the per slot arrays.
+     */
+    private void grow() {
+        int cap = this._keys.length*2;
+        this._keys = Arrays.copyOf(this._keys, cap);
+        this._deg = Arrays.copyOf(this._deg, cap);
+        this._ni = Arrays.copyOf(this._ni, cap);
+        this._w = Arrays.copyOf(this._w, cap);
+        this._tags = Arrays.copyOf(this._tags, cap);
+        this._infos = Arrays.copyOf(this._infos, cap);
+    }
+}
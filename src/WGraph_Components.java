@@ -0,0 +1,247 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * This class holds the connected components of a graph: a component id for every node and the size of every component.
+ * The components are found with a concurrent union-find over all the edges of the graph:
+ * 1 - The node indexes are split into ranges which are scanned in parallel by a ForkJoinPool,
+ *     every edge (u,v) with u < v unites the components of u and v
+ * 2 - A union links the root with the larger index under the one with the smaller index with a single
+ *     compareAndSet, and finds compress the paths they walk (path halving), so no locks are taken
+ * 3 - Every root is the smallest node index of its set, so a single pass in index order renumbers the roots
+ *     into dense ids 0..count-1
+ * The work is O(n + e) with near constant cost per edge, and no per node objects are allocated.
+ * The result is a snapshot, it keeps the mode count of the graph it was computed on (see isValidFor()).
+ *
+ * @author shmuel.lavian
+ */
+public class WGraph_Components {
+    /** The number of node indexes scanned by a single task */
+    static final int GRAIN = 1 << 12;
+    private final indexed_graph _g;
+    private final int[] _labels;
+    private final int[] _sizes;
+    private final int _mc;
+    private final int _nodes;
+
+    /**
+     * Creates a result over already computed labels, used by compute().
+     */
+    private WGraph_Components(indexed_graph g, int[] labels, int[] sizes, int mc, int nodes) {
+        this._g = g;
+        this._labels = labels;
+        this._sizes = sizes;
+        this._mc = mc;
+        this._nodes = nodes;
+    }
+
+    /**
+     * Finds the connected components of the received graph using the common ForkJoinPool.
+     * Graphs that do not implement indexed_graph are compiled into a WGraph_CSR snapshot first.
+     * The graph must not be changed while the components are computed.
+     *
+     * @param graph - The graph to scan
+     * @return WGraph_Components - The components of the graph
+     */
+    public static WGraph_Components compute(weighted_graph graph) {
+        return compute(graph, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Finds the connected components of the received graph using the received pool.
+     *
+     * @param graph - The graph to scan
+     * @param pool - The pool running the parallel union-find
+     * @return WGraph_Components - The components of the graph
+     */
+    static WGraph_Components compute(weighted_graph graph, ForkJoinPool pool) {
+        indexed_graph g = graph instanceof indexed_graph ? (indexed_graph) graph : WGraph_CSR.freeze(graph);
+        int bound = g.indexBound();
+        AtomicIntegerArray parent = new AtomicIntegerArray(bound);
+        for (int i=0; i<bound; i++) {
+            parent.set(i, i);
+        }
+        if (bound > GRAIN) pool.invoke(new Unite(g, parent, 0, bound));
+        else new Unite(g, parent, 0, bound).compute();
+        int[] labels = new int[bound];
+        int[] sizes = new int[16];
+        int count = 0;
+        for (int i=0; i<bound; i++) {
+            if (!g.hasIndex(i)) {
+                labels[i] = -1;
+                continue;
+            }
+            int root = find(parent, i);
+            int id = root == i ? count++ : labels[root];
+            labels[i] = id;
+            if (id == sizes.length) sizes = Arrays.copyOf(sizes, sizes.length*2);
+            sizes[id]++;
+        }
+        return new WGraph_Components(g, labels, Arrays.copyOf(sizes, count), graph.getMC(), graph.nodeSize());
+    }
+
+    /**
+     * This internal task unites the endpoints of every edge of a range of node indexes,
+     * splitting the range in two until it is at most GRAIN indexes long.
+     */
+    private static final class Unite extends RecursiveAction implements edge_visitor {
+        private static final long serialVersionUID = 1L;
+        private final indexed_graph _g;
+        private final AtomicIntegerArray _parent;
+        private final int _from;
+        private final int _to;
+        private int _cur;
+
+        private Unite(indexed_graph g, AtomicIntegerArray parent, int from, int to) {
+            this._g = g;
+            this._parent = parent;
+            this._from = from;
+            this._to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this._to-this._from > GRAIN) {
+                int mid = (this._from+this._to) >>> 1;
+                invokeAll(new Unite(this._g, this._parent, this._from, mid),
+                        new Unite(this._g, this._parent, mid, this._to));
+                return;
+            }
+            for (int i=this._from; i<this._to; i++) {
+                if (!this._g.hasIndex(i)) continue;
+                this._cur = i;
+                this._g.forEachNeighborIndex(i, this);
+            }
+        }
+
+        @Override
+        public void visit(int ni, double w) {
+            if (this._cur < ni) union(this._parent, this._cur, ni);
+        }
+    }
+
+    /**
+     * Returns the root of the node's set, halving the path on the way.
+     *
+     * @param parent - The union-find parent array
+     * @param x - The node index
+     * @return INT - The root node index
+     */
+    private static int find(AtomicIntegerArray parent, int x) {
+        while (true) {
+            int p = parent.get(x);
+            if (p == x) return x;
+            int gp = parent.get(p);
+            if (p != gp) parent.compareAndSet(x, p, gp);
+            x = gp;
+        }
+    }
+
+    /**
+     * Unites the sets of two nodes. The root with the larger index is linked under the other root,
+     * a failed compareAndSet means another thread changed that root and the union is retried.
+     *
+     * @param parent - The union-find parent array
+     * @param a - The first node index
+     * @param b - The second node index
+     */
+    private static void union(AtomicIntegerArray parent, int a, int b) {
+        while (true) {
+            a = find(parent, a);
+            b = find(parent, b);
+            if (a == b) return;
+            if (a < b) {
+                int t = a;
+                a = b;
+                b = t;
+            }
+            if (parent.compareAndSet(a, a, b)) return;
+        }
+    }
+
+    /**
+     * Returns the number of connected components.
+     *
+     * @return INT - The number of components, 0 for an empty graph
+     */
+    public int count() {
+        return this._sizes.length;
+    }
+
+    /**
+     * Returns the component id of a node.
+     *
+     * @param key - The node ID
+     * @return INT - The component id 0..count()-1, -1 if the node does not exist
+     */
+    public int componentOf(int key) {
+        int i = this._g.indexOf(key);
+        return i == -1 ? -1 : this._labels[i];
+    }
+
+    /**
+     * Checks if two nodes are in the same connected component.
+     *
+     * @param node1 - First node ID
+     * @param node2 - Second node ID
+     * @return True if both nodes exist and are connected by a path
+     */
+    public boolean sameComponent(int node1, int node2) {
+        int c = this.componentOf(node1);
+        return c != -1 && c == this.componentOf(node2);
+    }
+
+    /**
+     * Returns the number of nodes in a component.
+     *
+     * @param id - The component id
+     * @return INT - The component size
+     */
+    public int size(int id) {
+        return this._sizes[id];
+    }
+
+    /**
+     * Returns the sizes of all the components, indexed by the component id.
+     *
+     * @return int[] - A copy of the component sizes
+     */
+    public int[] sizes() {
+        return this._sizes.clone();
+    }
+
+    /**
+     * Returns the id of the largest component.
+     *
+     * @return INT - The id of the component with the most nodes, -1 for an empty graph
+     */
+    public int largest() {
+        int result = -1;
+        for (int id=0; id<this._sizes.length; id++) {
+            if (result == -1 || this._sizes[id] > this._sizes[result]) result = id;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the mode count of the graph at the time the components were computed.
+     *
+     * @return INT - The graph's mode count
+     */
+    public int getMC() {
+        return this._mc;
+    }
+
+    /**
+     * Checks if the components still describe the received graph, any change to the graph after
+     * they were computed (a different mode count) invalidates them.
+     *
+     * @param g - The graph to check against
+     * @return True if the components are up to date for g
+     */
+    public boolean isValidFor(weighted_graph g) {
+        return g != null && g.getMC() == this._mc && g.nodeSize() == this._nodes;
+    }
+}
@@ -0,0 +1,582 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class implements a thread safe weighted graph for parallel ingestion: any number of threads may call
+ * addNode(), connect(), removeEdge() and removeNode() (and the queries) at the same time.
+ * 1 - The nodes are kept in a ConcurrentHashMap, so adding and finding nodes never locks
+ * 2 - Every node holds its neighbors (node references) and weights in primitive arrays, with an
+ *     IntIntHashMap from neighbor key to position once its degree passes INDEX_DEGREE
+ * 3 - The adjacency of a node is guarded by one of a fixed number of striped ReentrantLocks, chosen by the
+ *     node's key. connect() and removeEdge() lock the stripes of both endpoints in ascending stripe order,
+ *     and removeNode() locks the stripes of the node and of all its neighbors in the same order, so two
+ *     threads never wait for each other's locks
+ * 4 - The edge and mode counters are LongAdders, which threads update without contending on a single field
+ * The semantics of the changes follow WGraph_Compact: self loops and negative weights are ignored, connecting
+ * a missing node or removing a missing edge changes nothing. Queries of a single node lock only its stripe,
+ * and the visitor of forEachNeighbor() is called after the lock is released, on a copy of the neighbors.
+ *
+ * @author shmuel.lavian
+ */
+public class WGraph_Concurrent implements weighted_graph {
+    /** The degree above which a node indexes its neighbors by key instead of scanning them */
+    static final int INDEX_DEGREE = 16;
+    private final ConcurrentHashMap<Integer,Node> _nodes;
+    private final ReentrantLock[] _stripes;
+    private final int _stripe_mask;
+    private final LongAdder _e_size;
+    private final LongAdder _mc;
+
+    /**
+     * This internal class implements the node_info interface and holds the adjacency of a single node.
+     * The key never changes, the tag and metadata are volatile and every other field is guarded by the
+     * stripe lock of the node.
+     */
+    private static final class Node implements node_info {
+        private final int _key;
+        private volatile double _tag;
+        private volatile String _info;
+        private Node[] _ni;
+        private double[] _w;
+        private int _deg;
+        private IntIntHashMap _pos;
+        private boolean _removed;
+
+        private Node(int key) {
+            this._key = key;
+            this._tag = -1;
+        }
+
+        @Override
+        public int getKey() {
+            return this._key;
+        }
+
+        @Override
+        public String getInfo() {
+            return this._info;
+        }
+
+        @Override
+        public void setInfo(String s) {
+            this._info = s;
+        }
+
+        @Override
+        public double getTag() {
+            return this._tag;
+        }
+
+        @Override
+        public void setTag(double t) {
+            this._tag = t;
+        }
+
+        /**
+         * Returns the position of the neighbor in the adjacency arrays, -1 if there is no such edge.
+         */
+        private int find(Node n) {
+            if (this._pos != null) return this._pos.get(n._key);
+            for (int i=0; i<this._deg; i++) {
+                if (this._ni[i] == n) return i;
+            }
+            return -1;
+        }
+
+        private void append(Node n, double w) {
+            if (this._ni == null) {
+                this._ni = new Node[4];
+                this._w = new double[4];
+            }
+            else if (this._deg == this._ni.length) {
+                this._ni = Arrays.copyOf(this._ni, this._deg*2);
+                this._w = Arrays.copyOf(this._w, this._deg*2);
+            }
+            this._ni[this._deg] = n;
+            this._w[this._deg] = w;
+            if (this._pos != null) this._pos.put(n._key, this._deg);
+            else if (this._deg == INDEX_DEGREE) {
+                this._pos = new IntIntHashMap(INDEX_DEGREE*2);
+                for (int i=0; i<=this._deg; i++) {
+                    this._pos.put(this._ni[i]._key, i);
+                }
+            }
+            this._deg++;
+        }
+
+        /**
+         * Removes the neighbor at the received position by moving the last neighbor into it.
+         */
+        private void detach(int i) {
+            int last = --this._deg;
+            if (this._pos != null) this._pos.remove(this._ni[i]._key);
+            if (i != last) {
+                this._ni[i] = this._ni[last];
+                this._w[i] = this._w[last];
+                if (this._pos != null) this._pos.put(this._ni[i]._key, i);
+            }
+            this._ni[last] = null;
+        }
+
+        /**
+         * Returns a string representation of the node in the same format as WGraph_DS nodes.
+         *
+         * @return a string representation the node.
+         */
+        @Override
+        public String toString() {
+            return "Node Key: " + this._key + "\n" +
+                    "Node Tag: " + this._tag + "\n" +
+                    "Node MetaData: " + this._info + "\n";
+        }
+    }
+
+    /**
+     * Creates a new empty graph with 64 lock stripes per available processor.
+     */
+    public WGraph_Concurrent() {
+        this(64*Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new empty graph with the received number of lock stripes, rounded up to a power of two.
+     * More stripes mean less contention between threads changing different nodes.
+     *
+     * @param stripes - The number of locks guarding the adjacency of the nodes
+     */
+    public WGraph_Concurrent(int stripes) {
+        int count = 1;
+        while (count < stripes && count < 1 << 20) count <<= 1;
+        this._nodes = new ConcurrentHashMap<>();
+        this._stripes = new ReentrantLock[count];
+        for (int i=0; i<count; i++) {
+            this._stripes[i] = new ReentrantLock();
+        }
+        this._stripe_mask = count-1;
+        this._e_size = new LongAdder();
+        this._mc = new LongAdder();
+    }
+
+    @Override
+    public node_info getNode(int key) {
+        return this._nodes.get(key);
+    }
+
+    /**
+     * Checks if the is an edge between two nodes. Each node by definition is connected to itself.
+     *
+     * @param node1 - first node id to check
+     * @param node2 - second node id to check
+     * @return True if and only if there is and edge. False in any other case
+     */
+    @Override
+    public boolean hasEdge(int node1, int node2) {
+        Node a = this._nodes.get(node1);
+        if (a == null) return false;
+        if (node1 == node2) return true;
+        Node b = this._nodes.get(node2);
+        if (b == null) return false;
+        ReentrantLock lock = this.stripe(node1);
+        lock.lock();
+        try {
+            return a.find(b) != -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the weight value between two nodes.
+     *
+     * @param node1 - First node
+     * @param node2 - Second node
+     * @return double - The value of the edge between the two node, -1 if the edge doesn't exist
+     */
+    @Override
+    public double getEdge(int node1, int node2) {
+        if (node1 == node2) return 0;
+        Node a = this._nodes.get(node1);
+        Node b = this._nodes.get(node2);
+        if (a == null || b == null) return -1;
+        ReentrantLock lock = this.stripe(node1);
+        lock.lock();
+        try {
+            int i = a.find(b);
+            return i == -1 ? -1 : a._w[i];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a new node to the graph with the given key ID, with no locking.
+     *
+     * @param key - The key of the new node to be added to the graph, if exists conducts no action
+     */
+    @Override
+    public void addNode(int key) {
+        if (this._nodes.containsKey(key)) return;
+        if (this._nodes.putIfAbsent(key, new Node(key)) == null) this._mc.increment();
+    }
+
+    /**
+     * Connects an edge between node1 and node2 with the given weight, or updates the weight of an existing edge,
+     * holding the stripe locks of both nodes.
+     *
+     * @param node1 - First node
+     * @param node2 - Second node
+     * @param w - Given weight to be set between them
+     */
+    @Override
+    public void connect(int node1, int node2, double w) {
+        if (this.setEdge(node1, node2, w, true)) this._mc.increment();
+    }
+
+    /**
+     * Connects a batch of edges as connect() would one by one, every edge under the stripe locks of its nodes,
+     * except that the mode count grows by one for the whole batch (if anything changed).
+     *
+     * @param node1 - The first node ID of every edge
+     * @param node2 - The second node ID of every edge
+     * @param w - The weight of every edge
+     * @return INT - The number of edges added or re-weighted
+     */
+    @Override
+    public int connectAll(int[] node1, int[] node2, double[] w) {
+        return this.applyAll(node1, node2, w, true);
+    }
+
+    /**
+     * Sets the weights of a batch of existing edges, missing edges are skipped and never created.
+     * The mode count grows by one for the whole batch (if anything changed).
+     *
+     * @param node1 - The first node ID of every edge
+     * @param node2 - The second node ID of every edge
+     * @param w - The new weight of every edge
+     * @return INT - The number of edges re-weighted
+     */
+    @Override
+    public int updateWeights(int[] node1, int[] node2, double[] w) {
+        return this.applyAll(node1, node2, w, false);
+    }
+
+    /**
+     * Removes a batch of edges, missing edges are skipped.
+     * The mode count grows by one for the whole batch (if anything changed).
+     *
+     * @param node1 - The first node ID of every edge
+     * @param node2 - The second node ID of every edge
+     * @return INT - The number of edges removed
+     */
+    @Override
+    public int removeEdges(int[] node1, int[] node2) {
+        weighted_graph.checkBatch(node1, node2, node1.length);
+        int removed = 0;
+        for (int i=0; i<node1.length; i++) {
+            if (this.unlink(node1[i], node2[i])) removed++;
+        }
+        if (removed > 0) this._mc.increment();
+        return removed;
+    }
+
+    /**
+     * Applies a batch of weight changes with a single mode count increment.
+     *
+     * @param node1 - The first node ID of every edge
+     * @param node2 - The second node ID of every edge
+     * @param w - The weight of every edge
+     * @param add - True if missing edges should be created
+     * @return INT - The number of edges added or re-weighted
+     */
+    private int applyAll(int[] node1, int[] node2, double[] w, boolean add) {
+        weighted_graph.checkBatch(node1, node2, w.length);
+        int changed = 0;
+        for (int i=0; i<node1.length; i++) {
+            if (w[i] >= 0 && this.setEdge(node1[i], node2[i], w[i], add)) changed++;
+        }
+        if (changed > 0) this._mc.increment();
+        return changed;
+    }
+
+    /**
+     * Adds or re-weights an edge holding the stripe locks of both nodes, without counting the change
+     * in the mode count.
+     *
+     * @param node1 - First node
+     * @param node2 - Second node
+     * @param w - The edge weight
+     * @param add - True if a missing edge should be created
+     * @return True if the edge was added or its weight changed
+     */
+    private boolean setEdge(int node1, int node2, double w, boolean add) {
+        if (node1 == node2 || w < 0) return false;
+        Node a = this._nodes.get(node1);
+        Node b = this._nodes.get(node2);
+        if (a == null || b == null) return false;
+        int s1 = this.stripeOf(node1);
+        int s2 = this.stripeOf(node2);
+        this.lockPair(s1, s2);
+        try {
+            if (a._removed || b._removed) return false;
+            int i = a.find(b);
+            if (i == -1) {
+                if (!add) return false;
+                a.append(b, w);
+                b.append(a, w);
+                this._e_size.increment();
+                return true;
+            }
+            if (a._w[i] == w) return false;
+            a._w[i] = w;
+            b._w[b.find(a)] = w;
+            return true;
+        } finally {
+            this.unlockPair(s1, s2);
+        }
+    }
+
+    /**
+     * Returns a weakly consistent live view of the nodes in the graph, iterating it never throws
+     * ConcurrentModificationException.
+     *
+     * @return Collection of node_info objects
+     */
+    @Override
+    public Collection<node_info> getV() {
+        return Collections.unmodifiableCollection(this._nodes.values());
+    }
+
+    @Override
+    public Collection<node_info> getV(int node_id) {
+        Node n = this._nodes.get(node_id);
+        if (n == null) return new ArrayList<>();
+        ReentrantLock lock = this.stripe(node_id);
+        lock.lock();
+        try {
+            ArrayList<node_info> result = new ArrayList<>(n._deg);
+            for (int i=0; i<n._deg; i++) {
+                result.add(n._ni[i]);
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Passes each neighbor of the given node and the weight of the edge to it to the visitor.
+     * The neighbors are copied under the node's stripe lock and visited after it is released,
+     * so the visitor may call back into the graph.
+     *
+     * @param node_id - The received node to iterate on
+     * @param visitor - The visitor to receive each neighbor key and edge weight
+     */
+    @Override
+    public void forEachNeighbor(int node_id, edge_visitor visitor) {
+        Node n = this._nodes.get(node_id);
+        if (n == null) return;
+        int[] keys;
+        double[] w;
+        ReentrantLock lock = this.stripe(node_id);
+        lock.lock();
+        try {
+            keys = new int[n._deg];
+            for (int i=0; i<n._deg; i++) {
+                keys[i] = n._ni[i]._key;
+            }
+            w = n._deg == 0 ? new double[0] : Arrays.copyOf(n._w, n._deg);
+        } finally {
+            lock.unlock();
+        }
+        for (int i=0; i<keys.length; i++) {
+            visitor.visit(keys[i], w[i]);
+        }
+    }
+
+    /**
+     * Delete the node (with the given ID) from the graph and removes all edges which starts or ends at this node,
+     * holding the stripe locks of the node and of all of its neighbors.
+     *
+     * @param key - Node ID to be deleted
+     * @return node_info - of the deleted node, null if none exists
+     */
+    @Override
+    public node_info removeNode(int key) {
+        Node n = this._nodes.get(key);
+        if (n == null) return null;
+        int own = this.stripeOf(key);
+        while (true) {
+            int[] stripes;
+            ReentrantLock lock = this._stripes[own];
+            lock.lock();
+            try {
+                if (n._removed) return null;
+                stripes = new int[n._deg+1];
+                stripes[0] = own;
+                for (int i=0; i<n._deg; i++) {
+                    stripes[i+1] = this.stripeOf(n._ni[i]._key);
+                }
+            } finally {
+                lock.unlock();
+            }
+            Arrays.sort(stripes);
+            int count = 0;
+            for (int i=0; i<stripes.length; i++) {
+                if (i == 0 || stripes[i] != stripes[i-1]) stripes[count++] = stripes[i];
+            }
+            for (int i=0; i<count; i++) {
+                this._stripes[stripes[i]].lock();
+            }
+            try {
+                if (n._removed) return null;
+                if (this.covered(n, stripes, count)) {
+                    for (int i=0; i<n._deg; i++) {
+                        Node m = n._ni[i];
+                        m.detach(m.find(n));
+                    }
+                    this._e_size.add(-n._deg);
+                    this._mc.add(n._deg+1);
+                    n._ni = null;
+                    n._w = null;
+                    n._pos = null;
+                    n._deg = 0;
+                    n._removed = true;
+                    this._nodes.remove(key, n);
+                    return n;
+                }
+            } finally {
+                for (int i=count-1; i>=0; i--) {
+                    this._stripes[stripes[i]].unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes an edge between two nodes in the graph holding the stripe locks of both, does nothing if there
+     * is no such edge.
+     *
+     * @param node1 - First node ID
+     * @param node2 - Second node ID
+     */
+    @Override
+    public void removeEdge(int node1, int node2) {
+        if (this.unlink(node1, node2)) this._mc.increment();
+    }
+
+    /**
+     * Removes an edge holding the stripe locks of both nodes, without counting the change in the mode count.
+     *
+     * @param node1 - First node ID
+     * @param node2 - Second node ID
+     * @return True if the edge existed and was removed
+     */
+    private boolean unlink(int node1, int node2) {
+        if (node1 == node2) return false;
+        Node a = this._nodes.get(node1);
+        Node b = this._nodes.get(node2);
+        if (a == null || b == null) return false;
+        int s1 = this.stripeOf(node1);
+        int s2 = this.stripeOf(node2);
+        this.lockPair(s1, s2);
+        try {
+            int i = a.find(b);
+            if (i == -1) return false;
+            a.detach(i);
+            b.detach(b.find(a));
+            this._e_size.decrement();
+            return true;
+        } finally {
+            this.unlockPair(s1, s2);
+        }
+    }
+
+    @Override
+    public int nodeSize() {
+        return this._nodes.size();
+    }
+
+    /**
+     * Return the number of edges in the graph. While other threads change the graph the sum is not
+     * an atomic snapshot, it is exact once they are done.
+     *
+     * @return INT - number of edges in the graph
+     */
+    @Override
+    public int edgeSize() {
+        return (int) this._e_size.sum();
+    }
+
+    /**
+     * Returns the Mode Count (inner changes counter) of the graph, summed over the threads which changed it.
+     *
+     * @return INT - The graph's mode count
+     */
+    @Override
+    public int getMC() {
+        return (int) this._mc.sum();
+    }
+
+    /**
+     * Returns a string representation of the graph in the same format as WGraph_DS.
+     *
+     * @return String - representation of the graph.
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append("Total Nodes: ").append(this.nodeSize()).append(" ||  Total edges: ").append(this.edgeSize());
+        result.append("\n");
+        for (Node n : this._nodes.values()) {
+            ArrayList<long[]> edges = new ArrayList<>();
+            this.forEachNeighbor(n._key, (ni, w) -> edges.add(new long[] {ni, Double.doubleToRawLongBits(w)}));
+            edges.sort((x, y) -> Long.compare(x[0], y[0]));
+            result.append("Node: ").append(n._key);
+            result.append(" | Ni Count: ").append(edges.size()).append(" | NiKey->Weight: ");
+            for (long[] e : edges) {
+                result.append((int) e[0]).append("->");
+                result.append(Double.longBitsToDouble(e[1])).append(" | ");
+            }
+            result.append("\n");
+        }
+        return result.toString();
+    }
+
+    /**
+     * Checks that the stripes of all the neighbors of a node are among the locked stripes, a neighbor
+     * may have been connected between reading the neighbors and locking their stripes.
+     */
+    private boolean covered(Node n, int[] stripes, int count) {
+        for (int i=0; i<n._deg; i++) {
+            if (Arrays.binarySearch(stripes, 0, count, this.stripeOf(n._ni[i]._key)) < 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Locks two stripes in ascending order, a single stripe is locked once.
+     */
+    private void lockPair(int s1, int s2) {
+        this._stripes[Math.min(s1, s2)].lock();
+        if (s1 != s2) this._stripes[Math.max(s1, s2)].lock();
+    }
+
+    private void unlockPair(int s1, int s2) {
+        if (s1 != s2) this._stripes[Math.max(s1, s2)].unlock();
+        this._stripes[Math.min(s1, s2)].unlock();
+    }
+
+    private ReentrantLock stripe(int key) {
+        return this._stripes[this.stripeOf(key)];
+    }
+
+    /**
+     * Returns the stripe of a key, scrambling its bits so sequential keys spread over the stripes.
+     */
+    private int stripeOf(int key) {
+        int h = key*0x9E3779B9;
+        return (h ^ (h >>> 16)) & this._stripe_mask;
+    }
+}
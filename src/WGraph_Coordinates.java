@@ -0,0 +1,170 @@
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * This class is a side attribute store holding a 2D coordinate for the nodes of a graph, kept apart from the
+ * graph itself in primitive arrays (node key -> slot through an IntIntHashMap).
+ * It provides the built-in A* heuristics over those coordinates:
+ * 1 - euclidean() for planar coordinates (x,y)
+ * 2 - haversine() for geographic coordinates (x = latitude, y = longitude, in degrees)
+ * Each heuristic is multiplied by a scale factor that converts the geometric length into edge weight units.
+ * The heuristic is exact (admissible and consistent) as long as no edge weighs less than the scaled
+ * geometric length between its two ends. Nodes without a coordinate are estimated as 0, which keeps the heuristic
+ * admissible but not consistent, A* then reopens the nodes it settled too early.
+ *
+ * @author shmuel.lavian
+ */
+public class WGraph_Coordinates implements Serializable {
+    private static final long serialVersionUID = 4185204372930627784L;
+    /** The mean earth radius in meters, used by the haversine heuristic */
+    public static final double EARTH_RADIUS = 6371008.8;
+    private final IntIntHashMap _index;
+    private double[] _x;
+    private double[] _y;
+    private int _size;
+
+    /**
+     * The default constructor. Creates a new empty coordinate store.
+     */
+    public WGraph_Coordinates() {
+        this(16);
+    }
+
+    /**
+     * Creates a new empty coordinate store pre-sized for the expected number of nodes.
+     *
+     * @param expected - The number of nodes expected to get a coordinate
+     */
+    public WGraph_Coordinates(int expected) {
+        int cap = Math.max(expected, 4);
+        this._index = new IntIntHashMap(cap);
+        this._x = new double[cap];
+        this._y = new double[cap];
+        this._size = 0;
+    }
+
+    /**
+     * Builds a coordinate store from the metadata of the graph's nodes. Every node whose info is
+     * of the form "x,y" (optionally followed by more comma separated values) gets a coordinate,
+     * all the other nodes are skipped.
+     *
+     * @param g - The graph to read the node metadata from
+     * @return WGraph_Coordinates - The coordinates of the graph's nodes
+     */
+    public static WGraph_Coordinates fromInfo(weighted_graph g) {
+        WGraph_Coordinates result = new WGraph_Coordinates(g.nodeSize());
+        for (node_info n : g.getV()) {
+            String info = n.getInfo();
+            if (info == null) continue;
+            String[] parts = info.split(",");
+            if (parts.length < 2) continue;
+            try {
+                result.set(n.getKey(), Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim()));
+            } catch (NumberFormatException e) {
+                // not a coordinate, the node is simply left without one
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets the coordinate of a node, overriding any previous one.
+     *
+     * @param key - The node ID
+     * @param x - The x coordinate (latitude for haversine)
+     * @param y - The y coordinate (longitude for haversine)
+     */
+    public void set(int key, double x, double y) {
+        int i = this._index.get(key);
+        if (i == -1) {
+            if (this._size == this._x.length) {
+                this._x = Arrays.copyOf(this._x, this._size*2);
+                this._y = Arrays.copyOf(this._y, this._size*2);
+            }
+            i = this._size++;
+            this._index.put(key, i);
+        }
+        this._x[i] = x;
+        this._y[i] = y;
+    }
+
+    /**
+     * Checks if a node has a coordinate.
+     *
+     * @param key - The node ID
+     * @return True if the node has a coordinate
+     */
+    public boolean has(int key) {
+        return this._index.containsKey(key);
+    }
+
+    /**
+     * Returns the x coordinate of a node.
+     *
+     * @param key - The node ID
+     * @return double - The x coordinate, NaN if the node has no coordinate
+     */
+    public double x(int key) {
+        int i = this._index.get(key);
+        return i == -1 ? Double.NaN : this._x[i];
+    }
+
+    /**
+     * Returns the y coordinate of a node.
+     *
+     * @param key - The node ID
+     * @return double - The y coordinate, NaN if the node has no coordinate
+     */
+    public double y(int key) {
+        int i = this._index.get(key);
+        return i == -1 ? Double.NaN : this._y[i];
+    }
+
+    /**
+     * Returns the number of nodes with a coordinate.
+     *
+     * @return INT - The store size
+     */
+    public int size() {
+        return this._size;
+    }
+
+    /**
+     * Returns the straight line distance heuristic for planar coordinates.
+     *
+     * @param scale - The edge weight per unit of coordinate distance (the lowest weight/length ratio of any edge)
+     * @return distance_heuristic - The euclidean heuristic
+     */
+    public distance_heuristic euclidean(double scale) {
+        return (node, target) -> {
+            int a = this._index.get(node);
+            int b = this._index.get(target);
+            if (a == -1 || b == -1) return 0;
+            double dx = this._x[a]-this._x[b];
+            double dy = this._y[a]-this._y[b];
+            return scale*Math.sqrt(dx*dx+dy*dy);
+        };
+    }
+
+    /**
+     * Returns the great circle distance heuristic for latitude/longitude coordinates in degrees.
+     * The distance is measured in meters on a sphere of radius EARTH_RADIUS.
+     *
+     * @param scale - The edge weight per meter (the lowest weight/length ratio of any edge)
+     * @return distance_heuristic - The haversine heuristic
+     */
+    public distance_heuristic haversine(double scale) {
+        return (node, target) -> {
+            int a = this._index.get(node);
+            int b = this._index.get(target);
+            if (a == -1 || b == -1) return 0;
+            double lat1 = Math.toRadians(this._x[a]);
+            double lat2 = Math.toRadians(this._x[b]);
+            double d_lat = lat2-lat1;
+            double d_lon = Math.toRadians(this._y[b]-this._y[a]);
+            double h = Math.sin(d_lat/2)*Math.sin(d_lat/2)
+                    + Math.cos(lat1)*Math.cos(lat2)*Math.sin(d_lon/2)*Math.sin(d_lon/2);
+            return scale*2*EARTH_RADIUS*Math.asin(Math.min(1, Math.sqrt(h)));
+        };
+    }
+}
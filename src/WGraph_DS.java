@@ -1,5 +1,11 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * This class implements the weighted_graph interface that represents a mathematical weighted graph
@@ -8,15 +14,38 @@ import java.util.*;
  * 2 - EdgeInfo which stores all the data and methods for all the edges in the graph
  * Each graph consists of two HashMap data structures. One for the node and the other for the edges.
  * Each graph also has an integer that count the edges and the mode count (internal changes count) of the graph
+ * Each node also holds a dense index (recycled after removal) so the graph implements indexed_graph and
+ * algorithms can keep their per node state in primitive arrays.
+ * The graph also maintains its connected components incrementally: a union-find over the node indexes is
+ * updated by addNode() and connect(), so isConnected() and sameComponent() answer in near constant time.
+ * Removing an edge can split a component, so it only marks the union-find as stale and the next query
+ * rebuilds it in O(n + e).
+ * A graph is copied either eagerly with deepCopy(), which clones the adjacency maps directly, or lazily with
+ * copyOnWrite(), which shares the storage of the graph until either side changes (see copyOnWrite()).
+ * Every change also updates an order independent 64 bit fingerprint of the node keys and the weighted edges
+ * (see fingerprint()), so equals() rejects most different graphs in O(1) and hashCode() agrees with equals().
  *
  * @author shmuel.lavian
  */
-public class WGraph_DS implements weighted_graph, Serializable {
+public class WGraph_DS implements indexed_graph, Serializable {
     private static final long serialVersionUID = 8597480894519396439L;
     private HashMap<Integer,node_info> _g_nodes;
     private HashMap<Integer,EdgeInfo> _g_edges;
     private int _e_size;
     private int _mc;
+    private NodeInfo[] _n_index;
+    private EdgeInfo[] _e_index;
+    private int _index_bound;
+    private int[] _free_index;
+    private int _free_size;
+    private transient int[] _uf_parent;
+    private transient int _components;
+    private transient boolean _uf_valid;
+    private transient WGraph_DS _cow_source;
+    private transient ArrayList<WeakReference<WGraph_DS>> _cow_copies;
+    private transient long _fingerprint;
+    /** The number of node indexes whose edges are copied by a single task */
+    static final int COPY_GRAIN = 1 << 12;
 
     /**
      * This internal class implements the node_info interface that represents a single vertex (node) in a graph,
@@ -27,6 +56,7 @@ public class WGraph_DS implements weighted_graph, Serializable {
     private class NodeInfo implements node_info, Comparable<node_info>, Serializable {
         private static final long serialVersionUID = 515225244672992607L;
         private final int _key;
+        private int _index;
         private double _tag;
         private String _str;
 
@@ -34,9 +64,11 @@ public class WGraph_DS implements weighted_graph, Serializable {
          * The main node_info constructor. Creates a new node with the received ID
          *
          * @param k - The ID to be set for the new node
+         * @param index - The dense index of the new node
          */
-        private NodeInfo(int k) {
+        private NodeInfo(int k, int index) {
             this._key = k;
+            this._index = index;
             this._tag = -1;
             this._str = null;
         }
@@ -69,6 +101,7 @@ public class WGraph_DS implements weighted_graph, Serializable {
          */
         @Override
         public void setInfo(String s) {
+            WGraph_DS.this.beforeWrite();
             this._str = s;
         }
 
@@ -90,6 +123,7 @@ public class WGraph_DS implements weighted_graph, Serializable {
          */
         @Override
         public void setTag(double t) {
+            WGraph_DS.this.beforeWrite();
             this._tag = t;
         }
 
@@ -154,6 +188,15 @@ public class WGraph_DS implements weighted_graph, Serializable {
             this._n_edges = new HashMap<>();
         }
 
+        /**
+         * Creates a new EdgeInfo with a Map pre-sized for the received number of neighbors
+         *
+         * @param degree - The expected number of neighbors
+         */
+        private EdgeInfo(int degree) {
+            this._n_edges = new HashMap<>(degree*4/3+1);
+        }
+
         /**
          * Sets the weight of a specific node between this->destination
          * This is a one way change and is being used twice in the super classes
@@ -208,14 +251,6 @@ public class WGraph_DS implements weighted_graph, Serializable {
             return this._n_edges.get(_g_nodes.get(dest_key));
         }
 
-        /**
-         * Clears the HashMap containing all this nodes neighbors,
-         * This method is implemented for the super classes RemoveNode method
-         */
-        private void removeSrc() {
-            this._n_edges.clear();
-        }
-
         /**
          * Returns the number of the connected nodes to this node ID
          *
@@ -224,17 +259,6 @@ public class WGraph_DS implements weighted_graph, Serializable {
         private int getNiSize() {
             return this._n_edges.size();
         }
-
-        /**
-         * Removed the edge between this and -> dest node
-         * This is a one way change and is being used twice in the super classes methods
-         * in order to provide a bidirectional operation
-         *
-         * @param e - The received node ID to connect the edge to
-         */
-        private void removeEd(int e) {
-            this._n_edges.remove(_g_nodes.get(e));
-        }
     }
 
     /**
@@ -242,10 +266,245 @@ public class WGraph_DS implements weighted_graph, Serializable {
      * alongside initialized edge counted and mod count
      */
     public WGraph_DS() {
-        this._g_nodes = new HashMap<>();
-        this._g_edges = new HashMap<>();
+        this(16);
+    }
+
+    /**
+     * Creates a new empty graph pre-sized for the expected number of nodes, so filling it does not rehash.
+     *
+     * @param expected_nodes - The number of nodes expected to be added to the graph
+     */
+    public WGraph_DS(int expected_nodes) {
+        int cap = Math.max(expected_nodes, 16);
+        this._g_nodes = new HashMap<>(cap*4/3+1);
+        this._g_edges = new HashMap<>(cap*4/3+1);
         _e_size = 0;
         _mc = 0;
+        this._n_index = new NodeInfo[cap];
+        this._e_index = new EdgeInfo[cap];
+        this._index_bound = 0;
+        this._free_index = new int[4];
+        this._free_size = 0;
+        this._uf_parent = new int[cap];
+        this._components = 0;
+        this._uf_valid = true;
+    }
+
+    /**
+     * Creates a graph directly from compiled CSR rows in a single pass, used by WGraph_Builder.
+     * Index i becomes the dense index of the node keys[i], its neighbors are the indexes targets[offsets[i]..offsets[i+1])
+     * with the matching weights, every undirected edge must appear once in each of its two rows.
+     * The mode count is set as if every node was added and every edge connected once.
+     *
+     * @param keys - The node keys by index
+     * @param n - The number of nodes
+     * @param offsets - The row offsets, n+1 entries
+     * @param targets - The neighbor indexes
+     * @param weights - The edge weights
+     * @return WGraph_DS - The new graph
+     */
+    static WGraph_DS fromRows(int[] keys, int n, int[] offsets, int[] targets, double[] weights) {
+        WGraph_DS g = new WGraph_DS(n);
+        for (int i=0; i<n; i++) {
+            NodeInfo node = g.new NodeInfo(keys[i], i);
+            EdgeInfo e = g.new EdgeInfo(offsets[i+1]-offsets[i]);
+            g._g_nodes.put(keys[i], node);
+            g._g_edges.put(keys[i], e);
+            g._n_index[i] = node;
+            g._e_index[i] = e;
+        }
+        g._index_bound = n;
+        for (int i=0; i<n; i++) {
+            HashMap<node_info,Double> edges = g._e_index[i]._n_edges;
+            g._fingerprint += nodeHash(keys[i]);
+            for (int p=offsets[i]; p<offsets[i+1]; p++) {
+                edges.put(g._n_index[targets[p]], weights[p]);
+                if (i < targets[p]) g._fingerprint += edgeHash(keys[i], keys[targets[p]], weights[p]);
+            }
+        }
+        g._e_size = offsets[n]/2;
+        g._mc = n+g._e_size;
+        g._uf_valid = false;
+        return g;
+    }
+
+    /**
+     * Creates a lazy copy reading the storage of the received graph, see copyOnWrite().
+     *
+     * @param owner - The graph owning the storage
+     */
+    private WGraph_DS(WGraph_DS owner) {
+        this._g_nodes = owner._g_nodes;
+        this._g_edges = owner._g_edges;
+        this._e_size = owner._e_size;
+        this._mc = owner._mc;
+        this._n_index = owner._n_index;
+        this._e_index = owner._e_index;
+        this._index_bound = owner._index_bound;
+        this._free_index = owner._free_index;
+        this._free_size = owner._free_size;
+        this._fingerprint = owner._fingerprint;
+        this._uf_parent = null;
+        this._uf_valid = false;
+        this._cow_source = owner;
+    }
+
+    /**
+     * Returns a deep copy of the graph using the common ForkJoinPool.
+     * Instead of adding every node and connecting every edge, the copy is built directly from the adjacency:
+     * every node and neighbor Map is allocated at its final size and the rows are copied in parallel
+     * across ranges of node indexes. The copy keeps the node indexes, infos, tags, components and mode count.
+     * Runs in O(n + e) time.
+     *
+     * @return WGraph_DS - The new graph
+     */
+    public WGraph_DS deepCopy() {
+        return this.deepCopy(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Returns a deep copy of the graph, copying the rows on the received pool.
+     *
+     * @param pool - The pool copying the rows
+     * @return WGraph_DS - The new graph
+     */
+    WGraph_DS deepCopy(ForkJoinPool pool) {
+        WGraph_DS source = this._cow_source != null ? this._cow_source : this;
+        WGraph_DS g = new WGraph_DS(0);
+        g.copyStorage(source, pool);
+        return g;
+    }
+
+    /**
+     * Returns a copy of the graph in O(1) time that shares the storage of this graph until either side changes.
+     * The first change of the copy (or any call returning its node_info objects - getNode() and getV())
+     * turns it into a deep copy of its own, and the first change of this graph (including setTag() and
+     * setInfo() on its nodes) first does the same for all of its lazy copies, so neither side ever sees the
+     * changes of the other. Until then queries which only read keys and weights (hasEdge(), getEdge(),
+     * forEachNeighbor(), the indexed_graph methods and the graph algorithms built on them) run on the shared storage.
+     * A lazy copy is not safe for use from another thread while this graph changes.
+     *
+     * @return WGraph_DS - The lazy copy
+     */
+    public WGraph_DS copyOnWrite() {
+        WGraph_DS owner = this._cow_source != null ? this._cow_source : this;
+        WGraph_DS g = new WGraph_DS(owner);
+        if (owner._cow_copies == null) owner._cow_copies = new ArrayList<>();
+        owner._cow_copies.removeIf(ref -> ref.get() == null);
+        owner._cow_copies.add(new WeakReference<>(g));
+        return g;
+    }
+
+    /**
+     * Checks if this graph is a lazy copy which still shares the storage of another graph.
+     *
+     * @return True if the graph has not been detached from its source yet
+     */
+    boolean isShared() {
+        return this._cow_source != null;
+    }
+
+    /**
+     * Called before every change of the graph: a lazy copy takes a deep copy of the storage it shares,
+     * and a graph with lazy copies first hands every one of them a deep copy of the storage before it changes.
+     */
+    private void beforeWrite() {
+        if (this._cow_source != null) this.detach();
+        if (this._cow_copies != null) {
+            ArrayList<WeakReference<WGraph_DS>> copies = this._cow_copies;
+            this._cow_copies = null;
+            for (WeakReference<WGraph_DS> ref : copies) {
+                WGraph_DS copy = ref.get();
+                if (copy != null && copy._cow_source == this) copy.detach();
+            }
+        }
+    }
+
+    /**
+     * Replaces the shared storage of a lazy copy with a deep copy of its own.
+     */
+    private void detach() {
+        WGraph_DS source = this._cow_source;
+        this._cow_source = null;
+        if (source._cow_copies != null) source._cow_copies.removeIf(ref -> ref.get() == null || ref.get() == this);
+        this.copyStorage(source, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Replaces the storage of this graph with a deep copy of the storage of the received graph.
+     * The nodes are created first, reusing the boxed keys of the source, then the neighbor Maps are filled
+     * by CopyRows tasks, in parallel when there are more than COPY_GRAIN node indexes.
+     *
+     * @param source - The graph to copy
+     * @param pool - The pool copying the rows
+     */
+    private void copyStorage(WGraph_DS source, ForkJoinPool pool) {
+        int cap = Math.max(source._g_nodes.size(), 16)*4/3+1;
+        this._g_nodes = new HashMap<>(cap);
+        this._g_edges = new HashMap<>(cap);
+        this._n_index = new NodeInfo[source._n_index.length];
+        this._e_index = new EdgeInfo[source._e_index.length];
+        for (Map.Entry<Integer,node_info> entry : source._g_nodes.entrySet()) {
+            NodeInfo n = (NodeInfo) entry.getValue();
+            NodeInfo node = this.new NodeInfo(n._key, n._index);
+            node._tag = n._tag;
+            node._str = n._str;
+            EdgeInfo e = this.new EdgeInfo(source._e_index[n._index].getNiSize());
+            this._g_nodes.put(entry.getKey(), node);
+            this._g_edges.put(entry.getKey(), e);
+            this._n_index[n._index] = node;
+            this._e_index[n._index] = e;
+        }
+        this._index_bound = source._index_bound;
+        this._free_index = source._free_index.clone();
+        this._free_size = source._free_size;
+        this._e_size = source._e_size;
+        this._mc = source._mc;
+        this._fingerprint = source._fingerprint;
+        this._uf_parent = source._uf_parent == null ? null : source._uf_parent.clone();
+        this._components = source._components;
+        this._uf_valid = source._uf_valid;
+        CopyRows task = new CopyRows(source, this, 0, this._index_bound);
+        if (this._index_bound > COPY_GRAIN) pool.invoke(task);
+        else task.compute();
+    }
+
+    /**
+     * This internal task copies the neighbor Maps of a range of node indexes from one graph to another,
+     * splitting the range in two until it is at most COPY_GRAIN indexes long. Every task writes only the Maps
+     * of its own range, the boxed weights are immutable and shared between the two graphs.
+     */
+    private static final class CopyRows extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final WGraph_DS _source;
+        private final WGraph_DS _target;
+        private final int _from;
+        private final int _to;
+
+        private CopyRows(WGraph_DS source, WGraph_DS target, int from, int to) {
+            this._source = source;
+            this._target = target;
+            this._from = from;
+            this._to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this._to-this._from > COPY_GRAIN) {
+                int mid = (this._from+this._to) >>> 1;
+                invokeAll(new CopyRows(this._source, this._target, this._from, mid),
+                        new CopyRows(this._source, this._target, mid, this._to));
+                return;
+            }
+            for (int i=this._from; i<this._to; i++) {
+                EdgeInfo e = this._source._e_index[i];
+                if (e == null) continue;
+                HashMap<node_info,Double> edges = this._target._e_index[i]._n_edges;
+                for (Map.Entry<node_info,Double> ni : e._n_edges.entrySet()) {
+                    edges.put(this._target._n_index[((NodeInfo) ni.getKey())._index], ni.getValue());
+                }
+            }
+        }
     }
 
     /**
@@ -256,6 +515,7 @@ public class WGraph_DS implements weighted_graph, Serializable {
      */
     @Override
     public node_info getNode(int key) {
+        if (this._cow_source != null) this.detach();
         return this._g_nodes.get(key);
     }
 
@@ -272,7 +532,7 @@ public class WGraph_DS implements weighted_graph, Serializable {
     public boolean hasEdge(int node1, int node2) {
         if (node1 == node2 && this._g_nodes.containsKey(node1)) return true;
         if (!this._g_nodes.containsKey(node1) || !this._g_nodes.containsKey(node2)) return false;
-        return this._g_edges.get(node1)._n_edges.containsKey(this.getNode(node2));
+        return this._g_edges.get(node1)._n_edges.containsKey(this._g_nodes.get(node2));
     }
 
     /**
@@ -287,14 +547,14 @@ public class WGraph_DS implements weighted_graph, Serializable {
     public double getEdge(int node1, int node2) {
         if (node1 == node2) return 0;
         if (!this._g_nodes.containsKey(node1) || !this._g_nodes.containsKey(node2)) return -1;
-        if (this._g_edges.get(node1)._n_edges.containsKey(this.getNode(node2))) {
+        if (this._g_edges.get(node1)._n_edges.containsKey(this._g_nodes.get(node2))) {
             return this._g_edges.get(node1).getW(node2);
         }
         else return -1;
     }
 
     /**
-     * Adds a new node to the graph with the given key ID.
+     * Adds a new node to the graph with the given key ID, as a new single node component.
      * This method runs in a constant O(1) time.
      *
      * @param key - The key of the new node to be added to the graph, if exists conducts no action
@@ -302,10 +562,18 @@ public class WGraph_DS implements weighted_graph, Serializable {
     @Override
     public void addNode(int key) {
         if (!this._g_nodes.containsKey(key)) {
-            node_info n = new NodeInfo(key);
+            this.beforeWrite();
+            NodeInfo n = new NodeInfo(key,this.takeIndex());
             EdgeInfo e = new EdgeInfo();
             this._g_nodes.put(key,n);
             this._g_edges.put(key,e);
+            this._n_index[n._index] = n;
+            this._e_index[n._index] = e;
+            if (this._uf_valid) {
+                this._uf_parent[n._index] = -1;
+                this._components++;
+            }
+            this._fingerprint += nodeHash(key);
             _mc++;
         }
     }
@@ -313,7 +581,7 @@ public class WGraph_DS implements weighted_graph, Serializable {
     /**
      * Connects an edge between node1 and node2 with the given weight.
      * Increments the edge and mode count accordingly. Does nothing if the edge with same weight already exists.
-     * Otherwise just updates the weight.
+     * Otherwise just updates the weight. A new edge unites the components of its two nodes.
      * This method runs in a constant O(1) time.
      *
      * @param node1 - First node
@@ -325,8 +593,11 @@ public class WGraph_DS implements weighted_graph, Serializable {
         if (node1 == node2 || w < 0) return;
         if (this._g_edges.containsKey(node1) && this._g_edges.containsKey(node2)) {
             if (this._g_edges.containsKey(node1) && !this._g_edges.get(node1).hasNi(node2)) {
+                this.beforeWrite();
                 this._g_edges.get(node1).connectE(node2,w);
                 this._g_edges.get(node2).connectE(node1,w);
+                if (this._uf_valid) this.unite(this.indexOf(node1), this.indexOf(node2));
+                this._fingerprint += edgeHash(node1, node2, w);
                 _e_size++;
                 _mc++;
                 return;
@@ -336,6 +607,8 @@ public class WGraph_DS implements weighted_graph, Serializable {
                     return;
                 }
                 else {
+                    this.beforeWrite();
+                    this._fingerprint += edgeHash(node1, node2, w)-edgeHash(node1, node2, this._g_edges.get(node1).getW(node2));
                     this._g_edges.get(node1).setWeight(node2,w);
                     this._g_edges.get(node2).setWeight(node1,w);
                     _mc++;
@@ -353,6 +626,7 @@ public class WGraph_DS implements weighted_graph, Serializable {
     @Override
     public Collection<node_info> getV() {
         if (this._g_nodes.isEmpty()) return new ArrayList<>();
+        if (this._cow_source != null) this.detach();
         return this._g_nodes.values();
     }
 
@@ -367,48 +641,225 @@ public class WGraph_DS implements weighted_graph, Serializable {
     @Override
     public Collection<node_info> getV(int node_id) {
         if (!this._g_nodes.containsKey(node_id)) return new ArrayList<>();
+        if (this._cow_source != null) this.detach();
         return this._g_edges.get(node_id).getNi();
     }
 
+    /**
+     * Passes each neighbor of the given node and the weight of the edge to it to the visitor.
+     * Walks the nodes edge Map directly, so no Collection is copied and no weight lookup is needed.
+     * Runs in O(k) complexity while k = the degree of node_id.
+     *
+     * @param node_id - The received node to iterate on
+     * @param visitor - The visitor to receive each neighbor key and edge weight
+     */
+    @Override
+    public void forEachNeighbor(int node_id, edge_visitor visitor) {
+        EdgeInfo e = this._g_edges.get(node_id);
+        if (e == null) return;
+        for (Map.Entry<node_info,Double> ni : e._n_edges.entrySet()) {
+            visitor.visit(ni.getKey().getKey(), ni.getValue());
+        }
+    }
+
     /**
      * Delete the node (with the given ID) from the graph -
      * and removes all edges which starts or ends at this node.
+     * Every incident edge is removed once, from the neighbor's Map only, with no copy of the neighbors.
+     * Runs in O(k) time, k being the degree of the node. The mode count grows by k+1 and the edge count drops by k.
+     * Removing a node without edges keeps the components up to date, otherwise they are rebuilt on the next query.
      *
      * @param key - Node ID to be deleted
      * @return node_info - of the deleted node, null if none exists
      */
     @Override
     public node_info removeNode(int key) {
-        if (this._g_nodes.containsKey(key)) {
-            node_info tmp_n = this._g_nodes.get(key);
-            for (node_info n : this.getV(key)) {
-                this.removeEdge(n.getKey(),key);
-            }
-            this._g_nodes.remove(key);
-            _mc = _mc+this._g_edges.get(key).getNiSize()+1;
-            _e_size = _e_size-this._g_edges.get(key).getNiSize();
-            this._g_edges.get(key).removeSrc();
-            this._g_edges.remove(key);
-            return tmp_n;
+        if (!this._g_nodes.containsKey(key)) return null;
+        this.beforeWrite();
+        NodeInfo node = (NodeInfo) this._g_nodes.get(key);
+        int deg = this.detachNode(node);
+        this._e_size -= deg;
+        this._mc += deg+1;
+        return node;
+    }
+
+    /**
+     * Deletes all the nodes with the received keys and their edges, missing and repeated keys are skipped.
+     * An edge between two removed nodes is removed once. Runs in O(sum of the degrees of the removed nodes) time,
+     * the counters change as if removeNode() was called for every key.
+     *
+     * @param keys - The IDs of the nodes to be deleted
+     * @return INT - The number of nodes deleted
+     */
+    public int removeNodes(int[] keys) {
+        int removed = 0;
+        long edges = 0;
+        for (int key : keys) {
+            if (!this._g_nodes.containsKey(key)) continue;
+            if (removed == 0) this.beforeWrite();
+            edges += this.detachNode((NodeInfo) this._g_nodes.get(key));
+            removed++;
         }
-        else return null;
+        this._e_size -= (int) edges;
+        this._mc += (int) (edges+removed);
+        return removed;
     }
 
     /**
-     * Removes an edge between two nodes in the graph.
-     * Runs in a constant O(1) time.
+     * Removes a node from the graph: the node is removed from the Map of every neighbor, then its own Map,
+     * keys and index are dropped. Leaves the edge and mode counts to the caller.
+     *
+     * @param node - The node to remove
+     * @return INT - The number of edges removed with the node
+     */
+    private int detachNode(NodeInfo node) {
+        HashMap<node_info,Double> edges = this._e_index[node._index]._n_edges;
+        int deg = edges.size();
+        for (Map.Entry<node_info,Double> ni : edges.entrySet()) {
+            this._e_index[((NodeInfo) ni.getKey())._index]._n_edges.remove(node);
+            this._fingerprint -= edgeHash(node._key, ni.getKey().getKey(), ni.getValue());
+        }
+        this._fingerprint -= nodeHash(node._key);
+        if (deg > 0) this._uf_valid = false;
+        else if (this._uf_valid) this._components--;
+        this._g_nodes.remove(node._key);
+        this._g_edges.remove(node._key);
+        this.releaseIndex(node._index);
+        return deg;
+    }
+
+    /**
+     * Removes an edge between two nodes in the graph, does nothing if there is no such edge.
+     * Runs in a constant O(1) time. Removing an edge marks the connected components as stale.
      *
      * @param node1 - First node ID
      * @param node2 - Second node ID
      */
     @Override
     public void removeEdge(int node1, int node2) {
-        if (this._g_nodes.containsKey(node1) && this._g_nodes.containsKey(node2) && node1 != node2) {
-            this._g_edges.get(node1).removeEd(node2);
-            this._g_edges.get(node2).removeEd(node1);
-            _mc++;
-            _e_size--;
+        if (node1 == node2 || !this.hasEdge(node1, node2)) return;
+        this.beforeWrite();
+        NodeInfo a = (NodeInfo) this._g_nodes.get(node1);
+        NodeInfo b = (NodeInfo) this._g_nodes.get(node2);
+        double w = this._e_index[a._index]._n_edges.remove(b);
+        this._e_index[b._index]._n_edges.remove(a);
+        this._fingerprint -= edgeHash(node1, node2, w);
+        this._uf_valid = false;
+        _mc++;
+        _e_size--;
+    }
+
+    /**
+     * Connects a batch of edges, the counters and components change as if connect() was called for every edge
+     * except that the mode count grows by one for the whole batch (if anything changed).
+     * See applyAll() for how the batch is applied.
+     *
+     * @param node1 - The first node ID of every edge
+     * @param node2 - The second node ID of every edge
+     * @param w - The weight of every edge
+     * @return INT - The number of edges added or re-weighted
+     */
+    @Override
+    public int connectAll(int[] node1, int[] node2, double[] w) {
+        return this.applyAll(node1, node2, w, true);
+    }
+
+    /**
+     * Sets the weights of a batch of existing edges, missing edges are skipped and never created.
+     * The mode count grows by one for the whole batch (if anything changed).
+     *
+     * @param node1 - The first node ID of every edge
+     * @param node2 - The second node ID of every edge
+     * @param w - The new weight of every edge
+     * @return INT - The number of edges re-weighted
+     */
+    @Override
+    public int updateWeights(int[] node1, int[] node2, double[] w) {
+        return this.applyAll(node1, node2, w, false);
+    }
+
+    /**
+     * Applies a batch of weight changes. The source node and its Map are looked up once for every run of
+     * equal node1 keys, so a batch grouped by node1 costs a single node lookup and two Map writes per edge,
+     * and the boxed weight is shared by both directions of the edge.
+     *
+     * @param node1 - The first node ID of every edge
+     * @param node2 - The second node ID of every edge
+     * @param w - The weight of every edge
+     * @param add - True if missing edges should be created
+     * @return INT - The number of edges added or re-weighted
+     */
+    private int applyAll(int[] node1, int[] node2, double[] w, boolean add) {
+        weighted_graph.checkBatch(node1, node2, w.length);
+        if (node1.length == 0) return 0;
+        this.beforeWrite();
+        int changed = 0;
+        NodeInfo src = null;
+        HashMap<node_info,Double> row = null;
+        for (int i=0; i<node1.length; i++) {
+            if (node1[i] == node2[i] || !(w[i] >= 0)) continue;
+            if (src == null || src._key != node1[i]) {
+                src = (NodeInfo) this._g_nodes.get(node1[i]);
+                if (src == null) continue;
+                row = this._e_index[src._index]._n_edges;
+            }
+            NodeInfo dest = (NodeInfo) this._g_nodes.get(node2[i]);
+            if (dest == null) continue;
+            Double old = row.get(dest);
+            if (old == null) {
+                if (!add) continue;
+                if (this._uf_valid) this.unite(src._index, dest._index);
+                this._e_size++;
+            }
+            else if (old == w[i]) continue;
+            else this._fingerprint -= edgeHash(src._key, dest._key, old);
+            this._fingerprint += edgeHash(src._key, dest._key, w[i]);
+            Double weight = w[i];
+            row.put(dest, weight);
+            this._e_index[dest._index]._n_edges.put(src, weight);
+            changed++;
         }
+        if (changed > 0) this._mc++;
+        return changed;
+    }
+
+    /**
+     * Removes a batch of edges, missing edges are skipped. The source node and its Map are looked up once
+     * for every run of equal node1 keys. The mode count grows by one for the whole batch (if anything changed).
+     *
+     * @param node1 - The first node ID of every edge
+     * @param node2 - The second node ID of every edge
+     * @return INT - The number of edges removed
+     */
+    @Override
+    public int removeEdges(int[] node1, int[] node2) {
+        weighted_graph.checkBatch(node1, node2, node1.length);
+        if (node1.length == 0) return 0;
+        this.beforeWrite();
+        int removed = 0;
+        NodeInfo src = null;
+        HashMap<node_info,Double> row = null;
+        for (int i=0; i<node1.length; i++) {
+            if (node1[i] == node2[i]) continue;
+            if (src == null || src._key != node1[i]) {
+                src = (NodeInfo) this._g_nodes.get(node1[i]);
+                if (src == null) continue;
+                row = this._e_index[src._index]._n_edges;
+            }
+            NodeInfo dest = (NodeInfo) this._g_nodes.get(node2[i]);
+            if (dest == null) continue;
+            Double old = row.remove(dest);
+            if (old == null) continue;
+            this._e_index[dest._index]._n_edges.remove(src);
+            this._fingerprint -= edgeHash(src._key, dest._key, old);
+            removed++;
+        }
+        if (removed > 0) {
+            this._uf_valid = false;
+            this._e_size -= removed;
+            this._mc++;
+        }
+        return removed;
     }
 
     /**
@@ -444,10 +895,262 @@ public class WGraph_DS implements weighted_graph, Serializable {
         return this._mc;
     }
 
+    /**
+     * Sets the mode count of a graph read from a file back to the mode count it was saved with,
+     * so tables computed on the saved graph (see WGraph_Landmarks) stay valid. Used by WGraph_IO.
+     *
+     * @param mc - The saved mode count
+     */
+    void restoreMC(int mc) {
+        this.beforeWrite();
+        this._mc = mc;
+    }
+
+    /**
+     * Returns an upper bound (exclusive) of the node indexes in the graph.
+     *
+     * @return INT - The index bound
+     */
+    @Override
+    public int indexBound() {
+        return this._index_bound;
+    }
+
+    /**
+     * Returns the dense index of the node with the received key.
+     *
+     * @param key - The node ID
+     * @return INT - The node index, -1 if there is no such node
+     */
+    @Override
+    public int indexOf(int key) {
+        node_info n = this._g_nodes.get(key);
+        return n == null ? -1 : ((NodeInfo) n)._index;
+    }
+
+    /**
+     * Returns the key of the node at the received index.
+     *
+     * @param index - The node index
+     * @return INT - The node ID
+     */
+    @Override
+    public int keyAt(int index) {
+        return this._n_index[index]._key;
+    }
+
+    /**
+     * Checks if a node currently occupies the received index.
+     *
+     * @param index - The node index
+     * @return True if there is a node with this index
+     */
+    @Override
+    public boolean hasIndex(int index) {
+        return index >= 0 && index < this._index_bound && this._n_index[index] != null;
+    }
+
+    /**
+     * Passes the index of each neighbor of the node at the received index together with the edge weight
+     * to the visitor. Reaches the node's edge Map through the index table with no key lookup.
+     *
+     * @param index - The node index
+     * @param visitor - The visitor to receive each neighbor index and edge weight
+     */
+    @Override
+    public void forEachNeighborIndex(int index, edge_visitor visitor) {
+        for (Map.Entry<node_info,Double> ni : this._e_index[index]._n_edges.entrySet()) {
+            visitor.visit(((NodeInfo) ni.getKey())._index, ni.getValue());
+        }
+    }
+
+    /**
+     * Returns the number of connected components in the graph.
+     * Runs in O(1) time, or O(n + e) if an edge was removed since the last query.
+     *
+     * @return INT - The number of components, 0 for an empty graph
+     */
+    public int componentCount() {
+        if (!this._uf_valid) this.rebuildComponents();
+        return this._components;
+    }
+
+    /**
+     * Checks if the graph is connected, a single node or an empty graph are connected by definition.
+     * Runs in O(1) time, or O(n + e) if an edge was removed since the last query.
+     *
+     * @return True if there is a path between each and every two nodes in the graph
+     */
+    public boolean isConnected() {
+        return this.nodeSize() <= 1 || this.componentCount() == 1;
+    }
+
+    /**
+     * Checks if there is a path between two nodes.
+     * Runs in near constant time, or O(n + e) if an edge was removed since the last query.
+     *
+     * @param node1 - First node ID
+     * @param node2 - Second node ID
+     * @return True if both nodes exist and are in the same connected component
+     */
+    public boolean sameComponent(int node1, int node2) {
+        int a = this.indexOf(node1);
+        int b = this.indexOf(node2);
+        if (a == -1 || b == -1) return false;
+        if (!this._uf_valid) this.rebuildComponents();
+        return this.find(a) == this.find(b);
+    }
+
+    /**
+     * Returns the number of nodes in the connected component of a node.
+     *
+     * @param key - The node ID
+     * @return INT - The size of the node's component, 0 if the node does not exist
+     */
+    public int componentSize(int key) {
+        int i = this.indexOf(key);
+        if (i == -1) return 0;
+        if (!this._uf_valid) this.rebuildComponents();
+        return -this._uf_parent[this.find(i)];
+    }
+
+    /**
+     * Rebuilds the union-find from scratch by uniting the endpoints of every edge.
+     * Runs in O(n + e) time.
+     */
+    private void rebuildComponents() {
+        if (this._uf_parent == null || this._uf_parent.length < this._n_index.length) {
+            this._uf_parent = new int[this._n_index.length];
+        }
+        Arrays.fill(this._uf_parent, 0, this._index_bound, -1);
+        this._components = this._g_nodes.size();
+        this._uf_valid = true;
+        for (int i=0; i<this._index_bound; i++) {
+            if (this._e_index[i] == null) continue;
+            for (node_info ni : this._e_index[i]._n_edges.keySet()) {
+                int j = ((NodeInfo) ni)._index;
+                if (i < j) this.unite(i, j);
+            }
+        }
+    }
+
+    /**
+     * Returns the root of a node's set and points every node on the way directly to it.
+     * A root holds the negated size of its set, every other node holds its parent index.
+     *
+     * @param x - The node index
+     * @return INT - The root index
+     */
+    private int find(int x) {
+        int root = x;
+        while (this._uf_parent[root] >= 0) root = this._uf_parent[root];
+        while (x != root) {
+            int next = this._uf_parent[x];
+            this._uf_parent[x] = root;
+            x = next;
+        }
+        return root;
+    }
+
+    /**
+     * Unites the sets of two nodes, the smaller set is linked under the root of the larger one.
+     *
+     * @param a - The first node index
+     * @param b - The second node index
+     */
+    private void unite(int a, int b) {
+        a = this.find(a);
+        b = this.find(b);
+        if (a == b) return;
+        if (this._uf_parent[a] > this._uf_parent[b]) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        this._uf_parent[a] += this._uf_parent[b];
+        this._uf_parent[b] = a;
+        this._components--;
+    }
+
+    /**
+     * Returns a free node index, reusing the index of a removed node if there is one.
+     *
+     * @return INT - The index for a new node
+     */
+    private int takeIndex() {
+        if (this._free_size > 0) return this._free_index[--this._free_size];
+        if (this._index_bound == this._n_index.length) {
+            this._n_index = Arrays.copyOf(this._n_index, this._index_bound*2);
+            this._e_index = Arrays.copyOf(this._e_index, this._index_bound*2);
+        }
+        if (this._uf_valid && this._index_bound >= this._uf_parent.length) {
+            this._uf_parent = Arrays.copyOf(this._uf_parent, this._n_index.length);
+        }
+        return this._index_bound++;
+    }
+
+    /**
+     * Marks the index of a removed node as free for reuse.
+     *
+     * @param index - The index of the removed node
+     */
+    private void releaseIndex(int index) {
+        this._n_index[index] = null;
+        this._e_index[index] = null;
+        if (this._free_size == this._free_index.length) {
+            this._free_index = Arrays.copyOf(this._free_index, this._free_size*2);
+        }
+        this._free_index[this._free_size++] = index;
+    }
+
+    /**
+     * Restores a graph written by Java serialization. Graphs saved before the nodes had
+     * a dense index get their index table rebuilt here. The connected components are not serialized,
+     * they are rebuilt on the first query.
+     *
+     * @param in - The object stream to read from
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (this._n_index == null) this.indexNodes();
+        this._fingerprint = fingerprintOf(this);
+    }
+
+    /**
+     * Gives every node of a graph read from a file saved before nodes had indexes a dense index.
+     */
+    private void indexNodes() {
+        int size = Math.max(16, this._g_nodes.size());
+        this._n_index = new NodeInfo[size];
+        this._e_index = new EdgeInfo[size];
+        this._index_bound = 0;
+        this._free_index = new int[4];
+        this._free_size = 0;
+        for (node_info n : this._g_nodes.values()) {
+            NodeInfo node = (NodeInfo) n;
+            node._index = this._index_bound++;
+            this._n_index[node._index] = node;
+            this._e_index[node._index] = this._g_edges.get(node._key);
+        }
+    }
+
+    /**
+     * Writes the graph with Java serialization, a lazy copy is detached first so only its own storage is written.
+     *
+     * @param out - The object stream to write to
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        if (this._cow_source != null) this.detach();
+        out.defaultWriteObject();
+    }
+
     /**
      * This method overrides the equals method from Object interface.
      * It is used for graph comparing. Used vastly in testing and debugging.
-     * It uses the toString method which is override as well for this project.
+     * Two graphs are equal if they have the same node keys and the same edges with the same weights,
+     * node tags and infos are not compared. The sizes and fingerprints are compared first, so most different
+     * graphs are rejected in O(1); otherwise the adjacency Maps are compared directly in O(n + e),
+     * returning on the first difference.
      *
      * For more information and for the full doc:
      * https://docs.oracle.com/javase/7/docs/api/java/lang/Object.html
@@ -457,15 +1160,131 @@ public class WGraph_DS implements weighted_graph, Serializable {
      */
     @Override
     public boolean equals(Object obj) {
-        weighted_graph g_obj = (WGraph_DS) obj;
-        if (this._e_size != g_obj.edgeSize() || this.nodeSize() != g_obj.nodeSize()) return false;
-        return Objects.equals(this.toString(), g_obj.toString());
+        if (this == obj) return true;
+        if (!(obj instanceof WGraph_DS)) return false;
+        WGraph_DS g = (WGraph_DS) obj;
+        if (this._e_size != g._e_size || this._g_nodes.size() != g._g_nodes.size()) return false;
+        if (this._fingerprint != g._fingerprint) return false;
+        if (this._g_nodes == g._g_nodes) return true;
+        for (int i=0; i<this._index_bound; i++) {
+            NodeInfo n = this._n_index[i];
+            if (n == null) continue;
+            node_info other = g._g_nodes.get(n._key);
+            if (other == null) return false;
+            HashMap<node_info,Double> edges = this._e_index[i]._n_edges;
+            HashMap<node_info,Double> other_edges = g._e_index[((NodeInfo) other)._index]._n_edges;
+            if (edges.size() != other_edges.size()) return false;
+            for (Map.Entry<node_info,Double> ni : edges.entrySet()) {
+                Double w = other_edges.get(g._g_nodes.get(ni.getKey().getKey()));
+                if (w == null || !w.equals(ni.getValue())) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a hash code consistent with equals(), folded from the fingerprint of the graph.
+     * Runs in a constant O(1) time.
+     *
+     * @return INT - The hash code of the graph
+     */
+    @Override
+    public int hashCode() {
+        return Long.hashCode(this._fingerprint);
+    }
+
+    /**
+     * Returns an order independent 64 bit fingerprint of the node keys and the weighted edges of the graph:
+     * the sum of a mixed hash of every node key and of every edge (its two keys and its weight).
+     * It is kept up to date by every change, so it runs in a constant O(1) time. Equal graphs have equal
+     * fingerprints whatever order they were built in, different graphs almost always have different ones.
+     *
+     * @return LONG - The fingerprint of the graph
+     */
+    public long fingerprint() {
+        return this._fingerprint;
+    }
+
+    /**
+     * Computes the fingerprint (see fingerprint()) of any weighted_graph in O(n + e).
+     *
+     * @param g - The graph
+     * @return LONG - The fingerprint of the graph
+     */
+    static long fingerprintOf(weighted_graph g) {
+        long[] sum = new long[1];
+        for (node_info n : g.getV()) {
+            int key = n.getKey();
+            sum[0] += nodeHash(key);
+            g.forEachNeighbor(key, (ni, w) -> {
+                if (key < ni) sum[0] += edgeHash(key, ni, w);
+            });
+        }
+        return sum[0];
+    }
+
+    /**
+     * Compares the node keys and weighted edges of any two graphs in O(n + e), like equals() does.
+     *
+     * @param a - The first graph
+     * @param b - The second graph
+     * @return boolean - True if both graphs have the same nodes and edges
+     */
+    static boolean sameGraph(weighted_graph a, weighted_graph b) {
+        if (a.nodeSize() != b.nodeSize() || a.edgeSize() != b.edgeSize()) return false;
+        boolean[] same = {true};
+        for (node_info n : a.getV()) {
+            int key = n.getKey();
+            if (b.getNode(key) == null) return false;
+            a.forEachNeighbor(key, (ni, w) -> {
+                if (same[0] && Double.compare(w, b.getEdge(key, ni)) != 0) same[0] = false;
+            });
+            if (!same[0]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the fingerprint term of a node key.
+     *
+     * @param key - The node key
+     * @return LONG - The mixed hash of the key
+     */
+    private static long nodeHash(int key) {
+        return mix(key+0x632be59bd9b4e019L);
+    }
+
+    /**
+     * Returns the fingerprint term of an edge, the same for both directions of the edge.
+     *
+     * @param node1 - The first node key
+     * @param node2 - The second node key
+     * @param w - The edge weight
+     * @return LONG - The mixed hash of the edge
+     */
+    private static long edgeHash(int node1, int node2, double w) {
+        long lo = Math.min(node1, node2);
+        long hi = Math.max(node1, node2);
+        return mix(mix((lo << 32) | (hi & 0xffffffffL))+Double.doubleToLongBits(w));
+    }
+
+    /**
+     * The 64 bit finalizer of SplitMix64, every input bit affects every output bit.
+     *
+     * @param z - The value to mix
+     * @return LONG - The mixed value
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30))*0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27))*0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
     }
 
     /**
      * Returns a string representation of the graph. This method overrides Objects
      * toString() method. It represents each and every node Id in the graph alongside with it's neighbor count.
      * this method also records the node and edge size of the graph.
+     * The String is built by WGraph_Dump, which can also stream the same text to a Writer for graphs too large for a String.
      *
      * For more information and for the full doc:
      * https://docs.oracle.com/javase/7/docs/api/java/lang/Object.html
@@ -474,26 +1293,6 @@ public class WGraph_DS implements weighted_graph, Serializable {
      */
     @Override
     public String toString() {
-        StringBuilder result = new StringBuilder();
-        SortedSet<Integer> s_ni = new TreeSet<>();
-        result.append("Total Nodes: ").append(this.nodeSize()).append(" ||  Total edges: ").append(this._e_size);
-        result.append("\n");
-        for (node_info n : this.getV()) {
-            result.append("Node: ").append(n.getKey());
-            result.append(" | Ni Count: ").append(this._g_edges.get(n.getKey()).getNiSize()).append(" | NiKey->Weight: ");
-            for (node_info n1 : this.getV(n.getKey())) {
-                s_ni.add(n1.getKey());
-            }
-            for (Integer in : s_ni) {
-                result.append(this._g_nodes.get(in).getKey()).append("->");
-                result.append(this.getEdge(n.getKey(), in)).append(" | ");
-            }
-            s_ni.clear();
-            result.append("\n");
-        }
-        return result.toString();
+        return WGraph_Dump.text(this, this._g_nodes.values());
     }
 }
-
-
-
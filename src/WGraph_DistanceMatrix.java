@@ -0,0 +1,323 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * This class computes many to many distance tables: the shortest path distance from every node of a sources array
+ * to every node of a targets array, as a flat row major double[] (the distance from sources[i] to targets[j] is at
+ * i * targets.length + j), with -1 where there is no path or a node does not exist.
+ * The table is computed in one of two ways:
+ * 1 - Over any graph by one to many Dijkstra searches, one per source, each stopped as soon as all the targets are
+ *     settled. The graph is undirected, so the searches run from the smaller of the two arrays and the table is
+ *     transposed when the targets are fewer
+ * 2 - Over a contraction hierarchy (see WGraph_CH) by the bucket algorithm: a complete upward search from every
+ *     target leaves its distance in a bucket of every node it settles, and then a complete upward search from every
+ *     source scans the buckets of the nodes it settles, so the searches are shared by all the pairs and the cost is
+ *     about a CH query per source and per target instead of one per pair
+ * Either way a node repeated in an array is searched once and its row or column copied, and the searches run in
+ * parallel on a ForkJoinPool, every worker with its own pooled SearchState.
+ *
+ * @author shmuel.lavian
+ */
+public final class WGraph_DistanceMatrix {
+    /** The largest number of pairs whose table fits in a single array */
+    static final int MAX_PAIRS = Integer.MAX_VALUE-8;
+
+    private WGraph_DistanceMatrix() {
+    }
+
+    /**
+     * Computes the distance table of the received nodes by one to many Dijkstra searches on the common ForkJoinPool.
+     * Graphs that do not implement indexed_graph are compiled into a WGraph_CSR snapshot first.
+     * The graph must not be changed while the table is computed.
+     *
+     * @param graph - The graph to search
+     * @param sources - The source node keys, the rows of the table
+     * @param targets - The target node keys, the columns of the table
+     * @return double[] - The row major table, -1 for pairs with no path or a missing node
+     * @throws IllegalArgumentException if the table has more than MAX_PAIRS entries
+     */
+    public static double[] compute(weighted_graph graph, int[] sources, int[] targets) {
+        return compute(graph, sources, targets, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes the distance table of the received nodes by one to many Dijkstra searches on the received pool.
+     * Runs in O(min(n, m) * (e + v log v)) time at worst, n and m being the array lengths, but every search stops
+     * once the nodes of the other array are settled, so close targets cost only the ball around the source.
+     *
+     * @param graph - The graph to search
+     * @param sources - The source node keys, the rows of the table
+     * @param targets - The target node keys, the columns of the table
+     * @param pool - The pool running the searches
+     * @return double[] - The row major table, -1 for pairs with no path or a missing node
+     * @throws IllegalArgumentException if the table has more than MAX_PAIRS entries
+     */
+    public static double[] compute(weighted_graph graph, int[] sources, int[] targets, ForkJoinPool pool) {
+        int size = tableSize(sources, targets);
+        indexed_graph g = graph instanceof indexed_graph ? (indexed_graph) graph : WGraph_CSR.freeze(graph);
+        if (targets.length < sources.length) {
+            return transpose(compute(g, targets, sources, pool), targets.length, sources.length);
+        }
+        int[] s = indexes(g, sources);
+        int[] t = indexes(g, targets);
+        boolean[] is_target = new boolean[g.indexBound()];
+        int distinct = 0;
+        for (int i : t) {
+            if (i != -1 && !is_target[i]) {
+                is_target[i] = true;
+                distinct++;
+            }
+        }
+        int count = distinct;
+        double[] result = new double[size];
+        int[] first = firstRows(s);
+        forEach(pool, first, row -> search(g, s[row], t, is_target, count, result, row*t.length));
+        copyRows(result, s, first, t.length);
+        return result;
+    }
+
+    /**
+     * Computes the distance table of the received nodes over a contraction hierarchy by the bucket algorithm
+     * on the received pool, see the class comment. The hierarchy must be valid for the graph it was built from.
+     *
+     * @param ch - The hierarchy to search
+     * @param sources - The source node keys, the rows of the table
+     * @param targets - The target node keys, the columns of the table
+     * @param pool - The pool running the searches
+     * @return double[] - The row major table, -1 for pairs with no path or a missing node
+     * @throws IllegalArgumentException if the table has more than MAX_PAIRS entries
+     */
+    public static double[] compute(WGraph_CH ch, int[] sources, int[] targets, ForkJoinPool pool) {
+        int size = tableSize(sources, targets);
+        indexed_graph g = ch.graph();
+        int[] s = indexes(g, sources);
+        int[] t = indexes(g, targets);
+        IntIntHashMap column_of = new IntIntHashMap(t.length);
+        int[] col = new int[t.length];
+        int[] columns = new int[t.length];
+        int distinct = 0;
+        for (int j=0; j<t.length; j++) {
+            if (t[j] == -1) col[j] = -1;
+            else if ((col[j] = column_of.get(t[j])) == -1) {
+                column_of.put(t[j], distinct);
+                col[j] = distinct;
+                columns[distinct++] = t[j];
+            }
+        }
+        int[][] space = new int[distinct][];
+        double[][] space_dist = new double[distinct][];
+        int[] all = new int[distinct];
+        for (int c=0; c<distinct; c++) all[c] = c;
+        forEach(pool, all, c -> {
+            Settled settled = new Settled();
+            ch.upward(columns[c], settled);
+            space[c] = Arrays.copyOf(settled._nodes, settled._size);
+            space_dist[c] = Arrays.copyOf(settled._dist, settled._size);
+        });
+        int bound = g.indexBound();
+        int[] offsets = new int[bound+1];
+        for (int[] nodes : space) {
+            for (int u : nodes) offsets[u+1]++;
+        }
+        for (int u=0; u<bound; u++) offsets[u+1] += offsets[u];
+        int[] bucket_col = new int[offsets[bound]];
+        double[] bucket_dist = new double[offsets[bound]];
+        int[] fill = Arrays.copyOf(offsets, bound);
+        for (int c=0; c<distinct; c++) {
+            for (int k=0; k<space[c].length; k++) {
+                int p = fill[space[c][k]]++;
+                bucket_col[p] = c;
+                bucket_dist[p] = space_dist[c][k];
+            }
+        }
+        double[] result = new double[size];
+        int[] first = firstRows(s);
+        int cols = distinct;
+        forEach(pool, first, row -> {
+            int offset = row*t.length;
+            if (s[row] == -1) {
+                Arrays.fill(result, offset, offset+t.length, -1);
+                return;
+            }
+            double[] best = new double[cols];
+            Arrays.fill(best, Double.POSITIVE_INFINITY);
+            ch.upward(s[row], (u, d) -> {
+                for (int p=offsets[u]; p<offsets[u+1]; p++) {
+                    double via = d+bucket_dist[p];
+                    if (via < best[bucket_col[p]]) best[bucket_col[p]] = via;
+                }
+            });
+            for (int j=0; j<t.length; j++) {
+                double d = col[j] == -1 ? Double.POSITIVE_INFINITY : best[col[j]];
+                result[offset+j] = d == Double.POSITIVE_INFINITY ? -1 : d;
+            }
+        });
+        copyRows(result, s, first, t.length);
+        return result;
+    }
+
+    /**
+     * Runs a single one to many Dijkstra search and writes its row of the table.
+     *
+     * @param g - The searched graph
+     * @param s - The source node index, -1 for a missing source
+     * @param t - The target node indexes, -1 for a missing target
+     * @param is_target - The target flag of every node index
+     * @param count - The number of distinct targets, the search stops once as many targets are settled
+     * @param result - The table
+     * @param offset - The position of the row in the table
+     */
+    private static void search(indexed_graph g, int s, int[] t, boolean[] is_target, int count,
+                               double[] result, int offset) {
+        if (s == -1) {
+            Arrays.fill(result, offset, offset+t.length, -1);
+            return;
+        }
+        SearchState st = SearchState.acquire(g.indexBound());
+        try {
+            st.start(s);
+            int left = count;
+            int u;
+            while (left > 0 && (u = st.poll()) != -1) {
+                if (is_target[u] && --left == 0) break;
+                st.relax(g, u);
+            }
+            for (int j=0; j<t.length; j++) {
+                result[offset+j] = t[j] != -1 && st.settled(t[j]) ? st.dist(t[j]) : -1;
+            }
+        } finally {
+            SearchState.release(st);
+        }
+    }
+
+    /**
+     * Returns the number of entries of the table of the received arrays. Once it fits in an int, so does
+     * the offset row * width + column of every entry, the row, copy and transpose offsets included.
+     *
+     * @throws IllegalArgumentException if the table has more than MAX_PAIRS entries
+     */
+    private static int tableSize(int[] sources, int[] targets) {
+        long size = (long) sources.length*targets.length;
+        if (size > MAX_PAIRS) {
+            throw new IllegalArgumentException("too many pairs for a distance matrix: " + sources.length + " sources x "
+                    + targets.length + " targets > " + MAX_PAIRS);
+        }
+        return (int) size;
+    }
+
+    /**
+     * Returns the node indexes of the received node keys, -1 for a key which is not in the graph.
+     */
+    private static int[] indexes(indexed_graph g, int[] keys) {
+        int[] result = new int[keys.length];
+        for (int i=0; i<keys.length; i++) {
+            result[i] = g.indexOf(keys[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the rows which have to be searched: the first row of every distinct source index and every
+     * missing source, so a repeated source is searched once.
+     */
+    private static int[] firstRows(int[] s) {
+        IntIntHashMap seen = new IntIntHashMap(s.length);
+        int[] result = new int[s.length];
+        int size = 0;
+        for (int row=0; row<s.length; row++) {
+            if (s[row] != -1 && seen.containsKey(s[row])) continue;
+            if (s[row] != -1) seen.put(s[row], row);
+            result[size++] = row;
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Fills every row of a repeated source with a copy of the row of its first occurrence.
+     */
+    private static void copyRows(double[] result, int[] s, int[] first, int width) {
+        if (first.length == s.length) return;
+        IntIntHashMap row_of = new IntIntHashMap(first.length);
+        for (int row : first) {
+            if (s[row] != -1) row_of.put(s[row], row);
+        }
+        for (int row=0; row<s.length; row++) {
+            int from = s[row] == -1 ? row : row_of.get(s[row]);
+            if (from != row) System.arraycopy(result, from*width, result, row*width, width);
+        }
+    }
+
+    /**
+     * Returns the transpose of a row major table.
+     */
+    private static double[] transpose(double[] table, int rows, int cols) {
+        double[] result = new double[table.length];
+        for (int i=0; i<rows; i++) {
+            for (int j=0; j<cols; j++) {
+                result[j*rows+i] = table[i*cols+j];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs the received task on every value of the array in parallel on the pool.
+     */
+    private static void forEach(ForkJoinPool pool, int[] values, IntConsumer task) {
+        if (values.length == 1) task.accept(values[0]);
+        else if (values.length > 1) pool.invoke(new Rows(values, task, 0, values.length));
+    }
+
+    /**
+     * This internal task runs a task on a range of an array of rows, splitting the range in two until
+     * it is a single row, since every row is a complete search.
+     */
+    private static final class Rows extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int[] _rows;
+        private final IntConsumer _task;
+        private final int _from;
+        private final int _to;
+
+        private Rows(int[] rows, IntConsumer task, int from, int to) {
+            this._rows = rows;
+            this._task = task;
+            this._from = from;
+            this._to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this._to-this._from > 1) {
+                int mid = (this._from+this._to) >>> 1;
+                invokeAll(new Rows(this._rows, this._task, this._from, mid),
+                        new Rows(this._rows, this._task, mid, this._to));
+                return;
+            }
+            this._task.accept(this._rows[this._from]);
+        }
+    }
+
+    /**
+     * This internal class collects the nodes settled by an upward search and their distances
+     * into growable primitive arrays.
+     */
+    private static final class Settled implements edge_visitor {
+        private int[] _nodes = new int[64];
+        private double[] _dist = new double[64];
+        private int _size;
+
+        @Override
+        public void visit(int u, double d) {
+            if (this._size == this._nodes.length) {
+                this._nodes = Arrays.copyOf(this._nodes, this._size*2);
+                this._dist = Arrays.copyOf(this._dist, this._size*2);
+            }
+            this._nodes[this._size] = u;
+            this._dist[this._size] = d;
+            this._size++;
+        }
+    }
+}
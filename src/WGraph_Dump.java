@@ -0,0 +1,270 @@
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * This class streams a human readable dump of a graph to a Writer, so graphs too large for a single String
+ * (as built by toString()) can still be printed. The supported formats:
+ * 1 - TEXT: the format of WGraph_DS.toString(), a "Total Nodes" header line and then a line per node with its
+ *     neighbor count and its neighbors in ascending key order, as "key->weight" pairs
+ * 2 - DOT: an undirected Graphviz graph, a statement per node and per edge with the weight as an attribute
+ * 3 - GRAPHML: an undirected GraphML document with a double "weight" attribute on every edge
+ * The neighbors of a node are collected and sorted in reusable primitive buffers and the text is written
+ * through a bounded buffer, so the memory used does not grow with the size of the graph.
+ * The parallel write() renders ranges of node indexes into separate chunks on a ForkJoinPool and writes the
+ * chunks in order, keeping at most a few chunks per worker in memory at any time.
+ *
+ * @author shmuel.lavian
+ */
+public final class WGraph_Dump {
+    /** The number of characters buffered before they are passed to the Writer */
+    private static final int FLUSH_CHARS = 1 << 14;
+    /** The number of node indexes rendered by a single parallel task */
+    static final int CHUNK_NODES = 1 << 12;
+
+    /**
+     * The supported dump formats.
+     */
+    public enum Format {
+        /** The format of WGraph_DS.toString() */
+        TEXT,
+        /** Graphviz DOT */
+        DOT,
+        /** GraphML XML */
+        GRAPHML
+    }
+
+    private WGraph_Dump() {
+    }
+
+    /**
+     * Writes the received graph to the Writer, the nodes in the order of getV().
+     * Runs in O(n + e log d) time, d being the maximal node degree. The Writer is not closed.
+     *
+     * @param g - The graph to write
+     * @param out - The Writer to write to
+     * @param format - The format to write
+     * @throws IOException if the Writer failed
+     */
+    public static void write(weighted_graph g, Writer out, Format format) throws IOException {
+        write(g, g.getV(), out, format);
+    }
+
+    /**
+     * Writes the received graph to the Writer, the nodes in the received order. Used by WGraph_DS.toString()
+     * to read the nodes of a lazy copy without detaching it.
+     *
+     * @param g - The graph to write
+     * @param nodes - The nodes of the graph
+     * @param out - The Writer to write to
+     * @param format - The format to write
+     * @throws IOException if the Writer failed
+     */
+    static void write(weighted_graph g, Iterable<node_info> nodes, Writer out, Format format) throws IOException {
+        StringBuilder sb = new StringBuilder(FLUSH_CHARS+256);
+        header(g, sb, format);
+        Row row = new Row();
+        for (node_info n : nodes) {
+            node(g, n.getKey(), row, sb, format);
+            if (sb.length() >= FLUSH_CHARS) flush(sb, out);
+        }
+        footer(sb, format);
+        flush(sb, out);
+    }
+
+    /**
+     * Writes the received graph to the Writer, rendering ranges of CHUNK_NODES node indexes in parallel on the pool.
+     * The nodes are written in index order (a graph which is not an indexed_graph is frozen into a WGraph_CSR
+     * first), which for a WGraph_DS may differ from the order of getV(). At most twice the parallelism of the
+     * pool chunks are rendered or waiting to be written at any time. The graph must not change while it is written.
+     * If the Writer fails the chunks which were not written yet are cancelled. The Writer is not closed.
+     *
+     * @param g - The graph to write
+     * @param out - The Writer to write to
+     * @param format - The format to write
+     * @param pool - The pool rendering the chunks
+     * @throws IOException if the Writer failed
+     */
+    public static void write(weighted_graph g, Writer out, Format format, ForkJoinPool pool) throws IOException {
+        indexed_graph ig = g instanceof indexed_graph ? (indexed_graph) g : WGraph_CSR.freeze(g);
+        StringBuilder sb = new StringBuilder();
+        header(ig, sb, format);
+        flush(sb, out);
+        int bound = ig.indexBound();
+        int window = 2*pool.getParallelism();
+        ArrayDeque<ForkJoinTask<String>> pending = new ArrayDeque<>();
+        int next = 0;
+        try {
+            while (next < bound || !pending.isEmpty()) {
+                while (next < bound && pending.size() < window) {
+                    int from = next;
+                    int to = Math.min(bound, from+CHUNK_NODES);
+                    pending.add(pool.submit(() -> chunk(ig, from, to, format)));
+                    next = to;
+                }
+                out.write(pending.poll().join());
+            }
+        } finally {
+            for (ForkJoinTask<String> task : pending) {
+                task.cancel(true);
+            }
+        }
+        footer(sb, format);
+        flush(sb, out);
+    }
+
+    /**
+     * Writes the received graph to a UTF-8 text file, replacing the file if it exists.
+     *
+     * @param g - The graph to write
+     * @param file - file name or path
+     * @param format - The format to write
+     * @throws IOException if the file could not be written
+     */
+    public static void write(weighted_graph g, String file, Format format) throws IOException {
+        try (Writer out = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8)) {
+            write(g, out, format);
+        }
+    }
+
+    /**
+     * Renders the nodes with indexes in [from, to) into a String.
+     */
+    private static String chunk(indexed_graph g, int from, int to, Format format) {
+        StringBuilder sb = new StringBuilder();
+        Row row = new Row();
+        for (int i=from; i<to; i++) {
+            if (g.hasIndex(i)) node(g, g.keyAt(i), row, sb, format);
+        }
+        return sb.toString();
+    }
+
+    private static void header(weighted_graph g, StringBuilder sb, Format format) {
+        switch (format) {
+            case TEXT:
+                sb.append("Total Nodes: ").append(g.nodeSize()).append(" ||  Total edges: ").append(g.edgeSize());
+                sb.append("\n");
+                break;
+            case DOT:
+                sb.append("graph G {\n");
+                break;
+            case GRAPHML:
+                sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+                sb.append("<graphml xmlns=\"http://graphml.graphdrawing.org/xmlns\">\n");
+                sb.append("  <key id=\"w\" for=\"edge\" attr.name=\"weight\" attr.type=\"double\"/>\n");
+                sb.append("  <graph id=\"G\" edgedefault=\"undirected\">\n");
+                break;
+        }
+    }
+
+    private static void footer(StringBuilder sb, Format format) {
+        if (format == Format.DOT) sb.append("}\n");
+        else if (format == Format.GRAPHML) sb.append("  </graph>\n</graphml>\n");
+    }
+
+    /**
+     * Appends a node and its edges: every neighbor in TEXT, and in DOT and GRAPHML only the neighbors
+     * with a larger key, so every undirected edge is written once.
+     */
+    private static void node(weighted_graph g, int key, Row row, StringBuilder sb, Format format) {
+        row.clear();
+        g.forEachNeighbor(key, row);
+        row.sort();
+        switch (format) {
+            case TEXT:
+                sb.append("Node: ").append(key);
+                sb.append(" | Ni Count: ").append(row._size).append(" | NiKey->Weight: ");
+                for (int i=0; i<row._size; i++) {
+                    sb.append(row.key(i)).append("->");
+                    sb.append(row.weight(i)).append(" | ");
+                }
+                sb.append("\n");
+                break;
+            case DOT:
+                sb.append("  ").append(key).append(";\n");
+                for (int i=0; i<row._size; i++) {
+                    if (row.key(i) <= key) continue;
+                    sb.append("  ").append(key).append(" -- ").append(row.key(i));
+                    sb.append(" [weight=").append(row.weight(i)).append("];\n");
+                }
+                break;
+            case GRAPHML:
+                sb.append("    <node id=\"n").append(key).append("\"/>\n");
+                for (int i=0; i<row._size; i++) {
+                    if (row.key(i) <= key) continue;
+                    sb.append("    <edge source=\"n").append(key).append("\" target=\"n").append(row.key(i));
+                    sb.append("\"><data key=\"w\">").append(row.weight(i)).append("</data></edge>\n");
+                }
+                break;
+        }
+    }
+
+    private static void flush(StringBuilder sb, Writer out) throws IOException {
+        out.append(sb);
+        sb.setLength(0);
+    }
+
+    /**
+     * Returns the dump of a graph as a String, used by toString() with the nodes in the received order.
+     *
+     * @param g - The graph
+     * @param nodes - The nodes of the graph
+     * @return String - The TEXT dump
+     */
+    static String text(weighted_graph g, Iterable<node_info> nodes) {
+        StringWriter out = new StringWriter();
+        try {
+            write(g, nodes, out, Format.TEXT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * This internal class collects the edges of a single node into reusable primitive buffers
+     * and sorts them by the neighbor key, so every node is printed in a stable order.
+     * Each entry packs the neighbor key in the high bits and the buffer position in the low bits,
+     * so a plain long sort orders the neighbors by key.
+     */
+    private static final class Row implements edge_visitor {
+        private long[] _order = new long[16];
+        private double[] _w = new double[16];
+        private int _size;
+
+        @Override
+        public void visit(int ni_key, double w) {
+            if (this._size == this._order.length) {
+                this._order = Arrays.copyOf(this._order, this._size*2);
+                this._w = Arrays.copyOf(this._w, this._size*2);
+            }
+            this._order[this._size] = ((long) ni_key << 32) | this._size;
+            this._w[this._size] = w;
+            this._size++;
+        }
+
+        private void clear() {
+            this._size = 0;
+        }
+
+        private void sort() {
+            Arrays.sort(this._order, 0, this._size);
+        }
+
+        private int key(int i) {
+            return (int) (this._order[i] >> 32);
+        }
+
+        private double weight(int i) {
+            return this._w[(int) this._order[i]];
+        }
+    }
+}
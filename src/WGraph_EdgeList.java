@@ -0,0 +1,666 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * This class streams graphs in and out of the common text edge list formats:
+ * 1 - CSV and TSV: a line "u,v,w" (or "u v w") per edge, the weight is optional and defaults to 1,
+ *     lines starting with anything but a number (headers, '#' or '%' comments) are skipped
+ * 2 - DIMACS (.gr): "c" comment lines, a "p sp n m" problem line and an "a u v w" line per arc,
+ *     the nodes are 1..n and every undirected edge is written as two arcs
+ * 3 - METIS: a "n m [fmt [ncon]]" header and then line i holds the neighbors of node i (1..n),
+ *     as "v w" pairs when fmt has edge weights (fmt 1 / 001) and as plain neighbors (weight 1) otherwise
+ * The files are read through a FileChannel with a single byte buffer by a hand written tokenizer which parses
+ * the numbers straight from the bytes, so no String is created per line and the memory use does not depend on the
+ * file size. The edges are inserted into the received graph as they are parsed (or buffered by a WGraph_Builder),
+ * self loops and negative weights are ignored by connect() and counted by the returned Stats. Since DIMACS and
+ * METIS number the nodes 1..n, writing them renumbers the nodes in key order, CSV and TSV keep the keys.
+ *
+ * @author shmuel.lavian
+ */
+public final class WGraph_EdgeList {
+    private static final int BUFFER_BYTES = 1 << 20;
+    /** The powers of ten which are exact doubles, used to compute short decimal numbers with correct rounding */
+    private static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1;
+        for (int i=1; i<POW10.length; i++) {
+            POW10[i] = POW10[i-1]*10;
+        }
+    }
+
+    /**
+     * The supported text formats.
+     */
+    public enum Format {
+        /** Comma separated "u,v,w" lines */
+        CSV,
+        /** Tab (or space) separated "u v w" lines */
+        TSV,
+        /** The DIMACS shortest path challenge format */
+        DIMACS,
+        /** The METIS adjacency format */
+        METIS
+    }
+
+    /**
+     * This class holds the counters of a single import or export.
+     */
+    public static final class Stats {
+        private long _lines;
+        private long _edges;
+        private long _ignored;
+        private long _bytes;
+        private long _nanos;
+
+        /**
+         * Returns the number of lines read or written.
+         *
+         * @return long - The line count
+         */
+        public long lines() {
+            return this._lines;
+        }
+
+        /**
+         * Returns the number of edge records read or written (an undirected DIMACS edge is two records).
+         *
+         * @return long - The edge record count
+         */
+        public long edges() {
+            return this._edges;
+        }
+
+        /**
+         * Returns the number of edge records read which were not added, self loops and negative weights.
+         *
+         * @return long - The ignored record count
+         */
+        public long ignored() {
+            return this._ignored;
+        }
+
+        /**
+         * Returns the number of bytes read or written.
+         *
+         * @return long - The byte count
+         */
+        public long bytes() {
+            return this._bytes;
+        }
+
+        /**
+         * Returns the wall clock time of the import or export.
+         *
+         * @return double - The elapsed time in milliseconds
+         */
+        public double millis() {
+            return this._nanos/1e6;
+        }
+
+        /**
+         * Returns the throughput in lines per second.
+         *
+         * @return double - Lines per second
+         */
+        public double linesPerSecond() {
+            return this._nanos == 0 ? 0 : this._lines*1e9/this._nanos;
+        }
+
+        /**
+         * Returns the throughput in megabytes per second.
+         *
+         * @return double - MB per second
+         */
+        public double megabytesPerSecond() {
+            return this._nanos == 0 ? 0 : this._bytes*1e3/this._nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d lines, %d edges (%d ignored), %d bytes in %.1f ms: %.0f lines/s, %.1f MB/s",
+                    this._lines, this._edges, this._ignored, this._bytes, this.millis(),
+                    this.linesPerSecond(), this.megabytesPerSecond());
+        }
+    }
+
+    private WGraph_EdgeList() {
+    }
+
+    /**
+     * Guesses the format of a file from its extension: .csv, .tsv/.txt/.el, .gr and .graph/.metis.
+     *
+     * @param file - file name or path
+     * @return Format - The format, null if the extension is unknown
+     */
+    public static Format formatOf(String file) {
+        String name = file.toLowerCase();
+        if (name.endsWith(".csv")) return Format.CSV;
+        if (name.endsWith(".tsv") || name.endsWith(".txt") || name.endsWith(".el")) return Format.TSV;
+        if (name.endsWith(".gr")) return Format.DIMACS;
+        if (name.endsWith(".graph") || name.endsWith(".metis")) return Format.METIS;
+        return null;
+    }
+
+    /**
+     * Reads a text file and adds its nodes and edges to the received graph.
+     *
+     * @param file - file name or path
+     * @param format - The format of the file
+     * @param g - The graph to add the nodes and edges to
+     * @return Stats - The counters of the import
+     * @throws IOException if the file could not be read or is malformed (the message holds the line number)
+     */
+    public static Stats read(String file, Format format, weighted_graph g) throws IOException {
+        return read(file, format, new Sink() {
+            @Override
+            public void addNode(int key) {
+                g.addNode(key);
+            }
+
+            @Override
+            public void connect(int node1, int node2, double w) {
+                g.connect(node1, node2, w);
+            }
+        });
+    }
+
+    /**
+     * Reads a text file into the received builder, which compiles all the edges at once when the graph is built.
+     * This is the fastest way to load a large file into a new WGraph_DS or WGraph_CSR.
+     *
+     * @param file - file name or path
+     * @param format - The format of the file
+     * @param b - The builder to add the nodes and edges to
+     * @return Stats - The counters of the import
+     * @throws IOException if the file could not be read or is malformed (the message holds the line number)
+     */
+    public static Stats read(String file, Format format, WGraph_Builder b) throws IOException {
+        return read(file, format, new Sink() {
+            @Override
+            public void addNode(int key) {
+                b.addNode(key);
+            }
+
+            @Override
+            public void connect(int node1, int node2, double w) {
+                b.connect(node1, node2, w);
+            }
+        });
+    }
+
+    /**
+     * The receiver of the parsed nodes and edges, a graph or a builder.
+     */
+    private interface Sink {
+        void addNode(int key);
+
+        void connect(int node1, int node2, double w);
+    }
+
+    /**
+     * Reads a text file into the received sink.
+     */
+    private static Stats read(String file, Format format, Sink g) throws IOException {
+        Stats stats = new Stats();
+        long start = System.nanoTime();
+        try (FileChannel ch = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            Tokenizer t = new Tokenizer(ch);
+            switch (format) {
+                case CSV:
+                case TSV:
+                    readEdges(t, g, stats);
+                    break;
+                case DIMACS:
+                    readDimacs(t, g, stats);
+                    break;
+                case METIS:
+                    readMetis(t, g, stats);
+                    break;
+            }
+            stats._lines = t._line;
+            stats._bytes = t._bytes;
+        }
+        stats._nanos = System.nanoTime()-start;
+        return stats;
+    }
+
+    /**
+     * Reads "u v [w]" lines, skipping the lines which do not start with a number.
+     */
+    private static void readEdges(Tokenizer t, Sink g, Stats stats) throws IOException {
+        while (t.hasMore()) {
+            if (t.hasToken() && isNumber(t.peek())) {
+                int u = t.nextInt();
+                int v = t.nextInt();
+                double w = t.hasToken() ? t.nextDouble() : 1;
+                add(g, u, v, w, stats);
+            }
+            t.endLine();
+        }
+    }
+
+    /**
+     * Reads the "p", "a" and "c" lines of a DIMACS file.
+     */
+    private static void readDimacs(Tokenizer t, Sink g, Stats stats) throws IOException {
+        while (t.hasMore()) {
+            if (t.hasToken()) {
+                int kind = t.peek();
+                t.skipToken();
+                if (kind == 'a') {
+                    int u = t.nextInt();
+                    int v = t.nextInt();
+                    add(g, u, v, t.nextDouble(), stats);
+                }
+                else if (kind == 'p') {
+                    t.skipToken();
+                    int n = t.nextInt();
+                    for (int i=1; i<=n; i++) {
+                        g.addNode(i);
+                    }
+                }
+                else if (kind != 'c') throw t.error("unknown DIMACS line type '" + (char) kind + "'");
+            }
+            t.endLine();
+        }
+    }
+
+    /**
+     * Reads the header and the adjacency lines of a METIS file, empty lines are nodes without neighbors.
+     */
+    private static void readMetis(Tokenizer t, Sink g, Stats stats) throws IOException {
+        while (t.hasMore() && (!t.hasToken() || t.peek() == '%')) {
+            t.endLine();
+        }
+        if (!t.hasMore()) return;
+        int n = t.nextInt();
+        t.nextInt();
+        int fmt = t.hasToken() ? t.nextInt() : 0;
+        int ncon = t.hasToken() ? t.nextInt() : 1;
+        int skip = (fmt/100%10 == 1 ? 1 : 0)+(fmt/10%10 == 1 ? ncon : 0);
+        boolean weighted = fmt%10 == 1;
+        t.endLine();
+        for (int i=1; i<=n; i++) {
+            g.addNode(i);
+        }
+        int u = 1;
+        while (u <= n && t.hasMore()) {
+            if (t.hasToken() && t.peek() == '%') {
+                t.endLine();
+                continue;
+            }
+            for (int s=0; s<skip; s++) {
+                t.nextDouble();
+            }
+            while (t.hasToken()) {
+                int v = t.nextInt();
+                add(g, u, v, weighted ? t.nextDouble() : 1, stats);
+            }
+            t.endLine();
+            u++;
+        }
+        if (u <= n) throw t.error("expected " + n + " adjacency lines, found " + (u-1));
+    }
+
+    /**
+     * Adds an edge record to the sink, creating its nodes.
+     */
+    private static void add(Sink g, int u, int v, double w, Stats stats) {
+        stats._edges++;
+        g.addNode(u);
+        g.addNode(v);
+        if (u == v || w < 0) stats._ignored++;
+        else g.connect(u, v, w);
+    }
+
+    private static boolean isNumber(int b) {
+        return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.';
+    }
+
+    /**
+     * Writes a graph to a text file in the received format, replacing the file if it exists.
+     *
+     * @param g - The graph to write
+     * @param file - file name or path
+     * @param format - The format to write
+     * @return Stats - The counters of the export
+     * @throws IOException if the file could not be written
+     */
+    public static Stats write(weighted_graph g, String file, Format format) throws IOException {
+        Stats stats = new Stats();
+        long start = System.nanoTime();
+        indexed_graph ig = g instanceof indexed_graph ? (indexed_graph) g : WGraph_CSR.freeze(g);
+        int n = ig.nodeSize();
+        long[] order = new long[n];
+        int count = 0;
+        for (int i=0; i<ig.indexBound(); i++) {
+            if (ig.hasIndex(i)) order[count++] = ((long) ig.keyAt(i) << 32) | i;
+        }
+        Arrays.sort(order);
+        int[] id = new int[ig.indexBound()];
+        for (int r=0; r<n; r++) {
+            id[(int) order[r]] = r+1;
+        }
+        try (FileChannel ch = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Printer out = new Printer(ch, stats);
+            if (format == Format.DIMACS) {
+                out.text("c undirected graph, every edge is written as two arcs").newLine();
+                out.text("p sp ").number(n).text(" ").number(2L*ig.edgeSize()).newLine();
+            }
+            else if (format == Format.METIS) {
+                out.number(n).text(" ").number(ig.edgeSize()).text(" 001").newLine();
+            }
+            char sep = format == Format.CSV ? ',' : format == Format.TSV ? '\t' : ' ';
+            for (int r=0; r<n; r++) {
+                int i = (int) order[r];
+                int key = ig.keyAt(i);
+                ig.forEachNeighborIndex(i, (ni, w) -> {
+                    try {
+                        if (format == Format.METIS) out.character(' ').number(id[ni]).character(' ').number(w);
+                        else {
+                            if (format == Format.DIMACS) out.text("a ").number(id[i]).character(sep).number(id[ni]);
+                            else if (key < ig.keyAt(ni)) out.number(key).character(sep).number(ig.keyAt(ni));
+                            else return;
+                            out.character(sep).number(w).newLine();
+                        }
+                        stats._edges++;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                if (format == Format.METIS) out.newLine();
+            }
+            out.flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        stats._nanos = System.nanoTime()-start;
+        return stats;
+    }
+
+    /**
+     * This internal class splits the bytes of a channel into lines and number tokens.
+     * Spaces, tabs, commas, semicolons and '\r' separate the tokens, '\n' ends a line.
+     */
+    private static final class Tokenizer {
+        private final FileChannel _ch;
+        private final ByteBuffer _buf = ByteBuffer.allocate(BUFFER_BYTES);
+        private final byte[] _b = this._buf.array();
+        private final StringBuilder _slow = new StringBuilder();
+        private int _pos;
+        private int _lim;
+        private boolean _eof;
+        private long _line;
+        private long _bytes;
+
+        private Tokenizer(FileChannel ch) {
+            this._ch = ch;
+        }
+
+        /**
+         * Returns the next byte without consuming it, -1 at the end of the file.
+         */
+        private int peek() throws IOException {
+            if (this._pos == this._lim && !this.fill()) return -1;
+            return this._b[this._pos] & 0xFF;
+        }
+
+        /**
+         * Refills the buffer, returns false at the end of the file.
+         */
+        private boolean fill() throws IOException {
+            if (this._eof) return false;
+            this._buf.clear();
+            int len;
+            do {
+                len = this._ch.read(this._buf);
+            } while (len == 0);
+            if (len < 0) {
+                this._eof = true;
+                this._pos = this._lim = 0;
+                return false;
+            }
+            this._pos = 0;
+            this._lim = len;
+            this._bytes += len;
+            return true;
+        }
+
+        /**
+         * Checks if there is anything left to read.
+         */
+        private boolean hasMore() throws IOException {
+            return this.peek() != -1;
+        }
+
+        /**
+         * Skips the separators and checks if another token follows on the current line.
+         */
+        private boolean hasToken() throws IOException {
+            while (true) {
+                int b = this.peek();
+                if (b == ' ' || b == '\t' || b == ',' || b == ';' || b == '\r') this._pos++;
+                else return b != '\n' && b != -1;
+            }
+        }
+
+        /**
+         * Skips the rest of the current line including its '\n'.
+         */
+        private void endLine() throws IOException {
+            while (true) {
+                if (this._pos == this._lim && !this.fill()) break;
+                int nl = this._pos;
+                while (nl < this._lim && this._b[nl] != '\n') nl++;
+                this._pos = nl;
+                if (nl < this._lim) {
+                    this._pos++;
+                    break;
+                }
+            }
+            this._line++;
+        }
+
+        /**
+         * Skips a single token of any content.
+         */
+        private void skipToken() throws IOException {
+            this.hasToken();
+            while (true) {
+                int b = this.peek();
+                if (b == -1 || b == ' ' || b == '\t' || b == ',' || b == ';' || b == '\r' || b == '\n') return;
+                this._pos++;
+            }
+        }
+
+        /**
+         * Parses the next token as an int.
+         */
+        private int nextInt() throws IOException {
+            if (!this.hasToken()) throw this.error("expected a number");
+            boolean neg = false;
+            int b = this.peek();
+            if (b == '-' || b == '+') {
+                neg = b == '-';
+                this._pos++;
+            }
+            long v = 0;
+            int digits = 0;
+            while ((b = this.peek()) >= '0' && b <= '9') {
+                v = v*10+(b-'0');
+                this._pos++;
+                if (++digits > 10) throw this.error("integer out of range");
+            }
+            if (digits == 0 || !this.tokenEnds()) throw this.error("expected an integer");
+            if (neg) v = -v;
+            if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) throw this.error("integer out of range");
+            return (int) v;
+        }
+
+        /**
+         * Parses the next token as a double. When the digits fit in 53 bits and the exponent is small, both are exact
+         * doubles and a single multiplication or division rounds correctly, anything else is passed to Double.parseDouble().
+         */
+        private double nextDouble() throws IOException {
+            if (!this.hasToken()) throw this.error("expected a number");
+            this._slow.setLength(0);
+            boolean neg = false;
+            int b = this.peek();
+            if (b == '-' || b == '+') {
+                neg = b == '-';
+                this.consume(b);
+            }
+            long mantissa = 0;
+            int all = 0;
+            int digits = 0;
+            int scale = 0;
+            boolean point = false;
+            boolean simple = true;
+            while (true) {
+                b = this.peek();
+                if (b >= '0' && b <= '9') {
+                    all++;
+                    if (digits < 18) mantissa = mantissa*10+(b-'0');
+                    else simple = false;
+                    if (mantissa != 0) digits++;
+                    if (point) scale--;
+                }
+                else if (b == '.' && !point) point = true;
+                else break;
+                this.consume(b);
+            }
+            int exp = 0;
+            if (b == 'e' || b == 'E') {
+                this.consume(b);
+                b = this.peek();
+                boolean exp_neg = b == '-';
+                if (b == '-' || b == '+') this.consume(b);
+                int exp_digits = 0;
+                while ((b = this.peek()) >= '0' && b <= '9') {
+                    if (exp < 10000) exp = exp*10+(b-'0');
+                    exp_digits++;
+                    this.consume(b);
+                }
+                if (exp_digits == 0) throw this.error("malformed number");
+                if (exp_neg) exp = -exp;
+            }
+            if (!this.tokenEnds()) {
+                while (this.peek() != -1 && !this.tokenEnds()) this.consume(this.peek());
+                try {
+                    return Double.parseDouble(this._slow.toString());
+                } catch (NumberFormatException e) {
+                    throw this.error("malformed number '" + this._slow + "'");
+                }
+            }
+            if (all == 0) throw this.error("expected a number");
+            exp += scale;
+            double v;
+            if (simple && mantissa < 1L << 53 && exp >= -22 && exp <= 22) {
+                v = exp < 0 ? mantissa/POW10[-exp] : mantissa*POW10[exp];
+            }
+            else v = Double.parseDouble(this._slow.toString());
+            return neg ? -v : v;
+        }
+
+        /**
+         * Consumes a byte of a number, keeping it for the slow path.
+         */
+        private void consume(int b) {
+            this._slow.append((char) b);
+            this._pos++;
+        }
+
+        /**
+         * Checks that the current token ends here.
+         */
+        private boolean tokenEnds() throws IOException {
+            int b = this.peek();
+            return b == -1 || b == ' ' || b == '\t' || b == ',' || b == ';' || b == '\r' || b == '\n';
+        }
+
+        private IOException error(String message) {
+            return new IOException("line " + (this._line+1) + ": " + message);
+        }
+    }
+
+    /**
+     * This internal class formats numbers straight into a byte buffer which is written to the channel when full.
+     */
+    private static final class Printer {
+        private final FileChannel _ch;
+        private final ByteBuffer _buf = ByteBuffer.allocate(BUFFER_BYTES);
+        private final byte[] _digits = new byte[20];
+        private final Stats _stats;
+
+        private Printer(FileChannel ch, Stats stats) {
+            this._ch = ch;
+            this._stats = stats;
+        }
+
+        private Printer ensure(int bytes) throws IOException {
+            if (this._buf.remaining() < bytes) this.flush();
+            return this;
+        }
+
+        private Printer character(char c) throws IOException {
+            this.ensure(1)._buf.put((byte) c);
+            return this;
+        }
+
+        private Printer text(String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+            this.ensure(bytes.length)._buf.put(bytes);
+            return this;
+        }
+
+        private Printer newLine() throws IOException {
+            this._stats._lines++;
+            return this.character('\n');
+        }
+
+        /**
+         * Writes a long in decimal.
+         */
+        private Printer number(long v) throws IOException {
+            this.ensure(20);
+            if (v < 0) {
+                if (v == Long.MIN_VALUE) return this.text(Long.toString(v));
+                this._buf.put((byte) '-');
+                v = -v;
+            }
+            int len = 0;
+            do {
+                this._digits[len++] = (byte) ('0'+v%10);
+                v /= 10;
+            } while (v != 0);
+            while (len > 0) {
+                this._buf.put(this._digits[--len]);
+            }
+            return this;
+        }
+
+        /**
+         * Writes a double, whole numbers without a fraction and anything else in the shortest form that reads back exactly.
+         */
+        private Printer number(double w) throws IOException {
+            if (w == (long) w && Math.abs(w) < 1e15) return this.number((long) w);
+            return this.text(Double.toString(w));
+        }
+
+        private void flush() throws IOException {
+            this._buf.flip();
+            this._stats._bytes += this._buf.remaining();
+            while (this._buf.hasRemaining()) {
+                this._ch.write(this._buf);
+            }
+            this._buf.clear();
+        }
+    }
+}
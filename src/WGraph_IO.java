@@ -0,0 +1,436 @@
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * This class reads and writes graphs in a compact versioned binary file format, used by WGraph_Algo's save and load.
+ * All the numbers are little endian and the file is written and read through a FileChannel with a single buffer.
+ * The layout of a file:
+ * 1 - A 20 bytes header: the magic "WGRF", the format version, the graph kind (WGraph_DS, WGraph_Compact or
+ *     WGraph_CSR), the section flags, the mode count, the node count and the edge count
+ * 2 - The node keys in ascending order, the first one zigzag encoded and every other one as the varint
+ *     delta from the key before it
+ * 3 - For every node (in key order) the number of its neighbors which come after it in key order, their
+ *     positions in key order as varint deltas and then the raw weights of these edges, so each undirected
+ *     edge is stored once
+ * 4 - Optional sections (see the flags): the info String of every node (UTF-8, length + 1 as a varint,
+ *     0 for null) and the tag of every node
+ * 5 - A CRC32 checksum of everything before it
+ * WGraph_DS and WGraph_CSR graphs are read through a WGraph_Builder, so the graph is compiled once after
+ * all the edges are read.
+ * Files written with Java serialization by earlier versions of save() are still recognized and read,
+ * and files in the CSR layout of WGraph_Mapped are memory mapped instead of read.
+ *
+ * @author shmuel.lavian
+ */
+public final class WGraph_IO {
+    /** The first four bytes of every graph file, "WGRF" in little endian */
+    static final int MAGIC = 0x46524757;
+    /** The version of the format written by this class, newer versions are rejected by read() */
+    static final int VERSION = 1;
+    static final int KIND_DS = 0;
+    static final int KIND_COMPACT = 1;
+    static final int KIND_CSR = 2;
+    static final int HAS_INFO = 1;
+    static final int HAS_TAGS = 2;
+    private static final int HEADER_BYTES = 20;
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private WGraph_IO() {
+    }
+
+    /**
+     * Writes the received graph to a file in the binary format, replacing the file if it exists.
+     * Runs in O(n log n + e log d) time, d being the maximal node degree.
+     *
+     * @param graph - The graph to write
+     * @param file - file name or path
+     * @throws IOException if the file could not be written
+     */
+    public static void write(weighted_graph graph, String file) throws IOException {
+        indexed_graph g = graph instanceof indexed_graph ? (indexed_graph) graph : WGraph_CSR.freeze(graph);
+        int n = g.nodeSize();
+        long[] order = new long[n];
+        int count = 0;
+        for (int i=0; i<g.indexBound(); i++) {
+            if (g.hasIndex(i)) order[count++] = ((long) g.keyAt(i) << 32) | i;
+        }
+        Arrays.sort(order);
+        int[] rank = new int[g.indexBound()];
+        int flags = 0;
+        for (int r=0; r<n; r++) {
+            rank[(int) order[r]] = r;
+            node_info node = graph.getNode((int) (order[r] >> 32));
+            if (node.getInfo() != null) flags |= HAS_INFO;
+            if (node.getTag() != -1) flags |= HAS_TAGS;
+        }
+        try (FileChannel ch = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Out out = new Out(ch);
+            out.ensure(HEADER_BYTES);
+            out._buf.putInt(MAGIC).put((byte) VERSION).put((byte) kindOf(graph)).putShort((short) flags);
+            out._buf.putInt(graph.getMC()).putInt(n).putInt(graph.edgeSize());
+            long prev = 0;
+            for (int r=0; r<n; r++) {
+                long key = order[r] >> 32;
+                out.putVarLong(r == 0 ? (key << 1) ^ (key >> 63) : key-prev);
+                prev = key;
+            }
+            RowSorter row = new RowSorter(rank);
+            for (int r=0; r<n; r++) {
+                row.clear(r);
+                g.forEachNeighborIndex((int) order[r], row);
+                row.sort();
+                out.putVarLong(row._size);
+                int last = r;
+                for (int j=0; j<row._size; j++) {
+                    out.putVarLong(row.rank(j)-last);
+                    last = row.rank(j);
+                }
+                for (int j=0; j<row._size; j++) {
+                    out.putDouble(row.weight(j));
+                }
+            }
+            for (int r=0; (flags & HAS_INFO) != 0 && r<n; r++) {
+                String info = graph.getNode((int) (order[r] >> 32)).getInfo();
+                if (info == null) out.putVarLong(0);
+                else {
+                    byte[] bytes = info.getBytes(StandardCharsets.UTF_8);
+                    out.putVarLong(bytes.length+1);
+                    out.putBytes(bytes);
+                }
+            }
+            for (int r=0; (flags & HAS_TAGS) != 0 && r<n; r++) {
+                out.putDouble(graph.getNode((int) (order[r] >> 32)).getTag());
+            }
+            out.flush();
+            out._buf.putInt((int) out._crc.getValue());
+            out.drain();
+        }
+    }
+
+    /**
+     * Reads a graph from a file written by write(), or by Java serialization in earlier versions of save().
+     * A file written by WGraph_Mapped.write() is mapped and returned as a read only WGraph_Mapped.
+     * The graph is restored with the same kind, node infos, tags and mode count it was written with.
+     *
+     * @param file - file name or path
+     * @return weighted_graph - The graph read from the file
+     * @throws IOException if the file could not be read, or is corrupted (StreamCorruptedException)
+     */
+    public static weighted_graph read(String file) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            In in = new In(ch, ch.size()-4);
+            in.ensure(2);
+            if (in._buf.get(0) == (byte) 0xAC && in._buf.get(1) == (byte) 0xED) return readLegacy(file);
+            in.ensure(HEADER_BYTES);
+            if (in._buf.getInt(0) == WGraph_Mapped.MAGIC) return WGraph_Mapped.open(file);
+            if (in._buf.getInt() != MAGIC) throw new StreamCorruptedException("not a graph file: " + file);
+            int version = in._buf.get() & 0xFF;
+            if (version > VERSION) throw new StreamCorruptedException("unsupported graph file version " + version);
+            int kind = in._buf.get();
+            if (kind != KIND_DS && kind != KIND_COMPACT && kind != KIND_CSR) {
+                throw new StreamCorruptedException("unknown graph kind " + kind + " in graph file: " + file);
+            }
+            int flags = in._buf.getShort();
+            int mc = in._buf.getInt();
+            int n = in._buf.getInt();
+            int edges = in._buf.getInt();
+            if (n < 0 || edges < 0) throw new StreamCorruptedException("corrupted graph file header: " + file);
+            // every node takes at least a key and a degree byte and every edge a target byte and its weight
+            if (2L*n + 9L*edges > ch.size()-4-HEADER_BYTES) {
+                throw new StreamCorruptedException("graph file too short for " + n + " nodes and " + edges
+                        + " edges: " + file);
+            }
+            WGraph_Compact compact = kind == KIND_COMPACT ? new WGraph_Compact(n) : null;
+            WGraph_Builder builder = compact == null ? new WGraph_Builder(n, edges) : null;
+            int[] keys = new int[n];
+            long key = 0;
+            for (int r=0; r<n; r++) {
+                long v = in.getVarLong();
+                key = r == 0 ? (v >>> 1) ^ -(v & 1) : key+v;
+                keys[r] = (int) key;
+                if (compact != null) compact.addNode(keys[r]);
+                else builder.addNode(keys[r]);
+            }
+            int[] targets = new int[16];
+            long total = 0;
+            for (int r=0; r<n; r++) {
+                int deg = (int) in.getVarLong();
+                if (deg < 0 || deg > n) throw new StreamCorruptedException("corrupted graph file: " + file);
+                if (deg > targets.length) targets = new int[Math.max(deg, targets.length*2)];
+                long t = r;
+                for (int j=0; j<deg; j++) {
+                    t += in.getVarLong();
+                    if (t >= n) throw new StreamCorruptedException("corrupted graph file: " + file);
+                    targets[j] = (int) t;
+                }
+                for (int j=0; j<deg; j++) {
+                    if (compact != null) compact.connect(keys[r], keys[targets[j]], in.getDouble());
+                    else builder.connect(keys[r], keys[targets[j]], in.getDouble());
+                }
+                total += deg;
+            }
+            weighted_graph g = compact != null ? compact : builder.build();
+            if (total != edges || g.edgeSize() != edges) throw new StreamCorruptedException("corrupted graph file: " + file);
+            for (int r=0; (flags & HAS_INFO) != 0 && r<n; r++) {
+                int len = (int) in.getVarLong();
+                if (len != 0) g.getNode(keys[r]).setInfo(new String(in.getBytes(len-1), StandardCharsets.UTF_8));
+            }
+            for (int r=0; (flags & HAS_TAGS) != 0 && r<n; r++) {
+                g.getNode(keys[r]).setTag(in.getDouble());
+            }
+            in.verify();
+            if (compact != null) compact.restoreMC(mc);
+            else ((WGraph_DS) g).restoreMC(mc);
+            return kind == KIND_CSR ? WGraph_CSR.freeze(g) : g;
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("truncated graph file: " + file);
+        }
+    }
+
+    /**
+     * Reads a graph written with Java serialization by earlier versions of save().
+     *
+     * @param file - file name or path
+     * @return weighted_graph - The deserialized graph
+     * @throws IOException if the file could not be read or does not hold a graph
+     */
+    private static weighted_graph readLegacy(String file) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            Object result = in.readObject();
+            if (!(result instanceof weighted_graph)) throw new InvalidObjectException("not a graph file: " + file);
+            return (weighted_graph) result;
+        } catch (ClassNotFoundException e) {
+            throw new InvalidObjectException("not a graph file: " + file);
+        }
+    }
+
+    /**
+     * Returns the kind written to the header for the received graph, any other implementation is read back as a WGraph_DS.
+     *
+     * @param g - The graph
+     * @return INT - The graph kind
+     */
+    private static int kindOf(weighted_graph g) {
+        if (g instanceof WGraph_Compact) return KIND_COMPACT;
+        if (g instanceof WGraph_CSR) return KIND_CSR;
+        return KIND_DS;
+    }
+
+    /**
+     * This internal class collects the neighbors of a single node which come after it in key order,
+     * packing the neighbor's position in the high bits and the buffer position in the low bits
+     * so a plain long sort orders them.
+     */
+    private static class RowSorter implements edge_visitor {
+        private final int[] _rank;
+        private long[] _order = new long[16];
+        private double[] _w = new double[16];
+        private int _size;
+        private int _row;
+
+        private RowSorter(int[] rank) {
+            this._rank = rank;
+        }
+
+        @Override
+        public void visit(int ni, double w) {
+            int r = this._rank[ni];
+            if (r <= this._row) return;
+            if (this._size == this._order.length) {
+                this._order = Arrays.copyOf(this._order, this._size*2);
+                this._w = Arrays.copyOf(this._w, this._size*2);
+            }
+            this._order[this._size] = ((long) r << 32) | this._size;
+            this._w[this._size] = w;
+            this._size++;
+        }
+
+        private void clear(int row) {
+            this._row = row;
+            this._size = 0;
+        }
+
+        private void sort() {
+            Arrays.sort(this._order, 0, this._size);
+        }
+
+        private int rank(int i) {
+            return (int) (this._order[i] >> 32);
+        }
+
+        private double weight(int i) {
+            return this._w[(int) this._order[i]];
+        }
+    }
+
+    /**
+     * This internal class buffers the bytes written to the channel and keeps the checksum of all the flushed bytes.
+     */
+    private static class Out {
+        private final FileChannel _ch;
+        private final ByteBuffer _buf = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32 _crc = new CRC32();
+
+        private Out(FileChannel ch) {
+            this._ch = ch;
+        }
+
+        /**
+         * Flushes the buffer if it has less than the received number of free bytes.
+         */
+        private void ensure(int bytes) throws IOException {
+            if (this._buf.remaining() < bytes) this.flush();
+        }
+
+        /**
+         * Adds the buffered bytes to the checksum and writes them to the channel.
+         */
+        private void flush() throws IOException {
+            this._crc.update(this._buf.array(), 0, this._buf.position());
+            this.drain();
+        }
+
+        /**
+         * Writes the buffered bytes to the channel without adding them to the checksum.
+         */
+        private void drain() throws IOException {
+            this._buf.flip();
+            while (this._buf.hasRemaining()) {
+                this._ch.write(this._buf);
+            }
+            this._buf.clear();
+        }
+
+        /**
+         * Writes an unsigned varint, 7 bits per byte with the high bit set on all the bytes but the last.
+         */
+        private void putVarLong(long v) throws IOException {
+            this.ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                this._buf.put((byte) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            this._buf.put((byte) v);
+        }
+
+        private void putDouble(double d) throws IOException {
+            this.ensure(8);
+            this._buf.putDouble(d);
+        }
+
+        private void putBytes(byte[] bytes) throws IOException {
+            int off = 0;
+            while (off < bytes.length) {
+                this.ensure(1);
+                int len = Math.min(this._buf.remaining(), bytes.length-off);
+                this._buf.put(bytes, off, len);
+                off += len;
+            }
+        }
+    }
+
+    /**
+     * This internal class buffers the bytes read from the channel and keeps the checksum of all the bytes
+     * before the trailing checksum.
+     */
+    private static class In {
+        private final FileChannel _ch;
+        private final ByteBuffer _buf = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32 _crc = new CRC32();
+        private final long _body;
+        private long _read;
+
+        /**
+         * Creates a reader of the channel.
+         *
+         * @param ch - The channel to read
+         * @param body - The number of bytes covered by the checksum
+         */
+        private In(FileChannel ch, long body) {
+            this._ch = ch;
+            this._body = body;
+            this._buf.limit(0);
+        }
+
+        /**
+         * Reads from the channel until the buffer holds at least the received number of bytes.
+         */
+        private void ensure(int bytes) throws IOException {
+            this.fill(bytes);
+            if (this._buf.remaining() < bytes) throw new EOFException("truncated graph file");
+        }
+
+        /**
+         * Reads from the channel until the buffer holds at least the received number of bytes or the file ends.
+         */
+        private void fill(int bytes) throws IOException {
+            if (this._buf.remaining() >= bytes) return;
+            this._buf.compact();
+            while (this._buf.position() < bytes) {
+                int start = this._buf.position();
+                int len = this._ch.read(this._buf);
+                if (len < 0) break;
+                int crc_len = (int) Math.max(0, Math.min(len, this._body-this._read));
+                this._crc.update(this._buf.array(), start, crc_len);
+                this._read += len;
+            }
+            this._buf.flip();
+        }
+
+        /**
+         * Reads an unsigned varint written by Out.putVarLong().
+         */
+        private long getVarLong() throws IOException {
+            this.fill(10);
+            long v = 0;
+            for (int shift=0; shift<64; shift+=7) {
+                byte b = this._buf.get();
+                v |= (long) (b & 0x7F) << shift;
+                if (b >= 0) return v;
+            }
+            throw new StreamCorruptedException("corrupted varint");
+        }
+
+        private double getDouble() throws IOException {
+            this.ensure(8);
+            return this._buf.getDouble();
+        }
+
+        private byte[] getBytes(int len) throws IOException {
+            byte[] result = new byte[len];
+            int off = 0;
+            while (off < len) {
+                this.ensure(1);
+                int chunk = Math.min(this._buf.remaining(), len-off);
+                this._buf.get(result, off, chunk);
+                off += chunk;
+            }
+            return result;
+        }
+
+        /**
+         * Returns the number of bytes consumed from the file so far.
+         */
+        private long consumed() {
+            return this._read-this._buf.remaining();
+        }
+
+        /**
+         * Checks that exactly the checksum is left to read and that it matches the bytes read.
+         */
+        private void verify() throws IOException {
+            if (this.consumed() != this._body) throw new StreamCorruptedException("corrupted graph file: unexpected trailing bytes");
+            this.ensure(4);
+            if (this._buf.getInt() != (int) this._crc.getValue()) throw new StreamCorruptedException("graph file checksum mismatch");
+        }
+    }
+}
@@ -0,0 +1,444 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class holds the preprocessed tables of the ALT technique (A*, Landmarks and Triangle inequality)
+ * for graphs without coordinates. A few nodes are chosen as landmarks and the shortest distance from every
+ * landmark to every node is computed once with Dijkstra's algorithm. For any landmark l the triangle inequality
+ * gives the lower bound |d(l,target) - d(l,node)| <= d(node,target), and the heuristic is the largest such
+ * bound over all the landmarks. The heuristic is admissible and consistent, so A* guided by it stays exact.
+ * The landmarks are chosen by one of two strategies:
+ * 1 - FARTHEST: every new landmark is the node farthest away from all the landmarks chosen so far
+ * 2 - AVOID: grows a shortest path tree from a random root and picks the leaf of the subtree whose nodes
+ *     are covered worst by the current landmarks (Goldberg and Werneck's "avoid" heuristic)
+ * The tables keep the mode count of the graph they were computed on, any later change to the graph
+ * invalidates them (see isValidFor()). A table costs 8*k bytes per node for k landmarks.
+ * save() writes the tables in a small versioned binary layout, all the numbers little endian:
+ * a 20 bytes header (the magic "WLMK", the format version, the mode count, the node count and k),
+ * the k landmark keys and then a row per node of its key followed by the k raw distance doubles.
+ *
+ * @author shmuel.lavian
+ */
+public class WGraph_Landmarks implements distance_heuristic {
+    /** The first four bytes of every landmarks file, "WLMK" in little endian */
+    static final int MAGIC = 0x4B4D4C57;
+    /** The version of the file layout written by save(), other versions are rejected by load() */
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = 20;
+    private static final int BUFFER_BYTES = 1 << 16;
+    private final IntIntHashMap _index;
+    private final int[] _keys;
+    private final int[] _landmarks;
+    private final double[] _dist;
+    private final int _mc;
+
+    /**
+     * The landmark selection strategies.
+     */
+    public enum Strategy {
+        /** Each landmark is the node farthest from the landmarks already chosen */
+        FARTHEST,
+        /** Each landmark is a leaf of the shortest path subtree worst covered by the landmarks already chosen */
+        AVOID
+    }
+
+    /**
+     * Creates a table over already computed distances, used by compute() and load().
+     *
+     * @param index - The row of every node key
+     * @param keys - The node key of every row
+     * @param landmarks - The landmark keys
+     * @param dist - The distance table, a row of landmarks.length entries per node
+     * @param mc - The mode count of the preprocessed graph
+     */
+    private WGraph_Landmarks(IntIntHashMap index, int[] keys, int[] landmarks, double[] dist, int mc) {
+        this._index = index;
+        this._keys = keys;
+        this._landmarks = landmarks;
+        this._dist = dist;
+        this._mc = mc;
+    }
+
+    /**
+     * Chooses up to k landmarks of the graph with the received strategy and computes the distance tables.
+     * Runs k+1 (FARTHEST) or 2k (AVOID) full Dijkstra searches.
+     *
+     * @param graph - The graph to preprocess
+     * @param k - The number of landmarks, at least 1 (fewer are chosen if the graph is smaller)
+     * @param strategy - The landmark selection strategy
+     * @param seed - The seed of the random choices
+     * @return WGraph_Landmarks - The landmark tables of the graph
+     */
+    public static WGraph_Landmarks compute(weighted_graph graph, int k, Strategy strategy, long seed) {
+        if (k < 1) throw new IllegalArgumentException("the number of landmarks must be at least 1: " + k);
+        if (strategy == null) throw new IllegalArgumentException("landmark strategy must not be null");
+        indexed_graph g = graph instanceof indexed_graph ? (indexed_graph) graph : WGraph_CSR.freeze(graph);
+        int bound = g.indexBound();
+        k = Math.min(k, g.nodeSize());
+        double[] dist = new double[bound*k];
+        double[] cover = new double[bound];
+        Arrays.fill(cover, Double.POSITIVE_INFINITY);
+        int[] landmarks = new int[k];
+        int found = 0;
+        Random rnd = new Random(seed);
+        SearchState st = SearchState.acquire(bound);
+        try {
+            while (found < k) {
+                int next = -1;
+                if (strategy == Strategy.AVOID) next = avoid(g, landmarks, found, dist, k, cover, st, rnd);
+                if (next == -1) next = farthest(g, found == 0 ? randomIndex(g, rnd) : -1, cover, st);
+                if (next == -1) break;
+                landmarks[found] = next;
+                st.begin(bound);
+                search(g, next, st, null);
+                for (int i=0; i<bound; i++) {
+                    double d = g.hasIndex(i) ? st.dist(i) : Double.POSITIVE_INFINITY;
+                    dist[i*k+found] = d;
+                    if (d < cover[i]) cover[i] = d;
+                }
+                found++;
+            }
+        } finally {
+            SearchState.release(st);
+        }
+        int n = g.nodeSize();
+        int[] keys = new int[n];
+        double[] rows = new double[n*found];
+        IntIntHashMap index = new IntIntHashMap(n);
+        for (int i=0, row=0; i<bound; i++) {
+            if (!g.hasIndex(i)) continue;
+            keys[row] = g.keyAt(i);
+            index.put(keys[row], row);
+            System.arraycopy(dist, i*k, rows, row*found, found);
+            row++;
+        }
+        int[] lmk_keys = new int[found];
+        for (int l=0; l<found; l++) {
+            lmk_keys[l] = g.keyAt(landmarks[l]);
+        }
+        return new WGraph_Landmarks(index, keys, lmk_keys, rows, graph.getMC());
+    }
+
+    /**
+     * Picks the next landmark of the FARTHEST strategy: the node with the largest distance to its closest
+     * landmark (nodes no landmark reaches come first). The first landmark is the node farthest from a random start.
+     *
+     * @param g - The preprocessed graph
+     * @param start - A random start node index for the first landmark, -1 for the next ones
+     * @param cover - The distance of every node to its closest landmark so far
+     * @param st - A search state for the first landmark's extra search
+     * @return INT - The index of the next landmark, -1 if every node is already a landmark
+     */
+    private static int farthest(indexed_graph g, int start, double[] cover, SearchState st) {
+        int bound = g.indexBound();
+        if (start != -1) {
+            st.begin(bound);
+            search(g, start, st, null);
+        }
+        int result = -1;
+        double best = -1;
+        for (int i=0; i<bound; i++) {
+            if (!g.hasIndex(i)) continue;
+            double d = start == -1 ? cover[i] : st.reached(i) ? st.dist(i) : -1;
+            if (d > best) {
+                best = d;
+                result = i;
+            }
+        }
+        if (start == -1 && best <= 0) return -1;
+        return result;
+    }
+
+    /**
+     * Picks the next landmark of the AVOID strategy. A shortest path tree is grown from a random root
+     * (a node no landmark reaches if there is one). Every node weighs the gap between its real distance from
+     * the root and the current landmark lower bound of it, and every subtree without a landmark weighs the sum
+     * of its nodes. Starting at the heaviest such subtree the walk always moves to the heaviest child,
+     * the leaf it ends at is the new landmark.
+     *
+     * @param g - The preprocessed graph
+     * @param landmarks - The landmark indexes chosen so far
+     * @param found - The number of landmarks chosen so far
+     * @param dist - The distance table, row per node index with k entries
+     * @param k - The row length of the distance table
+     * @param cover - The distance of every node to its closest landmark so far
+     * @param st - A search state for the tree search
+     * @param rnd - The random source for the root
+     * @return INT - The index of the next landmark, -1 if no subtree is left uncovered
+     */
+    private static int avoid(indexed_graph g, int[] landmarks, int found, double[] dist, int k, double[] cover,
+                             SearchState st, Random rnd) {
+        int bound = g.indexBound();
+        int root = randomIndex(g, rnd);
+        for (int i=0; i<bound && found > 0; i++) {
+            if (g.hasIndex(i) && cover[i] == Double.POSITIVE_INFINITY) {
+                root = i;
+                break;
+            }
+        }
+        int[] order = new int[g.nodeSize()];
+        st.begin(bound);
+        int settled = search(g, root, st, order);
+        double[] size = new double[bound];
+        boolean[] marked = new boolean[bound];
+        int[] heaviest = new int[bound];
+        for (int j=0; j<settled; j++) {
+            int v = order[j];
+            double lower = 0;
+            for (int l=0; l<found; l++) {
+                double dr = dist[root*k+l], dv = dist[v*k+l];
+                if (dr != Double.POSITIVE_INFINITY && dv != Double.POSITIVE_INFINITY) lower = Math.max(lower, Math.abs(dr-dv));
+            }
+            size[v] = st.dist(v)-lower;
+            heaviest[v] = -1;
+        }
+        for (int l=0; l<found; l++) {
+            marked[landmarks[l]] = true;
+        }
+        for (int j=settled-1; j>0; j--) {
+            int v = order[j];
+            int p = st.parent(v);
+            if (marked[v]) {
+                marked[p] = true;
+            }
+            else {
+                size[p] += size[v];
+                if (heaviest[p] == -1 || size[v] > size[heaviest[p]]) heaviest[p] = v;
+            }
+        }
+        int result = -1;
+        double best = 0;
+        for (int j=0; j<settled; j++) {
+            int v = order[j];
+            if (!marked[v] && size[v] > best) {
+                best = size[v];
+                result = v;
+            }
+        }
+        if (result == -1) return -1;
+        while (heaviest[result] != -1) {
+            result = heaviest[result];
+        }
+        return result;
+    }
+
+    /**
+     * Runs a full Dijkstra search from the received node over a fresh search state.
+     *
+     * @param g - The searched graph
+     * @param src - The source node index
+     * @param st - A fresh search state, holds the distances and parents afterwards
+     * @param order - Receives the node indexes in settle order, may be null
+     * @return INT - The number of settled nodes
+     */
+    private static int search(indexed_graph g, int src, SearchState st, int[] order) {
+        st.start(src);
+        int count = 0;
+        int u;
+        while ((u = st.poll()) != -1) {
+            if (order != null) order[count] = u;
+            count++;
+            st.relax(g, u);
+        }
+        return count;
+    }
+
+    /**
+     * Returns a random node index of the graph.
+     */
+    private static int randomIndex(indexed_graph g, Random rnd) {
+        int i;
+        do {
+            i = rnd.nextInt(g.indexBound());
+        } while (!g.hasIndex(i));
+        return i;
+    }
+
+    /**
+     * Returns the largest landmark lower bound of the distance between two nodes.
+     * Runs in O(k) time for k landmarks. Nodes missing from the tables are estimated as 0.
+     *
+     * @param node - the key of the node being estimated
+     * @param target - the key of the query's target node
+     * @return double - max |d(l,target) - d(l,node)| over all the landmarks l
+     */
+    @Override
+    public double estimate(int node, int target) {
+        int a = this._index.get(node);
+        int b = this._index.get(target);
+        if (a == -1 || b == -1) return 0;
+        int k = this._landmarks.length;
+        int pa = a*k, pb = b*k;
+        double result = 0;
+        for (int l=0; l<k; l++) {
+            double da = this._dist[pa+l], db = this._dist[pb+l];
+            if (da == Double.POSITIVE_INFINITY || db == Double.POSITIVE_INFINITY) continue;
+            double d = da > db ? da-db : db-da;
+            if (d > result) result = d;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the shortest distance between a landmark and a node.
+     *
+     * @param l - The landmark number, 0..size()-1
+     * @param key - The node ID
+     * @return double - The distance, infinity if the landmark does not reach the node, -1 if the node is unknown
+     */
+    public double distance(int l, int key) {
+        int i = this._index.get(key);
+        return i == -1 ? -1 : this._dist[i*this._landmarks.length+l];
+    }
+
+    /**
+     * Returns the keys of the landmark nodes in the order they were chosen.
+     *
+     * @return int[] - A copy of the landmark keys
+     */
+    public int[] landmarks() {
+        return this._landmarks.clone();
+    }
+
+    /**
+     * Returns the number of landmarks.
+     *
+     * @return INT - The number of landmarks
+     */
+    public int size() {
+        return this._landmarks.length;
+    }
+
+    /**
+     * Returns the mode count of the graph at the time the tables were computed.
+     *
+     * @return INT - The graph's mode count
+     */
+    public int getMC() {
+        return this._mc;
+    }
+
+    /**
+     * Checks if the tables still describe the received graph, any change to the graph after
+     * the tables were computed (a different mode count) invalidates them.
+     *
+     * @param g - The graph to check against
+     * @return True if the tables can be used as a heuristic over g
+     */
+    public boolean isValidFor(weighted_graph g) {
+        return g != null && g.getMC() == this._mc && g.nodeSize() == this._keys.length;
+    }
+
+    /**
+     * Saves the tables to the given file in the binary layout described above, replacing the file if it exists.
+     *
+     * @param file - the file name (may include a relative path).
+     * @throws IOException if the file could not be written
+     */
+    public void save(String file) throws IOException {
+        int k = this._landmarks.length;
+        try (FileChannel ch = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buf.putInt(MAGIC).putInt(VERSION).putInt(this._mc).putInt(this._keys.length).putInt(k);
+            for (int key : this._landmarks) {
+                flush(ch, buf, 4);
+                buf.putInt(key);
+            }
+            for (int row=0; row<this._keys.length; row++) {
+                flush(ch, buf, 4);
+                buf.putInt(this._keys[row]);
+                for (int l=0; l<k; l++) {
+                    flush(ch, buf, 8);
+                    buf.putDouble(this._dist[row*k+l]);
+                }
+            }
+            flush(ch, buf, BUFFER_BYTES);
+        }
+    }
+
+    /**
+     * Loads tables saved by save().
+     *
+     * @param file - file name or path
+     * @return WGraph_Landmarks - The loaded tables
+     * @throws IOException if the file could not be read or does not hold landmark tables
+     */
+    public static WGraph_Landmarks load(String file) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buf.limit(0);
+            fill(ch, buf, HEADER_BYTES);
+            if (buf.getInt() != MAGIC) throw new StreamCorruptedException("not a landmarks file: " + file);
+            int version = buf.getInt();
+            if (version != VERSION) {
+                throw new StreamCorruptedException("unsupported landmarks file version " + version + ": " + file);
+            }
+            int mc = buf.getInt();
+            int n = buf.getInt();
+            int k = buf.getInt();
+            long body = ch.size()-HEADER_BYTES-4L*k;
+            long row_bytes = 4+8L*k;
+            if (n < 0 || k < 0 || body < 0 || body%row_bytes != 0 || body/row_bytes != n
+                    || (long) n*k > Integer.MAX_VALUE) {
+                throw new StreamCorruptedException("corrupted landmarks file: " + file);
+            }
+            int[] landmarks = new int[k];
+            for (int l=0; l<k; l++) {
+                fill(ch, buf, 4);
+                landmarks[l] = buf.getInt();
+            }
+            int[] keys = new int[n];
+            double[] dist = new double[n*k];
+            IntIntHashMap index = new IntIntHashMap(n);
+            for (int row=0; row<n; row++) {
+                fill(ch, buf, 4);
+                keys[row] = buf.getInt();
+                if (index.containsKey(keys[row])) {
+                    throw new StreamCorruptedException("duplicate node " + keys[row] + " in landmarks file: " + file);
+                }
+                index.put(keys[row], row);
+                for (int l=0; l<k; l++) {
+                    fill(ch, buf, 8);
+                    dist[row*k+l] = buf.getDouble();
+                }
+            }
+            for (int key : landmarks) {
+                if (!index.containsKey(key)) {
+                    throw new StreamCorruptedException("unknown landmark " + key + " in landmarks file: " + file);
+                }
+            }
+            return new WGraph_Landmarks(index, keys, landmarks, dist, mc);
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the channel if the buffer has less than the received number of free bytes.
+     */
+    private static void flush(FileChannel ch, ByteBuffer buf, int bytes) throws IOException {
+        if (buf.remaining() >= bytes) return;
+        buf.flip();
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+        buf.clear();
+    }
+
+    /**
+     * Reads from the channel until the buffer holds at least the received number of bytes.
+     */
+    private static void fill(FileChannel ch, ByteBuffer buf, int bytes) throws IOException {
+        if (buf.remaining() >= bytes) return;
+        buf.compact();
+        while (buf.position() < bytes) {
+            if (ch.read(buf) < 0) throw new EOFException("truncated landmarks file");
+        }
+        buf.flip();
+    }
+}
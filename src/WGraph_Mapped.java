@@ -0,0 +1,626 @@
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * This class implements a read only weighted graph served directly from a memory mapped file.
+ * The file holds the same Compressed Sparse Row layout as WGraph_CSR, written once by write():
+ * 1 - A 64 bytes header: the magic "WGRM", the format version, the node count, the mode count and the edge count
+ * 2 - keys[n]: the node keys in ascending order, the index of a node is its position in this array
+ * 3 - offsets[n+1]: the neighbors of index i are at positions offsets[i]..offsets[i+1] of the next two sections
+ * 4 - targets[2e]: the neighbor indexes, every row sorted, each undirected edge appears in both rows
+ * 5 - weights[2e]: the matching edge weights
+ * All the numbers are little endian and every section starts 8 bytes aligned.
+ * open() maps the file with FileChannel.map and never copies it to the heap, so a graph of any size is
+ * queryable right away, the pages are read by the OS on first access and are shared through the page cache
+ * by all the processes mapping the same file. Since a single mapping is limited to 2GB the file is mapped
+ * in fixed size segments, every section is aligned so no number crosses a segment boundary.
+ * Keys are found by binary search over the sorted keys and edges by binary search over the sorted row.
+ * Every structural change throws UnsupportedOperationException, the nodes have no info or tag
+ * (getInfo() returns null and getTag() -1) and the mapping is released when the graph is garbage collected.
+ *
+ * @author shmuel.lavian
+ */
+public class WGraph_Mapped implements indexed_graph {
+    /** The first four bytes of every mapped graph file, "WGRM" in little endian */
+    static final int MAGIC = 0x4D524757;
+    /** The version of the layout written by this class */
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    /** The log2 of the size of a single mapped segment */
+    static final int SEGMENT_BITS = 30;
+    private static final int BUFFER_BYTES = 1 << 16;
+    private final ByteBuffer[] _segments;
+    private final int _shift;
+    private final long _mask;
+    private final int _n;
+    private final int _e;
+    private final int _mc;
+    private final long _keys;
+    private final long _offsets;
+    private final long _targets;
+    private final long _weights;
+
+    /**
+     * This internal class implements the node_info interface as a read only view over a single index of the file.
+     */
+    private class NodeView implements node_info {
+        private final int _i;
+
+        /**
+         * Creates a new view of the received index.
+         *
+         * @param i - The index of the node
+         */
+        private NodeView(int i) {
+            this._i = i;
+        }
+
+        @Override
+        public int getKey() {
+            return keyAt(this._i);
+        }
+
+        /**
+         * The file holds no node metadata.
+         *
+         * @return null
+         */
+        @Override
+        public String getInfo() {
+            return null;
+        }
+
+        /**
+         * Not supported, a mapped graph is read only.
+         */
+        @Override
+        public void setInfo(String s) {
+            throw readOnly();
+        }
+
+        /**
+         * The file holds no node tags.
+         *
+         * @return -1, the initial tag of a node
+         */
+        @Override
+        public double getTag() {
+            return -1;
+        }
+
+        /**
+         * Not supported, a mapped graph is read only.
+         */
+        @Override
+        public void setTag(double t) {
+            throw readOnly();
+        }
+
+        /**
+         * Returns a string representation of the node in the same format as WGraph_DS nodes.
+         *
+         * @return a string representation the node.
+         */
+        @Override
+        public String toString() {
+            return "Node Key: " + this.getKey() + "\n" +
+                    "Node Tag: " + this.getTag() + "\n" +
+                    "Node MetaData: " + this.getInfo() + "\n";
+        }
+
+        /**
+         * Two views are equal if they point to the same node of the same graph.
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof NodeView)) return false;
+            NodeView n = (NodeView) obj;
+            return n._i == this._i && n.graph() == this.graph();
+        }
+
+        @Override
+        public int hashCode() {
+            return this.getKey();
+        }
+
+        private WGraph_Mapped graph() {
+            return WGraph_Mapped.this;
+        }
+    }
+
+    /**
+     * Creates a graph over the mapped segments of a file, used by open().
+     */
+    private WGraph_Mapped(ByteBuffer[] segments, int shift, int n, int e, int mc) {
+        this._segments = segments;
+        this._shift = shift;
+        this._mask = (1L << shift)-1;
+        this._n = n;
+        this._e = e;
+        this._mc = mc;
+        this._keys = HEADER_BYTES;
+        this._offsets = align(this._keys+4L*n);
+        this._targets = this._offsets+8L*(n+1);
+        this._weights = align(this._targets+8L*e);
+    }
+
+    /**
+     * Writes the received graph to a file in the mapped CSR layout, replacing the file if it exists.
+     * Runs in O(n log n + e log d) time, d being the maximal node degree.
+     *
+     * @param graph - The graph to write
+     * @param file - file name or path
+     * @throws IOException if the file could not be written
+     */
+    public static void write(weighted_graph graph, String file) throws IOException {
+        indexed_graph g = graph instanceof indexed_graph ? (indexed_graph) graph : WGraph_CSR.freeze(graph);
+        int n = g.nodeSize();
+        int e = g.edgeSize();
+        long[] order = new long[n];
+        int count = 0;
+        for (int i=0; i<g.indexBound(); i++) {
+            if (g.hasIndex(i)) order[count++] = ((long) g.keyAt(i) << 32) | i;
+        }
+        Arrays.sort(order);
+        int[] rank = new int[g.indexBound()];
+        for (int r=0; r<n; r++) {
+            rank[(int) order[r]] = r;
+        }
+        long keys = HEADER_BYTES;
+        long offsets = align(keys+4L*n);
+        long targets = offsets+8L*(n+1);
+        long weights = align(targets+8L*e);
+        try (FileChannel ch = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Section out = new Section(ch, 0);
+            out.ensure(HEADER_BYTES);
+            out._buf.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(graph.getMC()).putInt(e);
+            out._buf.position(HEADER_BYTES);
+            for (int r=0; r<n; r++) {
+                out.ensure(4);
+                out._buf.putInt((int) (order[r] >> 32));
+            }
+            out.pad(offsets);
+            Section t = new Section(ch, targets);
+            Section w = new Section(ch, weights);
+            Row row = new Row(rank);
+            long p = 0;
+            for (int r=0; r<n; r++) {
+                out.ensure(8);
+                out._buf.putLong(p);
+                row.clear();
+                g.forEachNeighborIndex((int) order[r], row);
+                row.sort();
+                for (int j=0; j<row._size; j++) {
+                    t.ensure(4);
+                    t._buf.putInt((int) (row._order[j] >> 32));
+                    w.ensure(8);
+                    w._buf.putDouble(row._w[(int) row._order[j]]);
+                }
+                p += row._size;
+            }
+            if (p != 2L*e) throw new IOException("the edge count of the graph does not match its adjacency");
+            out.ensure(8);
+            out._buf.putLong(p);
+            out.flush();
+            t.pad(weights);
+            t.flush();
+            w.flush();
+        }
+    }
+
+    /**
+     * Maps a file written by write() as a read only graph.
+     * Only the header is read, the rest of the file is paged in by the OS as it is accessed.
+     *
+     * @param file - file name or path
+     * @return WGraph_Mapped - The mapped graph
+     * @throws IOException if the file could not be mapped or is not a mapped graph file
+     */
+    public static WGraph_Mapped open(String file) throws IOException {
+        return open(file, SEGMENT_BITS);
+    }
+
+    /**
+     * Maps a file written by write() in segments of 2^shift bytes.
+     *
+     * @param file - file name or path
+     * @param shift - The log2 of the segment size, at least 3
+     * @return WGraph_Mapped - The mapped graph
+     * @throws IOException if the file could not be mapped or is not a mapped graph file
+     */
+    static WGraph_Mapped open(String file, int shift) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            long size = ch.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (ch.read(header) < 0) break;
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+                throw new StreamCorruptedException("not a mapped graph file: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) throw new StreamCorruptedException("unsupported mapped graph file version " + version);
+            int n = header.getInt();
+            int mc = header.getInt();
+            int e = header.getInt();
+            if (n < 0 || e < 0) throw new StreamCorruptedException("corrupted mapped graph file header: " + file);
+            long expected = align(align(HEADER_BYTES+4L*n)+8L*(n+1)+8L*e)+16L*e;
+            if (size != expected) throw new StreamCorruptedException("mapped graph file has " + size + " bytes instead of " + expected);
+            long segment = 1L << shift;
+            ByteBuffer[] segments = new ByteBuffer[(int) ((size+segment-1) >> shift)];
+            for (int s=0; s<segments.length; s++) {
+                long start = (long) s << shift;
+                MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segment, size-start));
+                segments[s] = map.order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new WGraph_Mapped(segments, shift, n, e, mc);
+        }
+    }
+
+    @Override
+    public node_info getNode(int key) {
+        int i = this.indexOf(key);
+        return i == -1 ? null : new NodeView(i);
+    }
+
+    /**
+     * Checks if the is an edge between two nodes. Each node by definition is connected to itself.
+     * Runs in O(log n + log k) time by binary search over the keys and over node1's row.
+     *
+     * @param node1 - first node id to check
+     * @param node2 - second node id to check
+     * @return True if and only if there is and edge. False in any other case
+     */
+    @Override
+    public boolean hasEdge(int node1, int node2) {
+        int i = this.indexOf(node1);
+        if (i == -1) return false;
+        if (node1 == node2) return true;
+        int j = this.indexOf(node2);
+        return j != -1 && this.find(i, j) >= 0;
+    }
+
+    /**
+     * Returns the weight value between two nodes in O(log n + log k) time.
+     *
+     * @param node1 - First node
+     * @param node2 - Second node
+     * @return double - The value of the edge between the two node, -1 if the edge doesn't exist
+     */
+    @Override
+    public double getEdge(int node1, int node2) {
+        if (node1 == node2) return 0;
+        int i = this.indexOf(node1);
+        int j = this.indexOf(node2);
+        if (i == -1 || j == -1) return -1;
+        long p = this.find(i, j);
+        return p < 0 ? -1 : this.weight(p);
+    }
+
+    /**
+     * Not supported, a mapped graph is read only.
+     */
+    @Override
+    public void addNode(int key) {
+        throw readOnly();
+    }
+
+    /**
+     * Not supported, a mapped graph is read only.
+     */
+    @Override
+    public void connect(int node1, int node2, double w) {
+        throw readOnly();
+    }
+
+    /**
+     * Returns a collection view of all the nodes in the graph, in key order.
+     *
+     * @return Collection of node_info objects
+     */
+    @Override
+    public Collection<node_info> getV() {
+        return new AbstractCollection<node_info>() {
+            @Override
+            public Iterator<node_info> iterator() {
+                return new Iterator<node_info>() {
+                    private int _next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return this._next < _n;
+                    }
+
+                    @Override
+                    public node_info next() {
+                        if (!this.hasNext()) throw new NoSuchElementException();
+                        return new NodeView(this._next++);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return _n;
+            }
+        };
+    }
+
+    @Override
+    public Collection<node_info> getV(int node_id) {
+        int i = this.indexOf(node_id);
+        if (i == -1) return new ArrayList<>();
+        long start = this.offset(i);
+        long end = this.offset(i+1);
+        ArrayList<node_info> result = new ArrayList<>((int) (end-start));
+        for (long p=start; p<end; p++) {
+            result.add(new NodeView(this.target(p)));
+        }
+        return result;
+    }
+
+    @Override
+    public void forEachNeighbor(int node_id, edge_visitor visitor) {
+        int i = this.indexOf(node_id);
+        if (i == -1) return;
+        long end = this.offset(i+1);
+        for (long p=this.offset(i); p<end; p++) {
+            visitor.visit(this.keyAt(this.target(p)), this.weight(p));
+        }
+    }
+
+    /**
+     * Not supported, a mapped graph is read only.
+     */
+    @Override
+    public node_info removeNode(int key) {
+        throw readOnly();
+    }
+
+    /**
+     * Not supported, a mapped graph is read only.
+     */
+    @Override
+    public void removeEdge(int node1, int node2) {
+        throw readOnly();
+    }
+
+    @Override
+    public int nodeSize() {
+        return this._n;
+    }
+
+    @Override
+    public int edgeSize() {
+        return this._e;
+    }
+
+    /**
+     * Returns the mode count of the graph at the time it was written, a mapped graph never changes.
+     *
+     * @return INT - The written graph's mode count
+     */
+    @Override
+    public int getMC() {
+        return this._mc;
+    }
+
+    @Override
+    public int indexBound() {
+        return this._n;
+    }
+
+    /**
+     * Returns the index of the node with the received key by binary search over the sorted keys.
+     *
+     * @param key - The node ID
+     * @return INT - The node index, -1 if there is no such node
+     */
+    @Override
+    public int indexOf(int key) {
+        int lo = 0;
+        int hi = this._n-1;
+        while (lo <= hi) {
+            int mid = (lo+hi) >>> 1;
+            int k = this.keyAt(mid);
+            if (k < key) lo = mid+1;
+            else if (k > key) hi = mid-1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    @Override
+    public int keyAt(int index) {
+        return this.getInt(this._keys+4L*index);
+    }
+
+    @Override
+    public boolean hasIndex(int index) {
+        return index >= 0 && index < this._n;
+    }
+
+    @Override
+    public void forEachNeighborIndex(int index, edge_visitor visitor) {
+        long end = this.offset(index+1);
+        for (long p=this.offset(index); p<end; p++) {
+            visitor.visit(this.target(p), this.weight(p));
+        }
+    }
+
+    /**
+     * Returns the degree of the node at the given index.
+     *
+     * @param index - The node index
+     * @return INT - The number of neighbors of the node
+     */
+    public int degreeAt(int index) {
+        return (int) (this.offset(index+1)-this.offset(index));
+    }
+
+    /**
+     * Returns the size of the mapped file.
+     *
+     * @return long - The number of mapped bytes
+     */
+    public long mappedBytes() {
+        return this._weights+16L*this._e;
+    }
+
+    /**
+     * Returns a string representation of the graph in the same format as WGraph_DS.
+     *
+     * @return String - representation of the graph.
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append("Total Nodes: ").append(this.nodeSize()).append(" ||  Total edges: ").append(this.edgeSize());
+        result.append("\n");
+        for (int i=0; i<this._n; i++) {
+            result.append("Node: ").append(this.keyAt(i));
+            result.append(" | Ni Count: ").append(this.degreeAt(i)).append(" | NiKey->Weight: ");
+            for (long p=this.offset(i); p<this.offset(i+1); p++) {
+                result.append(this.keyAt(this.target(p))).append("->");
+                result.append(this.weight(p)).append(" | ");
+            }
+            result.append("\n");
+        }
+        return result.toString();
+    }
+
+    /**
+     * Binary searches the row of index i for the target index j.
+     *
+     * @return long - The position of the edge in the targets/weights sections, negative if there is no such edge
+     */
+    private long find(int i, int j) {
+        long lo = this.offset(i);
+        long hi = this.offset(i+1)-1;
+        while (lo <= hi) {
+            long mid = (lo+hi) >>> 1;
+            int t = this.target(mid);
+            if (t < j) lo = mid+1;
+            else if (t > j) hi = mid-1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    private long offset(int i) {
+        return this.getLong(this._offsets+8L*i);
+    }
+
+    private int target(long p) {
+        return this.getInt(this._targets+4L*p);
+    }
+
+    private double weight(long p) {
+        return this.getDouble(this._weights+8L*p);
+    }
+
+    private int getInt(long pos) {
+        return this._segments[(int) (pos >>> this._shift)].getInt((int) (pos & this._mask));
+    }
+
+    private long getLong(long pos) {
+        return this._segments[(int) (pos >>> this._shift)].getLong((int) (pos & this._mask));
+    }
+
+    private double getDouble(long pos) {
+        return this._segments[(int) (pos >>> this._shift)].getDouble((int) (pos & this._mask));
+    }
+
+    /**
+     * Rounds a file position up to a multiple of 8.
+     */
+    private static long align(long pos) {
+        return (pos+7) & ~7L;
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("WGraph_Mapped is a read only graph");
+    }
+
+    /**
+     * This internal class collects the neighbors of a single node, packing the neighbor's position in key order
+     * in the high bits and the buffer position in the low bits so a plain long sort orders them.
+     */
+    private static class Row implements edge_visitor {
+        private final int[] _rank;
+        private long[] _order = new long[16];
+        private double[] _w = new double[16];
+        private int _size;
+
+        private Row(int[] rank) {
+            this._rank = rank;
+        }
+
+        @Override
+        public void visit(int ni, double w) {
+            if (this._size == this._order.length) {
+                this._order = Arrays.copyOf(this._order, this._size*2);
+                this._w = Arrays.copyOf(this._w, this._size*2);
+            }
+            this._order[this._size] = ((long) this._rank[ni] << 32) | this._size;
+            this._w[this._size] = w;
+            this._size++;
+        }
+
+        private void clear() {
+            this._size = 0;
+        }
+
+        private void sort() {
+            Arrays.sort(this._order, 0, this._size);
+        }
+    }
+
+    /**
+     * This internal class buffers the bytes of a single section of the file and writes them at the section's position.
+     */
+    private static class Section {
+        private final FileChannel _ch;
+        private final ByteBuffer _buf = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private long _pos;
+
+        private Section(FileChannel ch, long pos) {
+            this._ch = ch;
+            this._pos = pos;
+        }
+
+        /**
+         * Flushes the buffer if it has less than the received number of free bytes.
+         */
+        private void ensure(int bytes) throws IOException {
+            if (this._buf.remaining() < bytes) this.flush();
+        }
+
+        /**
+         * Writes zero bytes up to the received file position.
+         */
+        private void pad(long pos) throws IOException {
+            while (this._pos+this._buf.position() < pos) {
+                this.ensure(1);
+                this._buf.put((byte) 0);
+            }
+        }
+
+        private void flush() throws IOException {
+            this._buf.flip();
+            while (this._buf.hasRemaining()) {
+                this._pos += this._ch.write(this._buf, this._pos);
+            }
+            this._buf.clear();
+        }
+    }
+}
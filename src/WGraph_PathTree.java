@@ -0,0 +1,483 @@
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class holds a single source shortest path tree: the distance from the source to every node and the parent
+ * of every node on its shortest path, in primitive arrays indexed by the node index of the graph.
+ * The tree is computed in one of two ways:
+ * 1 - Sequentially by Dijkstra's algorithm over a pooled SearchState, run until the queue is empty
+ * 2 - In parallel by Delta-stepping on a ForkJoinPool: the tentative distances are split into buckets of width delta,
+ *     the nodes of the smallest bucket relax their light edges (weight at most delta) in parallel, again and again
+ *     until the bucket stays empty, and then relax their heavy edges once. Distances are lowered with a
+ *     compareAndSet on their bits (the bits of non negative doubles order like the doubles), so no locks are taken
+ * The parallel version writes no parents while it runs: every node remembers the phase its final distance was set in,
+ * and a last parallel pass picks as parent a neighbor whose distance plus the edge weight is exactly the node's
+ * distance and whose phase is earlier, so the parents form a tree even with zero weight edges.
+ * compute() uses the parallel version for graphs of at least PARALLEL_NODES nodes on a pool with more than one worker.
+ * The result is a snapshot, it keeps the mode count of the graph it was computed on (see isValidFor()).
+ *
+ * @author shmuel.lavian
+ */
+public class WGraph_PathTree {
+    /** The smallest graph for which compute() runs the parallel version */
+    static final int PARALLEL_NODES = 1 << 15;
+    /** The number of nodes relaxed by a single task */
+    static final int GRAIN = 1 << 10;
+    private static final long INFINITY_BITS = Double.doubleToRawLongBits(Double.POSITIVE_INFINITY);
+    private final indexed_graph _g;
+    private final int _src;
+    private final double[] _dist;
+    private final int[] _parent;
+    private final int _mc;
+    private final int _nodes;
+
+    /**
+     * Creates a result over already computed arrays, used by the compute methods.
+     */
+    private WGraph_PathTree(indexed_graph g, int src, double[] dist, int[] parent, int mc, int nodes) {
+        this._g = g;
+        this._src = src;
+        this._dist = dist;
+        this._parent = parent;
+        this._mc = mc;
+        this._nodes = nodes;
+    }
+
+    /**
+     * Computes the shortest path tree of the received source using the common ForkJoinPool.
+     * Graphs that do not implement indexed_graph are compiled into a WGraph_CSR snapshot first.
+     * The graph must not be changed while the tree is computed.
+     *
+     * @param graph - The graph to search
+     * @param src - The source node key
+     * @return WGraph_PathTree - The tree, null if the source is not in the graph
+     */
+    public static WGraph_PathTree compute(weighted_graph graph, int src) {
+        return compute(graph, src, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes the shortest path tree of the received source, in parallel on the received pool when the graph has
+     * at least PARALLEL_NODES nodes and the pool more than one worker, and sequentially otherwise.
+     *
+     * @param graph - The graph to search
+     * @param src - The source node key
+     * @param pool - The pool running the parallel version
+     * @return WGraph_PathTree - The tree, null if the source is not in the graph
+     */
+    public static WGraph_PathTree compute(weighted_graph graph, int src, ForkJoinPool pool) {
+        indexed_graph g = graph instanceof indexed_graph ? (indexed_graph) graph : WGraph_CSR.freeze(graph);
+        if (g.indexOf(src) == -1) return null;
+        if (pool.getParallelism() > 1 && g.nodeSize() >= PARALLEL_NODES) {
+            return deltaStepping(graph, g, g.indexOf(src), delta(g), pool);
+        }
+        return dijkstra(graph, g, g.indexOf(src));
+    }
+
+    /**
+     * Computes the shortest path tree of the received source sequentially with Dijkstra's algorithm.
+     *
+     * @param graph - The graph to search
+     * @param src - The source node key
+     * @return WGraph_PathTree - The tree, null if the source is not in the graph
+     */
+    public static WGraph_PathTree sequential(weighted_graph graph, int src) {
+        indexed_graph g = graph instanceof indexed_graph ? (indexed_graph) graph : WGraph_CSR.freeze(graph);
+        if (g.indexOf(src) == -1) return null;
+        return dijkstra(graph, g, g.indexOf(src));
+    }
+
+    /**
+     * Computes the shortest path tree of the received source with Delta-stepping on the received pool,
+     * whatever the size of the graph.
+     *
+     * @param graph - The graph to search
+     * @param src - The source node key
+     * @param delta - The bucket width, a non positive value picks one from a sample of the edges
+     * @param pool - The pool relaxing the edges
+     * @return WGraph_PathTree - The tree, null if the source is not in the graph
+     */
+    public static WGraph_PathTree parallel(weighted_graph graph, int src, double delta, ForkJoinPool pool) {
+        indexed_graph g = graph instanceof indexed_graph ? (indexed_graph) graph : WGraph_CSR.freeze(graph);
+        if (g.indexOf(src) == -1) return null;
+        return deltaStepping(graph, g, g.indexOf(src), delta > 0 ? delta : delta(g), pool);
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from the source until every reachable node is settled.
+     */
+    private static WGraph_PathTree dijkstra(weighted_graph graph, indexed_graph g, int s) {
+        int bound = g.indexBound();
+        double[] dist = new double[bound];
+        int[] parent = new int[bound];
+        SearchState st = SearchState.acquire(bound);
+        try {
+            st.start(s);
+            int u;
+            while ((u = st.poll()) != -1) {
+                st.relax(g, u);
+            }
+            for (int i=0; i<bound; i++) {
+                boolean reached = st.reached(i);
+                dist[i] = reached ? st.dist(i) : Double.POSITIVE_INFINITY;
+                parent[i] = reached ? st.parent(i) : -1;
+            }
+        } finally {
+            SearchState.release(st);
+        }
+        return new WGraph_PathTree(g, s, dist, parent, graph.getMC(), graph.nodeSize());
+    }
+
+    /**
+     * Picks the bucket width for Delta-stepping: the largest weight among the edges of up to 1024 nodes spread over
+     * the index range divided by their average degree, the width Meyer and Sanders suggest for random weights.
+     *
+     * @param g - The graph
+     * @return double - The bucket width, positive
+     */
+    static double delta(indexed_graph g) {
+        int bound = g.indexBound();
+        int step = Math.max(1, bound/1024);
+        double[] max = new double[1];
+        long[] edges = new long[1];
+        int nodes = 0;
+        for (int i=0; i<bound; i+=step) {
+            if (!g.hasIndex(i)) continue;
+            nodes++;
+            g.forEachNeighborIndex(i, (ni, w) -> {
+                edges[0]++;
+                if (w > max[0]) max[0] = w;
+            });
+        }
+        if (edges[0] == 0 || max[0] == 0) return 1;
+        return max[0]*nodes/edges[0];
+    }
+
+    /**
+     * Runs Delta-stepping from the source, see the class comment.
+     */
+    private static WGraph_PathTree deltaStepping(weighted_graph graph, indexed_graph g, int s, double delta,
+                                                 ForkJoinPool pool) {
+        int bound = g.indexBound();
+        AtomicLongArray bits = new AtomicLongArray(bound);
+        for (int i=0; i<bound; i++) {
+            bits.set(i, INFINITY_BITS);
+        }
+        int[] phase_of = new int[bound];
+        int[] queued = new int[bound];
+        int[] settled = new int[bound];
+        bits.set(s, Double.doubleToRawLongBits(0));
+        TreeMap<Long,Nodes> buckets = new TreeMap<>();
+        Nodes start = new Nodes();
+        start.add(s);
+        buckets.put(0L, start);
+        int phase = 0;
+        int bucket_run = 0;
+        Nodes requests = new Nodes();
+        Nodes bucket_nodes = new Nodes();
+        double[] from_dist = new double[16];
+        while (!buckets.isEmpty()) {
+            long b = buckets.firstKey();
+            bucket_run++;
+            bucket_nodes.clear();
+            Nodes pending;
+            while ((pending = buckets.remove(b)) != null) {
+                phase++;
+                requests.clear();
+                for (int k=0; k<pending._size; k++) {
+                    int v = pending._items[k];
+                    double d = Double.longBitsToDouble(bits.get(v));
+                    if (queued[v] == phase || bucketOf(d, delta) != b) continue;
+                    queued[v] = phase;
+                    requests.add(v);
+                    if (settled[v] != bucket_run) {
+                        settled[v] = bucket_run;
+                        bucket_nodes.add(v);
+                    }
+                }
+                from_dist = snapshot(requests, bits, from_dist);
+                Relax light = new Relax(g, bits, phase_of, phase, requests, from_dist, delta, true,
+                        0, requests._size);
+                relax(pool, light, buckets, bits, delta);
+            }
+            phase++;
+            from_dist = snapshot(bucket_nodes, bits, from_dist);
+            Relax heavy = new Relax(g, bits, phase_of, phase, bucket_nodes, from_dist, delta, false,
+                    0, bucket_nodes._size);
+            relax(pool, heavy, buckets, bits, delta);
+        }
+        double[] dist = new double[bound];
+        for (int i=0; i<bound; i++) {
+            dist[i] = Double.longBitsToDouble(bits.get(i));
+        }
+        int[] parent = new int[bound];
+        pool.invoke(new Parents(g, dist, phase_of, parent, s, 0, bound));
+        return new WGraph_PathTree(g, s, dist, parent, graph.getMC(), graph.nodeSize());
+    }
+
+    /**
+     * Returns the bucket of a distance.
+     */
+    private static long bucketOf(double d, double delta) {
+        return (long) (d/delta);
+    }
+
+    /**
+     * Copies the current distances of the received nodes, the distances the nodes relax their edges with.
+     */
+    private static double[] snapshot(Nodes nodes, AtomicLongArray bits, double[] into) {
+        if (into.length < nodes._size) into = new double[Math.max(nodes._size, into.length*2)];
+        for (int k=0; k<nodes._size; k++) {
+            into[k] = Double.longBitsToDouble(bits.get(nodes._items[k]));
+        }
+        return into;
+    }
+
+    /**
+     * Runs a relaxation task, on the pool only when it has more than GRAIN request nodes,
+     * and adds every node it improved to the bucket of its new distance.
+     */
+    private static void relax(ForkJoinPool pool, Relax task, TreeMap<Long,Nodes> buckets, AtomicLongArray bits,
+                              double delta) {
+        Nodes improved = task._to > GRAIN ? pool.invoke(task) : task.compute();
+        for (int k=0; k<improved._size; k++) {
+            int v = improved._items[k];
+            long b = bucketOf(Double.longBitsToDouble(bits.get(v)), delta);
+            buckets.computeIfAbsent(b, key -> new Nodes()).add(v);
+        }
+    }
+
+    /**
+     * This internal task relaxes either the light or the heavy edges of a range of request nodes, splitting the range
+     * in two until it is at most GRAIN nodes long, and returns the nodes whose distance it lowered.
+     */
+    private static final class Relax extends RecursiveTask<Nodes> implements edge_visitor {
+        private static final long serialVersionUID = 1L;
+        private final indexed_graph _g;
+        private final AtomicLongArray _bits;
+        private final int[] _phase_of;
+        private final int _phase;
+        private final Nodes _requests;
+        private final double[] _from_dist;
+        private final double _delta;
+        private final boolean _light;
+        private final int _from;
+        private final int _to;
+        private Nodes _improved;
+        private double _cur_dist;
+
+        private Relax(indexed_graph g, AtomicLongArray bits, int[] phase_of, int phase, Nodes requests,
+                      double[] from_dist, double delta, boolean light, int from, int to) {
+            this._g = g;
+            this._bits = bits;
+            this._phase_of = phase_of;
+            this._phase = phase;
+            this._requests = requests;
+            this._from_dist = from_dist;
+            this._delta = delta;
+            this._light = light;
+            this._from = from;
+            this._to = to;
+        }
+
+        @Override
+        protected Nodes compute() {
+            if (this._to-this._from > GRAIN) {
+                int mid = (this._from+this._to) >>> 1;
+                Relax left = new Relax(this._g, this._bits, this._phase_of, this._phase, this._requests,
+                        this._from_dist, this._delta, this._light, this._from, mid);
+                Relax right = new Relax(this._g, this._bits, this._phase_of, this._phase, this._requests,
+                        this._from_dist, this._delta, this._light, mid, this._to);
+                left.fork();
+                Nodes result = right.compute();
+                result.addAll(left.join());
+                return result;
+            }
+            this._improved = new Nodes();
+            for (int k=this._from; k<this._to; k++) {
+                this._cur_dist = this._from_dist[k];
+                this._g.forEachNeighborIndex(this._requests._items[k], this);
+            }
+            return this._improved;
+        }
+
+        @Override
+        public void visit(int ni, double w) {
+            if ((w <= this._delta) != this._light) return;
+            long nd = Double.doubleToRawLongBits(this._cur_dist+w);
+            long cur;
+            while (nd < (cur = this._bits.get(ni))) {
+                if (this._bits.compareAndSet(ni, cur, nd)) {
+                    this._phase_of[ni] = this._phase;
+                    this._improved.add(ni);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * This internal task picks the parent of every reached node of a range of node indexes,
+     * splitting the range in two until it is at most GRAIN * 4 indexes long.
+     */
+    private static final class Parents extends RecursiveAction implements edge_visitor {
+        private static final long serialVersionUID = 1L;
+        private final indexed_graph _g;
+        private final double[] _dist;
+        private final int[] _phase_of;
+        private final int[] _parent;
+        private final int _src;
+        private final int _from;
+        private final int _to;
+        private int _cur;
+
+        private Parents(indexed_graph g, double[] dist, int[] phase_of, int[] parent, int src, int from, int to) {
+            this._g = g;
+            this._dist = dist;
+            this._phase_of = phase_of;
+            this._parent = parent;
+            this._src = src;
+            this._from = from;
+            this._to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this._to-this._from > GRAIN*4) {
+                int mid = (this._from+this._to) >>> 1;
+                invokeAll(new Parents(this._g, this._dist, this._phase_of, this._parent, this._src, this._from, mid),
+                        new Parents(this._g, this._dist, this._phase_of, this._parent, this._src, mid, this._to));
+                return;
+            }
+            for (int i=this._from; i<this._to; i++) {
+                this._parent[i] = -1;
+                if (i == this._src || this._dist[i] == Double.POSITIVE_INFINITY || !this._g.hasIndex(i)) continue;
+                this._cur = i;
+                this._g.forEachNeighborIndex(i, this);
+            }
+        }
+
+        @Override
+        public void visit(int ni, double w) {
+            int i = this._cur;
+            if (this._parent[i] == -1 && this._phase_of[ni] < this._phase_of[i] && this._dist[ni]+w == this._dist[i]) {
+                this._parent[i] = ni;
+            }
+        }
+    }
+
+    /**
+     * This internal class is a growable list of node indexes.
+     */
+    private static final class Nodes {
+        private int[] _items = new int[16];
+        private int _size;
+
+        private void add(int v) {
+            if (this._size == this._items.length) this._items = Arrays.copyOf(this._items, this._size*2);
+            this._items[this._size++] = v;
+        }
+
+        private void addAll(Nodes other) {
+            if (this._size+other._size > this._items.length) {
+                this._items = Arrays.copyOf(this._items, Math.max(this._size+other._size, this._items.length*2));
+            }
+            System.arraycopy(other._items, 0, this._items, this._size, other._size);
+            this._size += other._size;
+        }
+
+        private void clear() {
+            this._size = 0;
+        }
+    }
+
+    /**
+     * Returns the key of the source node.
+     *
+     * @return INT - The source node ID
+     */
+    public int source() {
+        return this._g.keyAt(this._src);
+    }
+
+    /**
+     * Returns the length of the shortest path from the source to a node.
+     *
+     * @param key - The node ID
+     * @return double - The distance, -1 if the node does not exist or is not reachable
+     */
+    public double dist(int key) {
+        int i = this._g.indexOf(key);
+        if (i == -1 || this._dist[i] == Double.POSITIVE_INFINITY) return -1;
+        return this._dist[i];
+    }
+
+    /**
+     * Returns the node keys of the shortest path from the source to a node, source first.
+     *
+     * @param key - The node ID
+     * @return int[] - The path node keys, null if the node does not exist or is not reachable
+     */
+    public int[] path(int key) {
+        int i = this._g.indexOf(key);
+        if (i == -1 || this._dist[i] == Double.POSITIVE_INFINITY) return null;
+        int len = 0;
+        for (int v=i; v != -1; v=this._parent[v]) len++;
+        int[] result = new int[len];
+        for (int v=i; v != -1; v=this._parent[v]) result[--len] = this._g.keyAt(v);
+        return result;
+    }
+
+    /**
+     * Returns the distances from the source indexed by the node index of graph(),
+     * infinity for unreachable nodes and unused indexes.
+     *
+     * @return double[] - The distance array, not a copy
+     */
+    public double[] distances() {
+        return this._dist;
+    }
+
+    /**
+     * Returns the parents indexed by the node index of graph(),
+     * -1 for the source, unreachable nodes and unused indexes.
+     *
+     * @return int[] - The parent node index array, not a copy
+     */
+    public int[] parents() {
+        return this._parent;
+    }
+
+    /**
+     * Returns the graph whose node indexes the arrays use, a WGraph_CSR snapshot for graphs that are not indexed.
+     *
+     * @return indexed_graph - The searched graph
+     */
+    public indexed_graph graph() {
+        return this._g;
+    }
+
+    /**
+     * Returns the mode count of the graph at the time the tree was computed.
+     *
+     * @return INT - The graph's mode count
+     */
+    public int getMC() {
+        return this._mc;
+    }
+
+    /**
+     * Checks if the tree still describes the received graph, any change to the graph after
+     * it was computed (a different mode count) invalidates it.
+     *
+     * @param g - The graph to check against
+     * @return True if the tree is up to date for g
+     */
+    public boolean isValidFor(weighted_graph g) {
+        return g != null && g.getMC() == this._mc && g.nodeSize() == this._nodes;
+    }
+}
@@ -0,0 +1,886 @@
+import java.util.*;
+
+/**
+ * This class implements a weighted graph with multi version concurrency control: a single writer thread changes
+ * the graph through the weighted_graph interface, while any number of reader threads query immutable snapshots
+ * of it without ever blocking on the writer or on each other.
+ * The graph is stored in persistent, copy on write structures:
+ * 1 - Every node is a Row holding its key, tag, info and its neighbor indexes and weights in primitive arrays
+ * 2 - The rows live in fixed size chunks of CHUNK rows, reached by node index through a table of chunks
+ * 3 - The node key -> node index lookup is split by key hash into small IntIntHashMap buckets
+ * publish() freezes the current state into a Snapshot by sharing these structures and starting a new generation.
+ * Every object is stamped with the generation it was created in, the writer changes the objects of the current
+ * generation in place and copies any older object (shared with some snapshot) before its first change, so a change
+ * costs one row copy (O(degree)) and one chunk or bucket copy per chunk or bucket first touched in a generation.
+ * A snapshot is never changed after it is published, readers get the latest one with snapshot() in O(1), and an
+ * old snapshot, along with every row and chunk only it still shares, is reclaimed by the garbage collector once no
+ * reader references it. The writer's own weighted_graph methods always see the current state, they must not be
+ * called by other threads.
+ * The semantics of the changes follow WGraph_Compact: self loops and negative weights are ignored, removing
+ * a missing edge changes nothing and removed node indexes are reused.
+ *
+ * @author shmuel.lavian
+ */
+public class WGraph_Versioned implements indexed_graph {
+    /** The log2 of the number of rows in a single chunk */
+    static final int CHUNK_BITS = 10;
+    private static final int CHUNK = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK-1;
+    /** The average number of keys per bucket above which the number of buckets is doubled */
+    static final int BUCKET_KEYS = 256;
+    private Row[][] _rows;
+    private int[] _chunk_gen;
+    private int _rows_gen;
+    private IntIntHashMap[] _buckets;
+    private int[] _bucket_gen;
+    private int _buckets_gen;
+    private int _bucket_shift;
+    private int _bound;
+    private int[] _free;
+    private int _free_size;
+    private int _n_size;
+    private int _e_size;
+    private int _mc;
+    private int _gen;
+    private boolean _dirty;
+    private volatile Snapshot _published;
+
+    /**
+     * A single node: its key, tag, info and adjacency. A row belongs to the generation it was created in,
+     * only rows of the writer's current generation are ever changed.
+     */
+    private static final class Row {
+        private final int _key;
+        private final int _gen;
+        private int[] _ni;
+        private double[] _w;
+        private int _deg;
+        private double _tag;
+        private String _info;
+
+        private Row(int key, int gen) {
+            this._key = key;
+            this._gen = gen;
+            this._tag = -1;
+        }
+
+        /**
+         * Returns a copy of this row for the received generation, with room for one more neighbor.
+         */
+        private Row copy(int gen) {
+            Row r = new Row(this._key, gen);
+            if (this._ni != null) {
+                r._ni = Arrays.copyOf(this._ni, Math.max(4, this._deg+1));
+                r._w = Arrays.copyOf(this._w, r._ni.length);
+            }
+            r._deg = this._deg;
+            r._tag = this._tag;
+            r._info = this._info;
+            return r;
+        }
+
+        /**
+         * Returns the position of the neighbor index in the adjacency arrays, -1 if there is no such edge.
+         */
+        private int find(int n) {
+            for (int i=0; i<this._deg; i++) {
+                if (this._ni[i] == n) return i;
+            }
+            return -1;
+        }
+
+        private void append(int n, double w) {
+            if (this._ni == null) {
+                this._ni = new int[4];
+                this._w = new double[4];
+            }
+            else if (this._deg == this._ni.length) {
+                this._ni = Arrays.copyOf(this._ni, this._deg*2);
+                this._w = Arrays.copyOf(this._w, this._deg*2);
+            }
+            this._ni[this._deg] = n;
+            this._w[this._deg++] = w;
+        }
+
+        /**
+         * Removes the neighbor index by moving the last neighbor into its position.
+         */
+        private void detach(int n) {
+            int i = this.find(n);
+            if (i == -1) return;
+            this._deg--;
+            this._ni[i] = this._ni[this._deg];
+            this._w[i] = this._w[this._deg];
+        }
+    }
+
+    /**
+     * Creates a new empty graph and publishes its first, empty, snapshot.
+     */
+    public WGraph_Versioned() {
+        this._rows = new Row[4][];
+        this._chunk_gen = new int[4];
+        this._buckets = new IntIntHashMap[16];
+        this._bucket_gen = new int[16];
+        this._bucket_shift = 32-4;
+        this._free = new int[4];
+        this._gen = 1;
+        this._rows_gen = 1;
+        this._buckets_gen = 1;
+        for (int b=0; b<this._buckets.length; b++) {
+            this._buckets[b] = new IntIntHashMap();
+            this._bucket_gen[b] = 1;
+        }
+        this.publish();
+    }
+
+    /**
+     * Freezes the current state of the graph into a new immutable Snapshot and makes it the one returned by
+     * snapshot(). Called by the writer thread, as often as the readers should see its changes.
+     * Runs in O(1) time, if nothing changed since the last call the same snapshot is returned.
+     *
+     * @return Snapshot - The published snapshot
+     */
+    public Snapshot publish() {
+        Snapshot s = this._published;
+        if (s == null || this._dirty) {
+            s = new Snapshot(this._rows, this._buckets, this._bucket_shift, this._bound, this._n_size, this._e_size,
+                    this._mc);
+            this._gen++;
+            this._dirty = false;
+            this._published = s;
+        }
+        return s;
+    }
+
+    /**
+     * Returns the latest published snapshot of the graph, safe to call from any thread. Never blocks.
+     *
+     * @return Snapshot - The snapshot, its getMC() is the mode count of the graph when it was published
+     */
+    public Snapshot snapshot() {
+        return this._published;
+    }
+
+    @Override
+    public node_info getNode(int key) {
+        int i = this.indexOf(key);
+        return i == -1 ? null : new NodeView(this, null, i, key);
+    }
+
+    /**
+     * Checks if the is an edge between two nodes. Each node by definition is connected to itself.
+     * Runs in O(k) time, k being the degree of node1.
+     *
+     * @param node1 - first node id to check
+     * @param node2 - second node id to check
+     * @return True if and only if there is and edge. False in any other case
+     */
+    @Override
+    public boolean hasEdge(int node1, int node2) {
+        return hasEdge(this._rows, this._buckets, this._bucket_shift, node1, node2);
+    }
+
+    /**
+     * Returns the weight value between two nodes.
+     * Runs in O(k) time, k being the degree of node1.
+     *
+     * @param node1 - First node
+     * @param node2 - Second node
+     * @return double - The value of the edge between the two node, -1 if the edge doesn't exist
+     */
+    @Override
+    public double getEdge(int node1, int node2) {
+        return getEdge(this._rows, this._buckets, this._bucket_shift, node1, node2);
+    }
+
+    /**
+     * Adds a new node to the graph with the given key ID, reusing a free index if there is one.
+     *
+     * @param key - The key of the new node to be added to the graph, if exists conducts no action
+     */
+    @Override
+    public void addNode(int key) {
+        if (this.indexOf(key) != -1) return;
+        int i;
+        if (this._free_size > 0) i = this._free[--this._free_size];
+        else i = this._bound++;
+        this.mutableChunk(i >>> CHUNK_BITS)[i & CHUNK_MASK] = new Row(key, this._gen);
+        this.mutableBucket(bucket(key, this._bucket_shift)).put(key, i);
+        this._n_size++;
+        this._mc++;
+        this._dirty = true;
+        if (this._n_size > this._buckets.length*BUCKET_KEYS) this.splitBuckets();
+    }
+
+    /**
+     * Connects an edge between node1 and node2 with the given weight, or updates the weight of an existing edge.
+     * Self loops and negative weights are ignored and an update with the same weight is not counted as a change.
+     *
+     * @param node1 - First node
+     * @param node2 - Second node
+     * @param w - Given weight to be set between them
+     */
+    @Override
+    public void connect(int node1, int node2, double w) {
+        if (this.setEdge(node1, node2, w, true)) this._mc++;
+    }
+
+    /**
+     * Connects a batch of edges as connect() would one by one, except that the mode count grows by one
+     * for the whole batch (if anything changed).
+     *
+     * @param node1 - The first node ID of every edge
+     * @param node2 - The second node ID of every edge
+     * @param w - The weight of every edge
+     * @return INT - The number of edges added or re-weighted
+     */
+    @Override
+    public int connectAll(int[] node1, int[] node2, double[] w) {
+        return this.applyAll(node1, node2, w, true);
+    }
+
+    /**
+     * Sets the weights of a batch of existing edges, missing edges are skipped and never created.
+     * The mode count grows by one for the whole batch (if anything changed).
+     *
+     * @param node1 - The first node ID of every edge
+     * @param node2 - The second node ID of every edge
+     * @param w - The new weight of every edge
+     * @return INT - The number of edges re-weighted
+     */
+    @Override
+    public int updateWeights(int[] node1, int[] node2, double[] w) {
+        return this.applyAll(node1, node2, w, false);
+    }
+
+    /**
+     * Removes a batch of edges, missing edges are skipped.
+     * The mode count grows by one for the whole batch (if anything changed).
+     *
+     * @param node1 - The first node ID of every edge
+     * @param node2 - The second node ID of every edge
+     * @return INT - The number of edges removed
+     */
+    @Override
+    public int removeEdges(int[] node1, int[] node2) {
+        weighted_graph.checkBatch(node1, node2, node1.length);
+        int removed = 0;
+        for (int i=0; i<node1.length; i++) {
+            if (this.unlink(node1[i], node2[i])) removed++;
+        }
+        if (removed > 0) this._mc++;
+        return removed;
+    }
+
+    /**
+     * Applies a batch of weight changes with a single mode count increment.
+     *
+     * @param node1 - The first node ID of every edge
+     * @param node2 - The second node ID of every edge
+     * @param w - The weight of every edge
+     * @param add - True if missing edges should be created
+     * @return INT - The number of edges added or re-weighted
+     */
+    private int applyAll(int[] node1, int[] node2, double[] w, boolean add) {
+        weighted_graph.checkBatch(node1, node2, w.length);
+        int changed = 0;
+        for (int i=0; i<node1.length; i++) {
+            if (w[i] >= 0 && this.setEdge(node1[i], node2[i], w[i], add)) changed++;
+        }
+        if (changed > 0) this._mc++;
+        return changed;
+    }
+
+    /**
+     * Adds or re-weights an edge without counting the change in the mode count.
+     *
+     * @param node1 - First node
+     * @param node2 - Second node
+     * @param w - The edge weight
+     * @param add - True if a missing edge should be created
+     * @return True if the edge was added or its weight changed
+     */
+    private boolean setEdge(int node1, int node2, double w, boolean add) {
+        if (node1 == node2 || w < 0) return false;
+        int i = this.indexOf(node1);
+        int j = this.indexOf(node2);
+        if (i == -1 || j == -1) return false;
+        Row r = row(this._rows, i);
+        int p = r.find(j);
+        if (p == -1) {
+            if (!add) return false;
+            this.mutableRow(i).append(j, w);
+            this.mutableRow(j).append(i, w);
+            this._e_size++;
+            return true;
+        }
+        if (r._w[p] == w) return false;
+        this.mutableRow(i)._w[p] = w;
+        Row s = this.mutableRow(j);
+        s._w[s.find(i)] = w;
+        return true;
+    }
+
+    @Override
+    public Collection<node_info> getV() {
+        return nodes(this, null, this._rows, this._bound, this._n_size);
+    }
+
+    @Override
+    public Collection<node_info> getV(int node_id) {
+        return neighbors(this, null, this._rows, this.indexOf(node_id));
+    }
+
+    @Override
+    public void forEachNeighbor(int node_id, edge_visitor visitor) {
+        forEachNeighbor(this._rows, this.indexOf(node_id), visitor);
+    }
+
+    /**
+     * Delete the node (with the given ID) from the graph and removes all edges which starts or ends at this node.
+     *
+     * @param key - Node ID to be deleted
+     * @return node_info - of the deleted node with its metadata and tag, null if none exists
+     */
+    @Override
+    public node_info removeNode(int key) {
+        int i = this.indexOf(key);
+        if (i == -1) return null;
+        Row r = row(this._rows, i);
+        for (int p=0; p<r._deg; p++) {
+            this.mutableRow(r._ni[p]).detach(i);
+        }
+        this._e_size -= r._deg;
+        this._mc += r._deg+1;
+        this.mutableChunk(i >>> CHUNK_BITS)[i & CHUNK_MASK] = null;
+        this.mutableBucket(bucket(key, this._bucket_shift)).remove(key);
+        if (this._free_size == this._free.length) this._free = Arrays.copyOf(this._free, this._free_size*2);
+        this._free[this._free_size++] = i;
+        this._n_size--;
+        this._dirty = true;
+        return new WGraph_Compact.RemovedNode(key, r._info, r._tag);
+    }
+
+    /**
+     * Removes an edge between two nodes in the graph, does nothing if there is no such edge.
+     *
+     * @param node1 - First node ID
+     * @param node2 - Second node ID
+     */
+    @Override
+    public void removeEdge(int node1, int node2) {
+        if (this.unlink(node1, node2)) this._mc++;
+    }
+
+    /**
+     * Removes an edge without counting the change in the mode count.
+     *
+     * @param node1 - First node ID
+     * @param node2 - Second node ID
+     * @return True if the edge existed and was removed
+     */
+    private boolean unlink(int node1, int node2) {
+        if (node1 == node2) return false;
+        int i = this.indexOf(node1);
+        int j = this.indexOf(node2);
+        if (i == -1 || j == -1 || row(this._rows, i).find(j) == -1) return false;
+        this.mutableRow(i).detach(j);
+        this.mutableRow(j).detach(i);
+        this._e_size--;
+        return true;
+    }
+
+    @Override
+    public int nodeSize() {
+        return this._n_size;
+    }
+
+    @Override
+    public int edgeSize() {
+        return this._e_size;
+    }
+
+    @Override
+    public int getMC() {
+        return this._mc;
+    }
+
+    @Override
+    public int indexBound() {
+        return this._bound;
+    }
+
+    @Override
+    public int indexOf(int key) {
+        return this._buckets[bucket(key, this._bucket_shift)].get(key);
+    }
+
+    @Override
+    public int keyAt(int index) {
+        return row(this._rows, index)._key;
+    }
+
+    @Override
+    public boolean hasIndex(int index) {
+        return index >= 0 && index < this._bound && row(this._rows, index) != null;
+    }
+
+    @Override
+    public void forEachNeighborIndex(int index, edge_visitor visitor) {
+        forEachNeighborIndex(this._rows, index, visitor);
+    }
+
+    /**
+     * Returns a string representation of the graph in the same format as WGraph_DS.
+     *
+     * @return String - representation of the graph.
+     */
+    @Override
+    public String toString() {
+        return toString(this._rows, this._bound, this._n_size, this._e_size);
+    }
+
+    /**
+     * Returns the row of the received index for the writer to change, copying the row, its chunk and the chunk
+     * table first if they are shared with a published snapshot.
+     *
+     * @param i - The node index
+     * @return Row - The row of the current generation
+     */
+    private Row mutableRow(int i) {
+        Row[] chunk = this.mutableChunk(i >>> CHUNK_BITS);
+        Row r = chunk[i & CHUNK_MASK];
+        if (r._gen != this._gen) {
+            r = r.copy(this._gen);
+            chunk[i & CHUNK_MASK] = r;
+        }
+        this._dirty = true;
+        return r;
+    }
+
+    /**
+     * Returns the chunk of rows for the writer to change, copying it and the chunk table first if they are
+     * shared with a published snapshot, or allocating it if it does not exist yet.
+     *
+     * @param c - The chunk number
+     * @return Row[] - The chunk of the current generation
+     */
+    private Row[] mutableChunk(int c) {
+        if (this._rows_gen != this._gen || c >= this._rows.length) {
+            this._rows = Arrays.copyOf(this._rows, Math.max(this._rows.length, (c+1)*2));
+            this._rows_gen = this._gen;
+            if (this._chunk_gen.length < this._rows.length) {
+                this._chunk_gen = Arrays.copyOf(this._chunk_gen, this._rows.length);
+            }
+        }
+        if (this._rows[c] == null || this._chunk_gen[c] != this._gen) {
+            this._rows[c] = this._rows[c] == null ? new Row[CHUNK] : this._rows[c].clone();
+            this._chunk_gen[c] = this._gen;
+        }
+        return this._rows[c];
+    }
+
+    /**
+     * Returns a bucket of the key index for the writer to change, copying it and the bucket table first
+     * if they are shared with a published snapshot.
+     *
+     * @param b - The bucket number
+     * @return IntIntHashMap - The bucket of the current generation
+     */
+    private IntIntHashMap mutableBucket(int b) {
+        if (this._buckets_gen != this._gen) {
+            this._buckets = this._buckets.clone();
+            this._buckets_gen = this._gen;
+        }
+        if (this._bucket_gen[b] != this._gen) {
+            this._buckets[b] = this._buckets[b].copy();
+            this._bucket_gen[b] = this._gen;
+        }
+        return this._buckets[b];
+    }
+
+    /**
+     * Doubles the number of buckets of the key index, rebuilding all of them in the current generation.
+     * Runs in O(n) time, amortized over the additions which filled the buckets.
+     */
+    private void splitBuckets() {
+        int count = this._buckets.length*2;
+        this._bucket_shift--;
+        this._buckets = new IntIntHashMap[count];
+        this._bucket_gen = new int[count];
+        this._buckets_gen = this._gen;
+        for (int b=0; b<count; b++) {
+            this._buckets[b] = new IntIntHashMap(BUCKET_KEYS);
+            this._bucket_gen[b] = this._gen;
+        }
+        for (int i=0; i<this._bound; i++) {
+            Row r = row(this._rows, i);
+            if (r != null) this._buckets[bucket(r._key, this._bucket_shift)].put(r._key, i);
+        }
+    }
+
+    /**
+     * Returns the bucket of a key: the high bits of a multiplicative hash, so the keys of a bucket still
+     * spread over its table, which is indexed by the low bits of another hash.
+     */
+    private static int bucket(int key, int shift) {
+        return (key*0x85EBCA6B) >>> shift;
+    }
+
+    private static Row row(Row[][] rows, int i) {
+        return rows[i >>> CHUNK_BITS][i & CHUNK_MASK];
+    }
+
+    private static boolean hasEdge(Row[][] rows, IntIntHashMap[] buckets, int shift, int node1, int node2) {
+        int i = buckets[bucket(node1, shift)].get(node1);
+        if (i == -1) return false;
+        if (node1 == node2) return true;
+        int j = buckets[bucket(node2, shift)].get(node2);
+        return j != -1 && row(rows, i).find(j) != -1;
+    }
+
+    private static double getEdge(Row[][] rows, IntIntHashMap[] buckets, int shift, int node1, int node2) {
+        if (node1 == node2) return 0;
+        int i = buckets[bucket(node1, shift)].get(node1);
+        int j = buckets[bucket(node2, shift)].get(node2);
+        if (i == -1 || j == -1) return -1;
+        Row r = row(rows, i);
+        int p = r.find(j);
+        return p == -1 ? -1 : r._w[p];
+    }
+
+    private static void forEachNeighbor(Row[][] rows, int i, edge_visitor visitor) {
+        if (i == -1) return;
+        Row r = row(rows, i);
+        for (int p=0; p<r._deg; p++) {
+            visitor.visit(row(rows, r._ni[p])._key, r._w[p]);
+        }
+    }
+
+    private static void forEachNeighborIndex(Row[][] rows, int i, edge_visitor visitor) {
+        Row r = row(rows, i);
+        for (int p=0; p<r._deg; p++) {
+            visitor.visit(r._ni[p], r._w[p]);
+        }
+    }
+
+    /**
+     * Returns a collection view of the nodes of the received rows, for either the writer or a snapshot.
+     */
+    private static Collection<node_info> nodes(WGraph_Versioned writer, Snapshot snapshot, Row[][] rows, int bound,
+                                               int size) {
+        return new AbstractCollection<node_info>() {
+            @Override
+            public Iterator<node_info> iterator() {
+                return new Iterator<node_info>() {
+                    private int _next = this.skip(0);
+
+                    private int skip(int i) {
+                        while (i < bound && row(rows, i) == null) i++;
+                        return i;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return this._next < bound;
+                    }
+
+                    @Override
+                    public node_info next() {
+                        if (!this.hasNext()) throw new NoSuchElementException();
+                        node_info result = new NodeView(writer, snapshot, this._next, row(rows, this._next)._key);
+                        this._next = this.skip(this._next+1);
+                        return result;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private static Collection<node_info> neighbors(WGraph_Versioned writer, Snapshot snapshot, Row[][] rows, int i) {
+        if (i == -1) return new ArrayList<>();
+        Row r = row(rows, i);
+        ArrayList<node_info> result = new ArrayList<>(r._deg);
+        for (int p=0; p<r._deg; p++) {
+            result.add(new NodeView(writer, snapshot, r._ni[p], row(rows, r._ni[p])._key));
+        }
+        return result;
+    }
+
+    private static String toString(Row[][] rows, int bound, int nodes, int edges) {
+        StringBuilder result = new StringBuilder();
+        result.append("Total Nodes: ").append(nodes).append(" ||  Total edges: ").append(edges);
+        result.append("\n");
+        for (int i=0; i<bound; i++) {
+            Row r = row(rows, i);
+            if (r == null) continue;
+            long[] order = new long[r._deg];
+            for (int p=0; p<r._deg; p++) {
+                order[p] = ((long) row(rows, r._ni[p])._key << 32) | p;
+            }
+            Arrays.sort(order);
+            result.append("Node: ").append(r._key);
+            result.append(" | Ni Count: ").append(r._deg).append(" | NiKey->Weight: ");
+            for (long o : order) {
+                result.append((int) (o >> 32)).append("->");
+                result.append(r._w[(int) o]).append(" | ");
+            }
+            result.append("\n");
+        }
+        return result.toString();
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("WGraph_Versioned.Snapshot is a read only graph");
+    }
+
+    /**
+     * This internal class implements the node_info interface as a view over a single index, either of the writer,
+     * which resolves the row on every access and copies it before a change, or of a read only snapshot.
+     */
+    private static final class NodeView implements node_info {
+        private final WGraph_Versioned _writer;
+        private final Snapshot _snapshot;
+        private final int _index;
+        private final int _key;
+
+        private NodeView(WGraph_Versioned writer, Snapshot snapshot, int index, int key) {
+            this._writer = writer;
+            this._snapshot = snapshot;
+            this._index = index;
+            this._key = key;
+        }
+
+        /**
+         * Returns the current row of the node, null if the node was removed.
+         */
+        private Row row() {
+            Row r = null;
+            if (this._snapshot != null) r = this._snapshot.row(this._index);
+            else if (this._writer.hasIndex(this._index)) r = WGraph_Versioned.row(this._writer._rows, this._index);
+            return r != null && r._key == this._key ? r : null;
+        }
+
+        @Override
+        public int getKey() {
+            return this._key;
+        }
+
+        @Override
+        public String getInfo() {
+            Row r = this.row();
+            return r == null ? null : r._info;
+        }
+
+        /**
+         * Allows changing the meta data of a node of the writer, not supported by snapshots.
+         *
+         * @param s - The new nodes String meta data
+         */
+        @Override
+        public void setInfo(String s) {
+            if (this._snapshot != null) throw readOnly();
+            if (this.row() != null) this._writer.mutableRow(this._index)._info = s;
+        }
+
+        @Override
+        public double getTag() {
+            Row r = this.row();
+            return r == null ? -1 : r._tag;
+        }
+
+        /**
+         * Sets the tag of a node of the writer, not supported by snapshots.
+         *
+         * @param t - the new value of the nodes tag
+         */
+        @Override
+        public void setTag(double t) {
+            if (this._snapshot != null) throw readOnly();
+            if (this.row() != null) this._writer.mutableRow(this._index)._tag = t;
+        }
+
+        /**
+         * Returns a string representation of the node in the same format as WGraph_DS nodes.
+         *
+         * @return a string representation the node.
+         */
+        @Override
+        public String toString() {
+            return "Node Key: " + this._key + "\n" +
+                    "Node Tag: " + this.getTag() + "\n" +
+                    "Node MetaData: " + this.getInfo() + "\n";
+        }
+
+        /**
+         * Two views are equal if they point to the same node of the same graph or snapshot.
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof NodeView)) return false;
+            NodeView n = (NodeView) obj;
+            return n._key == this._key && n._index == this._index && n._writer == this._writer
+                    && n._snapshot == this._snapshot;
+        }
+
+        @Override
+        public int hashCode() {
+            return this._key;
+        }
+    }
+
+    /**
+     * An immutable version of a WGraph_Versioned, created by publish(). It shares the rows, chunks and buckets of
+     * the graph at the time it was published, which the writer never changes again, so it is safe to query
+     * from any number of threads with no locking and any algorithm of WGraph_Algo runs on it.
+     * Every change throws UnsupportedOperationException and getMC() is the mode count of the published version.
+     */
+    public static final class Snapshot implements indexed_graph {
+        private final Row[][] _rows;
+        private final IntIntHashMap[] _buckets;
+        private final int _bucket_shift;
+        private final int _bound;
+        private final int _n_size;
+        private final int _e_size;
+        private final int _mc;
+
+        private Snapshot(Row[][] rows, IntIntHashMap[] buckets, int bucket_shift, int bound, int n_size, int e_size,
+                         int mc) {
+            this._rows = rows;
+            this._buckets = buckets;
+            this._bucket_shift = bucket_shift;
+            this._bound = bound;
+            this._n_size = n_size;
+            this._e_size = e_size;
+            this._mc = mc;
+        }
+
+        private Row row(int index) {
+            return index >= 0 && index < this._bound ? WGraph_Versioned.row(this._rows, index) : null;
+        }
+
+        @Override
+        public node_info getNode(int key) {
+            int i = this.indexOf(key);
+            return i == -1 ? null : new NodeView(null, this, i, key);
+        }
+
+        @Override
+        public boolean hasEdge(int node1, int node2) {
+            return WGraph_Versioned.hasEdge(this._rows, this._buckets, this._bucket_shift, node1, node2);
+        }
+
+        @Override
+        public double getEdge(int node1, int node2) {
+            return WGraph_Versioned.getEdge(this._rows, this._buckets, this._bucket_shift, node1, node2);
+        }
+
+        /**
+         * Not supported, a snapshot is read only.
+         */
+        @Override
+        public void addNode(int key) {
+            throw readOnly();
+        }
+
+        /**
+         * Not supported, a snapshot is read only.
+         */
+        @Override
+        public void connect(int node1, int node2, double w) {
+            throw readOnly();
+        }
+
+        @Override
+        public Collection<node_info> getV() {
+            return nodes(null, this, this._rows, this._bound, this._n_size);
+        }
+
+        @Override
+        public Collection<node_info> getV(int node_id) {
+            return neighbors(null, this, this._rows, this.indexOf(node_id));
+        }
+
+        @Override
+        public void forEachNeighbor(int node_id, edge_visitor visitor) {
+            WGraph_Versioned.forEachNeighbor(this._rows, this.indexOf(node_id), visitor);
+        }
+
+        /**
+         * Not supported, a snapshot is read only.
+         */
+        @Override
+        public node_info removeNode(int key) {
+            throw readOnly();
+        }
+
+        /**
+         * Not supported, a snapshot is read only.
+         */
+        @Override
+        public void removeEdge(int node1, int node2) {
+            throw readOnly();
+        }
+
+        @Override
+        public int nodeSize() {
+            return this._n_size;
+        }
+
+        @Override
+        public int edgeSize() {
+            return this._e_size;
+        }
+
+        /**
+         * Returns the mode count of the graph when this snapshot was published, a snapshot never changes.
+         *
+         * @return INT - The version of this snapshot
+         */
+        @Override
+        public int getMC() {
+            return this._mc;
+        }
+
+        @Override
+        public int indexBound() {
+            return this._bound;
+        }
+
+        @Override
+        public int indexOf(int key) {
+            return this._buckets[bucket(key, this._bucket_shift)].get(key);
+        }
+
+        @Override
+        public int keyAt(int index) {
+            return WGraph_Versioned.row(this._rows, index)._key;
+        }
+
+        @Override
+        public boolean hasIndex(int index) {
+            return this.row(index) != null;
+        }
+
+        @Override
+        public void forEachNeighborIndex(int index, edge_visitor visitor) {
+            WGraph_Versioned.forEachNeighborIndex(this._rows, index, visitor);
+        }
+
+        /**
+         * Returns a string representation of the snapshot in the same format as WGraph_DS.
+         *
+         * @return String - representation of the graph.
+         */
+        @Override
+        public String toString() {
+            return WGraph_Versioned.toString(this._rows, this._bound, this._n_size, this._e_size);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * This interface represents a heuristic for goal directed shortest path search (A*):
+ * an estimate of the remaining distance from a node to the target of the query.
+ * In order for the search to return the exact shortest path the estimate must never be larger than the
+ * real shortest distance (admissible) and must not drop by more than the weight of an edge between
+ * two neighbors (consistent). A heuristic that always returns 0 turns A* into Dijkstra's algorithm.
+ *
+ * @author shmuel.lavian
+ */
+@FunctionalInterface
+public interface distance_heuristic {
+    /**
+     * Returns a lower bound of the shortest path distance between two nodes.
+     * @param node - the key of the node being estimated
+     * @param target - the key of the query's target node
+     * @return the estimated remaining distance, 0 if nothing is known
+     */
+    public double estimate(int node, int target);
+}
@@ -0,0 +1,17 @@
+/**
+ * This interface represents a callback that receives the edges of a single node one by one,
+ * the neighbor key and the weight of the edge to it together.
+ * It is used by weighted_graph.forEachNeighbor() in order to iterate over a nodes neighbors
+ * without allocating a Collection and without a second lookup for each edge weight.
+ *
+ * @author shmuel.lavian
+ */
+@FunctionalInterface
+public interface edge_visitor {
+    /**
+     * Receives a single edge of the iterated node.
+     * @param ni_key - the key of the neighbor node
+     * @param w - the weight of the edge to the neighbor
+     */
+    public void visit(int ni_key, double w);
+}
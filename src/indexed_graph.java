@@ -0,0 +1,46 @@
+/**
+ * This interface represents a weighted_graph whose nodes are also addressed by a dense internal index.
+ * Each node in the graph occupies a single index in the range [0, indexBound()) for as long as it
+ * is in the graph, so algorithms can keep their per node state in primitive arrays
+ * instead of Maps and Sets keyed by node_info objects.
+ * Note: an index that belonged to a removed node may later be reused by a new node.
+ *
+ * @author shmuel.lavian
+ */
+public interface indexed_graph extends weighted_graph {
+    /**
+     * return an upper bound (exclusive) of all the node indexes in the graph,
+     * arrays of this size can hold a value for every node.
+     * Note: this method should run in O(1) time.
+     * @return
+     */
+    public int indexBound();
+    /**
+     * return the index of the node with the given key.
+     * Note: this method should run in O(1) time.
+     * @param key - the node_id
+     * @return the node index, -1 if there is no such node.
+     */
+    public int indexOf(int key);
+    /**
+     * return the key of the node at the given index.
+     * Note: this method should run in O(1) time.
+     * @param index - a node index, as returned by indexOf()
+     * @return the node key, undefined if no node occupies the index.
+     */
+    public int keyAt(int index);
+    /**
+     * return true iff a node currently occupies the given index.
+     * @param index
+     * @return
+     */
+    public boolean hasIndex(int index);
+    /**
+     * Passes the index of each neighbor of the node at the given index together with the
+     * weight of the edge to it to the visitor (the visitor receives indexes, not keys).
+     * Note: this method should run in O(k) time, k - being the degree of the node.
+     * @param index
+     * @param visitor
+     */
+    public void forEachNeighborIndex(int index, edge_visitor visitor);
+}
@@ -59,6 +59,21 @@ public interface weighted_graph {
      * @return Collection<node_data>
      */
     public Collection<node_info> getV(int node_id);
+    /**
+     * Passes each neighbor of node_id together with the weight of the edge to it
+     * to the given visitor. Unlike getV(node_id) no Collection is created.
+     * Does nothing if node_id is not in the graph.
+     * Note: this method should run in O(k) time, k - being the degree of node_id.
+     * The default implementation is based on getV(node_id) and getEdge(), implementations
+     * should override it with a direct walk over their adjacency structure.
+     * @param node_id
+     * @param visitor
+     */
+    public default void forEachNeighbor(int node_id, edge_visitor visitor) {
+        for (node_info n : this.getV(node_id)) {
+            visitor.visit(n.getKey(), this.getEdge(node_id, n.getKey()));
+        }
+    }
     /**
      * Delete the node (with the given ID) from the graph -
      * and removes all edges which starts or ends at this node.
@@ -74,6 +89,79 @@ public interface weighted_graph {
      * @param node2
      */
     public void removeEdge(int node1, int node2);
+    /**
+     * Connects the edges node1[i]-node2[i] with the weights w[i], as connect() would one by one.
+     * Edges whose nodes are missing, self loops and negative weights are skipped.
+     * Implementations should apply the whole batch with a single increment of the ModeCount.
+     * The default implementation calls connect() for every changed edge.
+     * @param node1 - the first node of every edge
+     * @param node2 - the second node of every edge
+     * @param w - the weight of every edge
+     * @return the number of edges added or re-weighted
+     */
+    public default int connectAll(int[] node1, int[] node2, double[] w) {
+        weighted_graph.checkBatch(node1, node2, w.length);
+        int changed = 0;
+        for (int i=0; i<node1.length; i++) {
+            if (node1[i] == node2[i] || !(w[i] >= 0)) continue;
+            if (this.getNode(node1[i]) == null || this.getNode(node2[i]) == null) continue;
+            if (this.getEdge(node1[i], node2[i]) == w[i]) continue;
+            this.connect(node1[i], node2[i], w[i]);
+            changed++;
+        }
+        return changed;
+    }
+    /**
+     * Sets the weight of every existing edge node1[i]-node2[i] to w[i], missing edges are not created.
+     * Implementations should apply the whole batch with a single increment of the ModeCount.
+     * The default implementation calls connect() for every changed edge.
+     * @param node1 - the first node of every edge
+     * @param node2 - the second node of every edge
+     * @param w - the new weight of every edge
+     * @return the number of edges re-weighted
+     */
+    public default int updateWeights(int[] node1, int[] node2, double[] w) {
+        weighted_graph.checkBatch(node1, node2, w.length);
+        int changed = 0;
+        for (int i=0; i<node1.length; i++) {
+            if (node1[i] == node2[i] || !(w[i] >= 0)) continue;
+            double old = this.getEdge(node1[i], node2[i]);
+            if (old == -1 || old == w[i]) continue;
+            this.connect(node1[i], node2[i], w[i]);
+            changed++;
+        }
+        return changed;
+    }
+    /**
+     * Deletes the edges node1[i]-node2[i], missing edges are skipped.
+     * Implementations should apply the whole batch with a single increment of the ModeCount.
+     * The default implementation calls removeEdge() for every existing edge.
+     * @param node1 - the first node of every edge
+     * @param node2 - the second node of every edge
+     * @return the number of edges deleted
+     */
+    public default int removeEdges(int[] node1, int[] node2) {
+        weighted_graph.checkBatch(node1, node2, node1.length);
+        int removed = 0;
+        for (int i=0; i<node1.length; i++) {
+            if (node1[i] == node2[i] || this.getEdge(node1[i], node2[i]) == -1) continue;
+            this.removeEdge(node1[i], node2[i]);
+            removed++;
+        }
+        return removed;
+    }
+    /**
+     * Checks that the arrays of a batch change have the same length.
+     * @param node1
+     * @param node2
+     * @param weights - the length of the weights array
+     */
+    static void checkBatch(int[] node1, int[] node2, int weights) {
+        if (node1.length != node2.length || node1.length != weights) {
+            throw new IllegalArgumentException("batch arrays must have the same length: "
+                    + node1.length + ", " + node2.length + ", " + weights);
+        }
+    }
     /** return the number of vertices (nodes) in the graph.
      * Note: this method should run in O(1) time.
      * @return
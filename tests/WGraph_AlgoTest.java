@@ -1,8 +1,18 @@
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import java.io.File;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -141,6 +151,88 @@ class WGraph_AlgoTest {
         assertNotEquals(gra.copy(),gra2.copy());
     }
 
+    /**
+     * Tests the binary file format: a round trip of every graph kind keeping the node infos, tags and mode count,
+     * repeated saves replacing the file, a corrupted file being rejected and a serialized file still being loaded
+     */
+    @Test
+    @DisplayName("Binary file format test")
+    void binaryFormat() throws Exception {
+        String file = "binary_test";
+        weighted_graph wg = gridGraph(20,3);
+        wg.addNode(Integer.MIN_VALUE);
+        wg.addNode(Integer.MAX_VALUE);
+        wg.connect(Integer.MIN_VALUE,Integer.MAX_VALUE,0.125);
+        wg.connect(Integer.MIN_VALUE,0,1e-300);
+        wg.getNode(5).setInfo("1.5,2.5");
+        wg.getNode(6).setInfo("שלום");
+        wg.getNode(7).setTag(3.25);
+        WGraph_Algo wga = new WGraph_Algo();
+        wga.init(wg);
+        assertTrue(wga.save(file));
+        long length = new File(file).length();
+        assertTrue(wga.save(file));
+        assertEquals(length,new File(file).length());
+        WGraph_Algo loaded = new WGraph_Algo();
+        assertTrue(loaded.load(file));
+        weighted_graph g = loaded.getGraph();
+        assertTrue(g instanceof WGraph_DS);
+        assertSameEdges(wg,g);
+        assertEquals(wg.getMC(),g.getMC());
+        assertEquals(1e-300,g.getEdge(0,Integer.MIN_VALUE));
+        assertEquals("שלום",g.getNode(6).getInfo());
+        assertNull(g.getNode(Integer.MAX_VALUE).getInfo());
+        assertEquals(3.25,g.getNode(7).getTag());
+        assertEquals(-1,g.getNode(Integer.MAX_VALUE).getTag());
+        weighted_graph[] kinds = {WGraph_CSR.freeze(wg), new WGraph_Compact()};
+        for (node_info n : wg.getV()) {
+            kinds[1].addNode(n.getKey());
+            wg.forEachNeighbor(n.getKey(), (ni, w) -> kinds[1].connect(n.getKey(),ni,w));
+        }
+        for (weighted_graph kind : kinds) {
+            loaded.init(kind);
+            assertTrue(loaded.save(file));
+            assertTrue(loaded.load(file));
+            assertEquals(kind.getClass(),loaded.getGraph().getClass());
+            assertEquals(kind.getMC(),loaded.getGraph().getMC());
+            assertSameEdges(kind,loaded.getGraph());
+        }
+        byte[] bytes = java.nio.file.Files.readAllBytes(new File(file).toPath());
+        byte kind = bytes[5];
+        bytes[5] = 7;
+        java.nio.file.Files.write(new File(file).toPath(), bytes);
+        assertTrue(assertThrows(java.io.StreamCorruptedException.class, () -> WGraph_IO.read(file)).getMessage().contains("kind"));
+        bytes[5] = kind;
+        byte[] header = Arrays.copyOf(bytes,64);
+        header[12] = header[13] = header[14] = (byte) 0xFF;
+        header[15] = 0x7F;
+        java.nio.file.Files.write(new File(file).toPath(), header);
+        String message = assertThrows(java.io.StreamCorruptedException.class, () -> WGraph_IO.read(file)).getMessage();
+        assertTrue(message.contains("too short"));
+        bytes[bytes.length/2] ^= 1;
+        java.nio.file.Files.write(new File(file).toPath(), bytes);
+        assertThrows(java.io.StreamCorruptedException.class, () -> WGraph_IO.read(file));
+        assertFalse(loaded.load(file));
+        try (java.io.ObjectOutputStream out = new java.io.ObjectOutputStream(new java.io.FileOutputStream(file))) {
+            out.writeObject(wg);
+        }
+        assertTrue(loaded.load(file));
+        assertSameEdges(wg,loaded.getGraph());
+        new File(file).delete();
+    }
+
+    /**
+     * Asserts that two graphs have the same nodes and the same edges with the same weights.
+     */
+    static void assertSameEdges(weighted_graph expected, weighted_graph actual) {
+        assertEquals(expected.nodeSize(),actual.nodeSize());
+        assertEquals(expected.edgeSize(),actual.edgeSize());
+        for (node_info n : expected.getV()) {
+            assertNotNull(actual.getNode(n.getKey()));
+            expected.forEachNeighbor(n.getKey(), (ni, w) -> assertEquals(w,actual.getEdge(n.getKey(),ni)));
+        }
+    }
+
     /**
      * Cheks the connectivity of a graph while changing
      */
@@ -172,6 +264,68 @@ class WGraph_AlgoTest {
         assertTrue(wga2.isConnected());
     }
 
+    /**
+     * Checks the component ids and sizes on a small graph with known components,
+     * then compares the parallel union-find with a BFS on a large random graph
+     */
+    @Test
+    @DisplayName("Connected components test")
+    void connectedComponents() {
+        weighted_graph wg = WGraph_DSTest.mainTestGraph();
+        WGraph_Algo wga = new WGraph_Algo();
+        wga.init(wg);
+        WGraph_Components c = wga.connectedComponents();
+        assertEquals(1,c.count());
+        assertEquals(wg.nodeSize(),c.size(0));
+        wg.removeNode(7);
+        wg.addNode(100);
+        c = wga.connectedComponents();
+        assertEquals(3,c.count());
+        assertTrue(c.sameComponent(1,16));
+        assertTrue(c.sameComponent(8,15));
+        assertFalse(c.sameComponent(1,8));
+        assertFalse(c.sameComponent(1,7));
+        assertEquals(-1,c.componentOf(7));
+        assertEquals(1,c.size(c.componentOf(100)));
+        assertEquals(c.componentOf(1),c.largest());
+        assertEquals(wg.nodeSize(),c.size(0)+c.size(1)+c.size(2));
+        assertFalse(wga.isConnected());
+        weighted_graph big = new WGraph_Compact(20000);
+        Random rnd = new Random(11);
+        for (int i=0; i<20000; i++) {
+            big.addNode(i);
+        }
+        for (int i=0; i<15000; i++) {
+            big.connect(rnd.nextInt(20000),rnd.nextInt(20000),1);
+        }
+        WGraph_Components parallel = WGraph_Components.compute(big,new ForkJoinPool(4));
+        int[] bfs = new int[20000];
+        Arrays.fill(bfs,-1);
+        int count = 0;
+        for (int i=0; i<20000; i++) {
+            if (bfs[i] != -1) continue;
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            queue.add(i);
+            bfs[i] = count;
+            while (!queue.isEmpty()) {
+                for (node_info ni : big.getV(queue.poll())) {
+                    if (bfs[ni.getKey()] == -1) {
+                        bfs[ni.getKey()] = count;
+                        queue.add(ni.getKey());
+                    }
+                }
+            }
+            count++;
+        }
+        assertEquals(count,parallel.count());
+        for (int i=0; i<20000; i++) {
+            assertEquals(bfs[i],parallel.componentOf(i));
+        }
+        assertTrue(parallel.isValidFor(big));
+        big.connect(0,1,5);
+        assertFalse(parallel.isValidFor(big));
+    }
+
     /**
      * Cheבks the shortest path distance in a set complex graph while changing it
      */
@@ -235,6 +389,349 @@ class WGraph_AlgoTest {
         assertNull(wga.shortestPath(-22,0));
     }
 
+    /**
+     * Checks the shortest path queries leave the nodes tags and metadata untouched
+     */
+    @Test
+    @DisplayName("Shortest path keeps node metadata")
+    void shortestPathMetadata() {
+        weighted_graph_algorithms wga = mainTestGraphAlg();
+        weighted_graph wg = wga.getGraph();
+        for (node_info n : wg.getV()) {
+            n.setInfo("meta" + n.getKey());
+            n.setTag(n.getKey());
+        }
+        assertEquals(23,wga.shortestPathDist(1,16));
+        assertEquals(8,wga.shortestPath(1,16).size());
+        assertEquals(-1,wga.shortestPathDist(1,0));
+        for (node_info n : wg.getV()) {
+            assertEquals("meta" + n.getKey(), n.getInfo());
+            assertEquals(n.getKey(), n.getTag());
+        }
+    }
+
+    /**
+     * Checks the shortest path answers do not depend on the arity of the priority queue heap
+     */
+    @Test
+    @DisplayName("Heap arity test")
+    void heapArity() {
+        WGraph_Algo wga = new WGraph_Algo();
+        wga.init(graph_creator(500,5000));
+        double[] expected = new double[100];
+        for (int q=0; q<100; q++) {
+            expected[q] = wga.shortestPathDist(q,499-q);
+        }
+        for (int d : new int[]{2,3,8,32}) {
+            wga.setHeapArity(d);
+            for (int q=0; q<100; q++) {
+                assertEquals(expected[q],wga.shortestPathDist(q,499-q));
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> wga.setHeapArity(1));
+    }
+
+    /**
+     * Compares the bidirectional search with plain Dijkstra on random graphs, including unreachable pairs,
+     * and checks the returned paths are made of real edges that add up to the distance
+     */
+    @Test
+    @DisplayName("Bidirectional Dijkstra test")
+    void bidirectional() {
+        WGraph_Algo wga = new WGraph_Algo();
+        weighted_graph wg = graph_creator(800,1600);
+        wg.addNode(5000);
+        wga.init(wg);
+        Random rnd = new Random(2);
+        for (int q=0; q<200; q++) {
+            int src = rnd.nextInt(800);
+            int dest = q%20 == 0 ? 5000 : rnd.nextInt(800);
+            double expected = wga.shortestPathDist(src,dest);
+            double actual = wga.shortestPathDist(src,dest,WGraph_Algo.SearchMode.BIDIRECTIONAL);
+            assertEquals(expected,actual,1e-9);
+            List<node_info> path = wga.shortestPath(src,dest,WGraph_Algo.SearchMode.BIDIRECTIONAL);
+            if (expected == -1) {
+                assertNull(path);
+                continue;
+            }
+            assertEquals(src,path.get(0).getKey());
+            assertEquals(dest,path.get(path.size()-1).getKey());
+            double sum = 0;
+            for (int i=1; i<path.size(); i++) {
+                assertTrue(wg.hasEdge(path.get(i-1).getKey(),path.get(i).getKey()));
+                sum += wg.getEdge(path.get(i-1).getKey(),path.get(i).getKey());
+            }
+            assertEquals(expected,sum,1e-9);
+        }
+        wga.init(WGraph_DSTest.mainTestGraph());
+        wga.setSearchMode(WGraph_Algo.SearchMode.BIDIRECTIONAL);
+        assertEquals(0,wga.shortestPathDist(1,1));
+        assertEquals(0,wga.shortestPath(1,1).size());
+        assertEquals(23,wga.shortestPathDist(1,16));
+        assertEquals(8,wga.shortestPath(1,16).size());
+        assertEquals(-1,wga.shortestPathDist(1,0));
+    }
+
+    /**
+     * Creates a size x size grid graph where each node stores its "x,y" position in its metadata
+     * and each edge weighs at least the distance between its two ends
+     *
+     * @param size - The grid side
+     * @param seed - The random seed of the extra weights
+     * @return weighted_graph - The grid graph, node key = x*size+y
+     */
+    static weighted_graph gridGraph(int size, long seed) {
+        weighted_graph wg = new WGraph_DS();
+        Random rnd = new Random(seed);
+        for (int x=0; x<size; x++) {
+            for (int y=0; y<size; y++) {
+                wg.addNode(x*size+y);
+                wg.getNode(x*size+y).setInfo(x + "," + y);
+            }
+        }
+        for (int x=0; x<size; x++) {
+            for (int y=0; y<size; y++) {
+                if (x+1 < size) wg.connect(x*size+y,(x+1)*size+y,1+rnd.nextDouble());
+                if (y+1 < size) wg.connect(x*size+y,x*size+y+1,1+rnd.nextDouble());
+            }
+        }
+        return wg;
+    }
+
+    /**
+     * Compares A* with the built-in euclidean heuristic against Dijkstra on a grid graph
+     */
+    @Test
+    @DisplayName("A* test")
+    void aStar() {
+        weighted_graph wg = gridGraph(40,4);
+        WGraph_Algo wga = new WGraph_Algo();
+        wga.init(wg);
+        WGraph_Coordinates xy = WGraph_Coordinates.fromInfo(wg);
+        assertEquals(1600,xy.size());
+        distance_heuristic h = xy.euclidean(1);
+        Random rnd = new Random(6);
+        for (int q=0; q<100; q++) {
+            int src = rnd.nextInt(1600);
+            int dest = rnd.nextInt(1600);
+            double expected = wga.shortestPathDist(src,dest);
+            assertEquals(expected,wga.shortestPathDist(src,dest,h),1e-9);
+            List<node_info> path = wga.shortestPath(src,dest,h);
+            assertEquals(wga.shortestPath(src,dest).size(),path.size());
+        }
+        wga.setHeuristic(h);
+        wga.setSearchMode(WGraph_Algo.SearchMode.ASTAR);
+        wg.removeNode(1);
+        wg.removeNode(40);
+        assertEquals(-1,wga.shortestPathDist(0,1599));
+        assertNull(wga.shortestPath(0,1599));
+        assertEquals("1,1",wg.getNode(41).getInfo());
+    }
+
+    /**
+     * Checks A* still finds the shortest path when only some nodes have coordinates,
+     * the heuristic is then admissible but not consistent and settled nodes must be reopened
+     */
+    @Test
+    @DisplayName("A* with partial coordinates test")
+    void aStarPartialCoordinates() {
+        weighted_graph wg = new WGraph_DS();
+        for (int i=0; i<4; i++) wg.addNode(i);
+        wg.connect(0,1,1);
+        wg.connect(1,2,1);
+        wg.connect(0,2,5);
+        wg.connect(2,3,100);
+        WGraph_Coordinates c = new WGraph_Coordinates();
+        c.set(3,0,0);
+        c.set(1,50,0);
+        WGraph_Algo wga = new WGraph_Algo();
+        wga.init(wg);
+        assertEquals(102,wga.shortestPathDist(0,3));
+        assertEquals(102,wga.shortestPathDist(0,3,c.euclidean(1)));
+        List<node_info> path = wga.shortestPath(0,3,c.euclidean(1));
+        assertEquals(4,path.size());
+        assertEquals(1,path.get(1).getKey());
+    }
+
+    /**
+     * Checks the haversine heuristic never overestimates the great circle distance between known cities
+     */
+    @Test
+    @DisplayName("Haversine heuristic test")
+    void haversine() {
+        WGraph_Coordinates geo = new WGraph_Coordinates();
+        geo.set(1,32.0853,34.7818);
+        geo.set(2,31.7683,35.2137);
+        distance_heuristic h = geo.haversine(0.001);
+        assertEquals(54,h.estimate(1,2),2);
+        assertEquals(h.estimate(1,2),h.estimate(2,1),1e-9);
+        assertEquals(0,h.estimate(1,1));
+        assertEquals(0,h.estimate(1,3));
+    }
+
+    /**
+     * Compares ALT queries with both landmark strategies to Dijkstra on a graph with two components,
+     * then checks the tables are saved and loaded next to the graph and dropped once the graph changes
+     */
+    @Test
+    @DisplayName("ALT landmarks test")
+    void landmarks() throws IOException {
+        weighted_graph wg = gridGraph(30,7);
+        for (int i=1000; i<1010; i++) {
+            wg.addNode(i);
+            if (i > 1000) wg.connect(i-1,i,i%3+1);
+        }
+        WGraph_Algo wga = new WGraph_Algo();
+        wga.init(wg);
+        wga.setSearchMode(WGraph_Algo.SearchMode.ALT);
+        assertEquals(wga.shortestPathDist(0,899),wga.shortestPathDist(0,899,WGraph_Algo.SearchMode.DIJKSTRA));
+        for (WGraph_Landmarks.Strategy strategy : WGraph_Landmarks.Strategy.values()) {
+            WGraph_Landmarks lmk = wga.prepareLandmarks(8,strategy);
+            assertEquals(8,lmk.size());
+            boolean small = false;
+            for (int key : lmk.landmarks()) {
+                small |= key >= 1000;
+                assertEquals(0,lmk.distance(0,lmk.landmarks()[0]));
+            }
+            assertTrue(small);
+            Random rnd = new Random(8);
+            for (int q=0; q<100; q++) {
+                int src = rnd.nextInt(900);
+                int dest = rnd.nextInt(900);
+                double expected = wga.shortestPathDist(src,dest,WGraph_Algo.SearchMode.DIJKSTRA);
+                assertTrue(lmk.estimate(src,dest) <= expected+1e-9);
+                assertEquals(expected,wga.shortestPathDist(src,dest),1e-9);
+                assertEquals(wga.shortestPath(src,dest,WGraph_Algo.SearchMode.DIJKSTRA).size(),wga.shortestPath(src,dest).size());
+            }
+            assertEquals(18,wga.shortestPathDist(1000,1009),1e-9);
+            assertEquals(-1,wga.shortestPathDist(0,1000));
+        }
+        String file = "landmarks_test";
+        new File(file).delete();
+        assertTrue(wga.save(file));
+        assertTrue(new File(file + WGraph_Algo.LANDMARKS_SUFFIX).isFile());
+        WGraph_Algo loaded = new WGraph_Algo();
+        assertTrue(loaded.load(file));
+        assertNotNull(loaded.getLandmarks());
+        assertArrayEquals(wga.getLandmarks().landmarks(),loaded.getLandmarks().landmarks());
+        for (int key=0; key<900; key+=7) {
+            assertEquals(wga.getLandmarks().distance(3,key),loaded.getLandmarks().distance(3,key));
+            assertEquals(wga.getLandmarks().estimate(key,1005),loaded.getLandmarks().estimate(key,1005));
+        }
+        Path lmk_file = Paths.get(file + WGraph_Algo.LANDMARKS_SUFFIX);
+        byte[] bytes = Files.readAllBytes(lmk_file);
+        Files.write(lmk_file,Arrays.copyOf(bytes,bytes.length-3));
+        assertThrows(StreamCorruptedException.class,() -> WGraph_Landmarks.load(lmk_file.toString()));
+        bytes[0] = 0;
+        Files.write(lmk_file,bytes);
+        assertThrows(StreamCorruptedException.class,() -> WGraph_Landmarks.load(lmk_file.toString()));
+        assertTrue(loaded.load(file));
+        assertNull(loaded.getLandmarks());
+        loaded.getGraph().removeEdge(0,1);
+        assertNull(loaded.getLandmarks());
+        wg.removeEdge(0,1);
+        assertNull(wga.getLandmarks());
+        assertEquals(wga.shortestPathDist(0,1,WGraph_Algo.SearchMode.DIJKSTRA),wga.shortestPathDist(0,1),1e-9);
+        assertNotNull(wga.getLandmarks());
+        loaded.setSearchMode(WGraph_Algo.SearchMode.ALT);
+        assertEquals(wga.shortestPathDist(0,1),loaded.shortestPathDist(0,1),1e-9);
+        assertNull(loaded.getLandmarks());
+        new File(file).delete();
+        new File(file + WGraph_Algo.LANDMARKS_SUFFIX).delete();
+        wga.init(gridGraph(10,3));
+        assertEquals(wga.shortestPathDist(0,99,WGraph_Algo.SearchMode.DIJKSTRA),wga.shortestPathDist(0,99),1e-9);
+        assertNull(wga.getLandmarks());
+    }
+
+    /**
+     * Compares contraction hierarchy queries and unpacked paths to Dijkstra on a grid and on a random graph,
+     * then checks the hierarchy is rebuilt once the graph changes
+     */
+    @Test
+    @DisplayName("Contraction hierarchy test")
+    void contractionHierarchy() {
+        weighted_graph grid = gridGraph(30,9);
+        weighted_graph random = graph_creator(300,900);
+        grid.addNode(1000);
+        random.addNode(1000);
+        for (weighted_graph wg : new weighted_graph[]{grid, random}) {
+            WGraph_Algo wga = new WGraph_Algo();
+            wga.init(wg);
+            wga.setSearchMode(WGraph_Algo.SearchMode.CH);
+            assertNull(wga.getHierarchy());
+            WGraph_CH ch = wga.prepareHierarchy();
+            assertNotNull(ch.report());
+            assertTrue(ch.rank(0) >= 0);
+            Random rnd = new Random(10);
+            for (int q=0; q<200; q++) {
+                int src = rnd.nextInt(300);
+                int dest = rnd.nextInt(300);
+                double expected = wga.shortestPathDist(src,dest,WGraph_Algo.SearchMode.DIJKSTRA);
+                assertEquals(expected,wga.shortestPathDist(src,dest),1e-9);
+                assertEquals(expected,ch.shortestPathDist(src,dest),1e-9);
+                if (src == dest || expected == -1) continue;
+                List<node_info> path = wga.shortestPath(src,dest);
+                assertEquals(src,path.get(0).getKey());
+                assertEquals(dest,path.get(path.size()-1).getKey());
+                double sum = 0;
+                for (int i=1; i<path.size(); i++) {
+                    assertTrue(wg.hasEdge(path.get(i-1).getKey(),path.get(i).getKey()));
+                    sum += wg.getEdge(path.get(i-1).getKey(),path.get(i).getKey());
+                }
+                assertEquals(expected,sum,1e-9);
+            }
+            assertEquals(-1,wga.shortestPathDist(0,1000));
+            assertNull(wga.shortestPath(0,1000));
+            wg.connect(0,1000,1);
+            assertNull(wga.getHierarchy());
+            assertEquals(1,wga.shortestPathDist(0,1000));
+            assertNotNull(wga.getHierarchy());
+            wga.init(gridGraph(10,3));
+            assertEquals(wga.shortestPathDist(0,99,WGraph_Algo.SearchMode.DIJKSTRA),wga.shortestPathDist(0,99),1e-9);
+            assertNull(wga.getHierarchy());
+        }
+    }
+
+    /**
+     * Runs shortest path queries on the same graph from several threads at once
+     * and compares them with the answers of a single thread
+     */
+    @Test
+    @DisplayName("Concurrent shortest path queries")
+    void concurrentQueries() throws InterruptedException {
+        weighted_graph_algorithms wga = new WGraph_Algo();
+        wga.init(graph_creator(2000,8000));
+        int queries = 200;
+        double[] expected = new double[queries];
+        Random rnd = new Random(1);
+        int[] src = new int[queries];
+        int[] dest = new int[queries];
+        for (int q=0; q<queries; q++) {
+            src[q] = rnd.nextInt(2000);
+            dest[q] = rnd.nextInt(2000);
+            expected[q] = wga.shortestPathDist(src[q],dest[q]);
+        }
+        boolean[] ok = new boolean[4];
+        Thread[] threads = new Thread[4];
+        for (int t=0; t<threads.length; t++) {
+            int id = t;
+            threads[t] = new Thread(() -> {
+                boolean same = true;
+                for (int q=0; q<queries; q++) {
+                    same &= wga.shortestPathDist(src[q],dest[q]) == expected[q];
+                }
+                ok[id] = same;
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        for (boolean b : ok) {
+            assertTrue(b);
+        }
+    }
+
     /**
      * Build a graph with 1,000,000 nodes and 10,000,000 edges
      * Creates them with randomized modifiers. Checks if the total process takes less than 20 seconds.
@@ -0,0 +1,84 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import java.util.concurrent.ForkJoinPool;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the all pairs distance matrices of WGraph_AllPairs
+ */
+class WGraph_AllPairsTest {
+
+    /**
+     * Checks every entry of a matrix against the shortest path trees of the graph's nodes.
+     */
+    static void assertMatrix(weighted_graph g, WGraph_AllPairs ap, double delta) {
+        assertEquals(g.nodeSize(), ap.size());
+        for (node_info src : g.getV()) {
+            WGraph_PathTree t = WGraph_PathTree.sequential(g, src.getKey());
+            assertEquals(src.getKey(), ap.keyOf(ap.rowOf(src.getKey())));
+            for (node_info dest : g.getV()) {
+                double expected = t.dist(dest.getKey());
+                assertEquals(expected, ap.dist(src.getKey(), dest.getKey()), delta,
+                        src.getKey() + " -> " + dest.getKey());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Floyd-Warshall and Dijkstra give the distances of the shortest path trees")
+    void methods() {
+        weighted_graph g = WGraph_PathTreeTest.randomGraph(300, 1200, 50, 4);
+        g.removeNode(-300+3*17);
+        g.removeNode(-300+3*150);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (WGraph_AllPairs.Method method : new WGraph_AllPairs.Method[] {
+                    WGraph_AllPairs.Method.FLOYD_WARSHALL, WGraph_AllPairs.Method.DIJKSTRA}) {
+                WGraph_AllPairs ap = WGraph_AllPairs.compute(g, method, WGraph_AllPairs.Precision.DOUBLE, pool);
+                assertEquals(method, ap.method());
+                assertNull(ap.floatMatrix());
+                assertEquals(298*298, ap.matrix().length);
+                assertMatrix(g, ap, 0);
+                assertEquals(-1, ap.dist(-300+3*17, -300));
+                assertEquals(-1, ap.dist(-300, 1));
+                assertTrue(ap.isValidFor(g));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("The float matrix keeps the distances rounded to floats")
+    void floats() {
+        weighted_graph g = WGraph_AlgoTest.graph_creator(200, 3000);
+        WGraph_AllPairs fw = WGraph_AllPairs.compute(g, WGraph_AllPairs.Method.FLOYD_WARSHALL,
+                WGraph_AllPairs.Precision.FLOAT, ForkJoinPool.commonPool());
+        WGraph_AllPairs dijkstra = WGraph_AllPairs.compute(g, WGraph_AllPairs.Method.DIJKSTRA,
+                WGraph_AllPairs.Precision.FLOAT, ForkJoinPool.commonPool());
+        assertNull(fw.matrix());
+        assertEquals(WGraph_AllPairs.Precision.FLOAT, fw.precision());
+        assertEquals(200*200, fw.floatMatrix().length);
+        assertMatrix(g, fw, 1e-3);
+        assertMatrix(g, dijkstra, 1e-4);
+    }
+
+    @Test
+    @DisplayName("AUTO runs Dijkstra on sparse graphs and Floyd-Warshall on dense ones")
+    void auto() {
+        assertEquals(WGraph_AllPairs.Method.DIJKSTRA, WGraph_AllPairs.choose(20000, 60000));
+        assertEquals(WGraph_AllPairs.Method.FLOYD_WARSHALL, WGraph_AllPairs.choose(2000, 500000));
+        weighted_graph g = WGraph_PathTreeTest.randomGraph(130, 4000, 9, 2);
+        WGraph_Algo wga = new WGraph_Algo();
+        wga.init(g);
+        WGraph_AllPairs ap = wga.allPairs();
+        assertEquals(WGraph_AllPairs.Method.FLOYD_WARSHALL, ap.method());
+        assertMatrix(g, ap, 0);
+        g.connect(-130, -127, 0);
+        assertFalse(ap.isValidFor(g));
+        assertEquals(0, wga.allPairs().dist(-130, -127));
+        WGraph_AllPairs floats = wga.allPairs(WGraph_AllPairs.Method.AUTO, WGraph_AllPairs.Precision.FLOAT);
+        assertEquals(0, floats.dist(-127, -130));
+        assertEquals(0, WGraph_AllPairs.compute(new WGraph_DS()).size());
+    }
+}
@@ -0,0 +1,1113 @@
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Manual benchmarks and reports for the graph implementations and algorithms.
+ * These are not unit tests, each scenario is run from the command line by name, for example:
+ * java WGraph_Benchmark memory 1000000 10
+ * The numbers printed are wall clock / heap measurements of a single JVM run and should be
+ * compared against each other on the same machine only.
+ *
+ * @author shmuel.lavian
+ */
+public class WGraph_Benchmark {
+
+    /**
+     * Runs the scenario named in the first argument.
+     *
+     * @param args - scenario name followed by the scenario arguments
+     */
+    public static void main(String[] args) {
+        String scenario = args.length > 0 ? args[0] : "memory";
+        int nodes = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        int degree = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        switch (scenario) {
+            case "memory":
+                memoryReport(nodes, degree);
+                break;
+            case "csr":
+                csrQueries(nodes, degree);
+                break;
+            case "heap":
+                heapOps(nodes, degree);
+                break;
+            case "bidir":
+                bidirectional(nodes, degree);
+                break;
+            case "astar":
+                astar(nodes);
+                break;
+            case "alt":
+                alt(nodes, args.length > 2 ? degree : 16);
+                break;
+            case "ch":
+                hierarchy(nodes);
+                break;
+            case "components":
+                components(nodes, degree);
+                break;
+            case "ingest":
+                ingest(nodes, degree);
+                break;
+            case "io":
+                saveLoad(nodes, degree);
+                break;
+            case "mapped":
+                mapped(nodes, degree);
+                break;
+            case "edgelist":
+                edgeList(nodes, degree);
+                break;
+            case "builder":
+                builder(nodes, degree);
+                break;
+            case "copy":
+                copy(nodes, degree);
+                break;
+            case "concurrent":
+                concurrent(nodes, degree, args.length > 3 ? Integer.parseInt(args[3]) : 16);
+                break;
+            case "remove":
+                remove(nodes, degree);
+                break;
+            case "batch":
+                batch(nodes, degree);
+                break;
+            case "equals":
+                equality(nodes, degree);
+                break;
+            case "dump":
+                dump(nodes, degree);
+                break;
+            case "tree":
+                tree(nodes, degree, args.length > 3 ? Integer.parseInt(args[3]) : 8);
+                break;
+            case "matrix":
+                matrix(nodes, args.length > 2 ? degree : 200, args.length > 3 ? Integer.parseInt(args[3]) : 1000);
+                break;
+            case "apsp":
+                allPairs(nodes, degree);
+                break;
+            case "mvcc":
+                mvcc(nodes, degree, args.length > 3 ? Integer.parseInt(args[3]) : 4);
+                break;
+            default:
+                System.out.println("Unknown scenario: " + scenario);
+        }
+    }
+
+    /**
+     * Builds the same random graph with WGraph_DS and WGraph_Compact and prints the
+     * measured heap usage of each layout alongside the per edge cost.
+     *
+     * @param nodes - Number of nodes
+     * @param degree - Average node degree
+     */
+    static void memoryReport(int nodes, int degree) {
+        long edges = (long) nodes*degree/2;
+        long base = usedHeap();
+        weighted_graph ds = fill(new WGraph_DS(), nodes, edges, 1);
+        long ds_bytes = usedHeap()-base;
+        if (ds.edgeSize() != edges) throw new IllegalStateException("graph was not filled");
+        ds = null;
+        base = usedHeap();
+        WGraph_Compact compact = new WGraph_Compact(nodes);
+        fill(compact, nodes, edges, 1);
+        long compact_bytes = usedHeap()-base;
+        System.out.println("Graph: |V|=" + nodes + " |E|=" + compact.edgeSize());
+        System.out.printf("%-16s %14s %12s%n", "layout", "heap bytes", "bytes/edge");
+        System.out.printf("%-16s %14d %12.1f%n", "WGraph_DS", ds_bytes, ds_bytes/(double) compact.edgeSize());
+        System.out.printf("%-16s %14d %12.1f%n", "WGraph_Compact", compact_bytes, compact_bytes/(double) compact.edgeSize());
+        System.out.printf("%-16s %14d %12.1f%n", "(estimated)", compact.estimatedBytes(), compact.estimatedBytes()/(double) compact.edgeSize());
+    }
+
+    /**
+     * Compares isConnected() and Dijkstra (shortestPathDist) on a WGraph_DS against the same
+     * graph frozen into a WGraph_CSR snapshot.
+     *
+     * @param nodes - Number of nodes
+     * @param degree - Average node degree
+     */
+    static void csrQueries(int nodes, int degree) {
+        weighted_graph ds = fill(new WGraph_DS(), nodes, (long) nodes*degree/2, 1);
+        long start = System.nanoTime();
+        WGraph_CSR csr = WGraph_CSR.freeze(ds);
+        System.out.printf("freeze: %.1f ms%n", (System.nanoTime()-start)/1e6);
+        WGraph_Algo on_ds = new WGraph_Algo();
+        on_ds.init(ds);
+        WGraph_Algo on_csr = new WGraph_Algo();
+        on_csr.init(csr);
+        int queries = 20;
+        System.out.printf("%-10s %14s %14s%n", "graph", "connected ms", "Dijkstra ms");
+        for (int round=0; round<3; round++) {
+            System.out.printf("%-10s %14.1f %14.1f%n", "WGraph_DS", connectedMillis(on_ds), dijkstraMillis(on_ds, nodes, queries));
+            System.out.printf("%-10s %14.1f %14.1f%n", "WGraph_CSR", connectedMillis(on_csr), dijkstraMillis(on_csr, nodes, queries));
+        }
+    }
+
+    /**
+     * Returns the wall clock time of a single isConnected() call in milliseconds.
+     */
+    static double connectedMillis(weighted_graph_algorithms ga) {
+        long start = System.nanoTime();
+        ga.isConnected();
+        return (System.nanoTime()-start)/1e6;
+    }
+
+    /**
+     * Times the parallel union-find of connectedComponents() on a random WGraph_CSR graph
+     * with pools of growing parallelism.
+     *
+     * @param nodes - Number of nodes
+     * @param degree - Average node degree
+     */
+    static void components(int nodes, int degree) {
+        WGraph_CSR g = WGraph_CSR.freeze(fill(new WGraph_Compact(nodes), nodes, (long) nodes*degree/2, 1));
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%-10s %12s %12s%n", "threads", "ms", "components");
+        for (int round=0; round<3; round++) {
+            for (int threads=1; threads<=cores; threads*=2) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                long start = System.nanoTime();
+                WGraph_Components c = WGraph_Components.compute(g, pool);
+                System.out.printf("%-10d %12.1f %12d%n", threads, (System.nanoTime()-start)/1e6, c.count());
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Simulates an ingestion loop on a WGraph_DS: batches of 1000 random connect() calls, every tenth batch
+     * also removes 100 edges, and isConnected() is asked after each batch. Compares the incrementally
+     * maintained components of WGraph_DS against a full WGraph_Components recompute per batch.
+     *
+     * @param nodes - Number of nodes
+     * @param degree - Average node degree at the end of the loop
+     */
+    static void ingest(int nodes, int degree) {
+        long edges = (long) nodes*degree/2;
+        System.out.printf("%-14s %12s %10s %12s%n", "mode", "ms", "batches", "components");
+        for (int round=0; round<2; round++) {
+            for (int mode=0; mode<2; mode++) {
+                WGraph_DS g = new WGraph_DS();
+                for (int i=0; i<nodes; i++) {
+                    g.addNode(i);
+                }
+                Random rnd = new Random(3);
+                int batches = 0;
+                int count = 0;
+                long start = System.nanoTime();
+                while (g.edgeSize() < edges) {
+                    for (int i=0; i<1000; i++) {
+                        g.connect(rnd.nextInt(nodes), rnd.nextInt(nodes), rnd.nextDouble());
+                    }
+                    if (++batches % 10 == 0) {
+                        for (int i=0; i<100; i++) {
+                            int a = rnd.nextInt(nodes);
+                            for (node_info ni : g.getV(a)) {
+                                g.removeEdge(a, ni.getKey());
+                                break;
+                            }
+                        }
+                    }
+                    count = mode == 0 ? g.componentCount() : WGraph_Components.compute(g).count();
+                }
+                System.out.printf("%-14s %12.1f %10d %12d%n", mode == 0 ? "incremental" : "recompute",
+                        (System.nanoTime()-start)/1e6, batches, count);
+            }
+        }
+    }
+
+    /**
+     * Compares saving and loading a random WGraph_DS with Java serialization (the format of earlier versions
+     * of save()) against the binary format of WGraph_IO, printing the file size and the throughput of each.
+     *
+     * @param nodes - Number of nodes
+     * @param degree - Average node degree
+     */
+    static void saveLoad(int nodes, int degree) {
+        weighted_graph g = fill(new WGraph_DS(), nodes, (long) nodes*degree/2, 1);
+        java.io.File file = new java.io.File("benchmark_graph.bin");
+        System.out.println("Graph: |V|=" + nodes + " |E|=" + g.edgeSize());
+        System.out.printf("%-14s %12s %10s %10s %14s%n", "format", "bytes", "save ms", "load ms", "Medges/s load");
+        try {
+            for (int round=0; round<2; round++) {
+                long start = System.nanoTime();
+                try (java.io.ObjectOutputStream out = new java.io.ObjectOutputStream(
+                        new java.io.BufferedOutputStream(new java.io.FileOutputStream(file)))) {
+                    out.writeObject(g);
+                }
+                double save = (System.nanoTime()-start)/1e6;
+                start = System.nanoTime();
+                try (java.io.ObjectInputStream in = new java.io.ObjectInputStream(
+                        new java.io.BufferedInputStream(new java.io.FileInputStream(file)))) {
+                    in.readObject();
+                }
+                double load = (System.nanoTime()-start)/1e6;
+                System.out.printf("%-14s %12d %10.0f %10.0f %14.2f%n", "serialization", file.length(), save, load,
+                        g.edgeSize()/load/1e3);
+                start = System.nanoTime();
+                WGraph_IO.write(g, file.getPath());
+                save = (System.nanoTime()-start)/1e6;
+                start = System.nanoTime();
+                WGraph_IO.read(file.getPath());
+                load = (System.nanoTime()-start)/1e6;
+                System.out.printf("%-14s %12d %10.0f %10.0f %14.2f%n", "WGraph_IO", file.length(), save, load,
+                        g.edgeSize()/load/1e3);
+            }
+        } catch (java.io.IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Writes a random graph in the mapped CSR layout and compares the time until the first query is answered
+     * when the file is memory mapped against reading the binary format into the heap, followed by Dijkstra on both.
+     *
+     * @param nodes - Number of nodes
+     * @param degree - Average node degree
+     */
+    static void mapped(int nodes, int degree) {
+        String mapped_file = "benchmark_graph.csr";
+        String io_file = "benchmark_graph.bin";
+        try {
+            weighted_graph g = fill(new WGraph_Compact(nodes), nodes, (long) nodes*degree/2, 1);
+            WGraph_Mapped.write(g, mapped_file);
+            WGraph_IO.write(g, io_file);
+            System.out.println("Graph: |V|=" + nodes + " |E|=" + g.edgeSize());
+            g = null;
+            System.out.printf("%-12s %14s %16s %14s%n", "load", "file bytes", "first query ms", "dijkstra ms");
+            for (int round=0; round<2; round++) {
+                long start = System.nanoTime();
+                WGraph_Mapped m = WGraph_Mapped.open(mapped_file);
+                m.getEdge(0, 1);
+                double first = (System.nanoTime()-start)/1e6;
+                WGraph_Algo ga = new WGraph_Algo();
+                ga.init(m);
+                System.out.printf("%-12s %14d %16.2f %14.2f%n", "mapped", m.mappedBytes(), first, dijkstraMillis(ga, nodes, 20));
+                start = System.nanoTime();
+                weighted_graph ds = WGraph_IO.read(io_file);
+                ds.getEdge(0, 1);
+                first = (System.nanoTime()-start)/1e6;
+                ga.init(ds);
+                System.out.printf("%-12s %14d %16.2f %14.2f%n", "WGraph_IO", new java.io.File(io_file).length(), first,
+                        dijkstraMillis(ga, nodes, 20));
+            }
+        } catch (java.io.IOException e) {
+            e.printStackTrace();
+        } finally {
+            new java.io.File(mapped_file).delete();
+            new java.io.File(io_file).delete();
+        }
+    }
+
+    /**
+     * Writes a random graph in every text format of WGraph_EdgeList and reads it back into a WGraph_Compact,
+     * printing the export and import throughput.
+     *
+     * @param nodes - Number of nodes
+     * @param degree - Average node degree
+     */
+    static void edgeList(int nodes, int degree) {
+        String file = "benchmark_graph.txt";
+        try {
+            weighted_graph g = fill(new WGraph_Compact(nodes), nodes, (long) nodes*degree/2, 1);
+            System.out.println("Graph: |V|=" + nodes + " |E|=" + g.edgeSize());
+            for (WGraph_EdgeList.Format format : WGraph_EdgeList.Format.values()) {
+                System.out.println(format + " write: " + WGraph_EdgeList.write(g, file, format));
+                System.out.println(format + " read:  " + WGraph_EdgeList.read(file, format, new WGraph_Compact(nodes)));
+            }
+        } catch (java.io.IOException e) {
+            e.printStackTrace();
+        } finally {
+            new java.io.File(file).delete();
+        }
+    }
+
+    /**
+     * Builds the same random edge stream with WGraph_DS.connect() and with WGraph_Builder, and freezes
+     * the first into a WGraph_CSR against WGraph_Builder.buildCSR(), printing the time of each.
+     *
+     * @param nodes - Number of nodes
+     * @param degree - Average node degree
+     */
+    static void builder(int nodes, int degree) {
+        int edges = (int) ((long) nodes*degree/2);
+        System.out.println("Graph: |V|=" + nodes + " |E| given=" + edges);
+        System.out.printf("%-22s %12s %12s%n", "build", "ms", "edges");
+        for (int round=0; round<2; round++) {
+            long start = System.nanoTime();
+            WGraph_DS g = new WGraph_DS();
+            for (int i=0; i<nodes; i++) {
+                g.addNode(i);
+            }
+            Random rnd = new Random(5);
+            for (int e=0; e<edges; e++) {
+                g.connect(rnd.nextInt(nodes), rnd.nextInt(nodes), rnd.nextDouble());
+            }
+            double connected = (System.nanoTime()-start)/1e6;
+            System.out.printf("%-22s %12.1f %12d%n", "connect", connected, g.edgeSize());
+            start = System.nanoTime();
+            WGraph_CSR csr = WGraph_CSR.freeze(g);
+            System.out.printf("%-22s %12.1f %12d%n", "connect + freeze", connected+(System.nanoTime()-start)/1e6,
+                    csr.edgeSize());
+            g = null;
+            csr = null;
+            start = System.nanoTime();
+            WGraph_Builder b = new WGraph_Builder(nodes, edges);
+            for (int i=0; i<nodes; i++) {
+                b.addNode(i);
+            }
+            rnd = new Random(5);
+            for (int e=0; e<edges; e++) {
+                b.connect(rnd.nextInt(nodes), rnd.nextInt(nodes), rnd.nextDouble());
+            }
+            double buffered = (System.nanoTime()-start)/1e6;
+            start = System.nanoTime();
+            g = b.build();
+            System.out.printf("%-22s %12.1f %12d%n", "builder", buffered+(System.nanoTime()-start)/1e6, g.edgeSize());
+            g = null;
+            start = System.nanoTime();
+            csr = b.buildCSR();
+            System.out.printf("%-22s %12.1f %12d%n", "builder + buildCSR", buffered+(System.nanoTime()-start)/1e6,
+                    csr.edgeSize());
+        }
+    }
+
+    /**
+     * Copies a random WGraph_DS by adding every node and connecting every edge (the earlier WGraph_Algo.copy()),
+     * with WGraph_DS.deepCopy() and with WGraph_DS.copyOnWrite(), printing the time of each. The lazy copy is
+     * timed alone and together with its first change, which detaches it.
+     *
+     * @param nodes - Number of nodes
+     * @param degree - Average node degree
+     */
+    static void copy(int nodes, int degree) {
+        WGraph_DS g = (WGraph_DS) fill(new WGraph_DS(nodes), nodes, (long) nodes*degree/2, 1);
+        System.out.println("Graph: |V|=" + nodes + " |E|=" + g.edgeSize());
+        System.out.printf("%-24s %12s%n", "copy", "ms");
+        for (int round=0; round<2; round++) {
+            long start = System.nanoTime();
+            weighted_graph result = new WGraph_DS();
+            for (node_info n : g.getV()) {
+                result.addNode(n.getKey());
+            }
+            for (node_info n : g.getV()) {
+                int key = n.getKey();
+                g.forEachNeighbor(key, (ni, w) -> {
+                    if (key < ni) result.connect(key, ni, w);
+                });
+            }
+            System.out.printf("%-24s %12.1f%n", "addNode + connect", (System.nanoTime()-start)/1e6);
+            start = System.nanoTime();
+            WGraph_DS copy = g.deepCopy();
+            System.out.printf("%-24s %12.1f%n", "deepCopy", (System.nanoTime()-start)/1e6);
+            copy = null;
+            start = System.nanoTime();
+            copy = g.copyOnWrite();
+            System.out.printf("%-24s %12.3f%n", "copyOnWrite", (System.nanoTime()-start)/1e6);
+            copy.connect(0, 1, 1);
+            System.out.printf("%-24s %12.1f%n", "copyOnWrite + connect", (System.nanoTime()-start)/1e6);
+        }
+    }
+
+    /**
+     * Runs a single writer changing edge weights next to reader threads answering shortestPathDist() queries
+     * for 3 seconds, first with a WGraph_DS guarded by a ReentrantReadWriteLock (the writer locks every batch
+     * of 1000 changes, the readers every query) and then with a WGraph_Versioned whose writer publishes a
+     * snapshot after every batch and whose readers query the latest snapshot with no locking.
+     * Prints the changes and queries per second of each.
+     *
+     * @param nodes - Number of nodes
+     * @param degree - Average node degree
+     * @param readers - Number of reader threads
+     */
+    static void mvcc(int nodes, int degree, int readers) {
+        long edges = (long) nodes*degree/2;
+        WGraph_DS ds = (WGraph_DS) fill(new WGraph_DS(nodes), nodes, edges, 1);
+        WGraph_Versioned versioned = (WGraph_Versioned) fill(new WGraph_Versioned(), nodes, edges, 1);
+        versioned.publish();
+        System.out.println("Graph: |V|=" + nodes + " |E|=" + ds.edgeSize() + " readers=" + readers);
+        System.out.printf("%-14s %16s %16s%n", "mode", "changes/s", "queries/s");
+        for (int mode=0; mode<2; mode++) {
+            java.util.concurrent.locks.ReentrantReadWriteLock lock = new java.util.concurrent.locks.ReentrantReadWriteLock();
+            java.util.concurrent.atomic.AtomicLong queries = new java.util.concurrent.atomic.AtomicLong();
+            java.util.concurrent.atomic.AtomicBoolean stop = new java.util.concurrent.atomic.AtomicBoolean();
+            boolean locked = mode == 0;
+            Thread[] threads = new Thread[readers];
+            for (int r=0; r<readers; r++) {
+                int seed = r;
+                threads[r] = new Thread(() -> {
+                    Random rnd = new Random(seed);
+                    WGraph_Algo ga = new WGraph_Algo();
+                    while (!stop.get()) {
+                        if (locked) {
+                            lock.readLock().lock();
+                            try {
+                                ga.init(ds);
+                                ga.shortestPathDist(rnd.nextInt(nodes), rnd.nextInt(nodes));
+                            } finally {
+                                lock.readLock().unlock();
+                            }
+                        }
+                        else {
+                            ga.init(versioned.snapshot());
+                            ga.shortestPathDist(rnd.nextInt(nodes), rnd.nextInt(nodes));
+                        }
+                        queries.incrementAndGet();
+                    }
+                });
+                threads[r].start();
+            }
+            Random rnd = new Random(9);
+            long changes = 0;
+            long start = System.nanoTime();
+            while (System.nanoTime()-start < 3_000_000_000L) {
+                if (locked) lock.writeLock().lock();
+                try {
+                    for (int i=0; i<1000; i++) {
+                        int a = rnd.nextInt(nodes);
+                        int b = rnd.nextInt(nodes);
+                        if (locked) ds.connect(a, b, rnd.nextDouble());
+                        else versioned.connect(a, b, rnd.nextDouble());
+                    }
+                } finally {
+                    if (locked) lock.writeLock().unlock();
+                }
+                if (!locked) versioned.publish();
+                changes += 1000;
+            }
+            double seconds = (System.nanoTime()-start)/1e9;
+            stop.set(true);
+            for (Thread t : threads) {
+                try {
+                    t.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            System.out.printf("%-14s %16.0f %16.1f%n", locked ? "rw lock" : "snapshots", changes/seconds,
+                    queries.get()/seconds);
+        }
+    }
+
+    /**
+     * Inserts the nodes and random edges of a graph from 1, 2, 4 ... max_threads threads at once, into a
+     * WGraph_Concurrent and into a WGraph_DS guarded by a single lock, printing the insertion throughput
+     * and the speedup over a single thread of each.
+     *
+     * @param nodes - Number of nodes
+     * @param degree - Average node degree
+     * @param max_threads - The largest number of inserting threads
+     */
+    static void concurrent(int nodes, int degree, int max_threads) {
+        long edges = (long) nodes*degree/2;
+        System.out.println("Graph: |V|=" + nodes + " |E| given=" + edges + " cores="
+                + Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-12s %8s %14s %10s%n", "graph", "threads", "Medges/s", "speedup");
+        for (int mode=0; mode<2; mode++) {
+            double single = 0;
+            for (int threads=1; threads<=max_threads; threads*=2) {
+                weighted_graph g = mode == 0 ? new WGraph_Concurrent() : new WGraph_DS(nodes);
+                Object lock = new Object();
+                boolean locked = mode == 1;
+                int count = threads;
+                Thread[] workers = new Thread[threads];
+                long start = System.nanoTime();
+                for (int t=0; t<threads; t++) {
+                    int id = t;
+                    workers[t] = new Thread(() -> {
+                        for (int i=id; i<nodes; i+=count) {
+                            if (locked) {
+                                synchronized (lock) {
+                                    g.addNode(i);
+                                }
+                            }
+                            else g.addNode(i);
+                        }
+                    });
+                    workers[t].start();
+                }
+                join(workers);
+                for (int t=0; t<threads; t++) {
+                    Random rnd = new Random(t);
+                    workers[t] = new Thread(() -> {
+                        for (long e=0; e<edges/count; e++) {
+                            int a = rnd.nextInt(nodes);
+                            int b = rnd.nextInt(nodes);
+                            double w = rnd.nextDouble();
+                            if (locked) {
+                                synchronized (lock) {
+                                    g.connect(a, b, w);
+                                }
+                            }
+                            else g.connect(a, b, w);
+                        }
+                    });
+                    workers[t].start();
+                }
+                join(workers);
+                double rate = edges/((System.nanoTime()-start)/1e3);
+                if (threads == 1) single = rate;
+                System.out.printf("%-12s %8d %14.2f %10.2f%n", locked ? "locked DS" : "concurrent", threads, rate,
+                        rate/single);
+            }
+        }
+    }
+
+    /**
+     * Waits for all the received threads to finish.
+     */
+    static void join(Thread[] threads) {
+        for (Thread t : threads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Removes a hub connected to every other node, and then a tenth of the nodes of a random graph, first the way
+     * earlier versions of WGraph_DS.removeNode() did (removeEdge() for every neighbor of a copied neighbor list)
+     * and then with removeNode() and removeNodes(), printing the time of each.
+     *
+     * @param nodes - Number of nodes
+     * @param degree - Average node degree
+     */
+    static void remove(int nodes, int degree) {
+        System.out.printf("%-24s %12s %12s%n", "removal", "per edge", "new");
+        for (int round=0; round<2; round++) {
+            WGraph_DS star = new WGraph_DS(nodes);
+            for (int i=0; i<nodes; i++) {
+                star.addNode(i);
+                star.connect(0, i, 1);
+            }
+            WGraph_DS copy = star.deepCopy();
+            long start = System.nanoTime();
+            for (node_info n : star.getV(0)) {
+                star.removeEdge(n.getKey(), 0);
+            }
+            star.removeNode(0);
+            double old = (System.nanoTime()-start)/1e6;
+            start = System.nanoTime();
+            copy.removeNode(0);
+            System.out.printf("%-24s %12.1f %12.1f%n", "hub of degree " + (nodes-1), old, (System.nanoTime()-start)/1e6);
+            WGraph_DS g = (WGraph_DS) fill(new WGraph_DS(nodes), nodes, (long) nodes*degree/2, 1);
+            copy = g.deepCopy();
+            int[] keys = new int[nodes/10];
+            for (int i=0; i<keys.length; i++) {
+                keys[i] = i*10;
+            }
+            start = System.nanoTime();
+            for (int key : keys) {
+                for (node_info n : g.getV(key)) {
+                    g.removeEdge(n.getKey(), key);
+                }
+                g.removeNode(key);
+            }
+            old = (System.nanoTime()-start)/1e6;
+            start = System.nanoTime();
+            copy.removeNodes(keys);
+            System.out.printf("%-24s %12.1f %12.1f%n", keys.length + " nodes", old, (System.nanoTime()-start)/1e6);
+        }
+    }
+
+    /**
+     * Re-weights every edge of a random graph, first with connect() for every edge and then with one
+     * updateWeights() batch, once in a random order and once grouped by the first node, printing the time of each.
+     *
+     * @param nodes - Number of nodes
+     * @param degree - Average node degree
+     */
+    static void batch(int nodes, int degree) {
+        WGraph_DS g = (WGraph_DS) fill(new WGraph_DS(nodes), nodes, (long) nodes*degree/2, 1);
+        int m = g.edgeSize();
+        int[] a = new int[m];
+        int[] b = new int[m];
+        int[] p = new int[1];
+        for (node_info n : g.getV()) {
+            int key = n.getKey();
+            g.forEachNeighbor(key, (ni, w) -> {
+                if (key < ni) {
+                    a[p[0]] = key;
+                    b[p[0]++] = ni;
+                }
+            });
+        }
+        int[] ra = a.clone();
+        int[] rb = b.clone();
+        Random rnd = new Random(2);
+        for (int i=m-1; i>0; i--) {
+            int j = rnd.nextInt(i+1);
+            int t = ra[i];
+            ra[i] = ra[j];
+            ra[j] = t;
+            t = rb[i];
+            rb[i] = rb[j];
+            rb[j] = t;
+        }
+        System.out.printf("%-24s %12s %12s %12s%n", "updates", "connect()", "batch", "grouped");
+        for (int round=0; round<3; round++) {
+            double[] w = new double[m];
+            for (int i=0; i<m; i++) {
+                w[i] = round*10+1+rnd.nextInt(9);
+            }
+            long start = System.nanoTime();
+            for (int i=0; i<m; i++) {
+                g.connect(ra[i], rb[i], w[i]);
+            }
+            double single = (System.nanoTime()-start)/1e6;
+            for (int i=0; i<m; i++) {
+                w[i] += 100;
+            }
+            start = System.nanoTime();
+            g.updateWeights(ra, rb, w);
+            double random = (System.nanoTime()-start)/1e6;
+            for (int i=0; i<m; i++) {
+                w[i] += 100;
+            }
+            start = System.nanoTime();
+            g.updateWeights(a, b, w);
+            System.out.printf("%-24s %12.1f %12.1f %12.1f%n", m + " edges", single, random, (System.nanoTime()-start)/1e6);
+        }
+    }
+
+    /**
+     * Compares a random graph with a copy built in reverse order and with a copy differing by one weight,
+     * first the way earlier versions of WGraph_DS.equals() did (comparing the toString() of both graphs)
+     * and then with equals(), printing the time of each.
+     *
+     * @param nodes - Number of nodes
+     * @param degree - Average node degree
+     */
+    static void equality(int nodes, int degree) {
+        WGraph_DS g = (WGraph_DS) fill(new WGraph_DS(nodes), nodes, (long) nodes*degree/2, 1);
+        WGraph_DS same = new WGraph_DS(nodes);
+        for (int i=nodes-1; i>=0; i--) {
+            same.addNode(i);
+        }
+        for (int i=nodes-1; i>=0; i--) {
+            int key = i;
+            g.forEachNeighbor(key, (ni, w) -> same.connect(key, ni, w));
+        }
+        WGraph_DS other = g.deepCopy();
+        int ni = other.getV(0).iterator().next().getKey();
+        other.connect(0, ni, other.getEdge(0, ni)+1);
+        System.out.printf("%-32s %12s %12s%n", "comparison", "toString()", "equals()");
+        for (int round=0; round<3; round++) {
+            for (WGraph_DS h : new WGraph_DS[] {same, other}) {
+                long start = System.nanoTime();
+                boolean old = g.toString().equals(h.toString());
+                double text = (System.nanoTime()-start)/1e6;
+                start = System.nanoTime();
+                boolean now = g.equals(h);
+                String label = (h == same ? "equal" : "one weight differs") + " " + old + "/" + now;
+                System.out.printf("%-32s %12.1f %12.3f%n", label, text, (System.nanoTime()-start)/1e6);
+            }
+        }
+    }
+
+    /**
+     * Prints a random graph with toString() and streams the same text to a file with WGraph_Dump,
+     * sequentially and in parallel on the common pool, printing the time of each (NaN when toString() ran out of memory).
+     *
+     * @param nodes - Number of nodes
+     * @param degree - Average node degree
+     */
+    static void dump(int nodes, int degree) {
+        WGraph_DS g = (WGraph_DS) fill(new WGraph_DS(nodes), nodes, (long) nodes*degree/2, 1);
+        String file = "benchmark_dump.txt";
+        System.out.printf("%-24s %12s %12s %12s%n", "format", "toString()", "stream", "parallel");
+        try {
+            for (int round=0; round<3; round++) {
+                for (WGraph_Dump.Format format : WGraph_Dump.Format.values()) {
+                    double text = 0;
+                    long start;
+                    if (format == WGraph_Dump.Format.TEXT) {
+                        start = System.nanoTime();
+                        try {
+                            text = g.toString().length() > 0 ? (System.nanoTime()-start)/1e6 : 0;
+                        } catch (OutOfMemoryError e) {
+                            text = Double.NaN;
+                        }
+                    }
+                    start = System.nanoTime();
+                    WGraph_Dump.write(g, file, format);
+                    double stream = (System.nanoTime()-start)/1e6;
+                    start = System.nanoTime();
+                    try (java.io.Writer out = java.nio.file.Files.newBufferedWriter(java.nio.file.Paths.get(file))) {
+                        WGraph_Dump.write(g, out, format, ForkJoinPool.commonPool());
+                    }
+                    System.out.printf("%-24s %12.1f %12.1f %12.1f%n", format, text, stream, (System.nanoTime()-start)/1e6);
+                }
+            }
+        } catch (java.io.IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        } finally {
+            new java.io.File(file).delete();
+        }
+    }
+
+    /**
+     * Computes the distances from one source to every node of a random graph: by shortestPathDist() per node
+     * (timed on 20 targets and scaled to all the nodes), by a sequential Dijkstra tree and by Delta-stepping
+     * on pools of 1, 2, 4 ... max_threads workers, printing the time of each.
+     *
+     * @param nodes - Number of nodes
+     * @param degree - Average node degree
+     * @param max_threads - The largest pool
+     */
+    static void tree(int nodes, int degree, int max_threads) {
+        WGraph_CSR g = WGraph_CSR.freeze(fill(new WGraph_DS(nodes), nodes, (long) nodes*degree/2, 1));
+        WGraph_Algo wga = new WGraph_Algo();
+        wga.init(g);
+        long start = System.nanoTime();
+        for (int t=1; t<=20; t++) {
+            wga.shortestPathDist(0, t*(nodes/21));
+        }
+        double per_query = (System.nanoTime()-start)/1e6/20;
+        System.out.printf("%-28s %12.1f ms (estimated)%n", "shortestPathDist() per node", per_query*nodes);
+        for (int round=0; round<3; round++) {
+            start = System.nanoTime();
+            WGraph_PathTree.sequential(g, 0);
+            System.out.printf("%-28s %12.1f ms%n", "sequential Dijkstra", (System.nanoTime()-start)/1e6);
+            for (int threads=1; threads<=max_threads; threads*=2) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                start = System.nanoTime();
+                WGraph_PathTree.parallel(g, 0, 0, pool);
+                System.out.printf("%-28s %12.1f ms%n", "delta-stepping x" + threads, (System.nanoTime()-start)/1e6);
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Computes a sources x targets distance table of a square grid graph: by shortestPathDist() per pair
+     * (timed on 200 pairs and scaled to the table), by one to many Dijkstra searches and by the bucket
+     * algorithm over a contraction hierarchy, printing the time of each.
+     *
+     * @param nodes - Number of nodes
+     * @param sources - Number of sources
+     * @param targets - Number of targets
+     */
+    static void matrix(int nodes, int sources, int targets) {
+        int side = (int) Math.sqrt(nodes);
+        nodes = side*side;
+        WGraph_CSR g = grid(side, 3, 10);
+        Random rnd = new Random(2);
+        int[] s = new int[sources];
+        int[] t = new int[targets];
+        for (int i=0; i<sources; i++) s[i] = rnd.nextInt(nodes);
+        for (int j=0; j<targets; j++) t[j] = rnd.nextInt(nodes);
+        WGraph_Algo wga = new WGraph_Algo();
+        wga.init(g);
+        long start = System.nanoTime();
+        for (int q=0; q<200; q++) {
+            wga.shortestPathDist(s[q%sources], t[q%targets]);
+        }
+        double per_query = (System.nanoTime()-start)/1e6/200;
+        System.out.printf("%-28s %12.1f ms (estimated)%n", "shortestPathDist() per pair", per_query*sources*targets);
+        start = System.nanoTime();
+        wga.distanceMatrix(s, t);
+        System.out.printf("%-28s %12.1f ms%n", "one to many Dijkstra", (System.nanoTime()-start)/1e6);
+        start = System.nanoTime();
+        wga.prepareHierarchy();
+        System.out.printf("%-28s %12.1f ms%n", "hierarchy preprocessing", (System.nanoTime()-start)/1e6);
+        for (int round=0; round<3; round++) {
+            start = System.nanoTime();
+            wga.distanceMatrix(s, t);
+            System.out.printf("%-28s %12.1f ms%n", "CH buckets", (System.nanoTime()-start)/1e6);
+        }
+    }
+
+    /**
+     * Computes the all pairs distances of a random graph with both methods and both precisions,
+     * printing the time of each and the method AUTO would choose.
+     *
+     * @param nodes - Number of nodes
+     * @param degree - Average node degree
+     */
+    static void allPairs(int nodes, int degree) {
+        WGraph_CSR g = WGraph_CSR.freeze(fill(new WGraph_DS(nodes), nodes, (long) nodes*degree/2, 1));
+        System.out.println("AUTO chooses " + WGraph_AllPairs.choose(g.nodeSize(), g.edgeSize()));
+        for (int round=0; round<2; round++) {
+            for (WGraph_AllPairs.Method method : new WGraph_AllPairs.Method[] {
+                    WGraph_AllPairs.Method.FLOYD_WARSHALL, WGraph_AllPairs.Method.DIJKSTRA}) {
+                for (WGraph_AllPairs.Precision precision : WGraph_AllPairs.Precision.values()) {
+                    long start = System.nanoTime();
+                    WGraph_AllPairs.compute(g, method, precision, ForkJoinPool.commonPool());
+                    System.out.printf("%-28s %12.1f ms%n", method + " " + precision, (System.nanoTime()-start)/1e6);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the average wall clock time of random shortestPathDist() queries in milliseconds.
+     */
+    static double dijkstraMillis(weighted_graph_algorithms ga, int nodes, int queries) {
+        Random rnd = new Random(7);
+        long start = System.nanoTime();
+        for (int q=0; q<queries; q++) {
+            ga.shortestPathDist(rnd.nextInt(nodes), rnd.nextInt(nodes));
+        }
+        return (System.nanoTime()-start)/1e6/queries;
+    }
+
+    /**
+     * Runs full single source Dijkstra scans with the indexed d-ary heap for several arities and prints the
+     * heap operation counts. A lazy re-insertion queue (the former PriorityQueue based implementation) pushes an
+     * entry for every distance improvement (inserts + decreases), the indexed heap only for the first one.
+     * Use a dense graph, e.g. java WGraph_Benchmark heap 5000 200
+     *
+     * @param nodes - Number of nodes
+     * @param degree - Average node degree
+     */
+    static void heapOps(int nodes, int degree) {
+        WGraph_CSR g = WGraph_CSR.freeze(fill(new WGraph_Compact(nodes), nodes, (long) nodes*degree/2, 1));
+        int queries = 50;
+        System.out.println("Graph: |V|=" + nodes + " |E|=" + g.edgeSize() + ", " + queries + " full scans");
+        System.out.printf("%-6s %12s %12s %12s %16s %10s%n", "arity", "inserts", "decreases", "polls", "lazy pushes", "ms/scan");
+        for (int round=0; round<2; round++) {
+            for (int d : new int[]{2, 4, 8, 16}) {
+                SearchState st = SearchState.acquire(g.indexBound(), d);
+                st.heap().resetCounters();
+                Random rnd = new Random(5);
+                long start = System.nanoTime();
+                for (int q=0; q<queries; q++) {
+                    st.begin(g.indexBound());
+                    st.start(rnd.nextInt(nodes));
+                    int u;
+                    while ((u = st.poll()) != -1) st.relax(g, u);
+                }
+                double ms = (System.nanoTime()-start)/1e6/queries;
+                IndexedDHeap h = st.heap();
+                System.out.printf("%-6d %12d %12d %12d %16d %10.2f%n", d, h._inserts, h._decreases, h._polls,
+                        h._inserts+h._decreases, ms);
+                SearchState.release(st);
+            }
+        }
+    }
+
+    /**
+     * Compares the settled node counts and query times of plain and bidirectional Dijkstra
+     * over the same random point to point queries.
+     *
+     * @param nodes - Number of nodes
+     * @param degree - Average node degree
+     */
+    static void bidirectional(int nodes, int degree) {
+        WGraph_CSR g = WGraph_CSR.freeze(fill(new WGraph_Compact(nodes), nodes, (long) nodes*degree/2, 1));
+        int queries = 200;
+        SearchState fwd = SearchState.acquire(g.indexBound());
+        SearchState bwd = SearchState.acquire(g.indexBound());
+        System.out.println("Graph: |V|=" + nodes + " |E|=" + g.edgeSize() + ", " + queries + " queries");
+        System.out.printf("%-14s %16s %10s%n", "mode", "settled/query", "ms/query");
+        for (int round=0; round<3; round++) {
+            Random rnd = new Random(9);
+            fwd.heap().resetCounters();
+            long start = System.nanoTime();
+            for (int q=0; q<queries; q++) {
+                fwd.begin(g.indexBound());
+                WGraph_Algo.dijkstra(g, rnd.nextInt(nodes), rnd.nextInt(nodes), fwd);
+            }
+            System.out.printf("%-14s %16d %10.2f%n", "DIJKSTRA", fwd.heap()._polls/queries, (System.nanoTime()-start)/1e6/queries);
+            rnd = new Random(9);
+            fwd.heap().resetCounters();
+            bwd.heap().resetCounters();
+            start = System.nanoTime();
+            for (int q=0; q<queries; q++) {
+                fwd.begin(g.indexBound());
+                bwd.begin(g.indexBound());
+                int s = rnd.nextInt(nodes), t = rnd.nextInt(nodes);
+                if (s != t) WGraph_Algo.bidirectional(g, s, t, fwd, bwd, false);
+            }
+            System.out.printf("%-14s %16d %10.2f%n", "BIDIRECTIONAL", (fwd.heap()._polls+bwd.heap()._polls)/queries,
+                    (System.nanoTime()-start)/1e6/queries);
+        }
+        SearchState.release(fwd);
+        SearchState.release(bwd);
+    }
+
+    /**
+     * Compares the settled node counts and query times of Dijkstra and A* (euclidean heuristic)
+     * on a square grid graph with about the received number of nodes.
+     *
+     * @param nodes - Number of nodes
+     */
+    static void astar(int nodes) {
+        int side = (int) Math.sqrt(nodes);
+        WGraph_CSR g = grid(side, 3, 1.2);
+        WGraph_Coordinates xy = new WGraph_Coordinates(side*side);
+        for (int i=0; i<side*side; i++) {
+            xy.set(i, i/side, i%side);
+        }
+        distance_heuristic h = xy.euclidean(1);
+        int queries = 100;
+        SearchState st = SearchState.acquire(g.indexBound());
+        System.out.println("Grid: " + side + "x" + side + ", " + queries + " queries");
+        System.out.printf("%-10s %16s %10s%n", "mode", "settled/query", "ms/query");
+        for (int round=0; round<3; round++) {
+            for (int mode=0; mode<2; mode++) {
+                Random rnd = new Random(4);
+                st.heap().resetCounters();
+                long start = System.nanoTime();
+                for (int q=0; q<queries; q++) {
+                    st.begin(g.indexBound());
+                    int s = rnd.nextInt(side*side), t = rnd.nextInt(side*side);
+                    if (mode == 0) WGraph_Algo.dijkstra(g, s, t, st);
+                    else WGraph_Algo.astar(g, s, t, h, st);
+                }
+                System.out.printf("%-10s %16d %10.2f%n", mode == 0 ? "DIJKSTRA" : "ASTAR", st.heap()._polls/queries,
+                        (System.nanoTime()-start)/1e6/queries);
+            }
+        }
+        SearchState.release(st);
+    }
+
+    /**
+     * Compares the settled node counts and query times of Dijkstra and ALT with both landmark strategies
+     * on a square grid graph, and prints the preprocessing time of each strategy.
+     *
+     * @param nodes - Number of nodes
+     * @param k - Number of landmarks
+     */
+    static void alt(int nodes, int k) {
+        int side = (int) Math.sqrt(nodes);
+        WGraph_CSR g = grid(side, 3, 1.2);
+        int queries = 100;
+        distance_heuristic[] heuristics = new distance_heuristic[WGraph_Landmarks.Strategy.values().length];
+        System.out.println("Grid: " + side + "x" + side + ", " + k + " landmarks, " + queries + " queries");
+        for (WGraph_Landmarks.Strategy strategy : WGraph_Landmarks.Strategy.values()) {
+            long start = System.nanoTime();
+            heuristics[strategy.ordinal()] = WGraph_Landmarks.compute(g, k, strategy, 1);
+            System.out.printf("%-10s preprocessing %10.2f ms%n", strategy, (System.nanoTime()-start)/1e6);
+        }
+        SearchState st = SearchState.acquire(g.indexBound());
+        System.out.printf("%-14s %12s %10s%n", "mode", "settled/query", "ms/query");
+        for (int round=0; round<3; round++) {
+            for (int mode=0; mode<=heuristics.length; mode++) {
+                Random rnd = new Random(4);
+                st.heap().resetCounters();
+                long start = System.nanoTime();
+                for (int q=0; q<queries; q++) {
+                    st.begin(g.indexBound());
+                    int s = rnd.nextInt(side*side), t = rnd.nextInt(side*side);
+                    if (mode == 0) WGraph_Algo.dijkstra(g, s, t, st);
+                    else WGraph_Algo.astar(g, s, t, heuristics[mode-1], st);
+                }
+                String name = mode == 0 ? "DIJKSTRA" : "ALT/" + WGraph_Landmarks.Strategy.values()[mode-1];
+                System.out.printf("%-14s %12d %10.2f%n", name, st.heap()._polls/queries,
+                        (System.nanoTime()-start)/1e6/queries);
+            }
+        }
+        SearchState.release(st);
+    }
+
+    /**
+     * Builds the contraction hierarchy of a square grid graph, prints its preprocessing report
+     * (time, shortcuts and memory, with the measured heap growth) and compares its query time with Dijkstra.
+     * The checksum (sum of the first queries' distances) must be the same for both.
+     *
+     * @param nodes - Number of nodes
+     */
+    static void hierarchy(int nodes) {
+        int side = (int) Math.sqrt(nodes);
+        WGraph_CSR g = grid(side, 3, 10);
+        long base = usedHeap();
+        WGraph_CH ch = WGraph_CH.build(g);
+        System.out.println(ch.report());
+        System.out.printf("Heap growth: %.1f MB%n", (usedHeap()-base)/1e6);
+        int queries = 1000;
+        SearchState st = SearchState.acquire(g.indexBound());
+        System.out.println("Grid: " + side + "x" + side + ", " + queries + " CH queries, " + queries/10 + " Dijkstra queries");
+        System.out.printf("%-10s %12s %16s%n", "mode", "ms/query", "checksum");
+        for (int round=0; round<3; round++) {
+            for (int mode=0; mode<2; mode++) {
+                Random rnd = new Random(4);
+                double sum = 0;
+                int count = mode == 0 ? queries/10 : queries;
+                long start = System.nanoTime();
+                for (int q=0; q<count; q++) {
+                    int s = rnd.nextInt(side*side), t = rnd.nextInt(side*side);
+                    double d;
+                    if (mode == 0) {
+                        st.begin(g.indexBound());
+                        WGraph_Algo.dijkstra(g, s, t, st);
+                        d = st.dist(t);
+                    }
+                    else d = ch.route(s, t, false)._dist;
+                    if (q < queries/10) sum += d;
+                }
+                System.out.printf("%-10s %12.4f %16.4f%n", mode == 0 ? "DIJKSTRA" : "CH",
+                        (System.nanoTime()-start)/1e6/count, sum);
+            }
+        }
+        SearchState.release(st);
+    }
+
+    /**
+     * Builds a side x side grid graph with random edge weights between 1 and max_weight.
+     * Weights close to 1 make the weight follow the edge length (the A* heuristics are tight), a wide range
+     * gives the grid some hierarchy of fast and slow edges the way a road network has.
+     *
+     * @param side - The grid side
+     * @param seed - Random seed of the weights
+     * @param max_weight - The largest edge weight
+     * @return WGraph_CSR - The grid as a snapshot
+     */
+    static WGraph_CSR grid(int side, long seed, double max_weight) {
+        WGraph_Compact grid = new WGraph_Compact(side*side);
+        Random rnd = new Random(seed);
+        for (int i=0; i<side*side; i++) {
+            grid.addNode(i);
+        }
+        for (int i=0; i<side*side; i++) {
+            if (i/side+1 < side) grid.connect(i, i+side, 1+(max_weight-1)*rnd.nextDouble());
+            if (i%side+1 < side) grid.connect(i, i+1, 1+(max_weight-1)*rnd.nextDouble());
+        }
+        return WGraph_CSR.freeze(grid);
+    }
+
+    /**
+     * Adds the nodes 0..nodes-1 and connects random pairs until the graph has the requested edges.
+     *
+     * @param g - The graph to fill
+     * @param nodes - Number of nodes
+     * @param edges - Number of edges
+     * @param seed - Random seed
+     * @return weighted_graph - The received graph
+     */
+    static weighted_graph fill(weighted_graph g, int nodes, long edges, long seed) {
+        Random rnd = new Random(seed);
+        for (int i=0; i<nodes; i++) {
+            g.addNode(i);
+        }
+        while (g.edgeSize() < edges) {
+            g.connect(rnd.nextInt(nodes), rnd.nextInt(nodes), rnd.nextDouble());
+        }
+        return g;
+    }
+
+    /**
+     * Returns the used heap after requesting a few garbage collections.
+     *
+     * @return long - Used heap bytes
+     */
+    static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i=0; i<4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return rt.totalMemory()-rt.freeMemory();
+    }
+}
@@ -0,0 +1,99 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the bulk WGraph_Builder
+ */
+class WGraph_BuilderTest {
+
+    /**
+     * Feeds the same random nodes and edges (with repeats, self loops and negative weights) to a builder
+     * and to a WGraph_DS, adding the nodes to the WGraph_DS first since its connect() does not create them.
+     */
+    static WGraph_Builder random(weighted_graph expected, int nodes, int edges, long seed) {
+        WGraph_Builder b = new WGraph_Builder(nodes/4, edges/4);
+        Random rnd = new Random(seed);
+        for (int e=0; e<edges; e++) {
+            int u = rnd.nextInt(nodes)*7-nodes;
+            int v = rnd.nextInt(nodes)*7-nodes;
+            double w = rnd.nextInt(10) == 0 ? -1 : rnd.nextInt(5);
+            if (u != v && w >= 0) {
+                expected.addNode(u);
+                expected.addNode(v);
+            }
+            else if (rnd.nextBoolean()) {
+                expected.addNode(u);
+                b.addNode(u);
+            }
+            expected.connect(u, v, w);
+            b.connect(u, v, w);
+        }
+        return b;
+    }
+
+    @Test
+    @DisplayName("Builder gives the same graph as connect()")
+    void build() {
+        for (int nodes : new int[] {30, 20000}) {
+            weighted_graph expected = new WGraph_DS();
+            WGraph_Builder b = random(expected, nodes, nodes*5, nodes);
+            assertEquals(expected.nodeSize(), b.nodeSize());
+            WGraph_DS g = b.build();
+            WGraph_AlgoTest.assertSameEdges(expected, g);
+            assertEquals(g.nodeSize()+g.edgeSize(), g.getMC());
+            WGraph_CSR csr = b.buildCSR();
+            WGraph_AlgoTest.assertSameEdges(expected, csr);
+            assertEquals(expected.toString(), g.toString());
+            WGraph_Components c = WGraph_Components.compute(expected);
+            assertEquals(c.count(), g.componentCount());
+            int first = g.getV().iterator().next().getKey();
+            g.addNode(Integer.MAX_VALUE);
+            g.connect(Integer.MAX_VALUE, first, 1);
+            assertEquals(c.count(), g.componentCount());
+        }
+    }
+
+    @Test
+    @DisplayName("Last weight wins and the builder can be reused")
+    void lastWriteWins() {
+        WGraph_Builder b = new WGraph_Builder();
+        b.connect(1, 2, 5);
+        b.connect(2, 1, 3);
+        b.connect(1, 3, 4);
+        b.connect(3, 3, 1);
+        b.connect(3, 4, -2);
+        b.addNode(5);
+        assertEquals(4, b.nodeSize());
+        assertEquals(3, b.bufferedEdges());
+        WGraph_DS g = b.build();
+        assertEquals(2, g.edgeSize());
+        assertEquals(3, g.getEdge(1,2));
+        assertEquals(3, g.getEdge(2,1));
+        assertNull(g.getNode(4));
+        assertFalse(g.isConnected());
+        b.connect(1, 2, 9);
+        b.connect(5, 3, 1);
+        g = b.build();
+        assertEquals(9, g.getEdge(2,1));
+        assertTrue(g.isConnected());
+        WGraph_Algo wga = new WGraph_Algo();
+        wga.init(g);
+        assertEquals(14, wga.shortestPathDist(2,5));
+    }
+
+    @Test
+    @DisplayName("Edge list import through a builder")
+    void edgeList() throws IOException {
+        String file = "builder_test.csv";
+        weighted_graph wg = WGraph_AlgoTest.gridGraph(10,2);
+        WGraph_EdgeList.write(wg, file, WGraph_EdgeList.Format.CSV);
+        WGraph_Builder b = new WGraph_Builder(100, 200);
+        WGraph_EdgeList.read(file, WGraph_EdgeList.Format.CSV, b);
+        WGraph_AlgoTest.assertSameEdges(wg, b.build());
+        new File(file).delete();
+    }
+}
@@ -0,0 +1,63 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the read only WGraph_CSR snapshot
+ */
+class WGraph_CSRTest {
+
+    @Test
+    @DisplayName("Snapshot answers the same as its source graph")
+    void freeze() {
+        weighted_graph wg = WGraph_DSTest.mainTestGraph();
+        wg.getNode(3).setInfo("three");
+        WGraph_CSR csr = WGraph_CSR.freeze(wg);
+        assertEquals(wg.nodeSize(), csr.nodeSize());
+        assertEquals(wg.edgeSize(), csr.edgeSize());
+        assertEquals(wg.getMC(), csr.getMC());
+        assertEquals(wg.toString(), csr.toString());
+        assertEquals("three", csr.getNode(3).getInfo());
+        for (int i=0; i<=17; i++) {
+            assertEquals(wg.getV(i).size(), csr.getV(i).size());
+            for (int j=0; j<=17; j++) {
+                assertEquals(wg.hasEdge(i,j), csr.hasEdge(i,j));
+                assertEquals(wg.getEdge(i,j), csr.getEdge(i,j));
+            }
+        }
+        assertSame(csr, WGraph_CSR.freeze(csr));
+    }
+
+    @Test
+    @DisplayName("Snapshot is read only and detached from its source")
+    void readOnly() {
+        weighted_graph wg = WGraph_DSTest.mainTestGraph();
+        weighted_graph csr = WGraph_CSR.freeze(wg);
+        assertThrows(UnsupportedOperationException.class, () -> csr.addNode(100));
+        assertThrows(UnsupportedOperationException.class, () -> csr.connect(1,2,4));
+        assertThrows(UnsupportedOperationException.class, () -> csr.removeNode(1));
+        assertThrows(UnsupportedOperationException.class, () -> csr.removeEdge(1,2));
+        wg.removeNode(1);
+        assertTrue(csr.hasEdge(1,2));
+        assertEquals(16, csr.nodeSize());
+    }
+
+    @Test
+    @DisplayName("Algorithms on a frozen graph")
+    void algorithms() {
+        WGraph_Algo wga = new WGraph_Algo();
+        wga.init(WGraph_DSTest.mainTestGraph());
+        wga.freeze();
+        assertTrue(wga.getGraph() instanceof WGraph_CSR);
+        assertTrue(wga.isConnected());
+        assertEquals(7, wga.shortestPathDist(1,6));
+        assertEquals(23, wga.shortestPathDist(1,16));
+        assertEquals(8, wga.shortestPath(1,16).size());
+        assertEquals(wga.copy(), WGraph_DSTest.mainTestGraph());
+        weighted_graph wg = WGraph_DSTest.mainTestGraph();
+        wg.removeNode(7);
+        wga.init(wg);
+        wga.freeze();
+        assertFalse(wga.isConnected());
+    }
+}
@@ -0,0 +1,121 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the compact primitive WGraph_Compact backend.
+ * Most of the tests build the same graph with WGraph_DS and WGraph_Compact
+ * and check both answer the same through the weighted_graph interface.
+ */
+class WGraph_CompactTest {
+
+    /**
+     * Creates the main test graph (WikiPictures/testgraph.jpg) on the compact backend
+     *
+     * @return WGraph_Compact - an initialized graph
+     */
+    static weighted_graph compactTestGraph() {
+        weighted_graph wg = new WGraph_Compact();
+        weighted_graph src = WGraph_DSTest.mainTestGraph();
+        for (node_info n : src.getV()) {
+            wg.addNode(n.getKey());
+        }
+        for (node_info n : src.getV()) {
+            for (node_info ni : src.getV(n.getKey())) {
+                wg.connect(n.getKey(), ni.getKey(), src.getEdge(n.getKey(), ni.getKey()));
+            }
+        }
+        return wg;
+    }
+
+    @Test
+    @DisplayName("Same answers as WGraph_DS on the main test graph")
+    void sameAsDS() {
+        weighted_graph ds = WGraph_DSTest.mainTestGraph();
+        weighted_graph cg = compactTestGraph();
+        assertEquals(ds.nodeSize(), cg.nodeSize());
+        assertEquals(ds.edgeSize(), cg.edgeSize());
+        assertEquals(ds.toString(), cg.toString());
+        for (int i=0; i<=17; i++) {
+            for (int j=0; j<=17; j++) {
+                assertEquals(ds.hasEdge(i,j), cg.hasEdge(i,j));
+                assertEquals(ds.getEdge(i,j), cg.getEdge(i,j));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Mode count and sizes follow WGraph_DS semantics")
+    void getMC() {
+        weighted_graph wg = new WGraph_Compact();
+        for (int i=0; i<10; i++) {
+            wg.addNode(i);
+        }
+        assertEquals(10,wg.getMC());
+        wg.connect(1,2,2);
+        wg.connect(1,3,2);
+        wg.connect(1,4,2);
+        wg.connect(1,5,2);
+        wg.connect(1,5,2);
+        wg.connect(1,1,2);
+        wg.connect(1,6,-2);
+        assertEquals(10+4,wg.getMC());
+        wg.connect(1,2,444);
+        assertEquals(444,wg.getEdge(2,1));
+        wg.removeEdge(1,2);
+        assertEquals(10+4+2,wg.getMC());
+        wg.removeNode(1);
+        assertEquals(10+4+2+4,wg.getMC());
+        assertEquals(0,wg.edgeSize());
+        assertEquals(9,wg.nodeSize());
+        assertNull(wg.removeNode(1));
+    }
+
+    @Test
+    @DisplayName("Removed slots are recycled without leaking old edges or metadata")
+    void slotReuse() {
+        weighted_graph wg = compactTestGraph();
+        node_info old = wg.getNode(7);
+        old.setInfo("old");
+        old.setTag(3.5);
+        node_info removed = wg.removeNode(7);
+        assertNull(old.getInfo());
+        assertEquals(7,removed.getKey());
+        assertEquals("old",removed.getInfo());
+        assertEquals(3.5,removed.getTag());
+        wg.addNode(100);
+        assertEquals(0,wg.getV(100).size());
+        assertNull(wg.getNode(100).getInfo());
+        assertFalse(wg.hasEdge(100,6));
+        assertEquals(16,wg.nodeSize());
+        wg.connect(100,6,1);
+        assertTrue(wg.hasEdge(6,100));
+        assertEquals(wg.getNode(100),wg.getNode(100));
+    }
+
+    @Test
+    @DisplayName("Random mutations match WGraph_DS")
+    void randomOps() {
+        weighted_graph ds = new WGraph_DS();
+        weighted_graph cg = new WGraph_Compact(2);
+        Random rnd = new Random(3);
+        for (int i=0; i<20000; i++) {
+            int a = rnd.nextInt(300)-50, b = rnd.nextInt(300)-50;
+            switch (rnd.nextInt(6)) {
+                case 0: ds.addNode(a); cg.addNode(a); break;
+                case 1: if (ds.hasEdge(a,b) && a != b) { ds.removeEdge(a,b); cg.removeEdge(a,b); } break;
+                case 2: ds.removeNode(a); cg.removeNode(a); break;
+                default: double w = rnd.nextInt(5); ds.connect(a,b,w); cg.connect(a,b,w);
+            }
+            assertEquals(ds.edgeSize(), cg.edgeSize());
+        }
+        assertEquals(ds.nodeSize(), cg.nodeSize());
+        for (node_info n : ds.getV()) {
+            assertEquals(ds.getV(n.getKey()).size(), cg.getV(n.getKey()).size());
+            for (node_info ni : ds.getV(n.getKey())) {
+                assertEquals(ds.getEdge(n.getKey(),ni.getKey()), cg.getEdge(n.getKey(),ni.getKey()));
+            }
+        }
+    }
+}
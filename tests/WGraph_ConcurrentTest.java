@@ -0,0 +1,112 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the thread safe WGraph_Concurrent
+ */
+class WGraph_ConcurrentTest {
+
+    /**
+     * Checks that every edge appears in both of its rows with the same weight and that the counters match the rows.
+     */
+    static void assertConsistent(weighted_graph g) {
+        long degrees = 0;
+        for (node_info n : g.getV()) {
+            int key = n.getKey();
+            long[] deg = new long[1];
+            g.forEachNeighbor(key, (ni, w) -> {
+                deg[0]++;
+                assertEquals(w, g.getEdge(ni, key));
+            });
+            assertEquals(deg[0], g.getV(key).size());
+            degrees += deg[0];
+        }
+        assertEquals(2L*g.edgeSize(), degrees);
+    }
+
+    @Test
+    @DisplayName("Single threaded changes behave like WGraph_Compact")
+    void sequential() {
+        WGraph_Concurrent g = new WGraph_Concurrent(4);
+        WGraph_Compact expected = new WGraph_Compact();
+        Random rnd = new Random(3);
+        for (int step=0; step<30000; step++) {
+            WGraph_VersionedTest.randomChange(g, expected, rnd, 400);
+        }
+        assertEquals(expected.nodeSize(), g.nodeSize());
+        assertEquals(expected.edgeSize(), g.edgeSize());
+        assertEquals(expected.getMC(), g.getMC());
+        WGraph_AlgoTest.assertSameEdges(expected, g);
+        WGraph_AlgoTest.assertSameEdges(g, expected);
+        assertConsistent(g);
+        WGraph_Algo wga = new WGraph_Algo();
+        wga.init(g);
+        WGraph_Algo on_expected = new WGraph_Algo();
+        on_expected.init(expected);
+        assertEquals(on_expected.shortestPathDist(1, 2), wga.shortestPathDist(1, 2));
+        assertEquals(on_expected.isConnected(), wga.isConnected());
+    }
+
+    @Test
+    @DisplayName("Parallel connect, removeEdge and removeNode keep the graph consistent")
+    void parallel() throws InterruptedException {
+        int nodes = 300;
+        WGraph_Concurrent g = new WGraph_Concurrent(8);
+        for (int i=0; i<nodes; i++) {
+            g.addNode(i);
+        }
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[8];
+        for (int t=0; t<threads.length; t++) {
+            int seed = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    Random rnd = new Random(seed);
+                    for (int step=0; step<40000; step++) {
+                        int a = rnd.nextInt(nodes);
+                        int b = rnd.nextInt(nodes);
+                        int op = rnd.nextInt(100);
+                        if (op < 70) g.connect(a, b, rnd.nextInt(5));
+                        else if (op < 95) g.removeEdge(a, b);
+                        else if (op < 98) g.removeNode(a);
+                        else g.addNode(a);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertNull(failure.get());
+        assertConsistent(g);
+        WGraph_Concurrent hub = new WGraph_Concurrent(2);
+        for (int i=0; i<=2000; i++) {
+            hub.addNode(i);
+        }
+        for (int t=0; t<threads.length; t++) {
+            int from = t*250+1;
+            threads[t] = new Thread(() -> {
+                for (int i=from; i<from+250; i++) {
+                    hub.connect(0, i, i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(2000, hub.edgeSize());
+        assertEquals(2000, hub.getV(0).size());
+        assertEquals(1500, hub.getEdge(1500, 0));
+        assertConsistent(hub);
+        hub.removeNode(0);
+        assertEquals(0, hub.edgeSize());
+        assertEquals(2001+2000+2000+1, hub.getMC());
+    }
+}
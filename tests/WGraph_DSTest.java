@@ -1,8 +1,13 @@
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Random;
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -189,6 +194,29 @@ public class WGraph_DSTest {
         assertEquals(0,temp.size());
     }
 
+    /**
+     * Tests the forEachNeighbor method against getV(node) and getEdge()
+     */
+    @Test
+    @DisplayName("forEachNeighbor test")
+    void forEachNeighbor() {
+        weighted_graph wg = mainTestGraph();
+        for (node_info n : wg.getV()) {
+            ArrayList<Integer> keys = new ArrayList<>();
+            wg.forEachNeighbor(n.getKey(), (ni, w) -> {
+                assertEquals(wg.getEdge(n.getKey(), ni), w);
+                keys.add(ni);
+            });
+            assertEquals(wg.getV(n.getKey()).size(), keys.size());
+            for (node_info ni : wg.getV(n.getKey())) {
+                assertTrue(keys.contains(ni.getKey()));
+            }
+        }
+        wg.removeNode(1);
+        wg.forEachNeighbor(1, (ni, w) -> fail());
+        wg.forEachNeighbor(6, (ni, w) -> assertNotEquals(1, ni));
+    }
+
     /**
      * Tests mode count changes in the graph
      */
@@ -211,4 +239,318 @@ public class WGraph_DSTest {
         wg.removeNode(1);
         assertEquals(10+4+2+4,wg.getMC());
     }
+
+    /**
+     * Tests the incrementally maintained components through additions, removals and a serialization round trip,
+     * checking them against a full recompute by WGraph_Components after each random change
+     */
+    @Test
+    @DisplayName("incremental connectivity test")
+    void connectivity() throws Exception {
+        WGraph_DS wg = (WGraph_DS) mainTestGraph();
+        assertTrue(wg.isConnected());
+        assertEquals(1, wg.componentCount());
+        assertEquals(16, wg.componentSize(5));
+        wg.addNode(17);
+        assertFalse(wg.isConnected());
+        assertEquals(2, wg.componentCount());
+        assertFalse(wg.sameComponent(1, 17));
+        wg.connect(17, 16, 1);
+        assertTrue(wg.sameComponent(1, 17));
+        wg.removeEdge(6, 7);
+        assertTrue(wg.isConnected());
+        wg.removeEdge(8, 15);
+        assertEquals(2, wg.componentCount());
+        assertTrue(wg.sameComponent(4, 12));
+        assertFalse(wg.sameComponent(1, 15));
+        assertEquals(1, wg.componentSize(15));
+        assertEquals(16, wg.componentSize(1));
+        wg.removeNode(17);
+        assertFalse(wg.sameComponent(17, 16));
+        assertEquals(0, wg.componentSize(17));
+        assertEquals(2, wg.componentCount());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(wg);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            WGraph_DS read = (WGraph_DS) in.readObject();
+            assertEquals(2, read.componentCount());
+            read.connect(15, 1, 1);
+            assertTrue(read.isConnected());
+        }
+        WGraph_DS empty = new WGraph_DS();
+        assertTrue(empty.isConnected());
+        assertEquals(0, empty.componentCount());
+        Random rnd = new Random(11);
+        WGraph_DS rg = new WGraph_DS();
+        for (int step=0; step<3000; step++) {
+            int a = rnd.nextInt(200);
+            int b = rnd.nextInt(200);
+            int op = rnd.nextInt(10);
+            if (op < 2) rg.addNode(a);
+            else if (op < 8) rg.connect(a, b, 1);
+            else if (op < 9) rg.removeEdge(a, b);
+            else rg.removeNode(a);
+            if (step % 50 != 0) continue;
+            WGraph_Components c = WGraph_Components.compute(rg);
+            assertEquals(c.count(), rg.componentCount());
+            for (int k=0; k<20; k++) {
+                int x = rnd.nextInt(200);
+                int y = rnd.nextInt(200);
+                assertEquals(c.sameComponent(x, y), rg.sameComponent(x, y));
+            }
+        }
+    }
+
+    /**
+     * Tests the direct deep copy, sequential and in parallel, keeping the indexes, infos, tags and mode count.
+     */
+    @Test
+    @DisplayName("deepCopy test")
+    void deepCopy() {
+        WGraph_DS wg = (WGraph_DS) mainTestGraph();
+        wg.getNode(3).setInfo("three");
+        wg.getNode(4).setTag(2.5);
+        wg.removeNode(9);
+        WGraph_DS copy = wg.deepCopy();
+        assertEquals(wg, copy);
+        WGraph_AlgoTest.assertSameEdges(wg, copy);
+        assertEquals(wg.getMC(), copy.getMC());
+        assertEquals("three", copy.getNode(3).getInfo());
+        assertEquals(2.5, copy.getNode(4).getTag());
+        assertEquals(wg.indexOf(16), copy.indexOf(16));
+        assertNotSame(wg.getNode(1), copy.getNode(1));
+        assertEquals(wg.componentCount(), copy.componentCount());
+        copy.getNode(4).setTag(1);
+        copy.connect(1, 16, 3);
+        copy.addNode(9);
+        assertEquals(2.5, wg.getNode(4).getTag());
+        assertFalse(wg.hasEdge(1, 16));
+        assertNull(wg.getNode(9));
+        assertEquals(wg.indexOf(16), copy.indexOf(16));
+        WGraph_DS big = (WGraph_DS) WGraph_Benchmark.fill(new WGraph_DS(), WGraph_DS.COPY_GRAIN*3, WGraph_DS.COPY_GRAIN*9, 7);
+        WGraph_DS parallel = big.deepCopy(new java.util.concurrent.ForkJoinPool(4));
+        WGraph_AlgoTest.assertSameEdges(big, parallel);
+        WGraph_AlgoTest.assertSameEdges(parallel, big);
+        assertEquals(big.edgeSize(), parallel.edgeSize());
+    }
+
+    /**
+     * Tests the lazy copy: it reads the shared storage until either side changes, and no change is seen by the other side.
+     */
+    @Test
+    @DisplayName("copyOnWrite test")
+    void copyOnWrite() {
+        WGraph_DS wg = (WGraph_DS) mainTestGraph();
+        WGraph_DS copy = wg.copyOnWrite();
+        assertTrue(copy.isShared());
+        assertEquals(wg.getEdge(1, 2), copy.getEdge(1, 2));
+        assertTrue(copy.hasEdge(2, 1));
+        assertEquals(wg.edgeSize(), copy.edgeSize());
+        assertTrue(copy.isConnected());
+        WGraph_Algo wga = new WGraph_Algo();
+        wga.init(copy);
+        assertEquals(23, wga.shortestPathDist(1, 16));
+        assertTrue(copy.isShared());
+        copy.removeEdge(1, 2);
+        assertFalse(copy.isShared());
+        assertFalse(copy.hasEdge(1, 2));
+        assertTrue(wg.hasEdge(1, 2));
+        WGraph_DS first = wg.copyOnWrite();
+        WGraph_DS second = first.copyOnWrite();
+        wg.connect(1, 16, 1);
+        wg.getNode(5).setInfo("changed");
+        assertFalse(first.isShared());
+        assertFalse(second.isShared());
+        assertFalse(first.hasEdge(1, 16));
+        assertFalse(second.hasEdge(16, 1));
+        assertNull(first.getNode(5).getInfo());
+        assertEquals(wg.edgeSize()-1, second.edgeSize());
+        WGraph_DS third = wg.copyOnWrite();
+        node_info n = third.getNode(6);
+        assertFalse(third.isShared());
+        n.setTag(4);
+        assertEquals(-1, wg.getNode(6).getTag());
+        WGraph_DS fourth = wg.copyOnWrite();
+        wg.getNode(6).setTag(7);
+        assertEquals(-1, fourth.getNode(6).getTag());
+        WGraph_AlgoTest.assertSameEdges(wg, fourth);
+    }
+
+    /**
+     * Tests removing single nodes and batches of nodes, the counters and the removal of missing edges
+     */
+    @Test
+    @DisplayName("removeNodes test")
+    void removeNodes() {
+        WGraph_DS wg = (WGraph_DS) mainTestGraph();
+        int mc = wg.getMC();
+        int edges = wg.edgeSize();
+        wg.removeEdge(1, 16);
+        wg.removeEdge(1, 1);
+        assertEquals(mc, wg.getMC());
+        assertEquals(edges, wg.edgeSize());
+        int deg = wg.getV(8).size()+wg.getV(4).size();
+        assertEquals(2, wg.removeNodes(new int[] {8, 4, 8, 100}));
+        assertEquals(edges-deg+(wg.hasEdge(4, 8) ? 1 : 0), wg.edgeSize());
+        assertEquals(14, wg.nodeSize());
+        assertNull(wg.getNode(8));
+        for (node_info n : wg.getV()) {
+            assertFalse(wg.hasEdge(n.getKey(), 4));
+            assertFalse(wg.hasEdge(8, n.getKey()));
+        }
+        WGraph_DS hub = new WGraph_DS();
+        for (int i=0; i<=1000; i++) {
+            hub.addNode(i);
+            hub.connect(0, i, i);
+        }
+        hub.connect(1, 2, 1);
+        mc = hub.getMC();
+        assertEquals(0, hub.removeNodes(new int[0]));
+        assertEquals(mc, hub.getMC());
+        assertNotNull(hub.removeNode(0));
+        assertEquals(1, hub.edgeSize());
+        assertEquals(mc+1001, hub.getMC());
+        assertEquals(999, hub.componentCount());
+        assertEquals(2, hub.removeNodes(new int[] {1, 2}));
+        assertEquals(0, hub.edgeSize());
+        assertEquals(mc+1001+3, hub.getMC());
+        hub.addNode(0);
+        assertEquals(999, hub.componentCount());
+    }
+
+    @Test
+    @DisplayName("batch connectAll, updateWeights and removeEdges test")
+    void batches() {
+        WGraph_DS wg = new WGraph_DS();
+        WGraph_Compact expected = new WGraph_Compact();
+        weighted_graph[] others = {new WGraph_Versioned(), new WGraph_Concurrent()};
+        for (int i=0; i<300; i++) {
+            wg.addNode(i);
+            expected.addNode(i);
+            for (weighted_graph other : others) other.addNode(i);
+        }
+        Random rnd = new Random(11);
+        for (int round=0; round<30; round++) {
+            int size = rnd.nextInt(2000);
+            int[] a = new int[size];
+            int[] b = new int[size];
+            double[] w = new double[size];
+            for (int i=0; i<size; i++) {
+                a[i] = i/7 % 320;
+                b[i] = rnd.nextInt(320);
+                w[i] = rnd.nextInt(12)-1;
+            }
+            int mc = wg.getMC();
+            int expected_mc = expected.getMC();
+            int op = round % 3;
+            int changed;
+            if (op == 0) changed = wg.connectAll(a, b, w);
+            else if (op == 1) changed = wg.updateWeights(a, b, w);
+            else changed = wg.removeEdges(a, b);
+            int expected_changed;
+            if (op == 0) expected_changed = expected.connectAll(a, b, w);
+            else if (op == 1) expected_changed = expected.updateWeights(a, b, w);
+            else expected_changed = expected.removeEdges(a, b);
+            assertEquals(expected_changed, changed);
+            assertEquals(changed > 0 ? mc+1 : mc, wg.getMC());
+            assertEquals(changed > 0 ? expected_mc+1 : expected_mc, expected.getMC());
+            for (weighted_graph other : others) {
+                int other_mc = other.getMC();
+                int other_changed;
+                if (op == 0) other_changed = other.connectAll(a, b, w);
+                else if (op == 1) other_changed = other.updateWeights(a, b, w);
+                else other_changed = other.removeEdges(a, b);
+                assertEquals(changed, other_changed);
+                assertEquals(changed > 0 ? other_mc+1 : other_mc, other.getMC());
+                WGraph_AlgoTest.assertSameEdges(wg, other);
+            }
+            assertEquals(expected.edgeSize(), wg.edgeSize());
+            WGraph_AlgoTest.assertSameEdges(expected, wg);
+            WGraph_AlgoTest.assertSameEdges(wg, expected);
+            assertEquals(WGraph_Components.compute(expected).count(), wg.componentCount());
+        }
+        WGraph_DS copy = wg.copyOnWrite();
+        int edges = wg.edgeSize();
+        copy.removeEdges(new int[] {0, 0, 1}, new int[] {1, 2, 2});
+        copy.updateWeights(new int[] {3}, new int[] {4}, new double[] {100});
+        assertEquals(edges, wg.edgeSize());
+        assertNotEquals(100, wg.getEdge(3, 4));
+        assertEquals(0, wg.connectAll(new int[0], new int[0], new double[0]));
+        assertThrows(IllegalArgumentException.class, () -> wg.removeEdges(new int[1], new int[2]));
+        assertThrows(IllegalArgumentException.class, () -> wg.connectAll(new int[1], new int[1], new double[0]));
+    }
+
+    @Test
+    @DisplayName("equals, hashCode and fingerprint test")
+    void fingerprint() throws Exception {
+        WGraph_DS a = new WGraph_DS();
+        WGraph_DS b = new WGraph_DS();
+        Random rnd = new Random(23);
+        for (int step=0; step<20000; step++) {
+            WGraph_VersionedTest.randomChange(a, b, rnd, 200);
+        }
+        a.removeNodes(new int[] {1, 2, 3});
+        b.removeNodes(new int[] {3, 1, 2});
+        assertEquals(WGraph_DS.fingerprintOf(a), a.fingerprint());
+        WGraph_DS reversed = new WGraph_DS();
+        ArrayList<node_info> nodes = new ArrayList<>(a.getV());
+        for (int i=nodes.size()-1; i>=0; i--) {
+            reversed.addNode(nodes.get(i).getKey());
+        }
+        for (int i=nodes.size()-1; i>=0; i--) {
+            int key = nodes.get(i).getKey();
+            a.forEachNeighbor(key, (ni, w) -> reversed.connect(ni, key, w));
+        }
+        for (WGraph_DS g : new WGraph_DS[] {b, reversed, a.deepCopy(), a.copyOnWrite()}) {
+            assertEquals(a, g);
+            assertEquals(g, a);
+            assertEquals(a.hashCode(), g.hashCode());
+            assertEquals(a.fingerprint(), g.fingerprint());
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(a);
+        }
+        WGraph_DS read = (WGraph_DS) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals(a, read);
+        assertEquals(a.hashCode(), read.hashCode());
+        int key = a.getV().iterator().next().getKey();
+        int ni = -1;
+        for (node_info n : a.getV()) {
+            if (n.getKey() != key && !a.hasEdge(key, n.getKey())) ni = n.getKey();
+        }
+        b.connect(key, ni, 1);
+        assertNotEquals(a, b);
+        assertNotEquals(a.fingerprint(), b.fingerprint());
+        b.removeEdge(key, ni);
+        assertEquals(a, b);
+        b.connect(key, ni, 1);
+        b.connect(key, ni, 2);
+        a.connect(ni, key, 2);
+        assertEquals(a, b);
+        a.updateWeights(new int[] {key}, new int[] {ni}, new double[] {3});
+        assertNotEquals(a, b);
+        b.connectAll(new int[] {ni}, new int[] {key}, new double[] {3});
+        assertEquals(a, b);
+        assertEquals(WGraph_DS.fingerprintOf(b), b.fingerprint());
+        assertNotEquals(a, WGraph_AlgoTest.gridGraph(3, 1));
+        WGraph_Algo wga = new WGraph_Algo();
+        wga.init(b);
+        assertEquals(wga, a);
+        assertEquals(a.hashCode(), wga.hashCode());
+        WGraph_Compact compact = new WGraph_Compact();
+        for (node_info n : a.getV()) {
+            compact.addNode(n.getKey());
+        }
+        for (node_info n : a.getV()) {
+            a.forEachNeighbor(n.getKey(), (v, w) -> compact.connect(n.getKey(), v, w));
+        }
+        wga.init(compact);
+        assertEquals(wga, a);
+        assertEquals(a.hashCode(), wga.hashCode());
+        compact.removeEdge(key, ni);
+        assertNotEquals(wga, a);
+    }
 }
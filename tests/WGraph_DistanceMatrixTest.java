@@ -0,0 +1,90 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the many to many distance tables of WGraph_DistanceMatrix
+ */
+class WGraph_DistanceMatrixTest {
+
+    /**
+     * Checks every entry of a table against the shortest path trees of its sources.
+     */
+    static void assertTable(weighted_graph g, int[] sources, int[] targets, double[] table) {
+        assertEquals(sources.length*targets.length, table.length);
+        for (int i=0; i<sources.length; i++) {
+            WGraph_PathTree t = WGraph_PathTree.sequential(g, sources[i]);
+            for (int j=0; j<targets.length; j++) {
+                double expected = t == null ? -1 : t.dist(targets[j]);
+                assertEquals(expected, table[i*targets.length+j], 1e-9, sources[i] + " -> " + targets[j]);
+            }
+        }
+    }
+
+    /**
+     * Returns random keys of the graph of WGraph_PathTreeTest.randomGraph(), with repeated, unreachable
+     * and missing nodes among them.
+     */
+    static int[] randomKeys(int nodes, int count, Random rnd) {
+        int[] result = new int[count];
+        for (int i=0; i<count; i++) {
+            result[i] = rnd.nextInt(nodes)*3-nodes;
+        }
+        result[0] = result[count-1];
+        result[1] = nodes*3+1;
+        result[2] = (nodes-1)*3-nodes;
+        return result;
+    }
+
+    @Test
+    @DisplayName("One to many searches give the distances of the shortest path trees")
+    void dijkstra() {
+        Random rnd = new Random(5);
+        weighted_graph g = WGraph_PathTreeTest.randomGraph(3000, 9000, 50, 5);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            int[] sources = randomKeys(3000, 40, rnd);
+            int[] targets = randomKeys(3000, 70, rnd);
+            assertTable(g, sources, targets, WGraph_DistanceMatrix.compute(g, sources, targets, pool));
+            assertTable(g, targets, sources, WGraph_DistanceMatrix.compute(g, targets, sources, pool));
+            int[] one = {sources[5]};
+            assertTable(g, one, targets, WGraph_DistanceMatrix.compute(g, one, targets, pool));
+            assertEquals(0, WGraph_DistanceMatrix.compute(g, new int[0], targets, pool).length);
+            assertArrayEquals(new double[] {0}, WGraph_DistanceMatrix.compute(g, one, one, pool));
+            int[] many = new int[50000];
+            String message = assertThrows(IllegalArgumentException.class,
+                    () -> WGraph_DistanceMatrix.compute(g, many, many, pool)).getMessage();
+            assertTrue(message.contains("50000 sources x 50000 targets"));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("The bucket algorithm over the hierarchy gives the same table")
+    void hierarchy() {
+        Random rnd = new Random(8);
+        weighted_graph g = WGraph_PathTreeTest.randomGraph(3000, 9000, 50, 8);
+        int[] sources = randomKeys(3000, 60, rnd);
+        int[] targets = randomKeys(3000, 25, rnd);
+        WGraph_Algo wga = new WGraph_Algo();
+        wga.init(g);
+        double[] plain = wga.distanceMatrix(sources, targets);
+        assertTable(g, sources, targets, plain);
+        WGraph_CH ch = wga.prepareHierarchy();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            assertArrayEquals(plain, WGraph_DistanceMatrix.compute(ch, sources, targets, pool), 1e-9);
+            assertArrayEquals(plain, wga.distanceMatrix(sources, targets), 1e-9);
+        } finally {
+            pool.shutdown();
+        }
+        g.connect(sources[3], targets[4], 0);
+        assertNull(wga.getHierarchy());
+        double[] changed = wga.distanceMatrix(sources, targets);
+        assertEquals(0, changed[3*targets.length+4]);
+        assertTable(g, sources, targets, changed);
+    }
+}
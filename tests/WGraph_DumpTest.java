@@ -0,0 +1,106 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the streaming graph dumps of WGraph_Dump
+ */
+class WGraph_DumpTest {
+
+    /**
+     * Returns the dump of the graph as a String, in parallel when a pool is received.
+     */
+    static String dump(weighted_graph g, WGraph_Dump.Format format, ForkJoinPool pool) throws IOException {
+        StringWriter out = new StringWriter();
+        if (pool == null) WGraph_Dump.write(g, out, format);
+        else WGraph_Dump.write(g, out, format, pool);
+        return out.toString();
+    }
+
+    /**
+     * Returns the lines of the text sorted, to compare dumps written in a different node order.
+     */
+    static String[] sortedLines(String text) {
+        String[] lines = text.split("\n");
+        Arrays.sort(lines);
+        return lines;
+    }
+
+    @Test
+    @DisplayName("The TEXT dump is the toString() of the graph")
+    void text() throws IOException {
+        weighted_graph wg = WGraph_AlgoTest.graph_creator(20000, 60000);
+        wg.removeNode(5);
+        assertEquals(wg.toString(), dump(wg, WGraph_Dump.Format.TEXT, null));
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (WGraph_Dump.Format format : WGraph_Dump.Format.values()) {
+                String sequential = dump(wg, format, null);
+                String parallel = dump(wg, format, pool);
+                assertEquals(sequential.length(), parallel.length());
+                assertArrayEquals(sortedLines(sequential), sortedLines(parallel));
+            }
+            WGraph_Concurrent cg = new WGraph_Concurrent();
+            for (node_info n : wg.getV()) {
+                cg.addNode(n.getKey());
+            }
+            for (node_info n : wg.getV()) {
+                wg.forEachNeighbor(n.getKey(), (ni, w) -> cg.connect(n.getKey(), ni, w));
+            }
+            assertArrayEquals(sortedLines(dump(wg, WGraph_Dump.Format.TEXT, null)),
+                    sortedLines(dump(cg, WGraph_Dump.Format.TEXT, pool)));
+            java.io.Writer full = new java.io.Writer() {
+                private int _writes;
+
+                @Override
+                public void write(char[] buf, int off, int len) throws IOException {
+                    if (++this._writes > 1) throw new IOException("disk full");
+                }
+
+                @Override
+                public void flush() {
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+            assertThrows(IOException.class, () -> WGraph_Dump.write(wg, full, WGraph_Dump.Format.DOT, pool));
+            assertTrue(pool.awaitQuiescence(10, java.util.concurrent.TimeUnit.SECONDS));
+            assertEquals(dump(wg, WGraph_Dump.Format.DOT, null).length(), dump(wg, WGraph_Dump.Format.DOT, pool).length());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("DOT and GraphML dumps hold every node and every edge once")
+    void formats() throws IOException {
+        weighted_graph wg = WGraph_AlgoTest.gridGraph(10,3);
+        wg.addNode(-7);
+        wg.connect(-7, 0, 2.5);
+        String dot = dump(wg, WGraph_Dump.Format.DOT, null);
+        assertTrue(dot.startsWith("graph G {\n"));
+        assertTrue(dot.endsWith("}\n"));
+        assertTrue(dot.contains("  -7 -- 0 [weight=2.5];\n"));
+        assertEquals(wg.edgeSize(), dot.split(" -- ", -1).length-1);
+        assertEquals(wg.nodeSize()+wg.edgeSize()+2, dot.split("\n").length);
+        String file = "dump_test.graphml";
+        WGraph_Dump.write(wg, file, WGraph_Dump.Format.GRAPHML);
+        String xml = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+        new File(file).delete();
+        assertTrue(xml.startsWith("<?xml"));
+        assertTrue(xml.endsWith("</graphml>\n"));
+        assertTrue(xml.contains("<edge source=\"n-7\" target=\"n0\"><data key=\"w\">2.5</data></edge>"));
+        assertEquals(wg.nodeSize(), xml.split("<node ", -1).length-1);
+        assertEquals(wg.edgeSize(), xml.split("<edge ", -1).length-1);
+    }
+}
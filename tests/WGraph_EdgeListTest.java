@@ -0,0 +1,115 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the streaming text importers and exporters of WGraph_EdgeList
+ */
+class WGraph_EdgeListTest {
+
+    /**
+     * Writes the received text to the file and reads it into a new WGraph_DS.
+     */
+    static weighted_graph parse(String file, String text, WGraph_EdgeList.Format format) throws IOException {
+        Files.write(Paths.get(file), text.getBytes(StandardCharsets.US_ASCII));
+        weighted_graph g = new WGraph_DS();
+        WGraph_EdgeList.read(file, format, g);
+        return g;
+    }
+
+    @Test
+    @DisplayName("Every format reads back what it wrote")
+    void roundTrip() throws IOException {
+        weighted_graph wg = WGraph_AlgoTest.gridGraph(15,4);
+        wg.addNode(300);
+        wg.connect(1,2,1e-7);
+        wg.connect(2,3,123456.5);
+        wg.connect(3,4,7);
+        String file = "edge_list_test";
+        for (WGraph_EdgeList.Format format : WGraph_EdgeList.Format.values()) {
+            WGraph_EdgeList.Stats out = WGraph_EdgeList.write(wg, file, format);
+            assertEquals(new File(file).length(), out.bytes());
+            weighted_graph g = new WGraph_DS();
+            WGraph_EdgeList.Stats in = WGraph_EdgeList.read(file, format, g);
+            assertEquals(out.edges(), in.edges());
+            assertEquals(0, in.ignored());
+            assertEquals(out.bytes(), in.bytes());
+            if (format == WGraph_EdgeList.Format.CSV || format == WGraph_EdgeList.Format.TSV) {
+                assertEquals(wg.edgeSize(), out.lines());
+                assertEquals(wg.nodeSize()-1, g.nodeSize());
+                for (node_info n : wg.getV()) {
+                    wg.forEachNeighbor(n.getKey(), (ni, w) -> assertEquals(w, g.getEdge(n.getKey(),ni)));
+                }
+            }
+            else {
+                assertEquals(wg.nodeSize(), g.nodeSize());
+                assertEquals(wg.edgeSize(), g.edgeSize());
+                assertEquals(1e-7, g.getEdge(2,3));
+                assertEquals(123456.5, g.getEdge(3,4));
+                assertEquals(0, g.getV(wg.nodeSize()).size());
+            }
+        }
+        new File(file).delete();
+    }
+
+    @Test
+    @DisplayName("Headers, comments, optional weights and number forms")
+    void parsing() throws IOException {
+        String file = "edge_list_parse";
+        weighted_graph g = parse(file, "source,target,weight\r\n# comment\n1,2,0.5\r\n\n2,3\n3, 4, 2.5e-3\n4 5 -1\n5,5,2\n"
+                + "6;7;1E2\n7,8,.25\n8,9,123456789012345678.5", WGraph_EdgeList.Format.CSV);
+        assertEquals(0.5, g.getEdge(1,2));
+        assertEquals(1, g.getEdge(2,3));
+        assertEquals(2.5e-3, g.getEdge(3,4));
+        assertEquals(-1, g.getEdge(4,5));
+        assertEquals(100, g.getEdge(6,7));
+        assertEquals(0.25, g.getEdge(7,8));
+        assertEquals(123456789012345678.5, g.getEdge(8,9));
+        assertEquals(9, g.nodeSize());
+        WGraph_EdgeList.Stats stats = WGraph_EdgeList.read(file, WGraph_EdgeList.Format.CSV, new WGraph_DS());
+        assertEquals(11, stats.lines());
+        assertEquals(8, stats.edges());
+        assertEquals(2, stats.ignored());
+        g = parse(file, "c test\np sp 5 4\na 1 2 3\na 2 1 3\na 2 3 1.5\na 3 2 1.5\n", WGraph_EdgeList.Format.DIMACS);
+        assertEquals(5, g.nodeSize());
+        assertEquals(2, g.edgeSize());
+        assertEquals(1.5, g.getEdge(3,2));
+        g = parse(file, "% unweighted\n4 2\n2\n1 4\n\n2\n", WGraph_EdgeList.Format.METIS);
+        assertEquals(4, g.nodeSize());
+        assertEquals(2, g.edgeSize());
+        assertEquals(0, g.getV(3).size());
+        assertEquals(1, g.getEdge(4,2));
+        g = parse(file, "3 2 011 1\n7 2 4\n9 1 4 3 6\n5 2 6\n", WGraph_EdgeList.Format.METIS);
+        assertEquals(4, g.getEdge(1,2));
+        assertEquals(6, g.getEdge(2,3));
+        StringBuilder text = new StringBuilder();
+        double[] weights = new double[1000];
+        java.util.Random rnd = new java.util.Random(14);
+        for (int i=0; i<weights.length; i++) {
+            weights[i] = rnd.nextDouble()*Math.pow(10, rnd.nextInt(40)-20);
+            text.append(i).append(',').append(i+1).append(',').append(weights[i]).append('\n');
+        }
+        g = parse(file, text.toString(), WGraph_EdgeList.Format.CSV);
+        for (int i=0; i<weights.length; i++) {
+            assertEquals(weights[i], g.getEdge(i,i+1));
+        }
+        assertThrows(IOException.class, () -> parse(file, "1,2,3\n1,x,3\n", WGraph_EdgeList.Format.CSV));
+        IOException e = assertThrows(IOException.class, () -> parse(file, "1,2,3\n1,2,3x\n", WGraph_EdgeList.Format.CSV));
+        assertTrue(e.getMessage().startsWith("line 2"));
+        assertThrows(IOException.class, () -> parse(file, "3 2\n2\n", WGraph_EdgeList.Format.METIS));
+        assertThrows(IOException.class, () -> parse(file, "x 1 2\n", WGraph_EdgeList.Format.DIMACS));
+        Files.write(Paths.get(file), "1 2 1\n\u00ff c\n3 4 1\n5 6 1\n".getBytes(StandardCharsets.ISO_8859_1));
+        g = new WGraph_DS();
+        WGraph_EdgeList.read(file, WGraph_EdgeList.Format.TSV, g);
+        assertEquals(6, g.nodeSize());
+        assertEquals(3, g.edgeSize());
+        assertEquals(WGraph_EdgeList.Format.DIMACS, WGraph_EdgeList.formatOf("USA-road-d.NY.gr"));
+        assertNull(WGraph_EdgeList.formatOf("graph.bin"));
+        new File(file).delete();
+    }
+}
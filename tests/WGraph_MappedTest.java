@@ -0,0 +1,80 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the read only memory mapped WGraph_Mapped
+ */
+class WGraph_MappedTest {
+
+    @Test
+    @DisplayName("Mapped graph answers the same as its source graph")
+    void mapped() throws IOException {
+        String file = "mapped_test";
+        weighted_graph wg = WGraph_AlgoTest.gridGraph(12,5);
+        wg.addNode(Integer.MIN_VALUE);
+        wg.addNode(Integer.MAX_VALUE);
+        wg.connect(Integer.MIN_VALUE,3,0.5);
+        WGraph_Mapped.write(wg, file);
+        for (int shift : new int[] {WGraph_Mapped.SEGMENT_BITS, 6}) {
+            WGraph_Mapped mapped = WGraph_Mapped.open(file, shift);
+            assertEquals(new File(file).length(), mapped.mappedBytes());
+            assertEquals(wg.nodeSize(), mapped.nodeSize());
+            assertEquals(wg.edgeSize(), mapped.edgeSize());
+            assertEquals(wg.getMC(), mapped.getMC());
+            WGraph_AlgoTest.assertSameEdges(wg, mapped);
+            WGraph_AlgoTest.assertSameEdges(mapped, wg);
+            Random rnd = new Random(2);
+            for (int q=0; q<500; q++) {
+                int a = rnd.nextInt(150)-3;
+                int b = rnd.nextInt(150)-3;
+                assertEquals(wg.hasEdge(a,b), mapped.hasEdge(a,b));
+                assertEquals(wg.getEdge(a,b), mapped.getEdge(a,b));
+                assertEquals(wg.getV(a).size(), mapped.getV(a).size());
+            }
+            assertNull(mapped.getNode(1000));
+            assertEquals(Integer.MIN_VALUE, mapped.keyAt(0));
+            assertEquals(Integer.MAX_VALUE, mapped.getNode(Integer.MAX_VALUE).getKey());
+        }
+        new File(file).delete();
+    }
+
+    @Test
+    @DisplayName("Mapped graph is read only and rejects other files")
+    void readOnly() throws IOException {
+        String file = "mapped_test_ro";
+        WGraph_Mapped.write(WGraph_DSTest.mainTestGraph(), file);
+        WGraph_Mapped mapped = WGraph_Mapped.open(file);
+        assertThrows(UnsupportedOperationException.class, () -> mapped.addNode(100));
+        assertThrows(UnsupportedOperationException.class, () -> mapped.connect(1,2,4));
+        assertThrows(UnsupportedOperationException.class, () -> mapped.removeNode(1));
+        assertThrows(UnsupportedOperationException.class, () -> mapped.removeEdge(1,2));
+        assertThrows(UnsupportedOperationException.class, () -> mapped.getNode(1).setTag(2));
+        assertEquals(-1, mapped.getNode(1).getTag());
+        assertNull(mapped.getNode(1).getInfo());
+        new WGraph_Algo().save(file);
+        assertThrows(java.io.StreamCorruptedException.class, () -> WGraph_Mapped.open(file));
+        new File(file).delete();
+    }
+
+    @Test
+    @DisplayName("Algorithms on a mapped graph loaded by WGraph_Algo")
+    void algorithms() {
+        String file = "mapped_test_algo";
+        WGraph_Algo wga = new WGraph_Algo();
+        wga.init(WGraph_DSTest.mainTestGraph());
+        assertTrue(wga.saveMapped(file));
+        WGraph_Algo loaded = new WGraph_Algo();
+        assertTrue(loaded.load(file));
+        assertTrue(loaded.getGraph() instanceof WGraph_Mapped);
+        assertTrue(loaded.isConnected());
+        assertEquals(7, loaded.shortestPathDist(1,6));
+        assertEquals(23, loaded.shortestPathDist(1,16));
+        assertEquals(8, loaded.shortestPath(1,16).size());
+        WGraph_AlgoTest.assertSameEdges(loaded.copy(), WGraph_DSTest.mainTestGraph());
+        new File(file).delete();
+    }
+}
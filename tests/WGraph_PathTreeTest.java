@@ -0,0 +1,108 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the single source shortest path trees of WGraph_PathTree
+ */
+class WGraph_PathTreeTest {
+
+    /**
+     * Checks that every reached node but the source has a parent edge which gives exactly its distance,
+     * and that following the parents from any node reaches the source.
+     */
+    static void assertTree(WGraph_PathTree t) {
+        indexed_graph g = t.graph();
+        double[] dist = t.distances();
+        int[] parent = t.parents();
+        int s = g.indexOf(t.source());
+        assertEquals(0, dist[s]);
+        assertEquals(-1, parent[s]);
+        for (int i=0; i<g.indexBound(); i++) {
+            if (!g.hasIndex(i) || i == s) continue;
+            if (dist[i] == Double.POSITIVE_INFINITY) {
+                assertEquals(-1, parent[i]);
+                assertNull(t.path(g.keyAt(i)));
+                continue;
+            }
+            int p = parent[i];
+            assertEquals(dist[i], dist[p]+g.getEdge(g.keyAt(p), g.keyAt(i)));
+            int[] path = t.path(g.keyAt(i));
+            assertTrue(path.length <= g.nodeSize());
+            assertEquals(t.source(), path[0]);
+            assertEquals(g.keyAt(i), path[path.length-1]);
+        }
+    }
+
+    /**
+     * Builds a random graph with integer weights (so every path length is exact) and a few unreachable nodes.
+     */
+    static weighted_graph randomGraph(int nodes, int edges, int max_weight, long seed) {
+        weighted_graph g = new WGraph_DS();
+        Random rnd = new Random(seed);
+        for (int i=0; i<nodes; i++) {
+            g.addNode(i*3-nodes);
+        }
+        while (g.edgeSize() < edges) {
+            g.connect(rnd.nextInt(nodes-5)*3-nodes, rnd.nextInt(nodes-5)*3-nodes, rnd.nextInt(max_weight+1));
+        }
+        return g;
+    }
+
+    @Test
+    @DisplayName("Delta-stepping gives the distances of Dijkstra")
+    void parallel() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int max_weight : new int[] {0, 1, 10, 1000}) {
+                weighted_graph g = randomGraph(6000, 20000, max_weight, max_weight);
+                int src = -6000;
+                WGraph_PathTree expected = WGraph_PathTree.sequential(g, src);
+                assertTree(expected);
+                for (double delta : new double[] {0, 0.5, 3, 1e9}) {
+                    WGraph_PathTree t = WGraph_PathTree.parallel(g, src, delta, pool);
+                    assertArrayEquals(expected.distances(), t.distances());
+                    assertTree(t);
+                }
+            }
+            weighted_graph g = WGraph_AlgoTest.graph_creator(50000, 150000);
+            WGraph_PathTree expected = WGraph_PathTree.sequential(g, 7);
+            WGraph_PathTree t = WGraph_PathTree.compute(g, 7, pool);
+            assertArrayEquals(expected.distances(), t.distances(), 1e-9);
+            assertTree(t);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("The tree answers like shortestPathDist() and shortestPath()")
+    void queries() {
+        weighted_graph g = WGraph_AlgoTest.gridGraph(30, 5);
+        g.addNode(-1);
+        WGraph_Algo wga = new WGraph_Algo();
+        wga.init(g);
+        WGraph_PathTree t = wga.shortestPathTree(0);
+        assertTrue(t.isValidFor(g));
+        assertEquals(0, t.source());
+        assertNull(wga.shortestPathTree(-2));
+        assertEquals(-1, t.dist(-1));
+        assertEquals(-1, t.dist(-2));
+        assertNull(t.path(-1));
+        assertArrayEquals(new int[] {0}, t.path(0));
+        for (node_info n : g.getV()) {
+            if (n.getKey() == -1) continue;
+            assertEquals(wga.shortestPathDist(0, n.getKey()), t.dist(n.getKey()), 1e-9);
+        }
+        int[] path = t.path(899);
+        double len = 0;
+        for (int i=1; i<path.length; i++) {
+            len += g.getEdge(path[i-1], path[i]);
+        }
+        assertEquals(t.dist(899), len, 1e-9);
+        g.removeNode(-1);
+        assertFalse(t.isValidFor(g));
+    }
+}
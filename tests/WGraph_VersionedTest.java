@@ -0,0 +1,172 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the multi version WGraph_Versioned and its snapshots
+ */
+class WGraph_VersionedTest {
+
+    /**
+     * Applies the same random change to both graphs.
+     */
+    static void randomChange(weighted_graph a, weighted_graph b, Random rnd, int nodes) {
+        int u = rnd.nextInt(nodes);
+        int v = rnd.nextInt(nodes);
+        int op = rnd.nextInt(20);
+        if (op < 4) {
+            a.addNode(u);
+            b.addNode(u);
+        }
+        else if (op < 15) {
+            double w = rnd.nextInt(8);
+            a.connect(u, v, w);
+            b.connect(u, v, w);
+        }
+        else if (op < 19) {
+            a.removeEdge(u, v);
+            b.removeEdge(u, v);
+        }
+        else {
+            a.removeNode(u);
+            b.removeNode(u);
+        }
+    }
+
+    @Test
+    @DisplayName("Snapshots keep their version while the graph changes")
+    void snapshots() {
+        WGraph_Versioned g = new WGraph_Versioned();
+        WGraph_Compact expected = new WGraph_Compact();
+        WGraph_Algo copier = new WGraph_Algo();
+        copier.init(expected);
+        WGraph_Versioned.Snapshot empty = g.snapshot();
+        assertEquals(0, empty.nodeSize());
+        ArrayList<WGraph_Versioned.Snapshot> snapshots = new ArrayList<>();
+        ArrayList<weighted_graph> copies = new ArrayList<>();
+        Random rnd = new Random(17);
+        for (int step=0; step<40000; step++) {
+            randomChange(g, expected, rnd, 3000);
+            if (step % 4000 == 0) {
+                snapshots.add(g.publish());
+                copies.add(copier.copy());
+            }
+        }
+        assertEquals(expected.nodeSize(), g.nodeSize());
+        assertEquals(expected.edgeSize(), g.edgeSize());
+        WGraph_AlgoTest.assertSameEdges(expected, g);
+        for (int s=0; s<snapshots.size(); s++) {
+            WGraph_Versioned.Snapshot snapshot = snapshots.get(s);
+            weighted_graph copy = copies.get(s);
+            assertEquals(copy.nodeSize(), snapshot.nodeSize());
+            assertEquals(copy.edgeSize(), snapshot.edgeSize());
+            WGraph_AlgoTest.assertSameEdges(copy, snapshot);
+            WGraph_AlgoTest.assertSameEdges(snapshot, copy);
+        }
+        assertEquals(0, empty.nodeSize());
+        assertSame(g.publish(), g.publish());
+        assertEquals(g.getMC(), g.snapshot().getMC());
+        WGraph_Algo wga = new WGraph_Algo();
+        wga.init(expected);
+        WGraph_Algo on_snapshot = new WGraph_Algo();
+        on_snapshot.init(g.snapshot());
+        assertEquals(wga.isConnected(), on_snapshot.isConnected());
+        for (int q=0; q<50; q++) {
+            int a = rnd.nextInt(3000);
+            int b = rnd.nextInt(3000);
+            assertEquals(wga.shortestPathDist(a, b), on_snapshot.shortestPathDist(a, b));
+        }
+    }
+
+    @Test
+    @DisplayName("Node tags and infos are versioned and snapshots are read only")
+    void nodes() {
+        WGraph_Versioned g = new WGraph_Versioned();
+        g.addNode(1);
+        g.addNode(2);
+        g.connect(1, 2, 3);
+        g.getNode(1).setInfo("first");
+        WGraph_Versioned.Snapshot before = g.publish();
+        g.getNode(1).setInfo("second");
+        g.getNode(2).setTag(5);
+        g.connect(1, 2, 4);
+        WGraph_Versioned.Snapshot after = g.publish();
+        assertEquals("first", before.getNode(1).getInfo());
+        assertEquals(-1, before.getNode(2).getTag());
+        assertEquals(3, before.getEdge(2, 1));
+        assertEquals("second", after.getNode(1).getInfo());
+        assertEquals(5, after.getNode(2).getTag());
+        assertEquals(4, after.getEdge(2, 1));
+        assertEquals(before.getMC()+1, after.getMC());
+        assertThrows(UnsupportedOperationException.class, () -> after.connect(1, 2, 1));
+        assertThrows(UnsupportedOperationException.class, () -> after.removeNode(1));
+        assertThrows(UnsupportedOperationException.class, () -> after.getNode(1).setTag(0));
+        g.getNode(1).setTag(7);
+        node_info removed = g.removeNode(1);
+        assertEquals(1, removed.getKey());
+        assertEquals("second", removed.getInfo());
+        assertEquals(7, removed.getTag());
+        assertEquals("second", g.snapshot().getNode(1).getInfo());
+        assertNull(g.publish().getNode(1));
+        assertEquals(0, g.snapshot().edgeSize());
+        assertEquals(1, after.edgeSize());
+    }
+
+    @Test
+    @DisplayName("Readers query snapshots while the writer changes the graph")
+    void concurrentReaders() throws InterruptedException {
+        WGraph_Versioned g = new WGraph_Versioned();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] readers = new Thread[4];
+        final boolean[] done = new boolean[1];
+        for (int r=0; r<readers.length; r++) {
+            readers[r] = new Thread(() -> {
+                try {
+                    while (!WGraph_VersionedTest.isDone(done)) {
+                        WGraph_Versioned.Snapshot s = g.snapshot();
+                        long degrees = 0;
+                        int nodes = 0;
+                        for (node_info n : s.getV()) {
+                            nodes++;
+                            int key = n.getKey();
+                            long[] deg = new long[1];
+                            s.forEachNeighbor(key, (ni, w) -> {
+                                deg[0]++;
+                                if (s.getEdge(ni, key) != w) throw new AssertionError("asymmetric edge " + key + "," + ni);
+                            });
+                            degrees += deg[0];
+                        }
+                        if (nodes != s.nodeSize()) throw new AssertionError(nodes + " != " + s.nodeSize());
+                        if (degrees != 2L*s.edgeSize()) throw new AssertionError(degrees + " != " + 2L*s.edgeSize());
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            });
+            readers[r].start();
+        }
+        WGraph_Compact expected = new WGraph_Compact();
+        Random rnd = new Random(5);
+        for (int step=0; step<60000; step++) {
+            randomChange(g, expected, rnd, 500);
+            if (step % 100 == 0) g.publish();
+        }
+        synchronized (done) {
+            done[0] = true;
+        }
+        for (Thread t : readers) {
+            t.join();
+        }
+        assertNull(failure.get());
+        WGraph_AlgoTest.assertSameEdges(expected, g.publish());
+    }
+
+    private static boolean isDone(boolean[] done) {
+        synchronized (done) {
+            return done[0];
+        }
+    }
+}